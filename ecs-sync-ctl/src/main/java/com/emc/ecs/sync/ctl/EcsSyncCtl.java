@@ -50,6 +50,11 @@ public class EcsSyncCtl {
     private static final String SUBMIT_OPT = "submit";
     private static final String SET_THREADS_OPT = "set-threads";
     private static final String THREADS_OPT = "threads";
+    private static final String SET_THROTTLE_OPT = "set-throttle";
+    private static final String SOURCE_BANDWIDTH_OPT = "source-bandwidth";
+    private static final String TARGET_BANDWIDTH_OPT = "target-bandwidth";
+    private static final String SOURCE_OPS_OPT = "source-ops";
+    private static final String TARGET_OPS_OPT = "target-ops";
     private static final String LOG_FILE_OPT = "log-file";
     private static final String LOG_PATTERN_OPT = "log-pattern";
     private static final String LIST_JOBS_OPT = "list-jobs";
@@ -97,6 +102,10 @@ public class EcsSyncCtl {
         commands.addOption(Option.builder().longOpt(SET_THREADS_OPT).hasArg().argName("job-id")
                 .desc("Sets the number of sync threads on the server.  " +
                         "Requires --" + THREADS_OPT + " argument").build());
+        commands.addOption(Option.builder().longOpt(SET_THROTTLE_OPT).hasArg().argName("job-id")
+                .desc("Sets the bandwidth and/or request rate limits of a job on the server.  Requires one or more of " +
+                        "--" + SOURCE_BANDWIDTH_OPT + ", --" + TARGET_BANDWIDTH_OPT + ", --" + SOURCE_OPS_OPT +
+                        ", --" + TARGET_OPS_OPT + " arguments").build());
         commands.addOption(Option.builder().longOpt(LIST_JOBS_OPT).desc("Lists jobs in the server").build());
         commands.addOption(Option.builder().longOpt(XML_GEN_OPT).hasArg().argName("output-file")
                 .desc("Generates a verbose XML config file for the specified plugins").build());
@@ -113,6 +122,18 @@ public class EcsSyncCtl {
         opts.addOption(Option.builder().longOpt(THREADS_OPT).hasArg().argName("thread-count").desc(
                 "Used in conjunction with --" + SET_THREADS_OPT +
                         " to set the number of threads to use for a job.").build());
+        opts.addOption(Option.builder().longOpt(SOURCE_BANDWIDTH_OPT).hasArg().argName("bytes-per-second").desc(
+                "Used in conjunction with --" + SET_THROTTLE_OPT +
+                        " to limit source read bandwidth (0 for no limit).").build());
+        opts.addOption(Option.builder().longOpt(TARGET_BANDWIDTH_OPT).hasArg().argName("bytes-per-second").desc(
+                "Used in conjunction with --" + SET_THROTTLE_OPT +
+                        " to limit target write bandwidth (0 for no limit).").build());
+        opts.addOption(Option.builder().longOpt(SOURCE_OPS_OPT).hasArg().argName("ops-per-second").desc(
+                "Used in conjunction with --" + SET_THROTTLE_OPT +
+                        " to limit the source request rate (0 for no limit).").build());
+        opts.addOption(Option.builder().longOpt(TARGET_OPS_OPT).hasArg().argName("ops-per-second").desc(
+                "Used in conjunction with --" + SET_THROTTLE_OPT +
+                        " to limit the target request rate (0 for no limit).").build());
         opts.addOption(Option.builder().longOpt(LOG_FILE_OPT).hasArg().argName("filename")
                 .desc("Filename to write log messages.  Setting to STDOUT or STDERR will write log messages to the " +
                         "appropriate process stream.  Default is STDERR.").build());
@@ -242,6 +263,29 @@ public class EcsSyncCtl {
                     jobId, threadCount);
 
             cli.setThreadCount(jobId, threadCount);
+        } else if(cmd.hasOption(SET_THROTTLE_OPT)) {
+            if (!cmd.hasOption(SOURCE_BANDWIDTH_OPT) && !cmd.hasOption(TARGET_BANDWIDTH_OPT)
+                    && !cmd.hasOption(SOURCE_OPS_OPT) && !cmd.hasOption(TARGET_OPS_OPT)) {
+                System.err.printf("Error: one of --%s, --%s, --%s or --%s is required for --%s\n", SOURCE_BANDWIDTH_OPT,
+                        TARGET_BANDWIDTH_OPT, SOURCE_OPS_OPT, TARGET_OPS_OPT, SET_THROTTLE_OPT);
+                printHelp(opts);
+                System.exit(EXIT_ARG_ERROR);
+            }
+            int jobId = Integer.parseInt(cmd.getOptionValue(SET_THROTTLE_OPT));
+            JobControl control = new JobControl();
+            if (cmd.hasOption(SOURCE_BANDWIDTH_OPT))
+                control.setSourceBandwidthLimit(Long.parseLong(cmd.getOptionValue(SOURCE_BANDWIDTH_OPT)));
+            if (cmd.hasOption(TARGET_BANDWIDTH_OPT))
+                control.setTargetBandwidthLimit(Long.parseLong(cmd.getOptionValue(TARGET_BANDWIDTH_OPT)));
+            if (cmd.hasOption(SOURCE_OPS_OPT))
+                control.setSourceOpRateLimit(Integer.parseInt(cmd.getOptionValue(SOURCE_OPS_OPT)));
+            if (cmd.hasOption(TARGET_OPS_OPT))
+                control.setTargetOpRateLimit(Integer.parseInt(cmd.getOptionValue(TARGET_OPS_OPT)));
+            LogMF.info(l4j, "Command: Set job {0} throttle: source {1} b/s {2} ops/s, target {3} b/s {4} ops/s",
+                    new Object[]{jobId, control.getSourceBandwidthLimit(), control.getSourceOpRateLimit(),
+                            control.getTargetBandwidthLimit(), control.getTargetOpRateLimit()});
+
+            cli.controlJob(jobId, control);
         } else if(cmd.hasOption(LIST_JOBS_OPT)) {
             l4j.info("Command: List Jobs");
             cli.listJobs();
@@ -369,6 +413,18 @@ public class EcsSyncCtl {
             System.out.printf("Job Time: %s\n", duration(progress.getRuntimeMs()));
             System.out.printf("Active Query Threads: %d\n", progress.getActiveQueryTasks());
             System.out.printf("Active Sync Threads: %d\n", progress.getActiveSyncTasks());
+            if (progress.getThreadTuningState() != null)
+                System.out.printf("Adaptive Thread Count: %d (%s)\n", progress.getThreadCount(), progress.getThreadTuningState());
+            for (StageProgress stage : progress.getStages()) {
+                System.out.printf("  %s Stage: threads: %d active: %d queued: %d\n", stage.getName(),
+                        stage.getThreadCount(), stage.getActiveTasks(), stage.getQueuedTasks());
+            }
+            for (LaneProgress lane : progress.getLanes()) {
+                System.out.printf("  %s Lane: threads: %d active: %d queued: %d complete: %d objects (%sB) rate: %d/s (%sB/s)\n",
+                        lane.getName(), lane.getThreadCount(), lane.getActiveTasks(), lane.getQueuedTasks(),
+                        lane.getObjectsComplete(), simpleSize(lane.getBytesComplete()), lane.getObjectCompleteRate(),
+                        simpleSize(lane.getByteCompleteRate()));
+            }
             System.out.printf("CPU Time: %dms\n", progress.getCpuTimeMs());
             System.out.printf("CPU Usage: %.1f %%\n", progress.getProcessCpuLoad() * 100);
             System.out.printf("Memory Usage: %sB\n", simpleSize(progress.getProcessMemoryUsed()));
@@ -377,10 +433,15 @@ public class EcsSyncCtl {
             System.out.printf("Objects Completed: %d\n", progress.getObjectsComplete());
             System.out.printf("Objects Skipped: %d\n", progress.getObjectsSkipped());
             System.out.printf("Objects Awaiting Retry: %d\n", progress.getObjectsAwaitingRetry());
+            if (progress.getInFlightObjects() > 0)
+                System.out.printf("Objects In Flight: %d (%sB)\n", progress.getInFlightObjects(),
+                        simpleSize(progress.getInFlightBytes()));
             System.out.printf("Error Count: %d\n", progress.getObjectsFailed());
             System.out.printf("Bytes Expected: %sB\n", simpleSize(progress.getTotalBytesExpected()));
             System.out.printf("Bytes Completed: %sB\n", simpleSize(progress.getBytesComplete()));
             System.out.printf("Bytes Skipped: %sB\n", simpleSize(progress.getBytesSkipped()));
+            if (progress.getBytesDeduplicated() > 0)
+                System.out.printf("Bytes Deduplicated: %sB\n", simpleSize(progress.getBytesDeduplicated()));
             System.out.printf("Current BW (source): read: %sB/s write: %sB/s\n",
                     simpleSize(progress.getSourceReadRate()), simpleSize(progress.getSourceWriteRate()));
             System.out.printf("Current BW (target): read: %sB/s write: %sB/s\n",
@@ -390,6 +451,25 @@ public class EcsSyncCtl {
             System.out.printf("Average BW: %sB/s\n", simpleSize((long) bw));
             System.out.printf("Average Throughput: %.1f/s\n", xput);
             System.out.printf("ETA: %s\n", etaMs > 0 ? duration(etaMs) : "N/A");
+            ClusterProgress cluster = progress.getCluster();
+            if (cluster != null) {
+                System.out.printf("Cluster Partitions: %d of %d complete\n", cluster.getPartitionsComplete(),
+                        cluster.getPartitionCount());
+                System.out.printf("Cluster Nodes: %d live (%d total)\n", cluster.getLiveNodes(), cluster.getNodes().size());
+                System.out.printf("Cluster Objects Expected: %d\n", cluster.getTotalObjectsExpected());
+                System.out.printf("Cluster Objects Completed: %d\n", cluster.getObjectsComplete());
+                System.out.printf("Cluster Objects Skipped: %d\n", cluster.getObjectsSkipped());
+                System.out.printf("Cluster Error Count: %d\n", cluster.getObjectsFailed());
+                System.out.printf("Cluster Bytes Expected: %sB\n", simpleSize(cluster.getTotalBytesExpected()));
+                System.out.printf("Cluster Bytes Completed: %sB\n", simpleSize(cluster.getBytesComplete()));
+                System.out.printf("Cluster Bytes Skipped: %sB\n", simpleSize(cluster.getBytesSkipped()));
+                for (NodeProgress node : cluster.getNodes()) {
+                    System.out.printf("  Node %s: partitions: %d complete: %d objects (%sB) skipped: %d errors: %d last heartbeat: %s ago\n",
+                            node.getNodeId(), node.getPartitions(), node.getObjectsComplete(),
+                            simpleSize(node.getBytesComplete()), node.getObjectsSkipped(), node.getObjectsFailed(),
+                            duration(Math.max(0, System.currentTimeMillis() - node.getLastHeartbeat())));
+                }
+            }
             System.out.printf("General Error: %s\n", generalError);
         } catch(UniformInterfaceException e) {
             if(e.getResponse().getStatus() == 404) {
@@ -481,6 +561,10 @@ public class EcsSyncCtl {
         System.out.println("Total Memory: " + simpleSize(info.getHostTotalMemory()));
         System.out.println("Used Memory: " + simpleSize(info.getHostMemoryUsed()));
         System.out.println("Log Level: " + info.getLogLevel());
+        System.out.println("Buffer Pool: " + simpleSize(info.getBufferPoolBytes()) + " pooled, "
+                + info.getBufferPoolHits() + " hits, " + info.getBufferPoolMisses() + " misses");
+        System.out.println("Buffer Memory: " + simpleSize(info.getBufferBorrowedBytes()) + " borrowed"
+                + (info.getBufferMemoryLimit() > 0 ? ", limit " + simpleSize(info.getBufferMemoryLimit()) : ""));
     }
 
     private void setLogLevel(LogLevel logLevel) {
@@ -23,9 +23,16 @@ public class SyncOptions {
     public static final String DB_DESC = "You must specify a DB connection string to use mySQL";
 
     public static final int DEFAULT_BUFFER_SIZE = 128 * 1024; // 128k
+    public static final int DEFAULT_RANGE_READ_SIZE = 8 * 1024 * 1024; // 8MB
+    public static final int DEFAULT_RANGE_READ_THREAD_COUNT = 4;
+    public static final int DEFAULT_VERIFY_CHUNK_SIZE = 64 * 1024 * 1024; // 64MB
     public static final int DEFAULT_THREAD_COUNT = 16;
+    public static final int DEFAULT_MAX_THREAD_COUNT = 128;
     public static final int DEFAULT_RETRY_ATTEMPTS = 2; // 3 total attempts
+    public static final int DEFAULT_RETRY_DELAY = 1000; // 1 second
+    public static final int DEFAULT_MAX_RETRY_DELAY = 60000; // 1 minute
     public static final int DEFAULT_TIMING_WINDOW = 1000;
+    public static final int DEFAULT_LEASE_TIMEOUT = 60; // 1 minute
 
     private boolean syncMetadata = true;
     private boolean syncRetentionExpiration = false;
@@ -42,13 +49,38 @@ public class SyncOptions {
     private boolean forceSync = false;
     private boolean verify = false;
     private boolean verifyOnly = false;
+    private ChecksumAlgorithm verifyAlgorithm = ChecksumAlgorithm.MD5;
+    private boolean verifyStoredChecksum = false;
+    private long verifyChunkThreshold = 0;
+    private int verifyChunkSize = DEFAULT_VERIFY_CHUNK_SIZE;
     private boolean deleteSource = false;
 
     private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private long rangeReadThreshold = 0;
+    private int rangeReadSize = DEFAULT_RANGE_READ_SIZE;
+    private int rangeReadThreadCount = DEFAULT_RANGE_READ_THREAD_COUNT;
 
     private int threadCount = DEFAULT_THREAD_COUNT;
+    private boolean pipelineEnabled = false;
+    private int headThreadCount = 0;
+    private int verifyThreadCount = 0;
+    private int recordThreadCount = 0;
+    private boolean adaptiveThreadCount = false;
+    private int maxThreadCount = DEFAULT_MAX_THREAD_COUNT;
+    private long largeObjectThreshold = 0;
+    private int largeObjectThreadCount = 0;
+    private long maxInFlightBytes = 0;
+    private int maxInFlightObjects = 0;
+    private long maxBufferMemory = 0;
     private int retryAttempts = DEFAULT_RETRY_ATTEMPTS;
+    private int retryDelay = DEFAULT_RETRY_DELAY;
+    private int maxRetryDelay = DEFAULT_MAX_RETRY_DELAY;
     private boolean monitorPerformance = true;
+    private long sourceBandwidthLimit = 0;
+    private long targetBandwidthLimit = 0;
+    private int sourceOpRateLimit = 0;
+    private int targetOpRateLimit = 0;
+    private int jobWeight = 1;
 
     private boolean timingsEnabled = false;
     private int timingWindow = DEFAULT_TIMING_WINDOW;
@@ -59,6 +91,11 @@ public class SyncOptions {
     private String dbConnectString;
     private String dbEncPassword;
     private String dbTable;
+    private int checkpointInterval;
+    private int partitionCount;
+    private String nodeId;
+    private int leaseTimeout = DEFAULT_LEASE_TIMEOUT;
+    private boolean restartPartitions;
 
     @Option(orderIndex = 10, cliInverted = true, advanced = true, description = "Metadata is synced by default")
     public boolean isSyncMetadata() {
@@ -159,6 +196,42 @@ public class SyncOptions {
         this.verifyOnly = verifyOnly;
     }
 
+    @Option(orderIndex = 101, advanced = true, description = "The checksum used to compare source and target data in verification. CRC32 uses much less CPU than MD5 on fast links. Note that if a DB is used, MD5 is always calculated (it is stored in the DB), so verification will use MD5. Default is MD5")
+    public ChecksumAlgorithm getVerifyAlgorithm() {
+        return verifyAlgorithm;
+    }
+
+    public void setVerifyAlgorithm(ChecksumAlgorithm verifyAlgorithm) {
+        this.verifyAlgorithm = verifyAlgorithm;
+    }
+
+    @Option(orderIndex = 102, advanced = true, description = "When verifying with MD5, compares the MD5 calculated while the object was transferred with the MD5 the target already stores for the object (i.e. the ETag of a single-part S3 object), instead of reading the object back from the target. Objects without a stored MD5 are still read back. Note this trusts the checksum reported by the target")
+    public boolean isVerifyStoredChecksum() {
+        return verifyStoredChecksum;
+    }
+
+    public void setVerifyStoredChecksum(boolean verifyStoredChecksum) {
+        this.verifyStoredChecksum = verifyStoredChecksum;
+    }
+
+    @Option(orderIndex = 103, advanced = true, description = "Objects at least this size (in bytes) are verified in chunks: both the source and target are read with ranged reads (positional reads for files) and each chunk is hashed in parallel, up to the range read thread count per object. A mismatch reports the exact byte ranges that differ. Only used if both plugins support ranged reads (S3, ECS S3, Atmos and filesystem) and no filter changes the data. Note that in verify-only mode, the full source MD5 is not calculated for these objects, so it is not recorded in the DB. 0 disables chunked verification")
+    public long getVerifyChunkThreshold() {
+        return verifyChunkThreshold;
+    }
+
+    public void setVerifyChunkThreshold(long verifyChunkThreshold) {
+        this.verifyChunkThreshold = verifyChunkThreshold;
+    }
+
+    @Option(orderIndex = 104, advanced = true, description = "The size (in bytes) of each chunk in chunked verification. This is also the granularity of reported mismatches. Default is " + (DEFAULT_VERIFY_CHUNK_SIZE / 1024 / 1024) + "MB")
+    public int getVerifyChunkSize() {
+        return verifyChunkSize;
+    }
+
+    public void setVerifyChunkSize(int verifyChunkSize) {
+        this.verifyChunkSize = verifyChunkSize;
+    }
+
     @Option(orderIndex = 110, advanced = true, description = "Supported source plugins will delete each source object once it is successfully synced (does not include directories). Use this option with care! Be sure log levels are appropriate to capture transferred (source deleted) objects")
     public boolean isDeleteSource() {
         return deleteSource;
@@ -177,6 +250,33 @@ public class SyncOptions {
         this.bufferSize = bufferSize;
     }
 
+    @Option(orderIndex = 121, advanced = true, description = "Source objects at least this size (in bytes) are read with several ranged GETs in parallel instead of one stream (supported plugins only: S3, ECS S3 and Atmos). This gets past the throughput of a single connection for very large objects. 0 disables parallel range reads")
+    public long getRangeReadThreshold() {
+        return rangeReadThreshold;
+    }
+
+    public void setRangeReadThreshold(long rangeReadThreshold) {
+        this.rangeReadThreshold = rangeReadThreshold;
+    }
+
+    @Option(orderIndex = 122, advanced = true, description = "The size (in bytes) of each range in a parallel range read. Each range being read is buffered in memory, so memory use per object is this size times the range read thread count. Default is " + (DEFAULT_RANGE_READ_SIZE / 1024 / 1024) + "MB")
+    public int getRangeReadSize() {
+        return rangeReadSize;
+    }
+
+    public void setRangeReadSize(int rangeReadSize) {
+        this.rangeReadSize = rangeReadSize;
+    }
+
+    @Option(orderIndex = 123, advanced = true, description = "The number of ranges to read in parallel for each object in a parallel range read. Default is " + DEFAULT_RANGE_READ_THREAD_COUNT)
+    public int getRangeReadThreadCount() {
+        return rangeReadThreadCount;
+    }
+
+    public void setRangeReadThreadCount(int rangeReadThreadCount) {
+        this.rangeReadThreadCount = rangeReadThreadCount;
+    }
+
     @Option(orderIndex = 130, description = "Specifies the number of objects to sync simultaneously. Default is " + DEFAULT_THREAD_COUNT)
     public int getThreadCount() {
         return threadCount;
@@ -186,6 +286,105 @@ public class SyncOptions {
         this.threadCount = threadCount;
     }
 
+    @Option(orderIndex = 131, advanced = true, description = "Splits each object sync into stages (head, transfer, verify and record) that each run in their own thread pool with a bounded queue. This keeps slow DB operations and verification reads from holding transfer threads. Stage activity is reported in the job progress")
+    public boolean isPipelineEnabled() {
+        return pipelineEnabled;
+    }
+
+    public void setPipelineEnabled(boolean pipelineEnabled) {
+        this.pipelineEnabled = pipelineEnabled;
+    }
+
+    @Option(orderIndex = 132, advanced = true, description = "When the pipeline is enabled, specifies the number of threads used to look up DB records and load source objects. Default is the thread count")
+    public int getHeadThreadCount() {
+        return headThreadCount;
+    }
+
+    public void setHeadThreadCount(int headThreadCount) {
+        this.headThreadCount = headThreadCount;
+    }
+
+    @Option(orderIndex = 133, advanced = true, description = "When the pipeline is enabled, specifies the number of objects to verify simultaneously. Default is the thread count")
+    public int getVerifyThreadCount() {
+        return verifyThreadCount;
+    }
+
+    public void setVerifyThreadCount(int verifyThreadCount) {
+        this.verifyThreadCount = verifyThreadCount;
+    }
+
+    @Option(orderIndex = 134, advanced = true, description = "When the pipeline is enabled, specifies the number of threads used to record object status in the DB. Default is the thread count")
+    public int getRecordThreadCount() {
+        return recordThreadCount;
+    }
+
+    public void setRecordThreadCount(int recordThreadCount) {
+        this.recordThreadCount = recordThreadCount;
+    }
+
+    @Option(orderIndex = 135, advanced = true, description = "Continuously tunes the thread count from live throughput. Threads are added while throughput improves and removed when it stops improving or when the error rate climbs. The thread count option becomes the starting point")
+    public boolean isAdaptiveThreadCount() {
+        return adaptiveThreadCount;
+    }
+
+    public void setAdaptiveThreadCount(boolean adaptiveThreadCount) {
+        this.adaptiveThreadCount = adaptiveThreadCount;
+    }
+
+    @Option(orderIndex = 136, advanced = true, description = "When adaptive thread count is enabled, specifies the upper limit for the thread count. Default is " + DEFAULT_MAX_THREAD_COUNT)
+    public int getMaxThreadCount() {
+        return maxThreadCount;
+    }
+
+    public void setMaxThreadCount(int maxThreadCount) {
+        this.maxThreadCount = maxThreadCount;
+    }
+
+    @Option(orderIndex = 137, advanced = true, description = "Objects at least this size (in bytes) are synced in a separate lane with its own thread pool, so large objects cannot hold every sync thread and small objects cannot starve large transfers. Throughput of each lane is reported in the job progress. 0 disables the large lane. Ignored when the pipeline is enabled")
+    public long getLargeObjectThreshold() {
+        return largeObjectThreshold;
+    }
+
+    public void setLargeObjectThreshold(long largeObjectThreshold) {
+        this.largeObjectThreshold = largeObjectThreshold;
+    }
+
+    @Option(orderIndex = 138, advanced = true, description = "When a large object threshold is set, specifies how many of the sync threads are used for large objects (the rest sync small objects). Default is a quarter of the thread count")
+    public int getLargeObjectThreadCount() {
+        return largeObjectThreadCount;
+    }
+
+    public void setLargeObjectThreadCount(int largeObjectThreadCount) {
+        this.largeObjectThreadCount = largeObjectThreadCount;
+    }
+
+    @Option(orderIndex = 141, advanced = true, description = "Limits the total size of the objects that are queued or being synced at once. Submitting more objects blocks until enough bytes complete, so a few huge objects cannot crowd the queues while small objects still flow freely. This limits object sizes, not memory (see maxBufferMemory). An object larger than the limit is synced by itself. 0 means no limit")
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    @Option(orderIndex = 142, advanced = true, description = "Limits the number of objects that are queued or being synced at once (each may hold open streams and buffers). 0 means no limit")
+    public int getMaxInFlightObjects() {
+        return maxInFlightObjects;
+    }
+
+    public void setMaxInFlightObjects(int maxInFlightObjects) {
+        this.maxInFlightObjects = maxInFlightObjects;
+    }
+
+    @Option(orderIndex = 145, advanced = true, description = "Limits the heap (in bytes) used by copy, range read and multipart part buffers. Range reads and streaming uploads only read ahead while there is room, and idle pooled buffers are dropped to make room. Every object still gets the buffers it needs to make progress (a copy buffer, one range and one part), so the limit is not a hard cap. If several jobs run in one process, their limits add up to one budget for all buffers in the process. 0 means no limit")
+    public long getMaxBufferMemory() {
+        return maxBufferMemory;
+    }
+
+    public void setMaxBufferMemory(long maxBufferMemory) {
+        this.maxBufferMemory = maxBufferMemory;
+    }
+
     @Option(orderIndex = 140, advanced = true, description = "Specifies how many times each object should be retried after an error. Default is 2 retries (total of 3 attempts)")
     public int getRetryAttempts() {
         return retryAttempts;
@@ -195,6 +394,24 @@ public class SyncOptions {
         this.retryAttempts = retryAttempts;
     }
 
+    @Option(orderIndex = 143, advanced = true, description = "Specifies the initial delay (in milliseconds) before a failed object is retried. The delay doubles with each failure (with random jitter) and is longer for throttling and network errors, so retries do not hammer an overloaded endpoint. Default is " + DEFAULT_RETRY_DELAY)
+    public int getRetryDelay() {
+        return retryDelay;
+    }
+
+    public void setRetryDelay(int retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    @Option(orderIndex = 144, advanced = true, description = "Specifies the maximum delay (in milliseconds) before a failed object is retried. Default is " + DEFAULT_MAX_RETRY_DELAY)
+    public int getMaxRetryDelay() {
+        return maxRetryDelay;
+    }
+
+    public void setMaxRetryDelay(int maxRetryDelay) {
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
     @Option(orderIndex = 150, cliInverted = true, advanced = true, description = "Enables performance monitoring for reads and writes on any plugin that supports it. This information is available via the REST service during a sync")
     public boolean isMonitorPerformance() {
         return monitorPerformance;
@@ -204,6 +421,51 @@ public class SyncOptions {
         this.monitorPerformance = monitorPerformance;
     }
 
+    @Option(orderIndex = 151, advanced = true, description = "Limits the bytes/s read from and written to the source storage. Can be changed while a job is running. Requires (and enables) performance monitoring. 0 means no limit")
+    public long getSourceBandwidthLimit() {
+        return sourceBandwidthLimit;
+    }
+
+    public void setSourceBandwidthLimit(long sourceBandwidthLimit) {
+        this.sourceBandwidthLimit = sourceBandwidthLimit;
+    }
+
+    @Option(orderIndex = 152, advanced = true, description = "Limits the bytes/s read from and written to the target storage. Can be changed while a job is running. Requires (and enables) performance monitoring. 0 means no limit")
+    public long getTargetBandwidthLimit() {
+        return targetBandwidthLimit;
+    }
+
+    public void setTargetBandwidthLimit(long targetBandwidthLimit) {
+        this.targetBandwidthLimit = targetBandwidthLimit;
+    }
+
+    @Option(orderIndex = 153, advanced = true, description = "Limits the requests/s (object loads, writes, deletes, listing pages, ranged reads and multipart parts) made to the source storage. Can be changed while a job is running. 0 means no limit")
+    public int getSourceOpRateLimit() {
+        return sourceOpRateLimit;
+    }
+
+    public void setSourceOpRateLimit(int sourceOpRateLimit) {
+        this.sourceOpRateLimit = sourceOpRateLimit;
+    }
+
+    @Option(orderIndex = 154, advanced = true, description = "Limits the requests/s (object loads, writes, deletes, listing pages, ranged reads and multipart parts) made to the target storage. Can be changed while a job is running. 0 means no limit")
+    public int getTargetOpRateLimit() {
+        return targetOpRateLimit;
+    }
+
+    public void setTargetOpRateLimit(int targetOpRateLimit) {
+        this.targetOpRateLimit = targetOpRateLimit;
+    }
+
+    @Option(orderIndex = 155, advanced = true, description = "When several jobs run in the same ecs-sync service, they share its total thread count, database connections and bandwidth in proportion to their weights (i.e. a job with weight 2 gets twice the share of a job with weight 1). Default is 1")
+    public int getJobWeight() {
+        return jobWeight;
+    }
+
+    public void setJobWeight(int jobWeight) {
+        this.jobWeight = jobWeight;
+    }
+
     @Option(orderIndex = 160, advanced = true, description = "Enables operation timings on all plug-ins that support it")
     public boolean isTimingsEnabled() {
         return timingsEnabled;
@@ -267,6 +529,51 @@ public class SyncOptions {
         this.dbTable = dbTable;
     }
 
+    @Option(orderIndex = 225, advanced = true, description = "Saves the position of the source listing to the database every N seconds, so a job that is stopped or dies can resume enumeration where it left off instead of re-listing everything. Also records each directory once everything in it is synced, so those are not crawled again. 0 disables checkpoints (the default). Requires a database")
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    @Option(orderIndex = 230, advanced = true, description = "Splits the source listing into N partitions, so several ecs-sync processes (nodes) can work on the same job. Each node must use the same configuration (including the MySQL database and table). A node leases partitions from a table in the database, syncs the objects in them and then leases more. If a node dies, its leases expire and another node takes them over. Top-level objects are partitioned by a hash of their identifier (everything under a directory is in the directory's partition) and list-file lines are partitioned in chunks. Each node lists the whole source once for each set of partitions it leases, so use more partitions than nodes, but not many more. 0 disables partitions (the default). Cannot be used with checkpoints")
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public void setPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    @Option(orderIndex = 231, advanced = true, description = "The name of this node when the job is partitioned. Must be unique among the nodes working on the job. Default is the process ID and host name (i.e. \"1234@myhost\")")
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    @Option(orderIndex = 232, advanced = true, description = "When the job is partitioned, a node that has not renewed its leases in this many seconds is considered dead and its partitions are taken over by other nodes. Node clocks must be synchronized (i.e. with NTP) to well within this time. Default is 60 seconds")
+    public int getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    public void setLeaseTimeout(int leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+    }
+
+    @Option(orderIndex = 233, advanced = true, description = "When the job is partitioned and every partition of the last run is complete, starts a new run (syncs the whole source again). Without this, a node that joins a complete job just exits. Has no effect while a run is in progress")
+    public boolean isRestartPartitions() {
+        return restartPartitions;
+    }
+
+    public void setRestartPartitions(boolean restartPartitions) {
+        this.restartPartitions = restartPartitions;
+    }
+
     public SyncOptions withSyncMetadata(boolean syncMetadata) {
         this.syncMetadata = syncMetadata;
         return this;
@@ -317,6 +624,26 @@ public class SyncOptions {
         return this;
     }
 
+    public SyncOptions withVerifyAlgorithm(ChecksumAlgorithm verifyAlgorithm) {
+        this.verifyAlgorithm = verifyAlgorithm;
+        return this;
+    }
+
+    public SyncOptions withVerifyStoredChecksum(boolean verifyStoredChecksum) {
+        this.verifyStoredChecksum = verifyStoredChecksum;
+        return this;
+    }
+
+    public SyncOptions withVerifyChunkThreshold(long verifyChunkThreshold) {
+        this.verifyChunkThreshold = verifyChunkThreshold;
+        return this;
+    }
+
+    public SyncOptions withVerifyChunkSize(int verifyChunkSize) {
+        this.verifyChunkSize = verifyChunkSize;
+        return this;
+    }
+
     public SyncOptions withDeleteSource(boolean deleteSource) {
         this.deleteSource = deleteSource;
         return this;
@@ -327,21 +654,126 @@ public class SyncOptions {
         return this;
     }
 
+    public SyncOptions withRangeReadThreshold(long rangeReadThreshold) {
+        this.rangeReadThreshold = rangeReadThreshold;
+        return this;
+    }
+
+    public SyncOptions withRangeReadSize(int rangeReadSize) {
+        this.rangeReadSize = rangeReadSize;
+        return this;
+    }
+
+    public SyncOptions withRangeReadThreadCount(int rangeReadThreadCount) {
+        this.rangeReadThreadCount = rangeReadThreadCount;
+        return this;
+    }
+
     public SyncOptions withThreadCount(int threadCount) {
         this.threadCount = threadCount;
         return this;
     }
 
+    public SyncOptions withPipelineEnabled(boolean pipelineEnabled) {
+        this.pipelineEnabled = pipelineEnabled;
+        return this;
+    }
+
+    public SyncOptions withHeadThreadCount(int headThreadCount) {
+        this.headThreadCount = headThreadCount;
+        return this;
+    }
+
+    public SyncOptions withVerifyThreadCount(int verifyThreadCount) {
+        this.verifyThreadCount = verifyThreadCount;
+        return this;
+    }
+
+    public SyncOptions withRecordThreadCount(int recordThreadCount) {
+        this.recordThreadCount = recordThreadCount;
+        return this;
+    }
+
+    public SyncOptions withAdaptiveThreadCount(boolean adaptiveThreadCount) {
+        this.adaptiveThreadCount = adaptiveThreadCount;
+        return this;
+    }
+
+    public SyncOptions withMaxThreadCount(int maxThreadCount) {
+        this.maxThreadCount = maxThreadCount;
+        return this;
+    }
+
+    public SyncOptions withLargeObjectThreshold(long largeObjectThreshold) {
+        this.largeObjectThreshold = largeObjectThreshold;
+        return this;
+    }
+
+    public SyncOptions withLargeObjectThreadCount(int largeObjectThreadCount) {
+        this.largeObjectThreadCount = largeObjectThreadCount;
+        return this;
+    }
+
+    public SyncOptions withMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+        return this;
+    }
+
+    public SyncOptions withMaxInFlightObjects(int maxInFlightObjects) {
+        this.maxInFlightObjects = maxInFlightObjects;
+        return this;
+    }
+
+    public SyncOptions withMaxBufferMemory(long maxBufferMemory) {
+        this.maxBufferMemory = maxBufferMemory;
+        return this;
+    }
+
     public SyncOptions withRetryAttempts(int retryAttempts) {
         this.retryAttempts = retryAttempts;
         return this;
     }
 
+    public SyncOptions withRetryDelay(int retryDelay) {
+        this.retryDelay = retryDelay;
+        return this;
+    }
+
+    public SyncOptions withMaxRetryDelay(int maxRetryDelay) {
+        this.maxRetryDelay = maxRetryDelay;
+        return this;
+    }
+
     public SyncOptions withMonitorPerformance(boolean monitorPerformance) {
         this.monitorPerformance = monitorPerformance;
         return this;
     }
 
+    public SyncOptions withSourceBandwidthLimit(long sourceBandwidthLimit) {
+        this.sourceBandwidthLimit = sourceBandwidthLimit;
+        return this;
+    }
+
+    public SyncOptions withTargetBandwidthLimit(long targetBandwidthLimit) {
+        this.targetBandwidthLimit = targetBandwidthLimit;
+        return this;
+    }
+
+    public SyncOptions withSourceOpRateLimit(int sourceOpRateLimit) {
+        this.sourceOpRateLimit = sourceOpRateLimit;
+        return this;
+    }
+
+    public SyncOptions withTargetOpRateLimit(int targetOpRateLimit) {
+        this.targetOpRateLimit = targetOpRateLimit;
+        return this;
+    }
+
+    public SyncOptions withJobWeight(int jobWeight) {
+        this.jobWeight = jobWeight;
+        return this;
+    }
+
     public SyncOptions withTimingsEnabled(boolean timingsEnabled) {
         this.timingsEnabled = timingsEnabled;
         return this;
@@ -372,6 +804,31 @@ public class SyncOptions {
         return this;
     }
 
+    public SyncOptions withCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public SyncOptions withPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+        return this;
+    }
+
+    public SyncOptions withNodeId(String nodeId) {
+        this.nodeId = nodeId;
+        return this;
+    }
+
+    public SyncOptions withLeaseTimeout(int leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+        return this;
+    }
+
+    public SyncOptions withRestartPartitions(boolean restartPartitions) {
+        this.restartPartitions = restartPartitions;
+        return this;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -390,17 +847,47 @@ public class SyncOptions {
         if (verifyOnly != options.verifyOnly) return false;
         if (deleteSource != options.deleteSource) return false;
         if (bufferSize != options.bufferSize) return false;
+        if (rangeReadThreshold != options.rangeReadThreshold) return false;
+        if (rangeReadSize != options.rangeReadSize) return false;
+        if (rangeReadThreadCount != options.rangeReadThreadCount) return false;
         if (threadCount != options.threadCount) return false;
+        if (pipelineEnabled != options.pipelineEnabled) return false;
+        if (headThreadCount != options.headThreadCount) return false;
+        if (verifyThreadCount != options.verifyThreadCount) return false;
+        if (recordThreadCount != options.recordThreadCount) return false;
+        if (adaptiveThreadCount != options.adaptiveThreadCount) return false;
+        if (maxThreadCount != options.maxThreadCount) return false;
+        if (largeObjectThreshold != options.largeObjectThreshold) return false;
+        if (largeObjectThreadCount != options.largeObjectThreadCount) return false;
+        if (maxInFlightBytes != options.maxInFlightBytes) return false;
+        if (maxInFlightObjects != options.maxInFlightObjects) return false;
+        if (maxBufferMemory != options.maxBufferMemory) return false;
         if (retryAttempts != options.retryAttempts) return false;
+        if (retryDelay != options.retryDelay) return false;
+        if (maxRetryDelay != options.maxRetryDelay) return false;
         if (monitorPerformance != options.monitorPerformance) return false;
+        if (sourceBandwidthLimit != options.sourceBandwidthLimit) return false;
+        if (targetBandwidthLimit != options.targetBandwidthLimit) return false;
+        if (sourceOpRateLimit != options.sourceOpRateLimit) return false;
+        if (targetOpRateLimit != options.targetOpRateLimit) return false;
+        if (jobWeight != options.jobWeight) return false;
         if (timingsEnabled != options.timingsEnabled) return false;
         if (timingWindow != options.timingWindow) return false;
         if (rememberFailed != options.rememberFailed) return false;
+        if (verifyAlgorithm != options.verifyAlgorithm) return false;
+        if (verifyStoredChecksum != options.verifyStoredChecksum) return false;
+        if (verifyChunkThreshold != options.verifyChunkThreshold) return false;
+        if (verifyChunkSize != options.verifyChunkSize) return false;
         if (sourceListFile != null ? !sourceListFile.equals(options.sourceListFile) : options.sourceListFile != null)
             return false;
         if (dbFile != null ? !dbFile.equals(options.dbFile) : options.dbFile != null) return false;
         if (dbConnectString != null ? !dbConnectString.equals(options.dbConnectString) : options.dbConnectString != null)
             return false;
+        if (checkpointInterval != options.checkpointInterval) return false;
+        if (partitionCount != options.partitionCount) return false;
+        if (leaseTimeout != options.leaseTimeout) return false;
+        if (restartPartitions != options.restartPartitions) return false;
+        if (nodeId != null ? !nodeId.equals(options.nodeId) : options.nodeId != null) return false;
         return dbTable != null ? dbTable.equals(options.dbTable) : options.dbTable == null;
     }
 
@@ -416,17 +903,47 @@ public class SyncOptions {
         result = 31 * result + (forceSync ? 1 : 0);
         result = 31 * result + (verify ? 1 : 0);
         result = 31 * result + (verifyOnly ? 1 : 0);
+        result = 31 * result + (verifyAlgorithm != null ? verifyAlgorithm.hashCode() : 0);
+        result = 31 * result + (verifyStoredChecksum ? 1 : 0);
+        result = 31 * result + (int) (verifyChunkThreshold ^ (verifyChunkThreshold >>> 32));
+        result = 31 * result + verifyChunkSize;
         result = 31 * result + (deleteSource ? 1 : 0);
         result = 31 * result + bufferSize;
+        result = 31 * result + (int) (rangeReadThreshold ^ (rangeReadThreshold >>> 32));
+        result = 31 * result + rangeReadSize;
+        result = 31 * result + rangeReadThreadCount;
         result = 31 * result + threadCount;
+        result = 31 * result + (pipelineEnabled ? 1 : 0);
+        result = 31 * result + headThreadCount;
+        result = 31 * result + verifyThreadCount;
+        result = 31 * result + recordThreadCount;
+        result = 31 * result + (adaptiveThreadCount ? 1 : 0);
+        result = 31 * result + maxThreadCount;
+        result = 31 * result + (int) (largeObjectThreshold ^ (largeObjectThreshold >>> 32));
+        result = 31 * result + largeObjectThreadCount;
+        result = 31 * result + (int) (maxInFlightBytes ^ (maxInFlightBytes >>> 32));
+        result = 31 * result + maxInFlightObjects;
+        result = 31 * result + (int) (maxBufferMemory ^ (maxBufferMemory >>> 32));
         result = 31 * result + retryAttempts;
+        result = 31 * result + retryDelay;
+        result = 31 * result + maxRetryDelay;
         result = 31 * result + (monitorPerformance ? 1 : 0);
+        result = 31 * result + (int) (sourceBandwidthLimit ^ (sourceBandwidthLimit >>> 32));
+        result = 31 * result + (int) (targetBandwidthLimit ^ (targetBandwidthLimit >>> 32));
+        result = 31 * result + sourceOpRateLimit;
+        result = 31 * result + targetOpRateLimit;
+        result = 31 * result + jobWeight;
         result = 31 * result + (timingsEnabled ? 1 : 0);
         result = 31 * result + timingWindow;
         result = 31 * result + (rememberFailed ? 1 : 0);
         result = 31 * result + (dbFile != null ? dbFile.hashCode() : 0);
         result = 31 * result + (dbConnectString != null ? dbConnectString.hashCode() : 0);
         result = 31 * result + (dbTable != null ? dbTable.hashCode() : 0);
+        result = 31 * result + checkpointInterval;
+        result = 31 * result + partitionCount;
+        result = 31 * result + (nodeId != null ? nodeId.hashCode() : 0);
+        result = 31 * result + leaseTimeout;
+        result = 31 * result + (restartPartitions ? 1 : 0);
         return result;
     }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.config.filter;
+
+import com.emc.ecs.sync.config.AbstractConfig;
+import com.emc.ecs.sync.config.annotation.Documentation;
+import com.emc.ecs.sync.config.annotation.FilterConfig;
+import com.emc.ecs.sync.config.annotation.Label;
+import com.emc.ecs.sync.config.annotation.Option;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+@FilterConfig(cliName = "dedup")
+@Label("Deduplication Filter")
+@Documentation("Keeps a local index of the content (SHA-256 and size) of the objects written to the target. When an " +
+        "object's content is already in the target, the existing target object is copied inside the target " +
+        "(server-side for S3 and ECS S3, locally for filesystem) instead of sending the data again. Each object is " +
+        "read from the source once to hash it, so this works best for sources that are cheaper to read than the " +
+        "target is to write (i.e. filesystem). Only objects from sources that support ranged reads (S3, ECS S3, " +
+        "Atmos and filesystem) are deduplicated. This must be the last filter, and the index assumes that target " +
+        "objects are only changed by syncs that use it (use --verify to check the copies)")
+public class DedupConfig extends AbstractConfig {
+    private String indexFile;
+    private long minSize = 0;
+
+    @Option(orderIndex = 10, required = true, valueHint = "path-to-file", description = "The SQLite file that holds the dedup index. Use the same file for all jobs to the same target")
+    public String getIndexFile() {
+        return indexFile;
+    }
+
+    public void setIndexFile(String indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    @Option(orderIndex = 20, advanced = true, description = "Objects smaller than this (in bytes) are not deduplicated, since hashing and looking them up can cost more than writing them. Default is 0 (all objects)")
+    public long getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(long minSize) {
+        this.minSize = minSize;
+    }
+}
@@ -47,6 +47,7 @@ public class AwsS3Config extends AbstractConfig {
     public static final int DEFAULT_MPU_THRESHOLD_MB = 512;
     public static final int DEFAULT_MPU_PART_SIZE_MB = 128;
     public static final int DEFAULT_MPU_THREAD_COUNT = 4;
+    public static final int DEFAULT_MPU_BUFFER_MB = 1024;
     public static final int DEFAULT_SOCKET_TIMEOUT = 50000; // 50 secs
     public static final int MIN_PART_SIZE_MB = 5;
 
@@ -66,6 +67,7 @@ public class AwsS3Config extends AbstractConfig {
     private int mpuThresholdMb = DEFAULT_MPU_THRESHOLD_MB;
     private int mpuPartSizeMb = DEFAULT_MPU_PART_SIZE_MB;
     private int mpuThreadCount = DEFAULT_MPU_THREAD_COUNT;
+    private int mpuBufferMb = DEFAULT_MPU_BUFFER_MB;
     private int socketTimeoutMs = DEFAULT_SOCKET_TIMEOUT;
     private boolean preserveDirectories;
 
@@ -261,6 +263,16 @@ public class AwsS3Config extends AbstractConfig {
         this.mpuThreadCount = mpuThreadCount;
     }
 
+    @Role(RoleType.Target)
+    @Option(orderIndex = 155, valueHint = "size-in-MB", advanced = true, description = "Large objects from a source other than a file are uploaded from memory, one part buffer per part in flight. This limits the total size (in MB) of those buffers across all uploads; parts wait for room once it is reached. A single part larger than this is uploaded by itself. 0 means no limit. Default is " + DEFAULT_MPU_BUFFER_MB + "MB")
+    public int getMpuBufferMb() {
+        return mpuBufferMb;
+    }
+
+    public void setMpuBufferMb(int mpuBufferMb) {
+        this.mpuBufferMb = mpuBufferMb;
+    }
+
     @Option(orderIndex = 160, valueHint = "timeout-ms", advanced = true, description = "Sets the socket timeout in milliseconds (default is " + DEFAULT_SOCKET_TIMEOUT + "ms)")
     public int getSocketTimeoutMs() {
         return socketTimeoutMs;
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The combined progress of all nodes working on a partitioned job. Totals are summed from the progress last reported
+ * by each node (including nodes that have since died, since the objects they synced are still synced)
+ */
+public class ClusterProgress {
+    private int partitionCount;
+    private int partitionsComplete;
+    private int liveNodes;
+    private long totalObjectsExpected;
+    private long totalBytesExpected;
+    private long objectsComplete;
+    private long bytesComplete;
+    private long objectsSkipped;
+    private long bytesSkipped;
+    private long objectsFailed;
+    private List<NodeProgress> nodes = new ArrayList<>();
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public void setPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    public int getPartitionsComplete() {
+        return partitionsComplete;
+    }
+
+    public void setPartitionsComplete(int partitionsComplete) {
+        this.partitionsComplete = partitionsComplete;
+    }
+
+    /**
+     * The number of nodes that have reported within the lease timeout
+     */
+    public int getLiveNodes() {
+        return liveNodes;
+    }
+
+    public void setLiveNodes(int liveNodes) {
+        this.liveNodes = liveNodes;
+    }
+
+    /**
+     * Note: each node only estimates the partitions it has leased, so this grows as partitions are leased
+     */
+    public long getTotalObjectsExpected() {
+        return totalObjectsExpected;
+    }
+
+    public void setTotalObjectsExpected(long totalObjectsExpected) {
+        this.totalObjectsExpected = totalObjectsExpected;
+    }
+
+    public long getTotalBytesExpected() {
+        return totalBytesExpected;
+    }
+
+    public void setTotalBytesExpected(long totalBytesExpected) {
+        this.totalBytesExpected = totalBytesExpected;
+    }
+
+    public long getObjectsComplete() {
+        return objectsComplete;
+    }
+
+    public void setObjectsComplete(long objectsComplete) {
+        this.objectsComplete = objectsComplete;
+    }
+
+    public long getBytesComplete() {
+        return bytesComplete;
+    }
+
+    public void setBytesComplete(long bytesComplete) {
+        this.bytesComplete = bytesComplete;
+    }
+
+    public long getObjectsSkipped() {
+        return objectsSkipped;
+    }
+
+    public void setObjectsSkipped(long objectsSkipped) {
+        this.objectsSkipped = objectsSkipped;
+    }
+
+    public long getBytesSkipped() {
+        return bytesSkipped;
+    }
+
+    public void setBytesSkipped(long bytesSkipped) {
+        this.bytesSkipped = bytesSkipped;
+    }
+
+    public long getObjectsFailed() {
+        return objectsFailed;
+    }
+
+    public void setObjectsFailed(long objectsFailed) {
+        this.objectsFailed = objectsFailed;
+    }
+
+    public List<NodeProgress> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<NodeProgress> nodes) {
+        this.nodes = nodes;
+    }
+}
@@ -24,6 +24,11 @@ public class HostInfo {
     private long hostMemoryUsed;
     private long hostTotalMemory;
     private LogLevel logLevel;
+    private long bufferPoolHits;
+    private long bufferPoolMisses;
+    private long bufferPoolBytes;
+    private long bufferBorrowedBytes;
+    private long bufferMemoryLimit;
 
     public String getEcsSyncVersion() {
         return ecsSyncVersion;
@@ -72,4 +77,44 @@ public class HostInfo {
     public void setLogLevel(LogLevel logLevel) {
         this.logLevel = logLevel;
     }
+
+    public long getBufferPoolHits() {
+        return bufferPoolHits;
+    }
+
+    public void setBufferPoolHits(long bufferPoolHits) {
+        this.bufferPoolHits = bufferPoolHits;
+    }
+
+    public long getBufferPoolMisses() {
+        return bufferPoolMisses;
+    }
+
+    public void setBufferPoolMisses(long bufferPoolMisses) {
+        this.bufferPoolMisses = bufferPoolMisses;
+    }
+
+    public long getBufferPoolBytes() {
+        return bufferPoolBytes;
+    }
+
+    public void setBufferPoolBytes(long bufferPoolBytes) {
+        this.bufferPoolBytes = bufferPoolBytes;
+    }
+
+    public long getBufferBorrowedBytes() {
+        return bufferBorrowedBytes;
+    }
+
+    public void setBufferBorrowedBytes(long bufferBorrowedBytes) {
+        this.bufferBorrowedBytes = bufferBorrowedBytes;
+    }
+
+    public long getBufferMemoryLimit() {
+        return bufferMemoryLimit;
+    }
+
+    public void setBufferMemoryLimit(long bufferMemoryLimit) {
+        this.bufferMemoryLimit = bufferMemoryLimit;
+    }
 }
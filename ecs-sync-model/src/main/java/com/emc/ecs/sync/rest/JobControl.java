@@ -20,6 +20,10 @@ import javax.xml.bind.annotation.XmlRootElement;
 public class JobControl {
     private JobControlStatus status;
     private int threadCount;
+    private Long sourceBandwidthLimit;
+    private Long targetBandwidthLimit;
+    private Integer sourceOpRateLimit;
+    private Integer targetOpRateLimit;
 
     public JobControl() {
     }
@@ -44,4 +48,48 @@ public class JobControl {
     public void setThreadCount(int threadCount) {
         this.threadCount = threadCount;
     }
+
+    /**
+     * Bytes/s limit for the source storage (0 for no limit). Null leaves the current limit unchanged
+     */
+    public Long getSourceBandwidthLimit() {
+        return sourceBandwidthLimit;
+    }
+
+    public void setSourceBandwidthLimit(Long sourceBandwidthLimit) {
+        this.sourceBandwidthLimit = sourceBandwidthLimit;
+    }
+
+    /**
+     * Bytes/s limit for the target storage (0 for no limit). Null leaves the current limit unchanged
+     */
+    public Long getTargetBandwidthLimit() {
+        return targetBandwidthLimit;
+    }
+
+    public void setTargetBandwidthLimit(Long targetBandwidthLimit) {
+        this.targetBandwidthLimit = targetBandwidthLimit;
+    }
+
+    /**
+     * Requests/s limit for the source storage (0 for no limit). Null leaves the current limit unchanged
+     */
+    public Integer getSourceOpRateLimit() {
+        return sourceOpRateLimit;
+    }
+
+    public void setSourceOpRateLimit(Integer sourceOpRateLimit) {
+        this.sourceOpRateLimit = sourceOpRateLimit;
+    }
+
+    /**
+     * Requests/s limit for the target storage (0 for no limit). Null leaves the current limit unchanged
+     */
+    public Integer getTargetOpRateLimit() {
+        return targetOpRateLimit;
+    }
+
+    public void setTargetOpRateLimit(Integer targetOpRateLimit) {
+        this.targetOpRateLimit = targetOpRateLimit;
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.rest;
+
+public class LaneProgress {
+    private String name;
+    private int threadCount;
+    private int activeTasks;
+    private int queuedTasks;
+    private long objectsComplete;
+    private long bytesComplete;
+    private long objectCompleteRate;
+    private long byteCompleteRate;
+
+    public LaneProgress() {
+    }
+
+    public LaneProgress(String name, int threadCount, int activeTasks, int queuedTasks, long objectsComplete,
+                        long bytesComplete, long objectCompleteRate, long byteCompleteRate) {
+        this.name = name;
+        this.threadCount = threadCount;
+        this.activeTasks = activeTasks;
+        this.queuedTasks = queuedTasks;
+        this.objectsComplete = objectsComplete;
+        this.bytesComplete = bytesComplete;
+        this.objectCompleteRate = objectCompleteRate;
+        this.byteCompleteRate = byteCompleteRate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getActiveTasks() {
+        return activeTasks;
+    }
+
+    public void setActiveTasks(int activeTasks) {
+        this.activeTasks = activeTasks;
+    }
+
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    public void setQueuedTasks(int queuedTasks) {
+        this.queuedTasks = queuedTasks;
+    }
+
+    public long getObjectsComplete() {
+        return objectsComplete;
+    }
+
+    public void setObjectsComplete(long objectsComplete) {
+        this.objectsComplete = objectsComplete;
+    }
+
+    public long getBytesComplete() {
+        return bytesComplete;
+    }
+
+    public void setBytesComplete(long bytesComplete) {
+        this.bytesComplete = bytesComplete;
+    }
+
+    public long getObjectCompleteRate() {
+        return objectCompleteRate;
+    }
+
+    public void setObjectCompleteRate(long objectCompleteRate) {
+        this.objectCompleteRate = objectCompleteRate;
+    }
+
+    public long getByteCompleteRate() {
+        return byteCompleteRate;
+    }
+
+    public void setByteCompleteRate(long byteCompleteRate) {
+        this.byteCompleteRate = byteCompleteRate;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.rest;
+
+/**
+ * The progress of one node of a partitioned job, as last reported by the node
+ */
+public class NodeProgress {
+    private String nodeId;
+    private long lastHeartbeat;
+    private int partitions;
+    private long totalObjectsExpected;
+    private long totalBytesExpected;
+    private long objectsComplete;
+    private long bytesComplete;
+    private long objectsSkipped;
+    private long bytesSkipped;
+    private long objectsFailed;
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * The time (ms since epoch) this node last reported its progress and renewed its leases
+     */
+    public long getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+
+    public void setLastHeartbeat(long lastHeartbeat) {
+        this.lastHeartbeat = lastHeartbeat;
+    }
+
+    /**
+     * The number of partitions this node is currently syncing
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    public long getTotalObjectsExpected() {
+        return totalObjectsExpected;
+    }
+
+    public void setTotalObjectsExpected(long totalObjectsExpected) {
+        this.totalObjectsExpected = totalObjectsExpected;
+    }
+
+    public long getTotalBytesExpected() {
+        return totalBytesExpected;
+    }
+
+    public void setTotalBytesExpected(long totalBytesExpected) {
+        this.totalBytesExpected = totalBytesExpected;
+    }
+
+    public long getObjectsComplete() {
+        return objectsComplete;
+    }
+
+    public void setObjectsComplete(long objectsComplete) {
+        this.objectsComplete = objectsComplete;
+    }
+
+    public long getBytesComplete() {
+        return bytesComplete;
+    }
+
+    public void setBytesComplete(long bytesComplete) {
+        this.bytesComplete = bytesComplete;
+    }
+
+    public long getObjectsSkipped() {
+        return objectsSkipped;
+    }
+
+    public void setObjectsSkipped(long objectsSkipped) {
+        this.objectsSkipped = objectsSkipped;
+    }
+
+    public long getBytesSkipped() {
+        return bytesSkipped;
+    }
+
+    public void setBytesSkipped(long bytesSkipped) {
+        this.bytesSkipped = bytesSkipped;
+    }
+
+    public long getObjectsFailed() {
+        return objectsFailed;
+    }
+
+    public void setObjectsFailed(long objectsFailed) {
+        this.objectsFailed = objectsFailed;
+    }
+}
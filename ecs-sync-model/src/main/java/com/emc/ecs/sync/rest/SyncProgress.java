@@ -15,6 +15,8 @@
 package com.emc.ecs.sync.rest;
 
 import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.List;
 
 @XmlRootElement
 public class SyncProgress {
@@ -27,10 +29,13 @@ public class SyncProgress {
     private long totalObjectsExpected;
     private long bytesComplete;
     private long bytesSkipped;
+    private long bytesDeduplicated;
     private long objectsComplete;
     private long objectsSkipped;
     private long objectsFailed;
     private int objectsAwaitingRetry;
+    private long inFlightBytes;
+    private int inFlightObjects;
     private long runtimeMs;
     private int activeQueryTasks;
     private int activeSyncTasks;
@@ -44,6 +49,11 @@ public class SyncProgress {
     private long sourceWriteRate;
     private long targetReadRate;
     private long targetWriteRate;
+    private int threadCount;
+    private String threadTuningState;
+    private List<StageProgress> stages = new ArrayList<>();
+    private List<LaneProgress> lanes = new ArrayList<>();
+    private ClusterProgress cluster;
     private String runError;
 
     public String getJobName() {
@@ -118,6 +128,14 @@ public class SyncProgress {
         this.bytesSkipped = bytesSkipped;
     }
 
+    public long getBytesDeduplicated() {
+        return bytesDeduplicated;
+    }
+
+    public void setBytesDeduplicated(long bytesDeduplicated) {
+        this.bytesDeduplicated = bytesDeduplicated;
+    }
+
     public long getObjectsComplete() {
         return objectsComplete;
     }
@@ -150,6 +168,28 @@ public class SyncProgress {
         this.objectsAwaitingRetry = objectsAwaitingRetry;
     }
 
+    /**
+     * When in-flight limits are set, the total size of the objects currently queued or syncing
+     */
+    public long getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    public void setInFlightBytes(long inFlightBytes) {
+        this.inFlightBytes = inFlightBytes;
+    }
+
+    /**
+     * When in-flight limits are set, the number of objects currently queued or syncing
+     */
+    public int getInFlightObjects() {
+        return inFlightObjects;
+    }
+
+    public void setInFlightObjects(int inFlightObjects) {
+        this.inFlightObjects = inFlightObjects;
+    }
+
     public long getRuntimeMs() {
         return runtimeMs;
     }
@@ -254,6 +294,60 @@ public class SyncProgress {
         this.objectErrorRate = objectErrorRate;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * When adaptive thread count is enabled, this is what the tuner is currently doing (Increasing, Decreasing,
+     * Holding or BackingOff). Null otherwise
+     */
+    public String getThreadTuningState() {
+        return threadTuningState;
+    }
+
+    public void setThreadTuningState(String threadTuningState) {
+        this.threadTuningState = threadTuningState;
+    }
+
+    /**
+     * When the pipeline is enabled, this contains the status of each stage (to see which stage is saturated)
+     */
+    public List<StageProgress> getStages() {
+        return stages;
+    }
+
+    public void setStages(List<StageProgress> stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * When a large object threshold is set, this contains the status and throughput of the small and large object lanes
+     */
+    public List<LaneProgress> getLanes() {
+        return lanes;
+    }
+
+    public void setLanes(List<LaneProgress> lanes) {
+        this.lanes = lanes;
+    }
+
+    /**
+     * When the job is partitioned, this contains the combined progress of all nodes working on the job (the rest of
+     * this object is the progress of this node only). Null otherwise
+     */
+    public ClusterProgress getCluster() {
+        return cluster;
+    }
+
+    public void setCluster(ClusterProgress cluster) {
+        this.cluster = cluster;
+    }
+
     public String getRunError() {
         return runError;
     }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.emc.ecs.sync.config.SyncOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hill-climbing thread count tuner. Each sample compares the current throughput (object completion rate and
+ * source/target byte rates) with the previous sample. While throughput improves, the thread count keeps moving in the
+ * same direction; when it gets worse, the direction is reversed; when it stays flat, threads are given back since they
+ * are not buying anything. If the error rate climbs above {@link #MAX_ERROR_RATIO}, the thread count is halved
+ * (multiplicative decrease) and the climb starts over from a new baseline.
+ * <p>
+ * Samples are taken every {@link #SAMPLE_INTERVAL_SECONDS}, which matches the width of the performance windows, so
+ * each sample only reflects the thread count that was set by the previous one.
+ * <p>
+ * Changes are requested with {@link EcsSync#requestThreadCount(int)}, so a job run by a
+ * {@link com.emc.ecs.sync.service.JobGovernor} stays within its share of the process-wide thread budget.
+ */
+public class AdaptiveThreadController implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveThreadController.class);
+
+    public static final int SAMPLE_INTERVAL_SECONDS = 10;
+    public static final double TOLERANCE = 0.05; // throughput changes within 5% are considered noise
+    public static final double MAX_ERROR_RATIO = 0.1; // back off when more than 10% of objects fail
+    public static final double STEP_RATIO = 0.25; // each step adds or removes 25% of the current threads
+
+    public enum State {Increasing, Decreasing, Holding, BackingOff}
+
+    private EcsSync sync;
+    private long lastByteRate = -1, lastObjectRate = -1;
+    private int direction = 1;
+    private volatile State state = State.Increasing;
+
+    public AdaptiveThreadController(EcsSync sync) {
+        this.sync = sync;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!sync.isRunning() || sync.isPaused()) return;
+
+            SyncOptions options = sync.getSyncConfig().getOptions();
+            SyncStats stats = sync.getStats();
+
+            long byteRate = Math.max(sync.getSource().getReadRate(), sync.getTarget().getWriteRate());
+            int current = options.getThreadCount();
+            int next = nextThreadCount(current, options.getMaxThreadCount(), byteRate,
+                    stats.getObjectCompleteRate() + stats.getObjectSkipRate(), stats.getObjectErrorRate());
+
+            if (next != current) {
+                log.info("adaptive thread count: {} -> {} ({}; {} b/s, {} obj/s)",
+                        current, next, state, byteRate, stats.getObjectCompleteRate());
+                // a governed job may be given fewer threads, which the next sample will reflect
+                sync.requestThreadCount(next);
+            }
+        } catch (Throwable t) {
+            log.warn("could not tune thread count", t);
+        }
+    }
+
+    /**
+     * Decides the next thread count from one sample of rates
+     */
+    synchronized int nextThreadCount(int current, int maxThreads, long byteRate, long objectRate, long errorRate) {
+        if (errorRate > 0 && errorRate > MAX_ERROR_RATIO * (objectRate + errorRate)) {
+            // the targets are struggling; back off hard and re-establish a baseline
+            state = State.BackingOff;
+            direction = -1;
+            lastByteRate = lastObjectRate = -1;
+            return clamp(current / 2, maxThreads);
+        }
+
+        if (byteRate == 0 && objectRate == 0) {
+            // nothing moving (listing, waiting on a slow object, etc.) - nothing to learn from this sample
+            state = State.Holding;
+            return clamp(current, maxThreads);
+        }
+
+        if (lastByteRate >= 0) {
+            double change = Math.max(relativeChange(lastByteRate, byteRate), relativeChange(lastObjectRate, objectRate));
+            if (change < -TOLERANCE) direction = -direction; // got worse; go back the other way
+            else if (change <= TOLERANCE && direction > 0) direction = -1; // flat; extra threads are not helping
+        }
+        lastByteRate = byteRate;
+        lastObjectRate = objectRate;
+
+        int step = Math.max(1, (int) Math.round(current * STEP_RATIO));
+        int next = clamp(current + direction * step, maxThreads);
+        if (next > current) state = State.Increasing;
+        else if (next < current) state = State.Decreasing;
+        else state = State.Holding;
+        return next;
+    }
+
+    private double relativeChange(long last, long now) {
+        if (last == 0) return now > 0 ? 1 : 0;
+        return (double) (now - last) / last;
+    }
+
+    private int clamp(int threads, int maxThreads) {
+        return Math.max(1, Math.min(threads, Math.max(1, maxThreads)));
+    }
+
+    public State getState() {
+        return state;
+    }
+}
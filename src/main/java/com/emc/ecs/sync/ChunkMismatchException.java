@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.emc.ecs.sync.util.TreeHash;
+
+import java.util.List;
+
+/**
+ * Thrown by chunked verification (see {@link com.emc.ecs.sync.config.SyncOptions#getVerifyChunkThreshold()}) with the
+ * byte ranges of the object that do not match, so only those ranges have to be repaired
+ */
+public class ChunkMismatchException extends RuntimeException {
+    private List<TreeHash.Chunk> mismatchedChunks;
+
+    public ChunkMismatchException(String message, List<TreeHash.Chunk> mismatchedChunks) {
+        super(message);
+        this.mismatchedChunks = mismatchedChunks;
+    }
+
+    public List<TreeHash.Chunk> getMismatchedChunks() {
+        return mismatchedChunks;
+    }
+}
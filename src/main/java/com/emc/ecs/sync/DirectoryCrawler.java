@@ -0,0 +1,418 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.emc.ecs.sync.model.ObjectSummary;
+import com.emc.ecs.sync.storage.SyncStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crawls directory trees using a work-stealing (fork/join) pool. Each directory is listed by one task, which forks a
+ * new task for each sub-directory. Forked tasks go to the front of the worker's own deque, so each worker goes
+ * depth-first through its own part of the tree while idle workers steal the oldest (shallowest) directories from the
+ * other end, which keeps every thread busy on wide trees.
+ * <p>
+ * Listed children are not handed to the {@link Handler} by the crawl threads. They are put in a bounded queue and a
+ * single submitter thread hands them to the handler, so a handler that blocks (i.e. on a full sync queue) only holds
+ * up the submitter, and the crawl threads keep listing until the queue is full. Fork/join workers should not block
+ * on anything outside the pool, so this way they only ever wait for the queue (or a pause). Children are also handed
+ * to {@link Handler#childListed} as soon as they are listed, so a handler can count the tree ahead of the submitter.
+ * <p>
+ * Directories waiting to be listed are bounded by {@link #MAX_PENDING_DIRECTORIES}: once the limit is reached,
+ * sub-directories are crawled inline (strictly depth-first) instead of being forked, so memory stays bounded by the
+ * depth of the tree instead of its width. Works with any storage that implements {@link SyncStorage#children(ObjectSummary)}.
+ * <p>
+ * The parallelism of a fork/join pool cannot be changed, so {@link #setThreadCount(int)} starts a new pool. Tasks
+ * that are already in the old pool finish there, but every directory they find is crawled in the new pool.
+ */
+public class DirectoryCrawler {
+    private static final Logger log = LoggerFactory.getLogger(DirectoryCrawler.class);
+
+    public static final int MAX_PENDING_DIRECTORIES = 1000;
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    public interface Handler {
+        /**
+         * Called by the crawl thread as soon as a child is listed, before it is queued for {@link #childFound}
+         * (i.e. to count it ahead of the submitter). Must not block
+         */
+        void childListed(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child);
+
+        /**
+         * Called for every child of a crawled directory (including sub-directories). Called by the submitter thread,
+         * in the order the children were listed, so this may block
+         */
+        void childFound(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child);
+
+        /**
+         * Called by the crawl thread before a sub-directory is crawled (when recursive). Return false to skip it
+         */
+        boolean shouldCrawl(ObjectSummary directory, ObjectSummary subDirectory);
+
+        /**
+         * Called by the submitter thread once all children of a directory have been handed to {@link #childFound}
+         */
+        void crawlComplete(ObjectSummary directory);
+
+        /**
+         * Called by the submitter thread instead of {@link #crawlComplete} when listing a directory fails or
+         * {@link #childFound} fails for one of its children (the remaining children of the directory are skipped)
+         */
+        void crawlFailed(ObjectSummary directory, Throwable t);
+    }
+
+    private volatile ForkJoinPool pool;
+    private List<ForkJoinPool> oldPools = new ArrayList<>();
+    private NamedWorkerThreadFactory threadFactory = new NamedWorkerThreadFactory("query-pool");
+    private Handler handler;
+    private boolean recursive;
+    private BlockingQueue<Found> queue;
+    private Thread submitter;
+    private AtomicLong pendingDirectories = new AtomicLong();
+    private AtomicLong unlistedDirectories = new AtomicLong();
+    private final Object pauseLock = new Object();
+    private final Object capacityLock = new Object();
+    private boolean paused = false;
+    private volatile boolean stopped = false;
+    private volatile boolean shutdown = false;
+
+    public DirectoryCrawler(int threadCount, boolean recursive, Handler handler) {
+        this(threadCount, recursive, DEFAULT_QUEUE_SIZE, handler);
+    }
+
+    /**
+     * @param queueSize the number of listed children that may wait for the submitter thread
+     */
+    public DirectoryCrawler(int threadCount, boolean recursive, int queueSize, Handler handler) {
+        this.pool = new ForkJoinPool(threadCount, threadFactory, null, false);
+        this.recursive = recursive;
+        this.handler = handler;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.submitter = new Thread(new Submitter(), threadFactory.getPrefix() + "submit");
+        submitter.setDaemon(true);
+        submitter.start();
+    }
+
+    /**
+     * Starts crawling the children of the specified directory, blocking while the maximum number of directories are
+     * waiting to be listed
+     *
+     * @throws IllegalStateException if the crawler is stopped
+     */
+    public void crawl(SyncStorage<?> storage, ObjectSummary directory) {
+        synchronized (capacityLock) {
+            while (!stopped && unlistedDirectories.get() >= MAX_PENDING_DIRECTORIES) {
+                try {
+                    capacityLock.wait();
+                } catch (InterruptedException e) {
+                    log.warn("interrupted while waiting to submit a directory", e);
+                }
+            }
+        }
+        if (stopped) throw new IllegalStateException("crawler is stopped");
+        pendingDirectories.incrementAndGet();
+        unlistedDirectories.incrementAndGet();
+        execute(new CrawlTask(storage, directory));
+    }
+
+    private synchronized void execute(CrawlTask task) {
+        pool.execute(task);
+    }
+
+    /**
+     * Moves a task from an old pool to the current pool (unless the crawler is shut down)
+     */
+    private synchronized boolean moveToPool(CrawlTask task) {
+        if (pool.isShutdown()) return false;
+        pool.execute(task);
+        return true;
+    }
+
+    /**
+     * Crawls with a new pool of the specified size. Directories that are already being listed finish in the old pool
+     */
+    public synchronized void setThreadCount(int threadCount) {
+        if (stopped || shutdown || threadCount == pool.getParallelism()) return;
+        ForkJoinPool oldPool = pool;
+        pool = new ForkJoinPool(threadCount, threadFactory, null, false);
+        oldPool.shutdown();
+        oldPools.add(oldPool);
+        log.info("crawler thread count changed to {}", threadCount);
+    }
+
+    public int getThreadCount() {
+        return pool.getParallelism();
+    }
+
+    public void pause() {
+        synchronized (pauseLock) {
+            paused = true;
+        }
+    }
+
+    public void resume() {
+        synchronized (pauseLock) {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    public boolean isPaused() {
+        synchronized (pauseLock) {
+            return paused;
+        }
+    }
+
+    /**
+     * Stops crawling. Directories that are currently being listed will stop at the next child and children that are
+     * waiting for the submitter are dropped
+     */
+    public void stop() {
+        stopped = true;
+        resume();
+        synchronized (capacityLock) {
+            capacityLock.notifyAll();
+        }
+        synchronized (this) {
+            pool.shutdownNow();
+            for (ForkJoinPool oldPool : oldPools) {
+                oldPool.shutdownNow();
+            }
+        }
+        submitter.interrupt();
+        queue.clear();
+    }
+
+    /**
+     * Lets the directories that are pending finish (the submitter thread ends once they have all been submitted)
+     */
+    public void shutdown() {
+        shutdown = true;
+        synchronized (this) {
+            pool.shutdown();
+            for (ForkJoinPool oldPool : oldPools) {
+                oldPool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of directories that are queued, being listed or have children waiting for the submitter
+     */
+    public long getUnfinishedTasks() {
+        return pendingDirectories.get();
+    }
+
+    /**
+     * Returns the number of directories that are queued or being listed (once this is zero, every child has been
+     * handed to {@link Handler#childListed})
+     */
+    public long getUnlistedDirectories() {
+        return unlistedDirectories.get();
+    }
+
+    public synchronized int getActiveCount() {
+        int count = pool.getActiveThreadCount();
+        for (Iterator<ForkJoinPool> i = oldPools.iterator(); i.hasNext(); ) {
+            ForkJoinPool oldPool = i.next();
+            if (oldPool.isTerminated()) i.remove();
+            else count += oldPool.getActiveThreadCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of listed children that are waiting for the submitter
+     */
+    public int getQueuedChildren() {
+        return queue.size();
+    }
+
+    private void waitIfPaused() throws InterruptedException {
+        synchronized (pauseLock) {
+            while (paused) pauseLock.wait();
+        }
+    }
+
+    private void listingFinished() {
+        if (unlistedDirectories.decrementAndGet() < MAX_PENDING_DIRECTORIES) {
+            synchronized (capacityLock) {
+                capacityLock.notifyAll();
+            }
+        }
+    }
+
+    private void directoryFinished() {
+        pendingDirectories.decrementAndGet();
+    }
+
+    /**
+     * A listed child, or the end of a directory's listing (if child is null)
+     */
+    private static class Found {
+        SyncStorage<?> storage;
+        ObjectSummary directory;
+        ObjectSummary child;
+        Throwable error;
+
+        Found(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child, Throwable error) {
+            this.storage = storage;
+            this.directory = directory;
+            this.child = child;
+            this.error = error;
+        }
+    }
+
+    private class CrawlTask extends RecursiveAction {
+        private SyncStorage<?> storage;
+        private ObjectSummary directory;
+
+        CrawlTask(SyncStorage<?> storage, ObjectSummary directory) {
+            this.storage = storage;
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            boolean ended = false;
+            try {
+                waitIfPaused();
+                if (stopped) {
+                    log.debug("aborting crawl because the crawler was stopped: {}", directory.getIdentifier());
+                    return;
+                }
+                log.debug(">>>> querying children of {}", directory.getIdentifier());
+                storage.getOpThrottle().acquire(1);
+                for (ObjectSummary child : storage.children(directory)) {
+                    if (stopped) break;
+                    handler.childListed(storage, directory, child);
+                    queue.put(new Found(storage, directory, child, null));
+
+                    if (recursive && child.isDirectory() && handler.shouldCrawl(directory, child)) {
+                        CrawlTask childTask = new CrawlTask(storage, child);
+                        pendingDirectories.incrementAndGet();
+                        if (unlistedDirectories.incrementAndGet() <= MAX_PENDING_DIRECTORIES) {
+                            log.debug("{} is directory; forking crawl", child);
+                            // after a resize, new directories go to the new pool
+                            if (getPool() == pool || !moveToPool(childTask)) childTask.fork();
+                        } else {
+                            log.debug("{} is directory; too many pending directories, so crawling inline", child);
+                            childTask.compute();
+                        }
+                    }
+                }
+                if (!stopped) {
+                    queue.put(new Found(storage, directory, null, null));
+                    ended = true;
+                }
+                log.debug("<<<< finished querying children of {}", directory.getIdentifier());
+            } catch (Throwable t) {
+                if (stopped) log.debug("crawl of {} interrupted by stop: {}", directory.getIdentifier(), t.toString());
+                else try {
+                    queue.put(new Found(storage, directory, null, t));
+                    ended = true;
+                } catch (InterruptedException e) {
+                    log.warn("interrupted while failing crawl of {}", directory.getIdentifier());
+                }
+            } finally {
+                listingFinished();
+                // otherwise the submitter finishes the directory
+                if (!ended) directoryFinished();
+            }
+        }
+    }
+
+    /**
+     * Hands the listed children to the handler (in the order they were listed) and finishes each directory once all
+     * of its children are handed over
+     */
+    private class Submitter implements Runnable {
+        // directories whose children could not all be handed to the handler
+        private Map<ObjectSummary, Throwable> failures = new IdentityHashMap<>();
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                try {
+                    Found found = queue.poll(1, TimeUnit.SECONDS);
+                    if (found == null) {
+                        if (shutdown && pendingDirectories.get() <= 0) break;
+                        continue;
+                    }
+                    waitIfPaused();
+                    if (stopped) break;
+                    if (found.child != null) submit(found);
+                    else finish(found);
+                } catch (InterruptedException e) {
+                    if (!stopped) log.warn("crawl submitter interrupted", e);
+                }
+            }
+        }
+
+        private void submit(Found found) {
+            if (failures.containsKey(found.directory)) return;
+            try {
+                handler.childFound(found.storage, found.directory, found.child);
+            } catch (Throwable t) {
+                failures.put(found.directory, t);
+            }
+        }
+
+        private void finish(Found found) {
+            Throwable error = failures.remove(found.directory);
+            if (error == null) error = found.error;
+            try {
+                if (error == null) handler.crawlComplete(found.directory);
+                else handler.crawlFailed(found.directory, error);
+            } catch (Throwable t) {
+                log.warn("could not finish crawl of {}: {}", found.directory.getIdentifier(), t.toString());
+            } finally {
+                directoryFinished();
+            }
+        }
+    }
+
+    private static class NamedWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private static final AtomicInteger poolCount = new AtomicInteger();
+
+        private AtomicInteger threadNumber = new AtomicInteger();
+        private String threadPrefix;
+
+        NamedWorkerThreadFactory(String poolName) {
+            threadPrefix = poolName + "-" + poolCount.incrementAndGet() + "-t-";
+        }
+
+        String getPrefix() {
+            return threadPrefix;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(threadPrefix + threadNumber.incrementAndGet());
+            return thread;
+        }
+    }
+}
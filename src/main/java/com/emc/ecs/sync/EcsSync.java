@@ -18,11 +18,15 @@ import com.emc.ecs.sync.cli.CliConfig;
 import com.emc.ecs.sync.cli.CliHelper;
 import com.emc.ecs.sync.config.ConfigUtil;
 import com.emc.ecs.sync.config.ConfigWrapper;
+import com.emc.ecs.sync.config.ConfigurationException;
 import com.emc.ecs.sync.config.SyncConfig;
 import com.emc.ecs.sync.config.SyncOptions;
 import com.emc.ecs.sync.filter.SyncFilter;
 import com.emc.ecs.sync.model.*;
+import com.emc.ecs.sync.rest.ClusterProgress;
 import com.emc.ecs.sync.rest.RestServer;
+import com.emc.ecs.sync.rest.LaneProgress;
+import com.emc.ecs.sync.rest.StageProgress;
 import com.emc.ecs.sync.service.*;
 import com.emc.ecs.sync.storage.SyncStorage;
 import com.emc.ecs.sync.util.*;
@@ -46,6 +50,17 @@ public class EcsSync implements Runnable, RetryHandler {
 
     public static final String VERSION = EcsSync.class.getPackage().getImplementationVersion();
 
+    /**
+     * Listed objects are submitted in pages of this size, so their DB records can be looked up in one query
+     */
+    public static final int PREFETCH_PAGE_SIZE = 1000;
+
+    /**
+     * The source listing is read (and counted for the estimate) up to this many objects ahead of the sync. Crawled
+     * directories are listed up to this many children ahead
+     */
+    public static final int LIST_AHEAD_SIZE = 100000;
+
     public static void main(String[] args) {
         int exitCode = 0;
 
@@ -82,6 +97,11 @@ public class EcsSync implements Runnable, RetryHandler {
                     if (cliConfig.getDbEncPassword() != null) {
                         SyncJobService.getInstance().setDbEncPassword(cliConfig.getDbEncPassword());
                     }
+                    // set the budgets shared by jobs
+                    JobGovernor governor = SyncJobService.getInstance().getGovernor();
+                    governor.setMaxTotalThreads(cliConfig.getMaxTotalThreads());
+                    governor.setMaxTotalDbConnections(cliConfig.getMaxTotalDbConnections());
+                    governor.setMaxTotalBandwidth(cliConfig.getMaxTotalBandwidth());
                     restServer.start();
                 }
 
@@ -153,14 +173,26 @@ public class EcsSync implements Runnable, RetryHandler {
 
     private EnhancedThreadPoolExecutor listExecutor;
     private EnhancedThreadPoolExecutor syncExecutor;
-    private EnhancedThreadPoolExecutor queryExecutor;
-    private EnhancedThreadPoolExecutor estimateQueryExecutor;
-    private EnhancedThreadPoolExecutor estimateExecutor;
-    private EnhancedThreadPoolExecutor retrySubmitter;
+    private DirectoryCrawler crawler;
+    private RetryScheduler retryScheduler;
+    private SyncPipeline pipeline;
+    private SyncLanes lanes;
+    private InFlightLimiter inFlightLimiter;
+    private ListCheckpointer checkpointer;
+    private ScheduledExecutorService checkpointScheduler;
+    private PartitionCoordinator partitionCoordinator;
+    private ScheduledExecutorService heartbeatScheduler;
     private SyncFilter firstFilter;
     private SyncEstimate syncEstimate;
+    private boolean estimationActive;
+    private volatile boolean listing;
     private volatile boolean terminated;
     private SyncStats stats = new SyncStats();
+    private int maxDbConnections;
+    private long bandwidthShare;
+    private volatile JobGovernor governor;
+    private long bufferPoolReservation;
+    private long bufferMemoryLimit;
 
     private SyncConfig syncConfig;
     private SyncStorage<?> source;
@@ -172,6 +204,8 @@ public class EcsSync implements Runnable, RetryHandler {
 
     private int perfReportSeconds;
     private ScheduledExecutorService perfScheduler;
+    private AdaptiveThreadController threadController;
+    private ScheduledExecutorService threadControllerScheduler;
 
     private Set<OptionChangeListener> optionChangeListeners = new HashSet<>();
 
@@ -221,6 +255,9 @@ public class EcsSync implements Runnable, RetryHandler {
                 throw e;
             }
 
+            // apply any bandwidth/request rate limits
+            applyThrottleLimits();
+
             // TODO: right now, plugins have no way to register themselves
             if (source instanceof OptionChangeListener) addOptionChangeListener((OptionChangeListener) source);
             if (target instanceof OptionChangeListener) addOptionChangeListener((OptionChangeListener) target);
@@ -260,26 +297,50 @@ public class EcsSync implements Runnable, RetryHandler {
                 if (options.getDbFile() != null) {
                     dbService = new SqliteDbService(options.getDbFile());
                 } else if (options.getDbConnectString() != null) {
-                    dbService = new MySQLDbService(options.getDbConnectString(), null, null, options.getDbEncPassword());
+                    MySQLDbService mySQLDbService = new MySQLDbService(options.getDbConnectString(), null, null, options.getDbEncPassword());
+                    if (maxDbConnections > 0) mySQLDbService.setMaxPoolSize(maxDbConnections);
+                    dbService = mySQLDbService;
                 } else {
                     dbService = new NoDbService();
                 }
                 if (options.getDbTable() != null) dbService.setObjectsTableName(options.getDbTable());
             }
 
+            // start checkpointing and see if we are resuming a listing
+            final String listCheckpoint = startCheckpoints();
+
+            // join the other nodes if the job is partitioned
+            startPartitions();
+
+            // make room in the buffer pool for a copy buffer per sync thread (and one in flight), if they are pooled
+            if (options.getBufferSize() <= BufferPool.MAX_POOLED_SIZE) {
+                bufferPoolReservation = (long) options.getBufferSize() * options.getThreadCount() * 2;
+                if (options.getMaxBufferMemory() > 0)
+                    bufferPoolReservation = Math.min(bufferPoolReservation, options.getMaxBufferMemory());
+                BufferPool.getInstance().reserve(bufferPoolReservation);
+            }
+            // add this job's buffer memory limit to the process-wide limit
+            bufferMemoryLimit = options.getMaxBufferMemory();
+            if (bufferMemoryLimit > 0) BufferPool.getInstance().limitMemory(bufferMemoryLimit);
+
             // create thread pools
             listExecutor = new EnhancedThreadPoolExecutor(options.getThreadCount(),
                     new LinkedBlockingDeque<Runnable>(1000), "list-pool");
-            estimateQueryExecutor = new EnhancedThreadPoolExecutor(options.getThreadCount(),
-                    new LinkedBlockingDeque<Runnable>(), "estimate-q-pool");
-            estimateExecutor = new EnhancedThreadPoolExecutor(options.getThreadCount(),
-                    new LinkedBlockingDeque<Runnable>(1000), "estimate-pool");
-            queryExecutor = new EnhancedThreadPoolExecutor(options.getThreadCount(),
-                    new LinkedBlockingDeque<Runnable>(), "query-pool");
-            syncExecutor = new EnhancedThreadPoolExecutor(options.getThreadCount(),
+            crawler = new DirectoryCrawler(options.getThreadCount(), options.isRecursive(), LIST_AHEAD_SIZE,
+                    new CrawlHandler());
+            // the pipeline has its own pool for each stage and the lanes have one for each lane
+            if (options.isPipelineEnabled()) pipeline = new SyncPipeline(options);
+            else if (SyncLanes.isEnabled(options)) lanes = new SyncLanes(options);
+            else syncExecutor = new EnhancedThreadPoolExecutor(options.getThreadCount(),
                     new LinkedBlockingDeque<Runnable>(1000), "sync-pool");
-            retrySubmitter = new EnhancedThreadPoolExecutor(options.getThreadCount(),
-                    new LinkedBlockingDeque<Runnable>(), "retry-submitter");
+            retryScheduler = new RetryScheduler(options, new RetryScheduler.Handler() {
+                @Override
+                public void retry(SyncStorage<?> source, ObjectContext objectContext) {
+                    submitForSync(source, objectContext);
+                }
+            });
+            if (options.getMaxInFlightBytes() > 0 || options.getMaxInFlightObjects() > 0)
+                inFlightLimiter = new InFlightLimiter(options.getMaxInFlightBytes(), options.getMaxInFlightObjects());
 
             // initialize verifier
             verifier = new Md5Verifier(options);
@@ -290,65 +351,31 @@ public class EcsSync implements Runnable, RetryHandler {
             // set status to running
             syncControl.setRunning(true);
             stats.reset();
+
+            // start tuning thread count if enabled
+            startAdaptiveThreadCount();
             log.info("syncing from {} to {}", ConfigUtil.generateUri(syncConfig.getSource()),
                     ConfigUtil.generateUri(syncConfig.getTarget()));
 
-            // start estimating
+            // the estimate is counted from the same listing as the sync (a list-file is always estimated)
             syncEstimate = new SyncEstimate();
-            estimateExecutor.submit(new Runnable() {
-                @Override
-                public void run() {
-                    // do we have a list-file?
-                    if (options.getSourceListFile() != null) {
-                        LineIterator lineIterator = new LineIterator(options.getSourceListFile());
-                        while (lineIterator.hasNext()) {
-                            estimateExecutor.blockingSubmit(new EstimateTask(lineIterator.next(), source, syncEstimate));
-                        }
-                    } else if (options.isEstimationEnabled()) {
-                        for (ObjectSummary summary : source.allObjects()) {
-                            estimateExecutor.blockingSubmit(new EstimateTask(summary, source, syncEstimate));
-                        }
-                    }
-                }
-            });
-
-            // iterate through root objects and submit tasks for syncing and crawling (querying).
-            if (options.getSourceListFile() != null) { // do we have a list-file?
-                LineIterator lineIterator = new LineIterator(options.getSourceListFile());
-                while (lineIterator.hasNext()) {
-                    if (!syncControl.isRunning()) break;
-                    final String listLine = lineIterator.next();
-                    listExecutor.blockingSubmit(new Runnable() {
-                        @Override
-                        public void run() {
-                            ObjectSummary summary = source.parseListLine(listLine);
-                            submitForSync(source, summary);
-                            if (options.isRecursive() && summary.isDirectory()) submitForQuery(source, summary);
-                        }
-                    });
-                }
+            estimationActive = options.isEstimationEnabled() || options.getSourceListFile() != null;
+
+            // iterate through root objects and submit tasks for syncing and crawling (querying), then wait until all
+            // submitted tasks are complete
+            boolean complete;
+            if (partitionCoordinator == null) {
+                if (checkpointer != null) submitFailed();
+                listSource(listCheckpoint, null);
+                complete = waitForTasks();
             } else {
-                for (ObjectSummary summary : source.allObjects()) {
-                    if (!syncControl.isRunning()) break;
-                    submitForSync(source, summary);
-                    if (options.isRecursive() && summary.isDirectory()) submitForQuery(source, summary);
-                }
+                complete = syncPartitions();
             }
 
-            // now we must wait until all submitted tasks are complete
-            while (syncControl.isRunning()) {
-                if (listExecutor.getUnfinishedTasks() <= 0 && queryExecutor.getUnfinishedTasks() <= 0
-                        && syncExecutor.getUnfinishedTasks() <= 0) {
-                    // done
-                    log.info("all tasks complete");
-                    break;
-                } else {
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e) {
-                        log.warn("interrupted while sleeping", e);
-                    }
-                }
+            // the whole source was synced, so a new run must start from the beginning
+            if (complete && checkpointer != null) {
+                stopCheckpoints();
+                dbService.deleteCheckpoints();
             }
 
             // run a final timing log
@@ -361,11 +388,18 @@ public class EcsSync implements Runnable, RetryHandler {
             if (!syncControl.isRunning()) log.warn("terminated early!");
             syncControl.setRunning(false);
             if (listExecutor != null) listExecutor.shutdown();
-            if (estimateQueryExecutor != null) estimateQueryExecutor.shutdown();
-            if (estimateExecutor != null) estimateExecutor.shutdown();
-            if (queryExecutor != null) queryExecutor.shutdown();
-            if (retrySubmitter != null) retrySubmitter.shutdown();
+            listing = false;
+            if (crawler != null) crawler.shutdown();
+            if (retryScheduler != null) retryScheduler.stop();
             if (syncExecutor != null) syncExecutor.shutdown();
+            if (pipeline != null) pipeline.shutdown();
+            if (lanes != null) lanes.shutdown();
+            stopCheckpoints();
+            stopPartitions();
+            BufferPool.getInstance().unreserve(bufferPoolReservation);
+            bufferPoolReservation = 0;
+            if (bufferMemoryLimit > 0) BufferPool.getInstance().unlimitMemory(bufferMemoryLimit);
+            bufferMemoryLimit = 0;
             if (stats != null) stats.setStopTime(System.currentTimeMillis());
 
             // clean up any resources in the plugins
@@ -387,6 +421,14 @@ public class EcsSync implements Runnable, RetryHandler {
                                         getTarget().getWriteRate());
                                 log.info("Objects: complete: {}/s failed: {}/s", getStats().getObjectCompleteRate(),
                                         getStats().getObjectErrorRate());
+                                for (StageProgress stage : getStageProgress()) {
+                                    log.info("Stage {}: threads: {} active: {} queued: {}", stage.getName(),
+                                            stage.getThreadCount(), stage.getActiveTasks(), stage.getQueuedTasks());
+                                }
+                                for (LaneProgress lane : getLaneProgress()) {
+                                    log.info("{} lane: threads: {} complete: {}/s {} b/s", lane.getName(),
+                                            lane.getThreadCount(), lane.getObjectCompleteRate(), lane.getByteCompleteRate());
+                                }
                             }
                         }
                     },
@@ -394,6 +436,250 @@ public class EcsSync implements Runnable, RetryHandler {
         }
     }
 
+    /**
+     * Starts saving checkpoints if a checkpoint interval is set
+     *
+     * @return the listing checkpoint to resume from (empty to start from the beginning), or null if checkpoints are
+     * disabled
+     */
+    private String startCheckpoints() {
+        SyncOptions options = syncConfig.getOptions();
+        if (options.getCheckpointInterval() <= 0) return null;
+        if (dbService instanceof NoDbService)
+            throw new ConfigurationException("checkpoints require a database (dbFile or dbConnectString)");
+        if (options.getPartitionCount() > 0)
+            throw new ConfigurationException("checkpoints cannot be used with partitions");
+
+        String listCheckpoint = dbService.getListCheckpoint();
+        if (listCheckpoint == null) {
+            // the last job with this database finished (or there was none), so start a new listing
+            dbService.deleteCheckpoints();
+            dbService.setListCheckpoint("");
+            listCheckpoint = "";
+        } else {
+            log.info("resuming listing from checkpoint: {}", listCheckpoint.isEmpty() ? "(start)" : listCheckpoint);
+        }
+
+        checkpointer = new ListCheckpointer(dbService);
+        checkpointScheduler = Executors.newSingleThreadScheduledExecutor();
+        checkpointScheduler.scheduleWithFixedDelay(checkpointer,
+                options.getCheckpointInterval(), options.getCheckpointInterval(), TimeUnit.SECONDS);
+        return listCheckpoint;
+    }
+
+    /**
+     * Stops checkpointing and saves a final checkpoint (only does anything once)
+     */
+    private synchronized void stopCheckpoints() {
+        if (checkpointScheduler == null) return;
+        try {
+            checkpointScheduler.shutdownNow();
+            checkpointScheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            log.warn("interrupted while stopping checkpoints", e);
+        }
+        checkpointScheduler = null;
+        checkpointer.run();
+    }
+
+    /**
+     * A resumed listing does not get to anything listed before the checkpoint, so objects that failed and directories
+     * that could not be crawled in earlier runs of this job are submitted again first
+     */
+    private void submitFailed() {
+        for (String identifier : checkpointer.getFailedDirectories()) {
+            if (!syncControl.isRunning()) return;
+            log.info("crawling {} again because it could not be crawled before the last checkpoint", identifier);
+            ListCheckpointer.Entry entry = checkpointer.listed(null);
+            submitForQuery(source, new ObjectSummary(identifier, true, 0), entry);
+            entry.release();
+        }
+        for (Map.Entry<String, String> failed : checkpointer.getFailedObjects().entrySet()) {
+            if (!syncControl.isRunning()) return;
+            log.info("retrying {} because it failed before the last checkpoint", failed.getKey());
+            ObjectSummary summary = failed.getValue() == null ? new ObjectSummary(failed.getKey(), false, 0)
+                    : source.parseListLine(failed.getValue());
+            estimate(summary);
+            ListCheckpointer.Entry entry = checkpointer.listed(null);
+            submitForSync(source, newObjectContext(summary), entry);
+            entry.release();
+        }
+    }
+
+    /**
+     * Lists the source (or reads the list-file) and submits each object for sync (and crawling, if it is a directory)
+     *
+     * @param listCheckpoint the listing checkpoint to resume from (null or empty to start from the beginning)
+     * @param partitions     only objects in these partitions are submitted (null to submit all objects)
+     */
+    private void listSource(String listCheckpoint, final Set<Integer> partitions) {
+        final SyncOptions options = syncConfig.getOptions();
+        listing = true;
+        try {
+            if (options.getSourceListFile() != null) { // do we have a list-file?
+                int skipLines = listCheckpoint == null || listCheckpoint.isEmpty() ? 0 : Integer.parseInt(listCheckpoint);
+                LineIterator lineIterator = new LineIterator(options.getSourceListFile());
+                while (lineIterator.hasNext()) {
+                    if (!syncControl.isRunning()) break;
+                    final String listLine = lineIterator.next();
+                    if (lineIterator.getCurrentLine() <= skipLines) continue;
+                    if (partitions != null && !partitions.contains(
+                            partitionCoordinator.getListLinePartition(lineIterator.getCurrentLine()))) continue;
+                    final ListCheckpointer.Entry entry = checkpointer == null ? null
+                            : checkpointer.listed(String.valueOf(lineIterator.getCurrentLine()));
+                    listExecutor.blockingSubmit(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                ObjectSummary summary = source.parseListLine(listLine);
+                                estimate(summary);
+                                submitForSync(source, newObjectContext(summary), entry);
+                                if (options.isRecursive() && summary.isDirectory())
+                                    submitForQuery(source, summary, entry);
+                            } finally {
+                                if (entry != null) entry.release();
+                            }
+                        }
+                    });
+                }
+            } else {
+                Iterator<ObjectSummary> objects = (listCheckpoint == null || listCheckpoint.isEmpty()
+                        ? source.allObjects() : source.allObjectsAfter(listCheckpoint)).iterator();
+                if (partitions != null) {
+                    final Iterator<ObjectSummary> allObjects = objects;
+                    objects = new ReadOnlyIterator<ObjectSummary>() {
+                        @Override
+                        protected ObjectSummary getNextObject() {
+                            while (allObjects.hasNext()) {
+                                ObjectSummary summary = allObjects.next();
+                                if (partitions.contains(partitionCoordinator.getPartition(summary))) return summary;
+                            }
+                            return null;
+                        }
+                    };
+                }
+                // read the listing ahead of the sync, so the estimate can get ahead when the sync is slower
+                try (ReadAheadIterator<ObjectSummary> readAhead = new ReadAheadIterator<>(objects,
+                        LIST_AHEAD_SIZE, "list-ahead", new ReadAheadIterator.Listener<ObjectSummary>() {
+                    @Override
+                    public void objectRead(ObjectSummary summary) {
+                        estimate(summary);
+                    }
+                })) {
+                    List<ObjectSummary> page = new ArrayList<>();
+                    while (readAhead.hasNext()) {
+                        if (!syncControl.isRunning()) break;
+                        page.add(readAhead.next());
+                        if (page.size() >= getPrefetchPageSize()) {
+                            submitListedPage(source, page);
+                            page.clear();
+                        }
+                    }
+                    submitListedPage(source, page);
+                }
+            }
+        } finally {
+            listing = false;
+        }
+    }
+
+    /**
+     * Waits until all submitted tasks are complete
+     *
+     * @return false if the sync was stopped first
+     */
+    private boolean waitForTasks() {
+        while (syncControl.isRunning()) {
+            if (listExecutor.getUnfinishedTasks() <= 0 && crawler.getUnfinishedTasks() <= 0
+                    && retryScheduler.getUnfinishedRetries() <= 0
+                    && (syncExecutor == null || syncExecutor.getUnfinishedTasks() <= 0)
+                    && (pipeline == null || pipeline.getUnfinishedTasks() <= 0)
+                    && (lanes == null || lanes.getUnfinishedTasks() <= 0)) {
+                // done
+                log.info("all tasks complete");
+                return true;
+            }
+            sleep(1000);
+        }
+        return false;
+    }
+
+    /**
+     * Leases this node's share of the partitions, syncs them (one listing for each set of leased partitions) and
+     * repeats until every partition of the job is complete
+     *
+     * @return false if the sync was stopped first
+     */
+    private boolean syncPartitions() {
+        // give nodes that were started at the same time a chance to register, so they get their share
+        sleep(partitionCoordinator.getHeartbeatIntervalMs());
+        while (syncControl.isRunning()) {
+            Set<Integer> partitions = partitionCoordinator.claimPartitions();
+            if (partitions.isEmpty()) {
+                if (partitionCoordinator.isJobComplete()) {
+                    log.info("all partitions complete");
+                    return true;
+                }
+                // the remaining partitions are leased by other nodes; keep checking in case one of them dies
+                sleep(partitionCoordinator.getHeartbeatIntervalMs());
+                continue;
+            }
+            listSource(null, partitions);
+            if (!waitForTasks()) return false;
+            partitionCoordinator.completePartitions();
+        }
+        return false;
+    }
+
+    private void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            log.warn("interrupted while sleeping", e);
+        }
+    }
+
+    /**
+     * Starts leasing partitions if the job is partitioned
+     */
+    private void startPartitions() {
+        SyncOptions options = syncConfig.getOptions();
+        if (options.getPartitionCount() <= 0) return;
+        if (dbService instanceof NoDbService)
+            throw new ConfigurationException("partitions require a database (dbConnectString)");
+
+        partitionCoordinator = new PartitionCoordinator(this, dbService, options);
+        partitionCoordinator.start();
+        heartbeatScheduler = Executors.newSingleThreadScheduledExecutor();
+        heartbeatScheduler.scheduleWithFixedDelay(partitionCoordinator, partitionCoordinator.getHeartbeatIntervalMs(),
+                partitionCoordinator.getHeartbeatIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the heartbeat and releases any leases that are not complete (only does anything once)
+     */
+    private synchronized void stopPartitions() {
+        if (heartbeatScheduler == null) return;
+        try {
+            heartbeatScheduler.shutdownNow();
+            heartbeatScheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            log.warn("interrupted while stopping heartbeat", e);
+        }
+        heartbeatScheduler = null;
+        partitionCoordinator.stop();
+    }
+
+    private void startAdaptiveThreadCount() {
+        if (syncConfig.getOptions().isAdaptiveThreadCount()) {
+            threadController = new AdaptiveThreadController(this);
+            threadControllerScheduler = Executors.newSingleThreadScheduledExecutor();
+            threadControllerScheduler.scheduleAtFixedRate(threadController,
+                    AdaptiveThreadController.SAMPLE_INTERVAL_SECONDS, AdaptiveThreadController.SAMPLE_INTERVAL_SECONDS,
+                    TimeUnit.SECONDS);
+        }
+    }
+
     /**
      * Stops the underlying executors from executing new tasks. Currently running tasks will complete and all threads
      * will then block until resumed
@@ -403,11 +689,11 @@ public class EcsSync implements Runnable, RetryHandler {
     public void pause() {
         if (!syncControl.isRunning()) throw new IllegalStateException("sync is not running");
         listExecutor.pause();
-        estimateQueryExecutor.pause();
-        estimateExecutor.pause();
-        queryExecutor.pause();
-        retrySubmitter.pause();
-        syncExecutor.pause();
+        crawler.pause();
+        retryScheduler.pause();
+        if (syncExecutor != null) syncExecutor.pause();
+        if (pipeline != null) pipeline.pause();
+        if (lanes != null) lanes.pause();
         stats.pause();
     }
 
@@ -420,23 +706,26 @@ public class EcsSync implements Runnable, RetryHandler {
     public void resume() {
         if (!syncControl.isRunning()) throw new IllegalStateException("sync is not running");
         listExecutor.resume();
-        estimateQueryExecutor.resume();
-        estimateExecutor.resume();
-        queryExecutor.resume();
-        retrySubmitter.resume();
-        syncExecutor.resume();
+        crawler.resume();
+        retryScheduler.resume();
+        if (syncExecutor != null) syncExecutor.resume();
+        if (pipeline != null) pipeline.resume();
+        if (lanes != null) lanes.resume();
         stats.resume();
     }
 
     public void terminate() {
+        // aborted tasks finish without being synced, so the checkpoint must not move any further
+        if (checkpointer != null) checkpointer.stop();
         syncControl.setRunning(false);
         terminated = true;
         if (listExecutor != null) listExecutor.stop();
-        if (estimateQueryExecutor != null) estimateQueryExecutor.stop();
-        if (estimateExecutor != null) estimateExecutor.stop();
-        if (queryExecutor != null) queryExecutor.stop();
-        if (retrySubmitter != null) retrySubmitter.stop();
+        if (crawler != null) crawler.stop();
+        if (retryScheduler != null) retryScheduler.stop();
         if (syncExecutor != null) syncExecutor.stop();
+        if (pipeline != null) pipeline.stop();
+        if (lanes != null) lanes.stop();
+        if (inFlightLimiter != null) inFlightLimiter.close();
     }
 
     public String summarizeConfig() {
@@ -455,51 +744,163 @@ public class EcsSync implements Runnable, RetryHandler {
         return summary.toString();
     }
 
-    private void submitForQuery(SyncStorage source, ObjectSummary entry) {
-        if (syncControl.isRunning()) queryExecutor.blockingSubmit(new QueryTask(source, entry));
-        else log.debug("not submitting task for query because terminate() was called: " + entry.getIdentifier());
+    /**
+     * @param listEntry the checkpoint entry of the directory (null if checkpoints are disabled)
+     */
+    private void submitForQuery(SyncStorage source, ObjectSummary entry, ListCheckpointer.Entry listEntry) {
+        if (syncControl.isRunning()) {
+            if (listEntry != null) {
+                if (checkpointer.isDirectoryComplete(entry)) {
+                    log.debug("not crawling {} because it was completed before the last checkpoint", entry.getIdentifier());
+                    return;
+                }
+                checkpointer.crawlStarted(entry, listEntry);
+            }
+            try {
+                crawler.crawl(source, entry);
+            } catch (RuntimeException e) {
+                if (listEntry != null) checkpointer.crawlFailed(entry);
+                throw e;
+            }
+        } else {
+            log.debug("not submitting task for query because terminate() was called: " + entry.getIdentifier());
+        }
     }
 
     private void submitForSync(SyncStorage source, ObjectContext objectContext) {
         if (syncControl.isRunning()) {
             SyncTask syncTask = new SyncTask(objectContext, source, firstFilter, verifier,
                     dbService, this, syncControl, stats);
-            syncExecutor.blockingSubmit(syncTask);
+            final Runnable release = admit(objectContext.getSourceSummary());
+            if (checkpointer != null) {
+                final ObjectContext context = objectContext;
+                syncTask.setFinishCallback(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (release != null) release.run();
+                        checkpointer.finished(context);
+                    }
+                });
+            } else {
+                syncTask.setFinishCallback(release);
+            }
+            try {
+                if (pipeline != null) pipeline.submit(syncTask);
+                else if (lanes != null) lanes.submit(syncTask);
+                else syncExecutor.blockingSubmit(syncTask);
+            } catch (RuntimeException e) {
+                if (release != null) release.run();
+                throw e;
+            }
         } else {
             log.debug("not submitting task for sync because terminate() was called: " + objectContext.getSourceSummary().getIdentifier());
         }
     }
 
-    private void submitForSync(SyncStorage source, ObjectSummary summary) {
+    /**
+     * Blocks until the in-flight limits allow the object to be submitted, and returns the callback that gives its
+     * share back (null if there are no limits)
+     */
+    private Runnable admit(ObjectSummary summary) {
+        if (inFlightLimiter == null) return null;
+        final long cost = inFlightLimiter.acquire(summary.isDirectory() ? 0 : summary.getSize());
+        return new Runnable() {
+            @Override
+            public void run() {
+                inFlightLimiter.release(cost);
+            }
+        };
+    }
+
+    /**
+     * Submits a page of objects from the source listing for sync (and crawling, if they are directories)
+     */
+    private void submitListedPage(SyncStorage source, List<ObjectSummary> page) {
+        for (ObjectContext objectContext : newObjectContexts(page)) {
+            ObjectSummary summary = objectContext.getSourceSummary();
+            ListCheckpointer.Entry entry = checkpointer == null ? null : checkpointer.listed(summary.getListPosition());
+            submitForSync(source, objectContext, entry);
+            if (syncConfig.getOptions().isRecursive() && summary.isDirectory()) submitForQuery(source, summary, entry);
+            if (entry != null) entry.release();
+        }
+    }
+
+    /**
+     * @param listEntry the checkpoint entry the object is part of (null if checkpoints are disabled)
+     */
+    private void submitForSync(SyncStorage source, ObjectContext objectContext, ListCheckpointer.Entry listEntry) {
+        if (listEntry != null && syncControl.isRunning()) checkpointer.track(objectContext, listEntry);
+        submitForSync(source, objectContext);
+    }
+
+    private ObjectContext newObjectContext(ObjectSummary summary) {
         ObjectContext objectContext = new ObjectContext();
         objectContext.setSourceSummary(summary);
         objectContext.setOptions(syncConfig.getOptions());
         objectContext.setStatus(ObjectStatus.Queue);
-        submitForSync(source, objectContext);
+        return objectContext;
+    }
+
+    /**
+     * Creates the contexts for a page of listed objects and looks up all of their DB records in one query (instead of
+     * one query per object in the sync task)
+     */
+    private List<ObjectContext> newObjectContexts(List<ObjectSummary> page) {
+        List<ObjectContext> objectContexts = new ArrayList<>();
+        for (ObjectSummary summary : page) {
+            objectContexts.add(newObjectContext(summary));
+        }
+        if (objectContexts.size() > 1) {
+            try {
+                Map<String, SyncRecord> records = dbService.getSyncRecords(objectContexts);
+                for (ObjectContext objectContext : objectContexts) {
+                    objectContext.setPrefetchedRecord(records.get(objectContext.getSourceSummary().getIdentifier()));
+                }
+            } catch (Throwable t) {
+                log.warn("could not prefetch DB records (each object will look up its own): {}", SyncUtil.summarize(t));
+            }
+        }
+        return objectContexts;
+    }
+
+    private void estimate(ObjectSummary summary) {
+        if (!estimationActive) return;
+        syncEstimate.incTotalObjectCount(1);
+        if (!summary.isDirectory()) syncEstimate.incTotalByteCount(summary.getSize());
+    }
+
+    /**
+     * Without a database there is nothing to prefetch, so objects are submitted as soon as they are listed
+     */
+    private int getPrefetchPageSize() {
+        return dbService instanceof NoDbService ? 1 : PREFETCH_PAGE_SIZE;
     }
 
     @Override
-    public void submitForRetry(final SyncStorage source, final ObjectContext objectContext, Throwable t) throws Throwable {
+    public void submitForRetry(SyncStorage source, ObjectContext objectContext, Throwable t) throws Throwable {
         if (objectContext.getObject() == null || objectContext.getFailures() + 1 > syncConfig.getOptions().getRetryAttempts())
             throw t;
         objectContext.incFailures();
 
         // prepare for retry
         try {
+            objectContext.setStatus(ObjectStatus.RetryQueue);
+            dbService.setStatus(objectContext, SyncUtil.summarize(t), false);
+
+            // the object is not settled until the retry is finished
+            if (checkpointer != null) checkpointer.retrying(objectContext);
+            long delay;
+            try {
+                delay = retryScheduler.schedule(source, objectContext, t);
+            } catch (RuntimeException e) {
+                if (checkpointer != null) checkpointer.finished(objectContext);
+                throw e;
+            }
             if (log.isInfoEnabled()) {
                 log.info("O--R object " + objectContext.getSourceSummary().getIdentifier()
                         + " failed " + objectContext.getFailures() + " time" + (objectContext.getFailures() > 1 ? "s" : "")
-                        + " (queuing for retry)", SyncUtil.getCause(t));
+                        + " (retrying in " + delay + "ms)", SyncUtil.getCause(t));
             }
-            objectContext.setStatus(ObjectStatus.RetryQueue);
-            dbService.setStatus(objectContext, SyncUtil.summarize(t), false);
-
-            retrySubmitter.submit(new Runnable() {
-                @Override
-                public void run() {
-                    submitForSync(source, objectContext);
-                }
-            });
         } catch (Throwable t2) {
             // could not retry, so bubble original error
             log.warn("retry for {} failed: {}", objectContext.getSourceSummary().getIdentifier(), SyncUtil.getCause(t2));
@@ -515,11 +916,17 @@ public class EcsSync implements Runnable, RetryHandler {
         }
         safeClose(target);
         safeClose(verifier);
+        safeClose(lanes);
         if (perfScheduler != null) try {
             perfScheduler.shutdownNow();
         } catch (Throwable t) {
             log.warn("could not shut down perf reporting", t);
         }
+        if (threadControllerScheduler != null) try {
+            threadControllerScheduler.shutdownNow();
+        } catch (Throwable t) {
+            log.warn("could not shut down adaptive thread count", t);
+        }
     }
 
     private void safeClose(AutoCloseable closeable) {
@@ -530,17 +937,91 @@ public class EcsSync implements Runnable, RetryHandler {
         }
     }
 
+    /**
+     * Asks for a different thread count. If the job is run by a {@link JobGovernor}, the governor decides how many
+     * threads it is given (it may be fewer)
+     */
+    public void requestThreadCount(int threadCount) {
+        JobGovernor governor = this.governor;
+        if (governor != null) governor.setThreadCount(this, threadCount);
+        else setThreadCount(threadCount);
+    }
+
     public void setThreadCount(int threadCount) {
         syncConfig.getOptions().setThreadCount(threadCount);
         if (listExecutor != null) listExecutor.resizeThreadPool(threadCount);
-        if (estimateQueryExecutor != null) estimateQueryExecutor.resizeThreadPool(threadCount);
-        if (estimateExecutor != null) estimateExecutor.resizeThreadPool(threadCount);
-        if (queryExecutor != null) queryExecutor.resizeThreadPool(threadCount);
+        if (crawler != null) crawler.setThreadCount(threadCount);
         if (syncExecutor != null) syncExecutor.resizeThreadPool(threadCount);
-        if (retrySubmitter != null) retrySubmitter.resizeThreadPool(threadCount);
+        if (pipeline != null) pipeline.resizeThreadPools(syncConfig.getOptions());
+        if (lanes != null) lanes.resizeThreadPools(syncConfig.getOptions());
         fireOptionsChangedEvent();
     }
 
+    /**
+     * Applies the bandwidth and request rate limits in the options to the source and target storage. Call this after
+     * changing the limits of a running sync
+     */
+    public void applyThrottleLimits() {
+        SyncOptions options = syncConfig.getOptions();
+        long sourceBandwidthLimit = limitToShare(options.getSourceBandwidthLimit());
+        long targetBandwidthLimit = limitToShare(options.getTargetBandwidthLimit());
+        if (!options.isMonitorPerformance() && (sourceBandwidthLimit > 0 || targetBandwidthLimit > 0)) {
+            log.info("enabling performance monitoring (bandwidth limits are applied where bytes are counted)");
+            options.setMonitorPerformance(true);
+        }
+        if (source != null) {
+            source.getBandwidthThrottle().setRate(sourceBandwidthLimit);
+            source.getOpThrottle().setRate(options.getSourceOpRateLimit());
+        }
+        if (target != null) {
+            target.getBandwidthThrottle().setRate(targetBandwidthLimit);
+            target.getOpThrottle().setRate(options.getTargetOpRateLimit());
+        }
+    }
+
+    private long limitToShare(long bandwidthLimit) {
+        if (bandwidthShare <= 0) return bandwidthLimit;
+        return bandwidthLimit > 0 ? Math.min(bandwidthLimit, bandwidthShare) : bandwidthShare;
+    }
+
+    /**
+     * Limits the bytes/s of both the source and the target to this job's share of a process-wide bandwidth budget (in
+     * addition to the limits in the options). 0 means no share is set
+     */
+    public void setBandwidthShare(long bandwidthShare) {
+        if (this.bandwidthShare == bandwidthShare) return;
+        this.bandwidthShare = bandwidthShare;
+        applyThrottleLimits();
+    }
+
+    public long getBandwidthShare() {
+        return bandwidthShare;
+    }
+
+    /**
+     * Sets the maximum number of connections to a MySQL database (0 means the default). Can be changed while running
+     */
+    public void setMaxDbConnections(int maxDbConnections) {
+        this.maxDbConnections = maxDbConnections;
+        if (maxDbConnections > 0 && dbService instanceof MySQLDbService)
+            ((MySQLDbService) dbService).setMaxPoolSize(maxDbConnections);
+    }
+
+    public int getMaxDbConnections() {
+        return maxDbConnections;
+    }
+
+    /**
+     * Set by the {@link JobGovernor} while it runs this job, so thread count changes go through the governor
+     */
+    public void setGovernor(JobGovernor governor) {
+        this.governor = governor;
+    }
+
+    public JobGovernor getGovernor() {
+        return governor;
+    }
+
     public DbService getDbService() {
         return dbService;
     }
@@ -562,6 +1043,8 @@ public class EcsSync implements Runnable, RetryHandler {
     }
 
     public boolean isPaused() {
+        if (pipeline != null) return pipeline.isPaused();
+        if (lanes != null) return lanes.isPaused();
         return syncExecutor != null && syncExecutor.isPaused();
     }
 
@@ -569,8 +1052,20 @@ public class EcsSync implements Runnable, RetryHandler {
         return terminated;
     }
 
+    /**
+     * The estimate is counted as objects are listed, so it is complete once the listing (including crawling and
+     * parsing the list-file) is complete
+     */
     public boolean isEstimating() {
-        return estimateExecutor != null && estimateExecutor.getUnfinishedTasks() > 0;
+        return estimationActive && (listing || (listExecutor != null && listExecutor.getUnfinishedTasks() > 0)
+                || (crawler != null && crawler.getUnlistedDirectories() > 0));
+    }
+
+    /**
+     * Returns the combined progress of all nodes if the job is partitioned (as of the last heartbeat), otherwise null
+     */
+    public ClusterProgress getClusterProgress() {
+        return partitionCoordinator == null ? null : partitionCoordinator.getClusterProgress();
     }
 
     public long getEstimatedTotalObjects() {
@@ -584,30 +1079,59 @@ public class EcsSync implements Runnable, RetryHandler {
     }
 
     public int getActiveQueryThreads() {
-        if (queryExecutor != null) return queryExecutor.getActiveCount();
+        if (crawler != null) return crawler.getActiveCount();
         return 0;
     }
 
     public int getActiveSyncThreads() {
         int count = 0;
         if (syncExecutor != null) count += syncExecutor.getActiveCount();
+        if (pipeline != null) count += pipeline.getActiveCount();
+        if (lanes != null) count += lanes.getActiveCount();
         return count;
     }
 
     /**
-     * Counts the objects in the sync queue that have failed at least once (and are waiting to be retried)
+     * Returns the current state of the adaptive thread count (null if it is not enabled)
+     */
+    public String getThreadTuningState() {
+        if (threadController == null) return null;
+        return threadController.getState().toString();
+    }
+
+    /**
+     * Returns the status of each pipeline stage (empty if the pipeline is not enabled)
+     */
+    public List<StageProgress> getStageProgress() {
+        if (pipeline == null) return Collections.emptyList();
+        return pipeline.getStageProgress();
+    }
+
+    public long getInFlightBytes() {
+        if (inFlightLimiter == null) return 0;
+        return inFlightLimiter.getInFlightBytes();
+    }
+
+    public int getInFlightObjects() {
+        if (inFlightLimiter == null) return 0;
+        return inFlightLimiter.getInFlightObjects();
+    }
+
+    /**
+     * Returns the status and throughput of the small and large object lanes (empty if a large object threshold is not
+     * set)
+     */
+    public List<LaneProgress> getLaneProgress() {
+        if (lanes == null) return Collections.emptyList();
+        return lanes.getLaneProgress();
+    }
+
+    /**
+     * Returns the number of failed objects waiting for their retry delay to pass
      */
     public int getObjectsAwaitingRetry() {
-        if (syncExecutor == null) return 0;
-        int retryCount = 0;
-        for (Runnable runnable : syncExecutor.getQueue().toArray(new Runnable[0])) {
-            if (runnable instanceof EnhancedFutureTask) {
-                EnhancedFutureTask<?> task = (EnhancedFutureTask<?>) runnable;
-                SyncTask syncTask = (SyncTask) task.getRunnable();
-                if (syncTask.getObjectContext().getStatus() == ObjectStatus.RetryQueue) retryCount++;
-            }
-        }
-        return retryCount;
+        if (retryScheduler == null) return 0;
+        return retryScheduler.getObjectsAwaitingRetry();
     }
 
     public void addOptionChangeListener(OptionChangeListener listener) {
@@ -664,86 +1188,71 @@ public class EcsSync implements Runnable, RetryHandler {
         this.filters = filters;
     }
 
-    private class QueryTask implements Runnable {
-        private SyncStorage<?> source;
-        private ObjectSummary parent;
+    private class CrawlHandler implements DirectoryCrawler.Handler {
+        // children of each directory that are waiting to be submitted as a page (only the crawler's submitter thread
+        // calls childFound, crawlComplete and crawlFailed)
+        private Map<ObjectSummary, List<ObjectSummary>> pages = new IdentityHashMap<>();
 
-        QueryTask(SyncStorage source, ObjectSummary parent) {
-            this.source = source;
-            this.parent = parent;
+        @Override
+        public void childListed(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+            // counted by the crawl threads, so the estimate gets ahead of the sync
+            estimate(child);
         }
 
         @Override
-        public void run() {
-            if (!syncControl.isRunning()) {
-                log.debug("aborting query task because terminate() was called: " + parent.getIdentifier());
-                return;
+        public void childFound(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+            List<ObjectSummary> page = pages.get(directory);
+            if (page == null) {
+                page = new ArrayList<>();
+                pages.put(directory, page);
             }
-            try {
-                if (parent.isDirectory()) {
-                    log.debug(">>>> querying children of {}", parent.getIdentifier());
-                    for (ObjectSummary child : source.children(parent)) {
-                        submitForSync(source, child);
-
-                        if (syncConfig.getOptions().isRecursive() && child.isDirectory()) {
-                            log.debug("{} is directory; submitting for query", child);
-                            submitForQuery(source, child);
-                        }
-                    }
-                    log.debug("<<<< finished querying children of {}", parent.getIdentifier());
-                }
-            } catch (Throwable t) {
-                log.warn(">>!! querying children of {} failed: {}", parent.getIdentifier(), SyncUtil.summarize(t));
-                stats.incObjectsFailed();
-                if (syncConfig.getOptions().isRememberFailed()) stats.addFailedObject(parent.getIdentifier());
+            page.add(child);
+            if (page.size() >= getPrefetchPageSize()) submitPage(storage, directory, page);
+        }
+
+        private void submitPage(SyncStorage<?> storage, ObjectSummary directory, List<ObjectSummary> page) {
+            ListCheckpointer.Entry entry = checkpointer == null ? null : checkpointer.getCrawlEntry(directory);
+            for (ObjectContext objectContext : newObjectContexts(page)) {
+                submitForSync(storage, objectContext, entry);
             }
+            page.clear();
         }
-    }
 
-    private class EstimateTask implements Runnable {
-        private String listLine;
-        private ObjectSummary summary;
-        private SyncStorage<?> storage;
-        private SyncEstimate syncEstimate;
+        private void submitRemaining(ObjectSummary directory) {
+            List<ObjectSummary> page = pages.remove(directory);
+            if (page != null && !page.isEmpty()) submitPage(source, directory, page);
+        }
 
-        EstimateTask(ObjectSummary summary, SyncStorage storage, SyncEstimate syncEstimate) {
-            this.summary = summary;
-            this.storage = storage;
-            this.syncEstimate = syncEstimate;
+        @Override
+        public boolean shouldCrawl(ObjectSummary directory, ObjectSummary subDirectory) {
+            if (checkpointer == null) return true;
+            ListCheckpointer.Entry parentEntry = checkpointer.getCrawlEntry(directory);
+            if (parentEntry == null) return true;
+            if (checkpointer.isDirectoryComplete(subDirectory)) {
+                log.debug("not crawling {} because it was completed before the last checkpoint", subDirectory.getIdentifier());
+                return false;
+            }
+            checkpointer.crawlStarted(subDirectory, parentEntry);
+            return true;
         }
 
-        EstimateTask(String listLine, SyncStorage storage, SyncEstimate syncEstimate) {
-            this.listLine = listLine;
-            this.storage = storage;
-            this.syncEstimate = syncEstimate;
+        @Override
+        public void crawlComplete(ObjectSummary directory) {
+            submitRemaining(directory);
+            if (checkpointer != null) checkpointer.crawlComplete(directory);
         }
 
         @Override
-        public void run() {
-            if (!syncControl.isRunning()) {
-                log.debug("aborting estimate task because terminate() was called: " + summary.getIdentifier());
-                return;
-            }
+        public void crawlFailed(ObjectSummary directory, Throwable t) {
             try {
-                if (summary == null) summary = storage.parseListLine(listLine);
-                syncEstimate.incTotalObjectCount(1);
-                if (syncConfig.getOptions().isEstimationEnabled() && syncConfig.getOptions().isRecursive() && summary.isDirectory()) {
-                    estimateQueryExecutor.blockingSubmit(new Runnable() {
-                        @Override
-                        public void run() {
-                            log.debug("[est.]>>>> querying children of {}", summary.getIdentifier());
-                            for (ObjectSummary child : storage.children(summary)) {
-                                estimateExecutor.blockingSubmit(new EstimateTask(child, storage, syncEstimate));
-                            }
-                            log.debug("[est.]<<<< finished querying children of {}", summary.getIdentifier());
-                        }
-                    });
-                } else {
-                    syncEstimate.incTotalByteCount(summary.getSize());
-                }
-            } catch (Throwable t) {
-                log.warn("unexpected exception", t);
+                submitRemaining(directory);
+            } catch (Throwable t2) {
+                log.warn("could not submit children of {}: {}", directory.getIdentifier(), SyncUtil.summarize(t2));
             }
+            if (checkpointer != null) checkpointer.crawlFailed(directory);
+            log.warn(">>!! querying children of {} failed: {}", directory.getIdentifier(), SyncUtil.summarize(t));
+            stats.incObjectsFailed();
+            if (syncConfig.getOptions().isRememberFailed()) stats.addFailedObject(directory.getIdentifier());
         }
     }
 }
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.emc.ecs.sync.model.ObjectContext;
+import com.emc.ecs.sync.model.ObjectStatus;
+import com.emc.ecs.sync.model.ObjectSummary;
+import com.emc.ecs.sync.service.DbService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves the progress of a sync to the {@link DbService}, so a restarted job can resume where it left off.
+ * <p>
+ * Every object from the source listing (or list file) gets an {@link Entry} in listing order. An entry is settled once
+ * its sync task is finished (complete or failed, not while it is waiting for a retry) and, if it is a directory, once
+ * everything under it is settled too. When {@link #run()} is called (at the checkpoint interval), the list position of
+ * the last entry before the first unsettled one is saved as the listing checkpoint. This means a checkpoint never skips
+ * an object that was not synced, but objects after it may be synced again after a restart (they are skipped quickly
+ * using their DB records).
+ * <p>
+ * Crawled directories are tracked the same way: once a directory and everything under it is settled, it is recorded
+ * in the DB and a restarted job will not crawl it again (see {@link #isDirectoryComplete(ObjectSummary)}). This is the
+ * checkpoint for storages that are crawled instead of listed (i.e. filesystem and NFS).
+ * <p>
+ * A restarted job never gets to objects before the checkpoint, so an object that fails for good (or a directory that
+ * could not be crawled) is recorded in the DB before it is settled. A restarted job submits these again first (see
+ * {@link #getFailedObjects()} and {@link #getFailedDirectories()}), and their records are removed once they succeed.
+ * If a failure cannot be recorded, the object stays unsettled, so the checkpoint will not move past it.
+ */
+public class ListCheckpointer implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(ListCheckpointer.class);
+
+    private DbService dbService;
+    private AtomicLong nextSequence = new AtomicLong();
+    private ConcurrentSkipListMap<Long, Entry> listedEntries = new ConcurrentSkipListMap<>();
+    private Map<ObjectContext, TrackedObject> trackedObjects = Collections.synchronizedMap(new IdentityHashMap<ObjectContext, TrackedObject>());
+    private Map<ObjectSummary, Entry> crawledDirectories = Collections.synchronizedMap(new IdentityHashMap<ObjectSummary, Entry>());
+    private Set<String> failedObjects = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private Set<String> failedDirectories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private String lastPosition;
+    private volatile boolean stopped = false;
+
+    public ListCheckpointer(DbService dbService) {
+        this.dbService = dbService;
+    }
+
+    /**
+     * Creates the entry for the next object in the source listing. The entry is held until {@link Entry#release()} is
+     * called, so call that once the object has been submitted (for sync and crawling)
+     *
+     * @param position the list position of the object (can be null if the source cannot resume a listing)
+     */
+    public Entry listed(String position) {
+        Entry entry = new Entry(null, null, position);
+        listedEntries.put(nextSequence.getAndIncrement(), entry);
+        return entry;
+    }
+
+    /**
+     * Starts tracking the sync task(s) of an object under the specified entry
+     */
+    public void track(ObjectContext objectContext, Entry entry) {
+        entry.retain();
+        trackedObjects.put(objectContext, new TrackedObject(entry));
+    }
+
+    /**
+     * Call before an object is scheduled for retry, so it stays unsettled until the retry is finished
+     */
+    public void retrying(ObjectContext objectContext) {
+        TrackedObject trackedObject = trackedObjects.get(objectContext);
+        if (trackedObject != null) trackedObject.retain();
+    }
+
+    /**
+     * Call when a sync task is finished (complete, failed or queued for retry)
+     */
+    public void finished(ObjectContext objectContext) {
+        TrackedObject trackedObject = trackedObjects.get(objectContext);
+        if (trackedObject == null) return;
+
+        // only one task of an object runs at a time, so this is the last one if no retry was added (once stopped,
+        // tasks are aborted and nothing is saved anymore)
+        if (!stopped && trackedObject.isLastTask() && !recordResult(objectContext)) {
+            trackedObjects.remove(objectContext);
+            return; // leave the entry held
+        }
+        if (trackedObject.release()) trackedObjects.remove(objectContext);
+    }
+
+    /**
+     * Returns the objects that failed in earlier runs of this job, mapped to their list-file lines (null if the object
+     * was not read from a list-file). A restarted job must submit these again
+     */
+    public Map<String, String> getFailedObjects() {
+        Map<String, String> failed = dbService.getFailedObjects();
+        failedObjects.addAll(failed.keySet());
+        return failed;
+    }
+
+    /**
+     * Returns the directories that could not be crawled in earlier runs of this job. A restarted job must crawl these
+     * again
+     */
+    public List<String> getFailedDirectories() {
+        List<String> failed = dbService.getFailedDirectories();
+        failedDirectories.addAll(failed);
+        return failed;
+    }
+
+    /**
+     * Returns true if the directory and everything under it was synced by a previous run of this job
+     */
+    public boolean isDirectoryComplete(ObjectSummary directory) {
+        return dbService.isDirectoryComplete(directory.getIdentifier());
+    }
+
+    /**
+     * Starts tracking the crawl of a directory, which is part of the specified entry. The crawl is held until
+     * {@link #crawlComplete(ObjectSummary)} is called
+     *
+     * @param parent the entry of the object (or crawled directory) the directory was found in
+     */
+    public void crawlStarted(ObjectSummary directory, Entry parent) {
+        parent.retain();
+        crawledDirectories.put(directory, new Entry(parent, directory.getIdentifier(), null));
+    }
+
+    /**
+     * Returns the entry of a directory that is being crawled (children found in the directory are tracked under this
+     * entry)
+     */
+    public Entry getCrawlEntry(ObjectSummary directory) {
+        return crawledDirectories.get(directory);
+    }
+
+    /**
+     * Call when all children of a directory have been submitted
+     */
+    public void crawlComplete(ObjectSummary directory) {
+        Entry entry = crawledDirectories.remove(directory);
+        if (entry != null) entry.release();
+    }
+
+    /**
+     * Call when a directory could not be crawled. The directory is recorded so a restarted job will crawl it again, and
+     * it is settled (but never recorded as complete) once the children that were found are settled
+     */
+    public void crawlFailed(ObjectSummary directory) {
+        Entry entry = crawledDirectories.remove(directory);
+        if (entry == null) return;
+        entry.failed = true;
+        try {
+            dbService.setDirectoryFailed(directory.getIdentifier());
+        } catch (Throwable t) {
+            log.warn("could not record failed crawl of " + directory.getIdentifier()
+                    + " (the checkpoint will not move past it)", t);
+            return;
+        }
+        entry.release();
+    }
+
+    /**
+     * Stops saving the listing checkpoint. Call this when the sync is terminated, since tasks that are aborted are
+     * finished without being synced
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Saves the listing checkpoint (if it has moved since the last save)
+     */
+    @Override
+    public synchronized void run() {
+        if (stopped) return;
+        try {
+            String position = lastPosition;
+            while (!listedEntries.isEmpty()) {
+                Map.Entry<Long, Entry> first = listedEntries.firstEntry();
+                if (!first.getValue().isSettled()) break;
+                if (first.getValue().position != null) position = first.getValue().position;
+                listedEntries.remove(first.getKey());
+            }
+            if (position != null && !position.equals(lastPosition)) {
+                log.debug("saving listing checkpoint {}", position);
+                dbService.setListCheckpoint(position);
+                lastPosition = position;
+            }
+        } catch (Throwable t) {
+            log.warn("could not save listing checkpoint", t);
+        }
+    }
+
+    /**
+     * Records a failed object, or removes the record of an object that failed before and has now succeeded
+     *
+     * @return false if a failure could not be recorded
+     */
+    private boolean recordResult(ObjectContext objectContext) {
+        ObjectSummary summary = objectContext.getSourceSummary();
+        if (objectContext.getStatus() != ObjectStatus.Error) {
+            if (!failedObjects.isEmpty() && failedObjects.remove(summary.getIdentifier())) {
+                try {
+                    dbService.removeFailed(summary.getIdentifier(), false);
+                } catch (Throwable t) {
+                    log.warn("could not remove the failure record of " + summary.getIdentifier(), t);
+                }
+            }
+            return true;
+        }
+        try {
+            dbService.setObjectFailed(summary.getIdentifier(), summary.getListFileRow());
+            return true;
+        } catch (Throwable t) {
+            log.warn("could not record failed object " + summary.getIdentifier()
+                    + " (the checkpoint will not move past it)", t);
+            return false;
+        }
+    }
+
+    /**
+     * Counts everything that has to be settled before an object from the listing or a crawled directory is settled. An
+     * entry starts with one hold, which is released by whoever created it
+     */
+    public class Entry {
+        private Entry parent;
+        private String directoryId;
+        private String position;
+        private AtomicInteger pending = new AtomicInteger(1);
+        private volatile boolean settled = false;
+        private volatile boolean failed = false;
+
+        Entry(Entry parent, String directoryId, String position) {
+            this.parent = parent;
+            this.directoryId = directoryId;
+            this.position = position;
+        }
+
+        void retain() {
+            pending.incrementAndGet();
+        }
+
+        public void release() {
+            if (pending.decrementAndGet() == 0) {
+                settled = true;
+                if (directoryId != null && !failed) {
+                    try {
+                        dbService.setDirectoryComplete(directoryId);
+                        if (failedDirectories.remove(directoryId)) dbService.removeFailed(directoryId, true);
+                    } catch (Throwable t) {
+                        log.warn("could not record completed directory " + directoryId, t);
+                    }
+                }
+                if (parent != null) parent.release();
+            }
+        }
+
+        boolean isSettled() {
+            return settled;
+        }
+    }
+
+    private static class TrackedObject {
+        private Entry entry;
+        private AtomicInteger tasks = new AtomicInteger(1);
+
+        TrackedObject(Entry entry) {
+            this.entry = entry;
+        }
+
+        void retain() {
+            tasks.incrementAndGet();
+            entry.retain();
+        }
+
+        boolean isLastTask() {
+            return tasks.get() == 1;
+        }
+
+        /**
+         * @return true if this was the last task of the object
+         */
+        boolean release() {
+            entry.release();
+            return tasks.decrementAndGet() == 0;
+        }
+    }
+}
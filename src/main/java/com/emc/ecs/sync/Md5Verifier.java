@@ -14,12 +14,17 @@
  */
 package com.emc.ecs.sync;
 
+import com.emc.ecs.sync.config.ChecksumAlgorithm;
 import com.emc.ecs.sync.config.SyncOptions;
 import com.emc.ecs.sync.model.SyncObject;
-import com.emc.ecs.sync.util.EnhancedThreadPoolExecutor;
+import com.emc.ecs.sync.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.xml.bind.DatatypeConverter;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -29,10 +34,17 @@ import java.util.concurrent.LinkedBlockingDeque;
 public class Md5Verifier implements SyncVerifier {
     private static final Logger log = LoggerFactory.getLogger(Md5Verifier.class);
 
+    private SyncOptions options;
     private ExecutorService executor;
+    private ExecutorService chunkExecutor;
 
     public Md5Verifier(SyncOptions syncOptions) {
+        this.options = syncOptions;
         executor = new EnhancedThreadPoolExecutor(syncOptions.getThreadCount() * 2, new LinkedBlockingDeque<Runnable>(), "verify-pool");
+        if (syncOptions.getVerifyChunkThreshold() > 0) {
+            int chunkThreads = syncOptions.getThreadCount() * 2 * Math.max(syncOptions.getRangeReadThreadCount(), 1);
+            chunkExecutor = new EnhancedThreadPoolExecutor(chunkThreads, new LinkedBlockingDeque<Runnable>(), "verify-chunk-pool");
+        }
     }
 
     @Override
@@ -46,27 +58,40 @@ public class Md5Verifier implements SyncVerifier {
             if (targetObject.getMetadata().isDirectory())
                 throw new RuntimeException("source is data object; target is directory");
 
+            if (options.isVerifyStoredChecksum() && verifyStoredMd5(sourceObject, targetObject)) return;
+
+            if (isChunkedVerifySupported(sourceObject, targetObject)) {
+                // if the source was hashed during the transfer, only the target has to be read
+                TreeHash sourceHash = sourceObject.getChunkHash();
+                if (sourceHash != null && sourceHash.getSize() == sourceObject.getMetadata().getContentLength())
+                    verifyTargetChunks(sourceObject, sourceHash, targetObject);
+                else if (sourceObject.isChecksumAvailable()) verifyTargetRanges(sourceObject, targetObject);
+                else verifyChunks(sourceObject, targetObject);
+                return;
+            }
+
             // thread the streams for efficiency (in case of verify-only)
-            Future<String> futureSourceMd5 = executor.submit(new Callable<String>() {
+            Future<String> futureSourceChecksum = executor.submit(new Callable<String>() {
                 @Override
                 public String call() throws Exception {
-                    return sourceObject.getMd5Hex(true);
+                    return sourceObject.getChecksumHex(true);
                 }
             });
-            Future<String> futureTargetMd5 = executor.submit(new Callable<String>() {
+            Future<String> futureTargetChecksum = executor.submit(new Callable<String>() {
                 @Override
                 public String call() throws Exception {
-                    return targetObject.getMd5Hex(true);
+                    return targetObject.getChecksumHex(true);
                 }
             });
 
             try {
-                String sourceMd5 = futureSourceMd5.get(), targetMd5 = futureTargetMd5.get();
+                String sourceChecksum = futureSourceChecksum.get(), targetChecksum = futureTargetChecksum.get();
+                ChecksumAlgorithm algorithm = sourceObject.getChecksumAlgorithm();
 
-                if (!sourceMd5.equals(targetMd5))
-                    throw new RuntimeException(String.format("MD5 sum mismatch (%s != %s)", sourceMd5, targetMd5));
+                if (sourceChecksum == null || !sourceChecksum.equals(targetChecksum))
+                    throw new RuntimeException(String.format("%s sum mismatch (%s != %s)", algorithm, sourceChecksum, targetChecksum));
                 else
-                    log.debug("MD5 sum verified ({} == {})", sourceMd5, targetMd5);
+                    log.debug("{} sum verified ({} == {})", algorithm, sourceChecksum, targetChecksum);
 
             } catch (Exception e) {
                 if (e instanceof RuntimeException) throw (RuntimeException) e;
@@ -75,9 +100,167 @@ public class Md5Verifier implements SyncVerifier {
         }
     }
 
+    /**
+     * Compares the source MD5 (usually calculated during the transfer) with the MD5 the target stores for the object,
+     * so the target data does not have to be read back. The stored MD5 can only be used if no filter has replaced the
+     * target data stream (i.e. decrypted it)
+     *
+     * @return false if there is no stored MD5 to compare (the target must be read back)
+     */
+    private boolean verifyStoredMd5(SyncObject sourceObject, SyncObject targetObject) {
+        if (sourceObject.getChecksumAlgorithm() != ChecksumAlgorithm.MD5) return false;
+        if (!targetObject.isDataStreamUntouched()) return false;
+        String storedMd5 = targetObject.getStoredMd5Hex();
+        if (storedMd5 == null) return false;
+
+        String sourceMd5 = sourceObject.getChecksumHex(true);
+        if (!storedMd5.equalsIgnoreCase(sourceMd5))
+            throw new RuntimeException(String.format("MD5 sum mismatch (%s != stored %s)", sourceMd5, storedMd5));
+        log.debug("MD5 sum verified against stored MD5 ({} == {})", sourceMd5, storedMd5);
+        return true;
+    }
+
+    /**
+     * Chunked verification reads the data straight from each storage, so both storages must support ranged reads and
+     * the data must not be changed by a filter
+     */
+    private boolean isChunkedVerifySupported(SyncObject sourceObject, SyncObject targetObject) {
+        if (chunkExecutor == null) return false;
+        if (sourceObject.getMetadata().getContentLength() < options.getVerifyChunkThreshold()) return false;
+        if (sourceObject.isDataStreamReplaced() || targetObject.isDataStreamReplaced()) return false;
+        return sourceObject.getProperty(ParallelRangeInputStream.PROP_RANGE_READER) != null
+                && targetObject.getProperty(ParallelRangeInputStream.PROP_RANGE_READER) != null;
+    }
+
+    /**
+     * Reads the target back with parallel ranged reads and compares its checksum with the source checksum that was
+     * calculated during the transfer, so the source is not read again. This is only used when the source was not
+     * hashed in chunks during the transfer (i.e. a target wrote the data without the data stream, but calculated its
+     * checksum), so a mismatch is only reported for the whole object, without the ranges that differ
+     */
+    private void verifyTargetRanges(SyncObject sourceObject, SyncObject targetObject) {
+        long size = sourceObject.getMetadata().getContentLength();
+        long targetSize = targetObject.getMetadata().getContentLength();
+        if (targetSize != size)
+            throw new RuntimeException(String.format("size mismatch (%d != %d)", size, targetSize));
+
+        ChecksumAlgorithm algorithm = sourceObject.getChecksumAlgorithm();
+        String sourceChecksum = sourceObject.getChecksumHex(false);
+        MessageDigest digest = ChecksumUtil.createDigest(algorithm);
+        byte[] buffer = BufferPool.getInstance().borrow(options.getBufferSize());
+        try (InputStream input = new ParallelRangeInputStream(targetObject.getRangeReader(), size,
+                options.getRangeReadSize(), options.getRangeReadThreadCount(), options.getRetryAttempts())) {
+            int c;
+            while ((c = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, c);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("could not read target data", e);
+        } finally {
+            BufferPool.getInstance().release(buffer);
+        }
+        String targetChecksum = DatatypeConverter.printHexBinary(digest.digest());
+
+        if (!targetChecksum.equalsIgnoreCase(sourceChecksum))
+            throw new RuntimeException(String.format("%s sum mismatch (%s != %s)", algorithm, sourceChecksum, targetChecksum));
+        log.debug("{} sum verified against ranged read of target ({} == {})", algorithm, sourceChecksum, targetChecksum);
+    }
+
+    /**
+     * Hashes the target in chunks (with parallel ranged reads) and compares them with the chunk hashes of the source
+     * that were calculated during the transfer, so the source is not read again
+     */
+    private void verifyTargetChunks(SyncObject sourceObject, TreeHash sourceHash, SyncObject targetObject) {
+        long size = sourceObject.getMetadata().getContentLength();
+        long targetSize = targetObject.getMetadata().getContentLength();
+        if (targetSize != size)
+            throw new RuntimeException(String.format("size mismatch (%d != %d)", size, targetSize));
+
+        try {
+            TreeHash targetHash = createHashTask(targetObject, size, (int) sourceHash.getChunkSize(),
+                    sourceHash.getAlgorithm()).call();
+            compareHashes(sourceHash, targetHash);
+        } catch (Exception e) {
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Hashes both objects in chunks (with parallel ranged reads) and compares the root hashes. On a mismatch, a
+     * {@link ChunkMismatchException} lists the byte ranges that differ. This reads the source again, so it is only
+     * used when there is no source checksum from the transfer (i.e. verify-only, or a server-side copy)
+     */
+    private void verifyChunks(SyncObject sourceObject, SyncObject targetObject) {
+        final long size = sourceObject.getMetadata().getContentLength();
+        long targetSize = targetObject.getMetadata().getContentLength();
+        if (targetSize != size)
+            throw new RuntimeException(String.format("size mismatch (%d != %d)", size, targetSize));
+
+        ChecksumAlgorithm algorithm = sourceObject.getChecksumAlgorithm();
+        if (algorithm == null) algorithm = ChecksumAlgorithm.MD5;
+
+        int chunkSize = options.getVerifyChunkSize();
+        Future<TreeHash> futureSourceHash = executor.submit(createHashTask(sourceObject, size, chunkSize, algorithm));
+        Future<TreeHash> futureTargetHash = executor.submit(createHashTask(targetObject, size, chunkSize, algorithm));
+
+        try {
+            compareHashes(futureSourceHash.get(), futureTargetHash.get());
+
+            // the data stream was not read (i.e. verify-only), but the data was
+            if (sourceObject.getBytesRead() == 0) sourceObject.setBytesRead(size);
+
+        } catch (Exception e) {
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            throw new RuntimeException(e);
+        } finally {
+            futureSourceHash.cancel(true);
+            futureTargetHash.cancel(true);
+        }
+    }
+
+    private void compareHashes(TreeHash sourceHash, TreeHash targetHash) {
+        ChecksumAlgorithm algorithm = sourceHash.getAlgorithm();
+        if (!Arrays.equals(sourceHash.getRootHash(), targetHash.getRootHash())) {
+            List<TreeHash.Chunk> mismatched = sourceHash.getMismatchedChunks(targetHash);
+            throw new ChunkMismatchException(String.format("%s tree hash mismatch (%s != %s) in %d of %d chunks: %s",
+                    algorithm, sourceHash.getRootHashHex(), targetHash.getRootHashHex(), mismatched.size(),
+                    sourceHash.getChunks().size(), describeRanges(mismatched)), mismatched);
+        }
+        log.debug("{} tree hash verified ({} == {}, {} chunks)", algorithm, sourceHash.getRootHashHex(),
+                targetHash.getRootHashHex(), sourceHash.getChunks().size());
+    }
+
+    /**
+     * Reads go through {@link SyncObject#getRangeReader()}, so they are counted (and throttled) like the data stream
+     */
+    private Callable<TreeHash> createHashTask(SyncObject object, final long size, final int chunkSize,
+                                              final ChecksumAlgorithm algorithm) {
+        final ParallelRangeInputStream.RangeSource rangeSource = object.getRangeReader();
+        return new Callable<TreeHash>() {
+            @Override
+            public TreeHash call() throws Exception {
+                return TreeHash.calculate(rangeSource, size, chunkSize, algorithm, options.getRangeReadThreadCount(),
+                        options.getRetryAttempts(), chunkExecutor);
+            }
+        };
+    }
+
+    private String describeRanges(List<TreeHash.Chunk> chunks) {
+        int max = 10;
+        StringBuilder ranges = new StringBuilder();
+        for (int i = 0; i < chunks.size() && i < max; i++) {
+            if (i > 0) ranges.append(", ");
+            ranges.append(chunks.get(i));
+        }
+        if (chunks.size() > max) ranges.append(" and ").append(chunks.size() - max).append(" more");
+        return ranges.toString();
+    }
+
     @Override
     public void close() throws Exception {
         List<Runnable> tasks = executor.shutdownNow();
         if (!tasks.isEmpty()) log.warn(tasks.size() + " verification tasks still running when closed");
+        if (chunkExecutor != null) chunkExecutor.shutdownNow();
     }
 }
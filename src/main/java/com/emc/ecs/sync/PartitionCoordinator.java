@@ -0,0 +1,221 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.emc.ecs.sync.config.ConfigurationException;
+import com.emc.ecs.sync.config.SyncOptions;
+import com.emc.ecs.sync.model.ObjectSummary;
+import com.emc.ecs.sync.rest.ClusterProgress;
+import com.emc.ecs.sync.rest.NodeProgress;
+import com.emc.ecs.sync.service.DbService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Lets several ecs-sync processes (nodes) work on the same job. The source listing is split into partitions, which are
+ * leased from a table in the {@link DbService}. Each node leases its share of the remaining partitions, syncs the
+ * objects in them (see {@link #getPartition(ObjectSummary)}) and marks them complete, until every partition is
+ * complete.
+ * <p>
+ * When {@link #run()} is called (at the heartbeat interval), the node renews its leases and saves its progress. If a
+ * node dies, its leases expire after the lease timeout and other nodes take them over. The progress of all nodes is
+ * available from {@link #getClusterProgress()}.
+ */
+public class PartitionCoordinator implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(PartitionCoordinator.class);
+
+    // list-file lines are partitioned in chunks, to keep neighboring lines (i.e. keys in order) together
+    public static final int LIST_FILE_CHUNK_SIZE = 1000;
+
+    private EcsSync sync;
+    private DbService dbService;
+    private String nodeId;
+    private int partitionCount;
+    private long leaseTimeoutMs;
+    private boolean restart;
+    private Set<Integer> partitions = Collections.emptySet();
+    private long objectsExpected, bytesExpected;
+    private volatile ClusterProgress clusterProgress;
+
+    public PartitionCoordinator(EcsSync sync, DbService dbService, SyncOptions options) {
+        this.sync = sync;
+        this.dbService = dbService;
+        this.nodeId = options.getNodeId();
+        if (nodeId == null) nodeId = ManagementFactory.getRuntimeMXBean().getName();
+        this.partitionCount = options.getPartitionCount();
+        this.leaseTimeoutMs = options.getLeaseTimeout() * 1000L;
+        this.restart = options.isRestartPartitions();
+    }
+
+    /**
+     * Creates the partitions (or joins a job that another node started, or starts a new run of a complete job if
+     * restart is set) and registers this node. Nodes that have not sent a heartbeat within the lease timeout are
+     * removed from the progress table
+     *
+     * @throws ConfigurationException if the job was started with a different number of partitions
+     */
+    public void start() {
+        dbService.initPartitions(partitionCount, restart);
+        dbService.deleteStaleNodes(System.currentTimeMillis() - leaseTimeoutMs);
+        int existing = dbService.getPartitionCount();
+        if (existing != partitionCount)
+            throw new ConfigurationException(String.format("this job is already running with %d partitions (%d configured)",
+                    existing, partitionCount));
+        log.info("node {} joining job with {} partitions ({} complete)", nodeId, partitionCount,
+                dbService.getCompletePartitionCount());
+        run();
+    }
+
+    /**
+     * Returns the partition of an object from the source listing. Objects found by crawling a directory are part of
+     * the directory's partition
+     */
+    public int getPartition(ObjectSummary summary) {
+        return (summary.getIdentifier().hashCode() & Integer.MAX_VALUE) % partitionCount;
+    }
+
+    /**
+     * @param lineNumber the line number in the list-file (starting at 1)
+     */
+    public int getListLinePartition(long lineNumber) {
+        return (int) (((lineNumber - 1) / LIST_FILE_CHUNK_SIZE) % partitionCount);
+    }
+
+    /**
+     * Leases this node's share of the remaining partitions (the remaining partitions divided by the number of live
+     * nodes, rounded up). Call {@link #completePartitions()} when they are synced
+     *
+     * @return the leased partitions (empty if none are available right now)
+     */
+    public synchronized Set<Integer> claimPartitions() {
+        int remaining = partitionCount - dbService.getCompletePartitionCount();
+        int nodes = Math.max(1, countLiveNodes(dbService.getNodeProgress()));
+        int share = (remaining + nodes - 1) / nodes;
+        partitions = new TreeSet<>(dbService.claimPartitions(nodeId, share, System.currentTimeMillis() + leaseTimeoutMs));
+        if (!partitions.isEmpty()) log.info("node {} leased partitions {}", nodeId, partitions);
+        return Collections.unmodifiableSet(partitions);
+    }
+
+    /**
+     * Marks the partitions leased by this node complete
+     */
+    public synchronized void completePartitions() {
+        for (Integer partition : partitions) {
+            if (!dbService.completePartition(nodeId, partition))
+                log.warn("node {} lost its lease on partition {} (another node will sync it again)", nodeId, partition);
+        }
+        partitions = Collections.emptySet();
+    }
+
+    public boolean isJobComplete() {
+        return dbService.getCompletePartitionCount() >= partitionCount;
+    }
+
+    /**
+     * Saves a final heartbeat and gives up any leases that are not complete, so other nodes can take them over right
+     * away
+     */
+    public synchronized void stop() {
+        partitions = Collections.emptySet();
+        try {
+            dbService.releasePartitions(nodeId);
+        } catch (Throwable t) {
+            log.warn("could not release partitions (they will expire)", t);
+        }
+        run();
+    }
+
+    public long getHeartbeatIntervalMs() {
+        return Math.max(1000, leaseTimeoutMs / 3);
+    }
+
+    /**
+     * Renews this node's leases and saves its progress
+     */
+    @Override
+    public synchronized void run() {
+        try {
+            if (!partitions.isEmpty()) {
+                int renewed = dbService.renewPartitions(nodeId, System.currentTimeMillis() + leaseTimeoutMs);
+                if (renewed < partitions.size())
+                    log.warn("node {} could only renew {} of {} leases (the others were taken over by another node)",
+                            nodeId, renewed, partitions.size());
+            }
+
+            // the estimate is not available while a listing is in progress, so keep the last one
+            if (sync.getEstimatedTotalObjects() >= 0) objectsExpected = sync.getEstimatedTotalObjects();
+            if (sync.getEstimatedTotalBytes() >= 0) bytesExpected = sync.getEstimatedTotalBytes();
+
+            SyncStats stats = sync.getStats();
+            NodeProgress progress = new NodeProgress();
+            progress.setNodeId(nodeId);
+            progress.setLastHeartbeat(System.currentTimeMillis());
+            progress.setPartitions(partitions.size());
+            progress.setTotalObjectsExpected(objectsExpected);
+            progress.setTotalBytesExpected(bytesExpected);
+            progress.setObjectsComplete(stats.getObjectsComplete());
+            progress.setBytesComplete(stats.getBytesComplete());
+            progress.setObjectsSkipped(stats.getObjectsSkipped());
+            progress.setBytesSkipped(stats.getBytesSkipped());
+            progress.setObjectsFailed(stats.getObjectsFailed());
+            dbService.setNodeProgress(progress);
+
+            clusterProgress = summarize(dbService.getNodeProgress(), dbService.getCompletePartitionCount());
+        } catch (Throwable t) {
+            log.warn("heartbeat failed", t);
+        }
+    }
+
+    /**
+     * Returns the combined progress of all nodes as of the last heartbeat
+     */
+    public ClusterProgress getClusterProgress() {
+        return clusterProgress;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    protected ClusterProgress summarize(List<NodeProgress> nodes, int partitionsComplete) {
+        ClusterProgress cluster = new ClusterProgress();
+        cluster.setPartitionCount(partitionCount);
+        cluster.setPartitionsComplete(partitionsComplete);
+        cluster.setLiveNodes(countLiveNodes(nodes));
+        for (NodeProgress node : nodes) {
+            cluster.setTotalObjectsExpected(cluster.getTotalObjectsExpected() + node.getTotalObjectsExpected());
+            cluster.setTotalBytesExpected(cluster.getTotalBytesExpected() + node.getTotalBytesExpected());
+            cluster.setObjectsComplete(cluster.getObjectsComplete() + node.getObjectsComplete());
+            cluster.setBytesComplete(cluster.getBytesComplete() + node.getBytesComplete());
+            cluster.setObjectsSkipped(cluster.getObjectsSkipped() + node.getObjectsSkipped());
+            cluster.setBytesSkipped(cluster.getBytesSkipped() + node.getBytesSkipped());
+            cluster.setObjectsFailed(cluster.getObjectsFailed() + node.getObjectsFailed());
+        }
+        cluster.setNodes(nodes);
+        return cluster;
+    }
+
+    private int countLiveNodes(List<NodeProgress> nodes) {
+        long cutoff = System.currentTimeMillis() - leaseTimeoutMs;
+        int live = 0;
+        for (NodeProgress node : nodes) {
+            if (node.getLastHeartbeat() >= cutoff) live++;
+        }
+        return live;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.amazonaws.AmazonServiceException;
+import com.emc.atmos.AtmosException;
+import com.emc.ecs.sync.config.SyncOptions;
+import com.emc.ecs.sync.model.ObjectContext;
+import com.emc.ecs.sync.storage.SyncStorage;
+import com.emc.object.s3.S3Exception;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds failed objects in a {@link DelayQueue} until their backoff delay has passed, then hands them back for sync.
+ * The delay is exponential in the number of failures (base delay * 2^(failures - 1), capped at the max delay) with
+ * jitter (the second half of the delay is random), so a burst of failures does not come back as a burst of retries.
+ * The base delay also depends on the class of error: throttling responses back off the longest, network errors
+ * somewhat longer than everything else.
+ */
+public class RetryScheduler {
+    private static final Logger log = LoggerFactory.getLogger(RetryScheduler.class);
+
+    public enum ErrorClass {
+        Throttled(5), Network(2), Other(1);
+
+        private int delayMultiplier;
+
+        ErrorClass(int delayMultiplier) {
+            this.delayMultiplier = delayMultiplier;
+        }
+
+        public int getDelayMultiplier() {
+            return delayMultiplier;
+        }
+    }
+
+    public interface Handler {
+        void retry(SyncStorage<?> source, ObjectContext objectContext);
+    }
+
+    private SyncOptions options;
+    private Handler handler;
+    private DelayQueue<DelayedRetry> retryQueue = new DelayQueue<>();
+    private AtomicInteger unfinishedRetries = new AtomicInteger();
+    private Random random = new Random();
+    private Thread dispatcher;
+    private final Object pauseLock = new Object();
+    private boolean paused = false;
+    private volatile boolean stopped = false;
+
+    public RetryScheduler(SyncOptions options, Handler handler) {
+        this.options = options;
+        this.handler = handler;
+        dispatcher = new Thread(new Dispatcher(), "retry-scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Schedules the object to be retried after its backoff delay
+     *
+     * @return the delay in milliseconds
+     * @throws IllegalStateException if the scheduler is stopped
+     */
+    public long schedule(SyncStorage<?> source, ObjectContext objectContext, Throwable t) {
+        if (stopped) throw new IllegalStateException("retry scheduler is stopped");
+        long delay = getDelay(objectContext.getFailures(), classify(t));
+        unfinishedRetries.incrementAndGet();
+        retryQueue.add(new DelayedRetry(source, objectContext, System.currentTimeMillis() + delay));
+        return delay;
+    }
+
+    long getDelay(int failures, ErrorClass errorClass) {
+        long maxDelay = options.getMaxRetryDelay();
+        long delay = (long) options.getRetryDelay() * errorClass.getDelayMultiplier();
+        for (int i = 1; i < failures && delay < maxDelay; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxDelay);
+        if (delay <= 0) return 0;
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (delay - half));
+    }
+
+    public static ErrorClass classify(Throwable t) {
+        while (t != null) {
+            if (t instanceof AmazonServiceException) {
+                AmazonServiceException e = (AmazonServiceException) t;
+                if (isThrottle(e.getStatusCode(), e.getErrorCode())) return ErrorClass.Throttled;
+            } else if (t instanceof S3Exception) {
+                S3Exception e = (S3Exception) t;
+                if (isThrottle(e.getHttpCode(), e.getErrorCode())) return ErrorClass.Throttled;
+            } else if (t instanceof AtmosException) {
+                if (isThrottle(((AtmosException) t).getHttpCode(), null)) return ErrorClass.Throttled;
+            } else if (t instanceof SocketException || t instanceof SocketTimeoutException
+                    || t instanceof UnknownHostException) {
+                return ErrorClass.Network;
+            }
+            t = t.getCause();
+        }
+        return ErrorClass.Other;
+    }
+
+    private static boolean isThrottle(int httpCode, String errorCode) {
+        return httpCode == 503 || httpCode == 429 || "SlowDown".equals(errorCode) || "Throttling".equals(errorCode)
+                || "ThrottlingException".equals(errorCode) || "RequestLimitExceeded".equals(errorCode);
+    }
+
+    public void pause() {
+        synchronized (pauseLock) {
+            paused = true;
+        }
+    }
+
+    public void resume() {
+        synchronized (pauseLock) {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * Discards all scheduled retries and stops the dispatcher
+     */
+    public void stop() {
+        stopped = true;
+        unfinishedRetries.addAndGet(-retryQueue.drainTo(new ArrayList<DelayedRetry>()));
+        resume();
+        dispatcher.interrupt();
+    }
+
+    /**
+     * Returns the number of objects waiting for their retry delay to pass
+     */
+    public int getObjectsAwaitingRetry() {
+        return retryQueue.size();
+    }
+
+    /**
+     * Returns the number of objects waiting for retry or being handed back for sync
+     */
+    public int getUnfinishedRetries() {
+        return unfinishedRetries.get();
+    }
+
+    private class Dispatcher implements Runnable {
+        @Override
+        public void run() {
+            while (!stopped) {
+                try {
+                    DelayedRetry retry = retryQueue.take();
+                    try {
+                        synchronized (pauseLock) {
+                            while (paused) pauseLock.wait();
+                        }
+                        if (!stopped) handler.retry(retry.source, retry.objectContext);
+                    } finally {
+                        unfinishedRetries.decrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    if (!stopped) log.warn("retry scheduler interrupted", e);
+                } catch (Throwable t) {
+                    log.warn("could not submit retry", t);
+                }
+            }
+            log.debug("retry scheduler stopped");
+        }
+    }
+
+    private static class DelayedRetry implements Delayed {
+        private SyncStorage<?> source;
+        private ObjectContext objectContext;
+        private long retryTime;
+
+        DelayedRetry(SyncStorage<?> source, ObjectContext objectContext, long retryTime) {
+            this.source = source;
+            this.objectContext = objectContext;
+            this.retryTime = retryTime;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(retryTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(retryTime, ((DelayedRetry) o).retryTime);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.emc.ecs.sync.config.SyncOptions;
+import com.emc.ecs.sync.model.ObjectSummary;
+import com.emc.ecs.sync.rest.LaneProgress;
+import com.emc.ecs.sync.util.EnhancedThreadPoolExecutor;
+import com.emc.ecs.sync.util.PerformanceWindow;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes each {@link SyncTask} to a small or large object lane based on the size of the source object. Each lane has
+ * its own thread pool and bounded queue, so a handful of very large objects can only occupy the large lane's threads
+ * while small objects keep flowing (and vice versa). Throughput is tracked per lane.
+ */
+public class SyncLanes implements AutoCloseable {
+    public static final int LANE_QUEUE_SIZE = 1000;
+
+    public enum Lane {Small, Large}
+
+    private long largeObjectThreshold;
+    private Map<Lane, EnhancedThreadPoolExecutor> executors = new EnumMap<>(Lane.class);
+    private Map<Lane, LaneStats> laneStats = new EnumMap<>(Lane.class);
+
+    public SyncLanes(SyncOptions options) {
+        this.largeObjectThreshold = options.getLargeObjectThreshold();
+        for (Lane lane : Lane.values()) {
+            executors.put(lane, new EnhancedThreadPoolExecutor(getLaneThreadCount(options, lane),
+                    new LinkedBlockingDeque<Runnable>(LANE_QUEUE_SIZE), lane.name().toLowerCase() + "-sync-pool"));
+            laneStats.put(lane, new LaneStats());
+        }
+    }
+
+    /**
+     * Submits a task to the lane matching its object size, blocking if that lane's queue is full
+     */
+    public void submit(SyncTask syncTask) {
+        Lane lane = getLane(syncTask.getObjectContext().getSourceSummary());
+        executors.get(lane).blockingSubmit(new LaneTask(syncTask, lane));
+    }
+
+    public Lane getLane(ObjectSummary summary) {
+        if (!summary.isDirectory() && summary.getSize() >= largeObjectThreshold) return Lane.Large;
+        return Lane.Small;
+    }
+
+    public void resizeThreadPools(SyncOptions options) {
+        for (Lane lane : Lane.values()) {
+            executors.get(lane).resizeThreadPool(getLaneThreadCount(options, lane));
+        }
+    }
+
+    public void pause() {
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            executor.pause();
+        }
+    }
+
+    public void resume() {
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            executor.resume();
+        }
+    }
+
+    public boolean isPaused() {
+        return executors.get(Lane.Small).isPaused();
+    }
+
+    public void stop() {
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            executor.stop();
+        }
+    }
+
+    public void shutdown() {
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (LaneStats stats : laneStats.values()) {
+            stats.close();
+        }
+    }
+
+    public long getUnfinishedTasks() {
+        long unfinished = 0;
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            unfinished += executor.getUnfinishedTasks();
+        }
+        return unfinished;
+    }
+
+    public int getActiveCount() {
+        int active = 0;
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            active += executor.getActiveCount();
+        }
+        return active;
+    }
+
+    public List<LaneProgress> getLaneProgress() {
+        List<LaneProgress> progress = new ArrayList<>();
+        for (Lane lane : Lane.values()) {
+            EnhancedThreadPoolExecutor executor = executors.get(lane);
+            LaneStats stats = laneStats.get(lane);
+            progress.add(new LaneProgress(lane.name(), executor.getMaximumPoolSize(), executor.getActiveCount(),
+                    executor.getQueue().size(), stats.objectsComplete.get(), stats.bytesComplete.get(),
+                    stats.objectRate.getWindowRate(), stats.byteRate.getWindowRate()));
+        }
+        return progress;
+    }
+
+    /**
+     * Lanes are used when a large object threshold is set (unless the pipeline is enabled, which has its own pools)
+     */
+    public static boolean isEnabled(SyncOptions options) {
+        return !options.isPipelineEnabled() && options.getLargeObjectThreshold() > 0;
+    }
+
+    /**
+     * The thread count is split between the lanes: the large lane gets its share and the small lane gets the rest (each
+     * lane always has at least one thread)
+     */
+    public static int getLaneThreadCount(SyncOptions options, Lane lane) {
+        int threadCount = options.getThreadCount();
+        int largeThreads = options.getLargeObjectThreadCount() > 0 ? options.getLargeObjectThreadCount() : threadCount / 4;
+        largeThreads = Math.max(1, Math.min(largeThreads, threadCount - 1));
+        if (lane == Lane.Large) return largeThreads;
+        return Math.max(1, threadCount - largeThreads);
+    }
+
+    private class LaneTask implements Runnable {
+        private SyncTask syncTask;
+        private Lane lane;
+
+        LaneTask(SyncTask syncTask, Lane lane) {
+            this.syncTask = syncTask;
+            this.lane = lane;
+        }
+
+        @Override
+        public void run() {
+            syncTask.run();
+            if (syncTask.getObjectContext().getStatus().isSuccess())
+                laneStats.get(lane).add(syncTask.getObjectContext().getSourceSummary().getSize());
+        }
+    }
+
+    private static class LaneStats implements AutoCloseable {
+        private AtomicLong objectsComplete = new AtomicLong();
+        private AtomicLong bytesComplete = new AtomicLong();
+        private PerformanceWindow objectRate = new PerformanceWindow(500, 20);
+        private PerformanceWindow byteRate = new PerformanceWindow(500, 20);
+
+        void add(long bytes) {
+            objectsComplete.incrementAndGet();
+            bytesComplete.addAndGet(bytes);
+            objectRate.increment(1);
+            byteRate.increment(bytes);
+        }
+
+        @Override
+        public void close() {
+            objectRate.close();
+            byteRate.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.emc.ecs.sync.config.SyncOptions;
+import com.emc.ecs.sync.rest.StageProgress;
+import com.emc.ecs.sync.util.EnhancedFutureTask;
+import com.emc.ecs.sync.util.EnhancedThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Runs each {@link SyncTask} as a series of stages, where each stage has its own thread pool and bounded queue. A task
+ * is handed to the next stage's queue as soon as it finishes a stage, so a slow DB or a slow verification only
+ * occupies the threads of its own stage. Since tasks only move forward through the stages, a full queue simply blocks
+ * the previous stage (back-pressure) and can never deadlock.
+ */
+public class SyncPipeline {
+    private static final Logger log = LoggerFactory.getLogger(SyncPipeline.class);
+
+    public static final int STAGE_QUEUE_SIZE = 1000;
+
+    private Map<SyncTask.Stage, EnhancedThreadPoolExecutor> executors = new EnumMap<>(SyncTask.Stage.class);
+
+    public SyncPipeline(SyncOptions options) {
+        for (SyncTask.Stage stage : SyncTask.Stage.values()) {
+            executors.put(stage, new EnhancedThreadPoolExecutor(getStageThreadCount(options, stage),
+                    new LinkedBlockingDeque<Runnable>(STAGE_QUEUE_SIZE), stage.name().toLowerCase() + "-pool"));
+        }
+    }
+
+    /**
+     * Submits a new task to the first stage of the pipeline, blocking if that stage's queue is full
+     */
+    public void submit(SyncTask syncTask) {
+        submit(syncTask, SyncTask.Stage.Head);
+    }
+
+    private void submit(SyncTask syncTask, SyncTask.Stage stage) {
+        executors.get(stage).blockingSubmit(new StageTask(syncTask, stage));
+    }
+
+    public void resizeThreadPools(SyncOptions options) {
+        for (SyncTask.Stage stage : SyncTask.Stage.values()) {
+            executors.get(stage).resizeThreadPool(getStageThreadCount(options, stage));
+        }
+    }
+
+    public void pause() {
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            executor.pause();
+        }
+    }
+
+    public void resume() {
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            executor.resume();
+        }
+    }
+
+    public boolean isPaused() {
+        return executors.get(SyncTask.Stage.Head).isPaused();
+    }
+
+    /**
+     * Stops all stages. Tasks waiting in a stage queue may be holding a DB lock and an open source object, so they are
+     * released before being discarded
+     */
+    public void stop() {
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            for (SyncTask syncTask : getQueuedTasks(executor)) {
+                syncTask.release();
+            }
+            executor.stop();
+        }
+    }
+
+    public void shutdown() {
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+    }
+
+    public long getUnfinishedTasks() {
+        long unfinished = 0;
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            unfinished += executor.getUnfinishedTasks();
+        }
+        return unfinished;
+    }
+
+    public int getActiveCount() {
+        int active = 0;
+        for (EnhancedThreadPoolExecutor executor : executors.values()) {
+            active += executor.getActiveCount();
+        }
+        return active;
+    }
+
+    public List<StageProgress> getStageProgress() {
+        List<StageProgress> progress = new ArrayList<>();
+        for (Map.Entry<SyncTask.Stage, EnhancedThreadPoolExecutor> entry : executors.entrySet()) {
+            EnhancedThreadPoolExecutor executor = entry.getValue();
+            progress.add(new StageProgress(entry.getKey().name(), executor.getMaximumPoolSize(),
+                    executor.getActiveCount(), executor.getQueue().size()));
+        }
+        return progress;
+    }
+
+    protected int getStageThreadCount(SyncOptions options, SyncTask.Stage stage) {
+        int threadCount = 0;
+        switch (stage) {
+            case Head:
+                threadCount = options.getHeadThreadCount();
+                break;
+            case Verify:
+                threadCount = options.getVerifyThreadCount();
+                break;
+            case Record:
+                threadCount = options.getRecordThreadCount();
+                break;
+        }
+        return threadCount > 0 ? threadCount : options.getThreadCount();
+    }
+
+    private List<SyncTask> getQueuedTasks(EnhancedThreadPoolExecutor executor) {
+        List<SyncTask> syncTasks = new ArrayList<>();
+        for (Runnable runnable : executor.getQueue().toArray(new Runnable[0])) {
+            if (runnable instanceof EnhancedFutureTask) {
+                Runnable task = ((EnhancedFutureTask<?>) runnable).getRunnable();
+                if (task instanceof StageTask) syncTasks.add(((StageTask) task).syncTask);
+            }
+        }
+        return syncTasks;
+    }
+
+    private class StageTask implements Runnable {
+        private SyncTask syncTask;
+        private SyncTask.Stage stage;
+
+        StageTask(SyncTask syncTask, SyncTask.Stage stage) {
+            this.syncTask = syncTask;
+            this.stage = stage;
+        }
+
+        @Override
+        public void run() {
+            SyncTask.Stage nextStage = syncTask.runStage(stage);
+            if (nextStage != null) {
+                try {
+                    submit(syncTask, nextStage);
+                } catch (IllegalStateException e) {
+                    log.debug("could not hand off {} to {} stage (pipeline is stopping)",
+                            syncTask.getObjectContext().getSourceSummary().getIdentifier(), nextStage);
+                    syncTask.release();
+                }
+            }
+        }
+    }
+}
@@ -24,7 +24,7 @@ import java.util.Set;
 
 public class SyncStats implements AutoCloseable {
     private long objectsComplete, objectsSkipped, objectsFailed;
-    private long bytesComplete, bytesSkipped, pastRunTime, startTime, stopTime, cpuStartTime;
+    private long bytesComplete, bytesSkipped, bytesDeduplicated, pastRunTime, startTime, stopTime, cpuStartTime;
     private Set<String> failedObjects = new HashSet<>();
     private PerformanceWindow objectCompleteRate = new PerformanceWindow(500, 20);
     private PerformanceWindow objectSkipRate = new PerformanceWindow(500, 20);
@@ -48,7 +48,7 @@ public class SyncStats implements AutoCloseable {
 
     public void reset() {
         objectsComplete = objectsSkipped = objectsFailed = 0;
-        bytesComplete = bytesSkipped = 0;
+        bytesComplete = bytesSkipped = bytesDeduplicated = 0;
         failedObjects = new HashSet<>();
     }
 
@@ -75,6 +75,10 @@ public class SyncStats implements AutoCloseable {
         bytesSkipped += bytes;
     }
 
+    public synchronized void incBytesDeduplicated(long bytes) {
+        bytesDeduplicated += bytes;
+    }
+
     public long getObjectCompleteRate() {
         return objectCompleteRate.getWindowRate();
     }
@@ -122,8 +126,8 @@ public class SyncStats implements AutoCloseable {
         long byteRate = bytesComplete / secs;
         double objectRate = (double) objectsComplete / secs;
 
-        return MessageFormat.format("Transferred {0} bytes in {1} seconds ({2} bytes/s) - skipped {3} bytes\n",
-                bytesComplete, secs, byteRate, bytesSkipped) +
+        return MessageFormat.format("Transferred {0} bytes in {1} seconds ({2} bytes/s) - skipped {3} bytes - deduplicated {4} bytes\n",
+                bytesComplete, secs, byteRate, bytesSkipped, bytesDeduplicated) +
                 MessageFormat.format("Successful files: {0} ({2,number,#.##}/s) Skipped files: {3} Failed Files: {1}\n",
                         objectsComplete, objectsFailed, objectRate, objectsSkipped) +
                 MessageFormat.format("Failed files: {0}\n", failedObjects);
@@ -149,6 +153,13 @@ public class SyncStats implements AutoCloseable {
         return bytesSkipped;
     }
 
+    /**
+     * Bytes of completed objects that were not transferred because the target already had the same content
+     */
+    public long getBytesDeduplicated() {
+        return bytesDeduplicated;
+    }
+
     public long getPastRunTime() {
         return pastRunTime;
     }
@@ -14,11 +14,14 @@
  */
 package com.emc.ecs.sync;
 
+import com.emc.ecs.sync.config.ChecksumAlgorithm;
+import com.emc.ecs.sync.config.SyncOptions;
 import com.emc.ecs.sync.filter.SyncFilter;
 import com.emc.ecs.sync.model.*;
 import com.emc.ecs.sync.service.DbService;
 import com.emc.ecs.sync.service.SyncRecord;
 import com.emc.ecs.sync.storage.SyncStorage;
+import com.emc.ecs.sync.util.ParallelRangeInputStream;
 import com.emc.ecs.sync.util.SyncUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +33,30 @@ public class SyncTask implements Runnable {
 
     private static final Logger log = LoggerFactory.getLogger(SyncTask.class);
 
+    /**
+     * The discrete steps of a sync task. When run as a whole (via {@link #run()}), all stages execute in sequence on
+     * the calling thread. A {@link SyncPipeline} will instead run each stage in its own thread pool, handing the task
+     * from one stage to the next. Stages only ever hand off to a later stage, so bounded stage queues cannot deadlock.
+     */
+    public enum Stage {
+        /**
+         * DB lookup, source object load (HEAD) and the transfer/verify decision
+         */
+        Head,
+        /**
+         * Writes the object through the filter chain to the target
+         */
+        Transfer,
+        /**
+         * Reads back the target object and compares it to the source
+         */
+        Verify,
+        /**
+         * Persists the final status, updates stats and (optionally) deletes the source object
+         */
+        Record
+    }
+
     private ObjectContext objectContext;
     private SyncStorage source;
     private SyncFilter filterChain;
@@ -39,6 +66,11 @@ public class SyncTask implements Runnable {
     private SyncControl syncControl;
     private SyncStats syncStats;
 
+    private Runnable finishCallback;
+
+    // state carried between stages
+    private boolean locked, processed, recordExists, verifyRequired;
+
     public SyncTask(ObjectContext objectContext, SyncStorage source, SyncFilter filterChain,
                     SyncVerifier verifier, DbService dbService, RetryHandler retryHandler, SyncControl syncControl,
                     SyncStats syncStats) {
@@ -54,148 +86,298 @@ public class SyncTask implements Runnable {
 
     @Override
     public void run() {
+        Stage stage = Stage.Head;
+        while (stage != null) {
+            stage = runStage(stage);
+        }
+    }
+
+    /**
+     * Executes a single stage of this task and returns the next stage to run, or null if the task is finished (either
+     * complete, failed or queued for retry). All resources are released before this method returns null.
+     */
+    public Stage runStage(Stage stage) {
         String sourceId = objectContext.getSourceSummary().getIdentifier();
 
-        if (!syncControl.isRunning()) {
+        if (stage == Stage.Head && !syncControl.isRunning()) {
             log.debug("aborting sync task because terminate() was called: " + sourceId);
-            return;
+            return null;
         }
 
-        boolean processed = false, recordExists = false;
-        SyncRecord record;
+        Stage nextStage = null;
         try {
-            dbService.lock(sourceId);
-            record = dbService.getSyncRecord(objectContext);
-            recordExists = record != null;
+            switch (stage) {
+                case Head:
+                    nextStage = head(sourceId);
+                    break;
+                case Transfer:
+                    nextStage = transfer(sourceId);
+                    break;
+                case Verify:
+                    nextStage = verify(sourceId);
+                    break;
+                case Record:
+                    record(sourceId);
+                    break;
+            }
+        } catch (Throwable t) {
+            try {
+                objectContext.setStatus(ObjectStatus.Error);
+                dbService.setStatus(objectContext, SyncUtil.summarize(t), !recordExists);
+            } catch (Throwable t2) {
+                log.warn("error setting DB status", t2);
+            }
 
-            // this should lazy-load all but metadata from the storage; this is so we see ObjectNotFoundException here
-            objectContext.setObject(source.loadObject(sourceId));
+            log.warn("O--! object " + sourceId + " failed", SyncUtil.getCause(t));
 
-            // make sure target can see if the object is being retried (necessary in corner cases)
-            objectContext.getObject().setProperty(PROP_FAILURE_COUNT, objectContext.getFailures());
+            syncStats.incObjectsFailed();
+            if (objectContext.getOptions().isRememberFailed()) syncStats.addFailedObject(sourceId);
 
-            ObjectMetadata metadata = objectContext.getObject().getMetadata();
+            nextStage = null;
+        }
 
-            // truncate milliseconds (the DB only stores to the second)
-            Date mtime = null;
-            if (metadata.getModificationTime() != null)
-                mtime = new Date(metadata.getModificationTime().getTime() / 1000 * 1000);
+        if (nextStage == null) finish(sourceId);
+        return nextStage;
+    }
 
-            if (record != null && record.getTargetId() != null) objectContext.setTargetId(record.getTargetId());
+    /**
+     * Releases the DB lock and closes the source object. Only necessary when a task will not run to completion (i.e.
+     * the sync was terminated while the task was between stages)
+     */
+    public void release() {
+        finish(objectContext.getSourceSummary().getIdentifier());
+    }
 
-            if (!objectContext.getOptions().isVerifyOnly()) {
-                if (record == null || !record.getStatus().isSuccess()
-                        || (mtime != null && record.getMtime() != null && mtime.after(record.getMtime()))) {
+    private Stage head(String sourceId) {
+        dbService.lock(sourceId);
+        locked = true;
+        SyncRecord record;
+        if (objectContext.isRecordPrefetched()) {
+            record = objectContext.getPrefetchedRecord();
+            objectContext.clearPrefetchedRecord(); // a retry must look up the current record
+        } else {
+            record = dbService.getSyncRecord(objectContext);
+        }
+        recordExists = record != null;
 
-                    log.debug("O--+ syncing {} {}", metadata.isDirectory() ? "directory" : "object", sourceId);
+        if (record != null && record.getTargetId() != null) objectContext.setTargetId(record.getTargetId());
 
-                    objectContext.setStatus(ObjectStatus.InTransfer);
-                    recordExists = dbService.setStatus(objectContext, null, !recordExists);
+        // if the listing tells us the object has not changed since it was synced, we don't need to load it at all
+        if (isUnchangedSinceRecord(record)) {
+            log.info("O--* skipping {} because it is up-to-date in the target (unchanged in listing)", sourceId);
+            return Stage.Record;
+        }
 
-                    try {
-                        filterChain.filter(objectContext);
-                    } catch (Throwable t) {
-                        if (t instanceof NonRetriableException) throw t;
-                        // make sure this reference to the object is closed before the retry re-opens it
-                        if (objectContext.getObject() != null) objectContext.getObject().close();
-                        retryHandler.submitForRetry(source, objectContext, t);
-                        return;
-                    }
+        // this should lazy-load all but metadata from the storage; this is so we see ObjectNotFoundException here
+        source.getOpThrottle().acquire(1);
+        objectContext.setObject(source.loadObject(sourceId));
+        objectContext.getObject().setChecksumAlgorithm(getChecksumAlgorithm());
+        objectContext.getObject().setChecksumChunkSize(getChecksumChunkSize(objectContext.getObject()));
 
-                    if (metadata.isDirectory())
-                        log.info("O--O finished syncing directory {}", sourceId);
-                    else
-                        log.info("O--O finished syncing object {} ({} bytes transferred)", sourceId, objectContext.getObject().getBytesRead());
+        // make sure target can see if the object is being retried (necessary in corner cases)
+        objectContext.getObject().setProperty(PROP_FAILURE_COUNT, objectContext.getFailures());
 
-                    objectContext.setStatus(ObjectStatus.Transferred);
-                    dbService.setStatus(objectContext, null, false);
-                    processed = true;
-                } else {
-                    log.info("O--* skipping {} because it is up-to-date in the target", sourceId);
-                }
-            }
+        ObjectMetadata metadata = objectContext.getObject().getMetadata();
 
-            if (objectContext.getOptions().isVerify() || objectContext.getOptions().isVerifyOnly()) {
-                if (record == null || record.getStatus() != ObjectStatus.Verified
-                        || (mtime != null && record.getMtime() != null && mtime.after(record.getMtime()))) {
-
-                    log.debug("O==? verifying {} {}", sourceId, metadata.isDirectory() ? "directory" : "object");
-
-                    objectContext.setStatus(ObjectStatus.InVerification);
-                    recordExists = dbService.setStatus(objectContext, null, !recordExists);
-
-                    try {
-                        SyncObject targetObject = filterChain.reverseFilter(objectContext);
-
-                        try {
-                            verifier.verify(objectContext.getObject(), targetObject);
-                        } finally {
-                            try {
-                                // be sure to close all object resources
-                                targetObject.close();
-                            } catch (Throwable t) {
-                                log.warn("could not close target object (" + objectContext.getTargetId() + ")", t);
-                            }
-                        }
-
-                    } catch (Throwable t) {
-                        if (!objectContext.getOptions().isVerifyOnly()) { // if we just copied the data and verification failed, we should retry
-                            // make sure this reference to the object is closed before the retry re-opens it
-                            if (objectContext.getObject() != null) objectContext.getObject().close();
-                            retryHandler.submitForRetry(source, objectContext, t);
-                            return;
-                        } else throw t;
-                    }
-
-                    log.info("O==O verification successful for {}", sourceId);
-                    objectContext.setStatus(ObjectStatus.Verified);
-                    dbService.setStatus(objectContext, null, false);
-                    processed = true;
-                } else {
-                    log.info("O==* skipping {} because it has already been verified", sourceId);
-                }
+        // truncate milliseconds (the DB only stores to the second)
+        Date mtime = null;
+        if (metadata.getModificationTime() != null)
+            mtime = new Date(metadata.getModificationTime().getTime() / 1000 * 1000);
+
+        boolean newer = mtime != null && record != null && record.getMtime() != null && mtime.after(record.getMtime());
+
+        boolean transferRequired = false;
+        if (!objectContext.getOptions().isVerifyOnly()) {
+            if (record == null || !record.getStatus().isSuccess() || newer) {
+                transferRequired = true;
+            } else {
+                log.info("O--* skipping {} because it is up-to-date in the target", sourceId);
             }
+        }
 
-            if (processed) {
-                syncStats.incObjectsComplete();
-                syncStats.incBytesComplete(objectContext.getObject().getBytesRead());
+        if (objectContext.getOptions().isVerify() || objectContext.getOptions().isVerifyOnly()) {
+            if (record == null || record.getStatus() != ObjectStatus.Verified || newer) {
+                verifyRequired = true;
             } else {
-                syncStats.incObjectsSkipped();
-                syncStats.incBytesSkipped(objectContext.getSourceSummary().getSize());
+                log.info("O==* skipping {} because it has already been verified", sourceId);
             }
+        }
+
+        if (transferRequired) {
+            log.debug("O--+ syncing {} {}", metadata.isDirectory() ? "directory" : "object", sourceId);
+
+            objectContext.setStatus(ObjectStatus.InTransfer);
+            recordExists = dbService.setStatus(objectContext, null, !recordExists);
+            return Stage.Transfer;
+        }
+
+        if (verifyRequired) {
+            startVerification(sourceId);
+            return Stage.Verify;
+        }
+
+        return Stage.Record;
+    }
+
+    /**
+     * Returns true if the modification time (and size/MD5) from the source listing show that the object has not
+     * changed since it was successfully synced (and verified, if verification is enabled)
+     */
+    private boolean isUnchangedSinceRecord(SyncRecord record) {
+        ObjectSummary summary = objectContext.getSourceSummary();
+        SyncOptions options = objectContext.getOptions();
+        if (summary.getMtime() == null || record == null || record.getMtime() == null) return false;
+        if (record.getStatus() == null || !record.getStatus().isSuccess() || options.isVerifyOnly()) return false;
+        if (options.isVerify() && record.getStatus() != ObjectStatus.Verified) return false;
+
+        // truncate milliseconds (the DB only stores to the second)
+        Date mtime = new Date(summary.getMtime().getTime() / 1000 * 1000);
+        if (mtime.after(record.getMtime())) return false;
+        if (!summary.isDirectory() && summary.getSize() != record.getSize()) return false;
+        return summary.getMd5Hex() == null || record.getSourceMd5() == null
+                || summary.getMd5Hex().equalsIgnoreCase(record.getSourceMd5());
+    }
+
+    /**
+     * Only calculate a checksum that will be used: the DB records the source MD5 and verification compares the
+     * checksums of the source and target data (no target plugin needs one). Otherwise, the data is not digested at all
+     */
+    private ChecksumAlgorithm getChecksumAlgorithm() {
+        SyncOptions options = objectContext.getOptions();
+        if (dbService.isSourceMd5Recorded()) return ChecksumAlgorithm.MD5;
+        if (options.isVerify() || options.isVerifyOnly()) return options.getVerifyAlgorithm();
+        return null;
+    }
+
+    /**
+     * If the object will get chunked verification after its transfer, its data is hashed in chunks as it is
+     * transferred, so verification only has to read the target (and can still report the ranges that differ)
+     */
+    private int getChecksumChunkSize(SyncObject object) {
+        SyncOptions options = objectContext.getOptions();
+        if (!options.isVerify() || options.getVerifyChunkThreshold() <= 0) return 0;
+        if (object.getMetadata().isDirectory()) return 0;
+        if (object.getMetadata().getContentLength() < options.getVerifyChunkThreshold()) return 0;
+        if (object.getProperty(ParallelRangeInputStream.PROP_RANGE_READER) == null) return 0;
+        return options.getVerifyChunkSize();
+    }
+
+    private Stage transfer(String sourceId) throws Throwable {
+        try {
+            filterChain.filter(objectContext);
+        } catch (Throwable t) {
+            if (t instanceof NonRetriableException) throw t;
+            // make sure this reference to the object is closed before the retry re-opens it
+            if (objectContext.getObject() != null) objectContext.getObject().close();
+            retryHandler.submitForRetry(source, objectContext, t);
+            return null;
+        }
+
+        if (objectContext.getObject().getMetadata().isDirectory())
+            log.info("O--O finished syncing directory {}", sourceId);
+        else
+            log.info("O--O finished syncing object {} ({} bytes transferred)", sourceId, objectContext.getObject().getBytesRead());
+
+        objectContext.setStatus(ObjectStatus.Transferred);
+        processed = true;
 
-            try { // delete object if the source supports deletion (implements the delete() method)
-                if (objectContext.getOptions().isDeleteSource()) {
-                    source.delete(sourceId);
-                    log.info("X--O deleted {} from source", sourceId);
-                    dbService.setDeleted(objectContext, !recordExists);
+        return verifyRequired ? Stage.Verify : Stage.Record;
+    }
+
+    private Stage verify(String sourceId) throws Throwable {
+        // if we just transferred the object, record that before we start verification
+        if (objectContext.getStatus() == ObjectStatus.Transferred) {
+            dbService.setStatus(objectContext, null, false);
+            startVerification(sourceId);
+        }
+
+        try {
+            SyncObject targetObject = filterChain.reverseFilter(objectContext);
+            targetObject.setChecksumAlgorithm(objectContext.getObject().getChecksumAlgorithm());
+
+            try {
+                verifier.verify(objectContext.getObject(), targetObject);
+            } finally {
+                try {
+                    // be sure to close all object resources
+                    targetObject.close();
+                } catch (Throwable t) {
+                    log.warn("could not close target object (" + objectContext.getTargetId() + ")", t);
                 }
-            } catch (Throwable t) {
-                log.warn("!--O could not delete {} from source: {}", sourceId, t);
             }
 
         } catch (Throwable t) {
-            try {
-                objectContext.setStatus(ObjectStatus.Error);
-                dbService.setStatus(objectContext, SyncUtil.summarize(t), !recordExists);
-            } catch (Throwable t2) {
-                log.warn("error setting DB status", t2);
+            if (!objectContext.getOptions().isVerifyOnly()) { // if we just copied the data and verification failed, we should retry
+                // make sure this reference to the object is closed before the retry re-opens it
+                if (objectContext.getObject() != null) objectContext.getObject().close();
+                retryHandler.submitForRetry(source, objectContext, t);
+                return null;
+            } else throw t;
+        }
+
+        log.info("O==O verification successful for {}", sourceId);
+        objectContext.setStatus(ObjectStatus.Verified);
+        processed = true;
+
+        return Stage.Record;
+    }
+
+    private void record(String sourceId) {
+        if (objectContext.getStatus() == ObjectStatus.Transferred || objectContext.getStatus() == ObjectStatus.Verified)
+            dbService.setStatus(objectContext, null, false);
+
+        if (processed) {
+            syncStats.incObjectsComplete();
+            syncStats.incBytesComplete(objectContext.getObject().getBytesRead());
+            syncStats.incBytesDeduplicated(objectContext.getBytesDeduplicated());
+        } else {
+            syncStats.incObjectsSkipped();
+            syncStats.incBytesSkipped(objectContext.getSourceSummary().getSize());
+        }
+
+        try { // delete object if the source supports deletion (implements the delete() method)
+            if (objectContext.getOptions().isDeleteSource()) {
+                source.getOpThrottle().acquire(1);
+                source.delete(sourceId);
+                log.info("X--O deleted {} from source", sourceId);
+                dbService.setDeleted(objectContext, !recordExists);
             }
+        } catch (Throwable t) {
+            log.warn("!--O could not delete {} from source: {}", sourceId, t);
+        }
+    }
 
-            log.warn("O--! object " + sourceId + " failed", SyncUtil.getCause(t));
+    private void startVerification(String sourceId) {
+        log.debug("O==? verifying {} {}", sourceId,
+                objectContext.getObject().getMetadata().isDirectory() ? "directory" : "object");
 
-            syncStats.incObjectsFailed();
-            if (objectContext.getOptions().isRememberFailed()) syncStats.addFailedObject(sourceId);
+        objectContext.setStatus(ObjectStatus.InVerification);
+        recordExists = dbService.setStatus(objectContext, null, !recordExists);
+    }
 
-        } finally {
+    private void finish(String sourceId) {
+        if (locked) {
             dbService.unlock(sourceId);
-            try {
-                // be sure to close all object resources
-                if (objectContext.getObject() != null) objectContext.getObject().close();
-            } catch (Throwable t) {
-                log.warn("could not close object resources", t);
-            }
+            locked = false;
         }
+        try {
+            // be sure to close all object resources
+            if (objectContext.getObject() != null) objectContext.getObject().close();
+        } catch (Throwable t) {
+            log.warn("could not close object resources", t);
+        }
+        if (finishCallback != null) {
+            Runnable callback = finishCallback;
+            finishCallback = null;
+            callback.run();
+        }
+    }
+
+    /**
+     * Sets a callback to run once when this task is finished (complete, failed, queued for retry or released)
+     */
+    public void setFinishCallback(Runnable finishCallback) {
+        this.finishCallback = finishCallback;
     }
 
     public ObjectContext getObjectContext() {
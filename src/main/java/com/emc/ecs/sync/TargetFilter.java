@@ -54,25 +54,9 @@ public class TargetFilter extends AbstractFilter {
 
         SyncObject targetObj = null;
         try {
-            targetObj = target.loadObject(targetId);
+            targetObj = loadTarget(objectContext, targetId);
 
-            Date sourceMtime = sourceObj.getMetadata().getModificationTime();
-            Date targetMtime = targetObj.getMetadata().getModificationTime();
-            Date sourceCtime = sourceObj.getMetadata().getMetaChangeTime();
-            if (sourceCtime == null) sourceCtime = sourceMtime;
-            Date targetCtime = targetObj.getMetadata().getMetaChangeTime();
-            if (targetCtime == null) targetCtime = targetMtime;
-
-            // need to check mtime (data changed) and ctime (MD changed)
-            boolean newer = sourceMtime == null || sourceMtime.after(targetMtime) || sourceCtime.after(targetCtime);
-
-            boolean differentSize = sourceObj.getMetadata().getContentLength() != targetObj.getMetadata().getContentLength();
-
-            // it is possible that a child is created before its parent directory (due to its
-            // task/thread executing faster). since we have no way of detecting that, we must *always*
-            // update directory metadata
-            if (!sourceObj.getMetadata().isDirectory()
-                    && !options.isForceSync() && !newer && !differentSize && objectContext.getFailures() == 0) {
+            if (isUpToDate(objectContext, targetObj, options)) {
                 // object already exists on the target and is the same size and newer than source;
                 // assume it is the same and skip it (use verification to check MD5)
                 log.debug(sourceObj.getRelativePath() + " is the same size and newer on the target; skipping");
@@ -82,6 +66,7 @@ public class TargetFilter extends AbstractFilter {
             // object needs to be updated
             log.debug("updating object in target (source:{}, target:{})...",
                     objectContext.getSourceSummary().getIdentifier(), targetId);
+            target.getOpThrottle().acquire(1);
             target.updateObject(targetId, sourceObj);
             log.debug("target object updated ({})", targetId);
         } catch (ObjectNotFoundException e) {
@@ -89,6 +74,7 @@ public class TargetFilter extends AbstractFilter {
             // object doesn't exist; create it
             log.debug("creating object in target (source:{}, target:{})...",
                     objectContext.getSourceSummary().getIdentifier(), targetId);
+            target.getOpThrottle().acquire(1);
             objectContext.setTargetId(target.createObject(sourceObj));
             log.debug("target object created ({})", objectContext.getTargetId());
         } finally {
@@ -100,6 +86,48 @@ public class TargetFilter extends AbstractFilter {
         }
     }
 
+    /**
+     * Uses the target object if a filter already loaded it, instead of loading it again
+     */
+    private SyncObject loadTarget(ObjectContext objectContext, String targetId) {
+        if (objectContext.isTargetPrefetched(targetId)) {
+            SyncObject targetObj = objectContext.getPrefetchedTarget();
+            objectContext.clearPrefetchedTarget();
+            if (targetObj == null) throw new ObjectNotFoundException(targetId);
+            return targetObj;
+        }
+        target.getOpThrottle().acquire(1);
+        return target.loadObject(targetId);
+    }
+
+    /**
+     * Returns true if the target object does not need to be updated (it is the same size and at least as new as the
+     * source object)
+     */
+    public static boolean isUpToDate(ObjectContext objectContext, SyncObject targetObj, SyncOptions options) {
+        SyncObject sourceObj = objectContext.getObject();
+
+        // it is possible that a child is created before its parent directory (due to its
+        // task/thread executing faster). since we have no way of detecting that, we must *always*
+        // update directory metadata
+        if (sourceObj.getMetadata().isDirectory() || options.isForceSync() || objectContext.getFailures() > 0)
+            return false;
+
+        Date sourceMtime = sourceObj.getMetadata().getModificationTime();
+        Date targetMtime = targetObj.getMetadata().getModificationTime();
+        Date sourceCtime = sourceObj.getMetadata().getMetaChangeTime();
+        if (sourceCtime == null) sourceCtime = sourceMtime;
+        Date targetCtime = targetObj.getMetadata().getMetaChangeTime();
+        if (targetCtime == null) targetCtime = targetMtime;
+
+        // need to check mtime (data changed) and ctime (MD changed)
+        boolean newer = sourceMtime == null || sourceMtime.after(targetMtime) || sourceCtime.after(targetCtime);
+
+        boolean differentSize = sourceObj.getMetadata().getContentLength() != targetObj.getMetadata().getContentLength();
+
+        return !newer && !differentSize;
+    }
+
     @Override
     public SyncObject reverseFilter(ObjectContext objectContext) {
         String identifier = objectContext.getTargetId();
@@ -107,6 +135,7 @@ public class TargetFilter extends AbstractFilter {
             identifier = target.getIdentifier(objectContext.getObject().getRelativePath(), objectContext.getObject().getMetadata().isDirectory());
             objectContext.setTargetId(identifier);
         }
+        target.getOpThrottle().acquire(1);
         return target.loadObject(identifier);
     }
 }
@@ -17,6 +17,7 @@ package com.emc.ecs.sync.cli;
 import com.emc.ecs.sync.config.annotation.Option;
 import com.emc.ecs.sync.rest.LogLevel;
 import com.emc.ecs.sync.rest.RestServer;
+import com.emc.ecs.sync.service.JobGovernor;
 
 public class CliConfig {
     private boolean help;
@@ -26,6 +27,9 @@ public class CliConfig {
     private String restEndpoint;
     private String dbConnectString;
     private String dbEncPassword;
+    private int maxTotalThreads = JobGovernor.DEFAULT_MAX_TOTAL_THREADS;
+    private int maxTotalDbConnections = JobGovernor.DEFAULT_MAX_TOTAL_DB_CONNECTIONS;
+    private long maxTotalBandwidth;
     private String xmlConfig;
     private LogLevel logLevel;
     private int perfReportSeconds;
@@ -96,6 +100,33 @@ public class CliConfig {
         this.dbEncPassword = dbEncPassword;
     }
 
+    @Option(description = "The total thread count of all jobs running in the REST service. Running jobs share it in proportion to their jobWeight. Default is " + JobGovernor.DEFAULT_MAX_TOTAL_THREADS)
+    public int getMaxTotalThreads() {
+        return maxTotalThreads;
+    }
+
+    public void setMaxTotalThreads(int maxTotalThreads) {
+        this.maxTotalThreads = maxTotalThreads;
+    }
+
+    @Option(description = "The total number of MySQL connections of all jobs running in the REST service. Running jobs share it in proportion to their jobWeight. Default is " + JobGovernor.DEFAULT_MAX_TOTAL_DB_CONNECTIONS)
+    public int getMaxTotalDbConnections() {
+        return maxTotalDbConnections;
+    }
+
+    public void setMaxTotalDbConnections(int maxTotalDbConnections) {
+        this.maxTotalDbConnections = maxTotalDbConnections;
+    }
+
+    @Option(valueHint = "bytes/s", description = "The total bandwidth of all jobs running in the REST service. Running jobs share it in proportion to their jobWeight and each job's share limits both its source and its target. Default is no limit (0)")
+    public long getMaxTotalBandwidth() {
+        return maxTotalBandwidth;
+    }
+
+    public void setMaxTotalBandwidth(long maxTotalBandwidth) {
+        this.maxTotalBandwidth = maxTotalBandwidth;
+    }
+
     @Option(description = "Specifies an XML configuration file. In this mode, the XML file contains all of the configuration for the sync job. In this mode, most other CLI arguments are ignored.")
     public String getXmlConfig() {
         return xmlConfig;
@@ -180,6 +180,8 @@ public class CasSingleBlobExtractor extends AbstractFilter<CasSingleBlobExtracto
                         }
                     }
                 });
+                // the clip ID is a hash of the clip, so it identifies the blob without reading it
+                extractedObject.setProperty(DedupFilter.PROP_CONTENT_ADDRESS, "cas:" + identifier);
             } else {
                 extractedObject.setDataStream(new ByteArrayInputStream(new byte[0]));
             }
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.filter;
+
+import com.emc.ecs.sync.TargetFilter;
+import com.emc.ecs.sync.config.ConfigurationException;
+import com.emc.ecs.sync.config.filter.DedupConfig;
+import com.emc.ecs.sync.model.ObjectContext;
+import com.emc.ecs.sync.model.SyncObject;
+import com.emc.ecs.sync.service.DedupIndex;
+import com.emc.ecs.sync.storage.ObjectNotFoundException;
+import com.emc.ecs.sync.storage.SyncStorage;
+import com.emc.ecs.sync.util.BufferPool;
+import com.emc.ecs.sync.util.ParallelRangeInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+
+/**
+ * Writes each distinct content to the target only once. Before an object is written, its source data is hashed
+ * (SHA-256) with a ranged read, which counts toward the source bandwidth limit like any other read. Objects with a
+ * content address (see {@link #PROP_CONTENT_ADDRESS}) are keyed on it instead, without reading the data. If the
+ * {@link DedupIndex} has a target object with the same key and size, that object is loaded from the target and stands
+ * in for the source data, so the target copies it internally (see {@link SyncStorage#isInternalCopySupported()}).
+ * Otherwise the object is written as usual and added to the index.
+ * <p>
+ * Objects that are already up to date in the target (see {@link TargetFilter#isUpToDate}) are skipped before they are
+ * hashed, so an incremental run does not read the whole source. The target object loaded for that check is handed to
+ * the target filter, so it is not loaded again. The index only changes once a write succeeds.
+ */
+public class DedupFilter extends AbstractFilter<DedupConfig> {
+    private static final Logger log = LoggerFactory.getLogger(DedupFilter.class);
+
+    /**
+     * An ID that only identical content can have (i.e. a CAS clip ID), prefixed with its scheme (i.e. "cas:") so it
+     * cannot collide with a hash
+     */
+    public static final String PROP_CONTENT_ADDRESS = "dedup.contentAddress";
+
+    private SyncStorage<?> target;
+    private DedupIndex index;
+
+    @Override
+    public void configure(SyncStorage source, Iterator<SyncFilter> filters, SyncStorage target) {
+        super.configure(source, filters, target);
+
+        if (config.getIndexFile() == null)
+            throw new ConfigurationException("must specify an index file");
+
+        // the index maps source content to target objects, so nothing may change the data after this filter
+        if (filters != null) {
+            boolean found = false;
+            while (filters.hasNext()) {
+                SyncFilter filter = filters.next();
+                if (filter == this) found = true;
+                else if (found) throw new ConfigurationException("the dedup filter must be the last filter");
+            }
+        }
+
+        if (target != null) {
+            if (!target.isInternalCopySupported())
+                throw new ConfigurationException(target.getClass().getSimpleName() + " cannot copy its own objects (required for dedup)");
+            this.target = target;
+        }
+
+        if (index == null) {
+            try {
+                index = new DedupIndex(config.getIndexFile());
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException(e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void filter(ObjectContext objectContext) {
+        SyncObject obj = objectContext.getObject();
+        objectContext.setBytesDeduplicated(0);
+
+        if (obj.getMetadata().isDirectory()) {
+            getNext().filter(objectContext);
+            return;
+        }
+
+        long size = obj.getMetadata().getContentLength();
+        String targetId = objectContext.getTargetId();
+        if (targetId == null) targetId = target.getIdentifier(obj.getRelativePath(), false);
+
+        try {
+            filter(objectContext, obj, size, targetId);
+        } finally {
+            // the target filter did not get to use the target object (i.e. the hash failed)
+            if (objectContext.isTargetPrefetched(targetId)) {
+                closeTarget(objectContext.getPrefetchedTarget(), targetId);
+                objectContext.clearPrefetchedTarget();
+            }
+        }
+    }
+
+    private void filter(ObjectContext objectContext, SyncObject obj, long size, String targetId) {
+        String contentKey = null, existingId = null;
+        SyncObject existingObj = null;
+        if (isDedupCandidate(objectContext)) {
+            // this is what the target filter would decide, but the hash costs a full read of the source. the target
+            // filter is handed the target object, so it is only loaded once
+            SyncObject targetObj = loadTarget(targetId);
+            objectContext.setPrefetchedTarget(targetId, targetObj);
+            if (targetObj != null && TargetFilter.isUpToDate(objectContext, targetObj, options)) {
+                log.debug("{} is the same size and newer on the target; skipping", obj.getRelativePath());
+                objectContext.setTargetId(targetId);
+                return;
+            }
+            contentKey = getContentKey(obj);
+            existingId = index.getTargetId(contentKey, size);
+            if (existingId != null && !existingId.equals(targetId))
+                existingObj = loadDuplicate(existingId, contentKey, size);
+        }
+
+        if (existingObj != null) {
+            // the existing target object stands in for the source data
+            existingObj.setRelativePath(obj.getRelativePath());
+            existingObj.setMetadata(obj.getMetadata());
+            existingObj.setAcl(obj.getAcl());
+            objectContext.setObject(existingObj);
+            try {
+                getNext().filter(objectContext);
+            } finally {
+                objectContext.setObject(obj);
+                closeTarget(existingObj, existingId);
+            }
+            // nothing is transferred if the target filter decides the object is already up to date
+            if (existingObj.getBytesRead() > 0) {
+                log.info("{} has the same content as {} in the target; copied it there instead of transferring it",
+                        obj.getRelativePath(), existingId);
+                objectContext.setBytesDeduplicated(existingObj.getBytesRead());
+            }
+            // whatever the target object had before was replaced
+            index.removeTarget(targetId);
+        } else {
+            getNext().filter(objectContext);
+            // only if the data was written (the target filter may have skipped an object that is not a candidate).
+            // if the write fails, the old entry stays, but a partly written object will not match its size
+            if (contentKey != null || obj.getBytesRead() > 0) index.removeTarget(targetId);
+            if (contentKey != null) index.put(contentKey, size, objectContext.getTargetId());
+        }
+    }
+
+    /**
+     * @return the target object, or null if it does not exist
+     */
+    private SyncObject loadTarget(String targetId) {
+        try {
+            target.getOpThrottle().acquire(1);
+            return target.loadObject(targetId);
+        } catch (ObjectNotFoundException e) {
+            return null;
+        }
+    }
+
+    private void closeTarget(SyncObject targetObj, String targetId) {
+        try {
+            if (targetObj != null) targetObj.close();
+        } catch (Throwable t) {
+            log.warn("could not close target object (" + targetId + ")", t);
+        }
+    }
+
+    /**
+     * The content must be identified without the data stream: by its content address, or by a hash that is read
+     * straight from the source storage (so the data stream must not have been replaced by a filter)
+     */
+    private boolean isDedupCandidate(ObjectContext objectContext) {
+        SyncObject obj = objectContext.getObject();
+        long size = obj.getMetadata().getContentLength();
+        if (size == 0 || size < config.getMinSize()) return false;
+        // the duplicate may be why the last attempt failed, so retries are written from the source
+        if (objectContext.getFailures() > 0) return false;
+        if (obj.getProperty(PROP_CONTENT_ADDRESS) != null) return true;
+        return !obj.isDataStreamReplaced() && obj.getProperty(ParallelRangeInputStream.PROP_RANGE_READER) != null;
+    }
+
+    private String getContentKey(SyncObject obj) {
+        String contentAddress = (String) obj.getProperty(PROP_CONTENT_ADDRESS);
+        if (contentAddress != null) return contentAddress;
+        return hash(obj);
+    }
+
+    /**
+     * The data is read through {@link SyncObject#getRangeReader()}, so it counts toward the source bandwidth limit
+     * and read stats
+     */
+    private String hash(SyncObject obj) {
+        ParallelRangeInputStream.RangeSource rangeSource = obj.getRangeReader();
+        long size = obj.getMetadata().getContentLength();
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("could not initialize SHA-256", e);
+        }
+
+        byte[] buffer = BufferPool.getInstance().borrow(options.getBufferSize());
+        try (InputStream in = rangeSource.open(0, size)) {
+            long remaining = size;
+            int c;
+            while (remaining > 0 && (c = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                digest.update(buffer, 0, c);
+                remaining -= c;
+            }
+            if (remaining > 0) throw new IOException(String.format("data ended early at %d", size - remaining));
+        } catch (IOException e) {
+            throw new RuntimeException("could not hash " + obj.getRelativePath(), e);
+        } finally {
+            BufferPool.getInstance().release(buffer);
+        }
+        return DatatypeConverter.printHexBinary(digest.digest());
+    }
+
+    /**
+     * Loads the target object from the index, or returns null if it is gone or has changed size (in which case it is
+     * removed from the index)
+     */
+    private SyncObject loadDuplicate(String existingId, String contentKey, long size) {
+        try {
+            target.getOpThrottle().acquire(1);
+            SyncObject existingObj = target.loadObject(existingId);
+            if (!existingObj.getMetadata().isDirectory() && existingObj.getMetadata().getContentLength() == size)
+                return existingObj;
+            log.info("{} has changed in the target; removing it from the dedup index", existingId);
+        } catch (ObjectNotFoundException e) {
+            log.info("{} is gone from the target; removing it from the dedup index", existingId);
+        }
+        index.remove(contentKey, size);
+        return null;
+    }
+
+    @Override
+    public SyncObject reverseFilter(ObjectContext objectContext) {
+        return getNext().reverseFilter(objectContext);
+    }
+
+    @Override
+    public void close() {
+        try (DedupIndex i = index) {
+            super.close();
+        }
+    }
+}
@@ -15,6 +15,7 @@
 package com.emc.ecs.sync.model;
 
 import com.emc.ecs.sync.config.SyncOptions;
+import com.emc.ecs.sync.service.SyncRecord;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -25,6 +26,11 @@ public class ObjectContext {
     private ObjectStatus status;
     private AtomicInteger failures = new AtomicInteger();
     private SyncOptions options;
+    private SyncRecord prefetchedRecord;
+    private boolean recordPrefetched;
+    private String prefetchedTargetId;
+    private SyncObject prefetchedTarget;
+    private long bytesDeduplicated;
 
     public ObjectSummary getSourceSummary() {
         return sourceSummary;
@@ -74,6 +80,68 @@ public class ObjectContext {
         this.options = options;
     }
 
+    /**
+     * True if the DB record of this object was looked up when it was listed (see {@link #getPrefetchedRecord()})
+     */
+    public boolean isRecordPrefetched() {
+        return recordPrefetched;
+    }
+
+    /**
+     * The DB record of this object as of when it was listed (null if there was none). Only valid until the object is
+     * first processed
+     */
+    public SyncRecord getPrefetchedRecord() {
+        return prefetchedRecord;
+    }
+
+    public void setPrefetchedRecord(SyncRecord prefetchedRecord) {
+        this.prefetchedRecord = prefetchedRecord;
+        this.recordPrefetched = true;
+    }
+
+    public void clearPrefetchedRecord() {
+        this.prefetchedRecord = null;
+        this.recordPrefetched = false;
+    }
+
+    /**
+     * True if a filter already loaded the target object with this identifier (see {@link #getPrefetchedTarget()})
+     */
+    public boolean isTargetPrefetched(String targetId) {
+        return targetId != null && targetId.equals(prefetchedTargetId);
+    }
+
+    /**
+     * The target object as a filter loaded it (null if it did not exist), so the target is not asked for it again (i.e.
+     * see {@link com.emc.ecs.sync.filter.DedupFilter}). Whoever clears it must close it
+     */
+    public SyncObject getPrefetchedTarget() {
+        return prefetchedTarget;
+    }
+
+    public void setPrefetchedTarget(String targetId, SyncObject prefetchedTarget) {
+        this.prefetchedTargetId = targetId;
+        this.prefetchedTarget = prefetchedTarget;
+    }
+
+    public void clearPrefetchedTarget() {
+        this.prefetchedTargetId = null;
+        this.prefetchedTarget = null;
+    }
+
+    /**
+     * The number of bytes that did not have to be transferred, because the target already had the same content (i.e.
+     * see {@link com.emc.ecs.sync.filter.DedupFilter})
+     */
+    public long getBytesDeduplicated() {
+        return bytesDeduplicated;
+    }
+
+    public void setBytesDeduplicated(long bytesDeduplicated) {
+        this.bytesDeduplicated = bytesDeduplicated;
+    }
+
     public ObjectContext withSourceSummary(ObjectSummary sourceSummary) {
         this.sourceSummary = sourceSummary;
         return this;
@@ -14,11 +14,16 @@
  */
 package com.emc.ecs.sync.model;
 
+import java.util.Date;
+
 public class ObjectSummary {
     private String identifier;
     private boolean directory;
     private long size;
     private String listFileRow;
+    private String listPosition;
+    private Date mtime;
+    private String md5Hex;
 
     public ObjectSummary(String identifier, boolean directory, long size) {
         this.identifier = identifier;
@@ -49,4 +54,50 @@ public class ObjectSummary {
     public void setListFileRow(String listFileRow) {
         this.listFileRow = listFileRow;
     }
+
+    /**
+     * If the source storage can resume a listing, this is the position in the listing right after this object (see
+     * {@link com.emc.ecs.sync.storage.SyncStorage#allObjectsAfter(String)}). Otherwise null
+     */
+    public String getListPosition() {
+        return listPosition;
+    }
+
+    public void setListPosition(String listPosition) {
+        this.listPosition = listPosition;
+    }
+
+    /**
+     * If the source storage listing includes it, this is the modification time of the object (must be the same value
+     * that {@link ObjectMetadata#getModificationTime()} returns when the object is loaded). Otherwise null
+     */
+    public Date getMtime() {
+        return mtime;
+    }
+
+    public void setMtime(Date mtime) {
+        this.mtime = mtime;
+    }
+
+    /**
+     * If the source storage listing includes it, this is the (standard, non-aggregated) MD5 of the object data.
+     * Otherwise null
+     */
+    public String getMd5Hex() {
+        return md5Hex;
+    }
+
+    public void setMd5Hex(String md5Hex) {
+        this.md5Hex = md5Hex;
+    }
+
+    public ObjectSummary withMtime(Date mtime) {
+        setMtime(mtime);
+        return this;
+    }
+
+    public ObjectSummary withMd5Hex(String md5Hex) {
+        setMd5Hex(md5Hex);
+        return this;
+    }
 }
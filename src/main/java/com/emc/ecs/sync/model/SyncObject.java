@@ -14,16 +14,20 @@
  */
 package com.emc.ecs.sync.model;
 
+import com.emc.ecs.sync.config.ChecksumAlgorithm;
 import com.emc.ecs.sync.storage.SyncStorage;
 import com.emc.ecs.sync.util.EnhancedInputStream;
 import com.emc.ecs.sync.util.LazyValue;
+import com.emc.ecs.sync.util.ParallelRangeInputStream;
 import com.emc.ecs.sync.util.PerformanceListener;
 import com.emc.ecs.sync.util.SyncUtil;
+import com.emc.ecs.sync.util.TreeHash;
 import com.emc.object.util.ProgressInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
@@ -34,14 +38,19 @@ public class SyncObject implements AutoCloseable {
     private SyncStorage source;
     private String relativePath;
     private ObjectMetadata metadata;
+    private InputStream rawStream;
     private EnhancedInputStream enhancedStream;
+    private boolean dataStreamReplaced;
+    private ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.MD5;
+    private int checksumChunkSize;
     private ObjectAcl acl;
     private boolean postStreamUpdateRequired;
     private Map<String, Object> properties = new HashMap<>();
-    private byte[] md5;
+    private byte[] checksum;
     private LazyValue<InputStream> lazyStream;
     private LazyValue<ObjectAcl> lazyAcl;
     private long bytesRead;
+    private String storedMd5Hex;
 
     public SyncObject(SyncStorage source, String relativePath, ObjectMetadata metadata) {
         this(source, relativePath, metadata, null, null);
@@ -90,13 +99,15 @@ public class SyncObject implements AutoCloseable {
 
     public synchronized InputStream getDataStream() {
         if (enhancedStream == null && lazyStream != null) {
-            setDataStream(lazyStream.get());
+            wrap(lazyStream.get());
         }
         return enhancedStream;
     }
 
     public void setDataStream(InputStream dataStream) {
+        dataStreamReplaced = true;
         if (dataStream == null) {
+            rawStream = null;
             enhancedStream = null;
         } else {
             wrap(dataStream);
@@ -107,6 +118,96 @@ public class SyncObject implements AutoCloseable {
         this.lazyStream = lazyStream;
     }
 
+    public ChecksumAlgorithm getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    /**
+     * Sets the checksum calculated on the object data as it is streamed (null for none). Only calculate what will be
+     * used (i.e. by verification or the DB), since a checksum can cost more CPU than the transfer itself. Default is MD5.
+     * Must be set before any data is read
+     */
+    public synchronized void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+        if (checksumAlgorithm == this.checksumAlgorithm) return;
+        if (enhancedStream != null) {
+            if (enhancedStream.getBytesRead() > 0 || enhancedStream.isClosed())
+                throw new IllegalStateException("cannot change the checksum after the data stream is read");
+            enhancedStream = new EnhancedInputStream(rawStream, EnhancedInputStream.UNSIZED, checksumAlgorithm, checksumChunkSize);
+        }
+        this.checksumAlgorithm = checksumAlgorithm;
+    }
+
+    public int getChecksumChunkSize() {
+        return checksumChunkSize;
+    }
+
+    /**
+     * If greater than 0, the object data is also hashed in chunks of this size as it is streamed (see
+     * {@link #getChunkHash()}), so chunked verification does not have to read the source again. Must be set before any
+     * data is read
+     */
+    public synchronized void setChecksumChunkSize(int checksumChunkSize) {
+        if (checksumChunkSize == this.checksumChunkSize) return;
+        if (enhancedStream != null) {
+            if (enhancedStream.getBytesRead() > 0 || enhancedStream.isClosed())
+                throw new IllegalStateException("cannot change the checksum chunk size after the data stream is read");
+            enhancedStream = new EnhancedInputStream(rawStream, EnhancedInputStream.UNSIZED, checksumAlgorithm, checksumChunkSize);
+        }
+        this.checksumChunkSize = checksumChunkSize;
+    }
+
+    /**
+     * Returns the chunk hashes of the data stream (see {@link #setChecksumChunkSize(int)}), or null if the stream has not
+     * been read and closed (or the data was transferred without it)
+     */
+    public synchronized TreeHash getChunkHash() {
+        if (enhancedStream == null || !enhancedStream.isClosed()) return null;
+        return enhancedStream.getTreeHash();
+    }
+
+    /**
+     * Returns the storage's ranged reader for the object data (see {@link ParallelRangeInputStream#PROP_RANGE_READER}),
+     * or null if it has none. Like the data stream, every range it opens is counted in the read window of the storage,
+     * so these reads show in its stats and are held to its bandwidth limit
+     */
+    public ParallelRangeInputStream.RangeSource getRangeReader() {
+        final ParallelRangeInputStream.RangeSource rangeReader =
+                (ParallelRangeInputStream.RangeSource) getProperty(ParallelRangeInputStream.PROP_RANGE_READER);
+        if (rangeReader == null || source == null || !source.getOptions().isMonitorPerformance()) return rangeReader;
+        return new ParallelRangeInputStream.RangeSource() {
+            @Override
+            public InputStream open(long offset, long length) throws IOException {
+                return new ProgressInputStream(rangeReader.open(offset, length), new PerformanceListener(source.getReadWindow()));
+            }
+        };
+    }
+
+    /**
+     * Returns true if the data stream has not been opened or replaced (i.e. by a filter), so the object data is still
+     * exactly what the source storage would read. In this case, a target may copy the data straight from the source
+     * (without the data stream), but must then call {@link #setDataTransferred(long, byte[])}
+     */
+    public synchronized boolean isDataStreamUntouched() {
+        return enhancedStream == null && lazyStream != null;
+    }
+
+    /**
+     * Returns true if the data stream was set directly (i.e. replaced by a filter) instead of being loaded by the
+     * storage. If not, the data is what the storage would return for a ranged read (see
+     * {@link com.emc.ecs.sync.util.ParallelRangeInputStream#PROP_RANGE_READER}), even if the stream has been read
+     */
+    public boolean isDataStreamReplaced() {
+        return dataStreamReplaced;
+    }
+
+    /**
+     * Records a transfer of the object data that did not use the data stream (see {@link #isDataStreamUntouched()})
+     */
+    public synchronized void setDataTransferred(long bytesRead, byte[] checksum) {
+        this.bytesRead = bytesRead;
+        this.checksum = checksum;
+    }
+
     public synchronized ObjectAcl getAcl() {
         if (acl == null && lazyAcl != null) {
             setAcl(lazyAcl.get());
@@ -159,6 +260,18 @@ public class SyncObject implements AutoCloseable {
         properties.remove(name);
     }
 
+    /**
+     * Returns the MD5 of the object data that the storage already has (i.e. the ETag of a single-part S3 object), or
+     * null if it is not known without reading the data
+     */
+    public String getStoredMd5Hex() {
+        return storedMd5Hex;
+    }
+
+    public void setStoredMd5Hex(String storedMd5Hex) {
+        this.storedMd5Hex = storedMd5Hex;
+    }
+
     public long getBytesRead() {
         if (bytesRead > 0) {
             return bytesRead;
@@ -173,10 +286,32 @@ public class SyncObject implements AutoCloseable {
         this.bytesRead = bytesRead;
     }
 
+    /**
+     * Returns true if the checksum of the object data is available without reading any more data (i.e. it was
+     * calculated while the data was transferred)
+     */
+    public synchronized boolean isChecksumAvailable() {
+        if (checksumAlgorithm == null) return false;
+        return checksum != null || (enhancedStream != null && enhancedStream.isClosed());
+    }
+
+    /**
+     * Returns the checksum of the object data in the configured algorithm (see
+     * {@link #setChecksumAlgorithm(ChecksumAlgorithm)}), or null if there is none. If forceRead is true, any remaining
+     * data is read to calculate it
+     */
+    public String getChecksumHex(boolean forceRead) {
+        byte[] checksum = getChecksum(forceRead);
+        if (checksum == null) return null;
+        return DatatypeConverter.printHexBinary(checksum);
+    }
+
+    /**
+     * Returns the MD5 of the object data, or null if the checksum algorithm is not MD5
+     */
     public String getMd5Hex(boolean forceRead) {
-        byte[] md5 = getMd5(forceRead);
-        if (md5 == null) return null;
-        return DatatypeConverter.printHexBinary(md5);
+        if (checksumAlgorithm != ChecksumAlgorithm.MD5) return null;
+        return getChecksumHex(forceRead);
     }
 
     @Override
@@ -204,24 +339,26 @@ public class SyncObject implements AutoCloseable {
         return relativePath.hashCode();
     }
 
-    private synchronized byte[] getMd5(boolean forceRead) {
-        if (md5 == null) {
+    private synchronized byte[] getChecksum(boolean forceRead) {
+        if (checksum == null) {
+            if (checksumAlgorithm == null) return null;
             if (forceRead) getDataStream(); // make sure lazy streams are initialized
             if (enhancedStream == null) return null;
             if (!enhancedStream.isClosed()) {
                 if (!forceRead || enhancedStream.getBytesRead() > 0)
-                    throw new IllegalStateException("Cannot call getMd5 until stream is closed");
+                    throw new IllegalStateException("Cannot get checksum until stream is closed");
                 SyncUtil.consumeAndCloseStream(enhancedStream);
             }
-            md5 = enhancedStream.getMd5Digest();
+            checksum = enhancedStream.getChecksum();
         }
-        return md5;
+        return checksum;
     }
 
     private void wrap(InputStream dataStream) {
         if (source != null && source.getOptions().isMonitorPerformance())
             dataStream = new ProgressInputStream(dataStream, new PerformanceListener(source.getReadWindow()));
-        enhancedStream = new EnhancedInputStream(dataStream, true);
+        rawStream = dataStream;
+        enhancedStream = new EnhancedInputStream(dataStream, EnhancedInputStream.UNSIZED, checksumAlgorithm, checksumChunkSize);
     }
 
     public SyncObject withAcl(ObjectAcl acl) {
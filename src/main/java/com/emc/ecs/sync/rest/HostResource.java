@@ -16,6 +16,7 @@ package com.emc.ecs.sync.rest;
 
 import com.emc.ecs.sync.EcsSync;
 import com.emc.ecs.sync.service.SyncJobService;
+import com.emc.ecs.sync.util.BufferPool;
 import com.sun.jersey.spi.resource.Singleton;
 import com.sun.management.OperatingSystemMXBean;
 
@@ -39,6 +40,11 @@ public class HostResource {
         hostInfo.setHostTotalMemory(osBean.getTotalPhysicalMemorySize());
         hostInfo.setHostMemoryUsed(hostInfo.getHostTotalMemory() - osBean.getFreePhysicalMemorySize());
         hostInfo.setLogLevel(SyncJobService.getInstance().getLogLevel());
+        hostInfo.setBufferPoolHits(BufferPool.getInstance().getHits());
+        hostInfo.setBufferPoolMisses(BufferPool.getInstance().getMisses());
+        hostInfo.setBufferPoolBytes(BufferPool.getInstance().getPooledBytes());
+        hostInfo.setBufferBorrowedBytes(BufferPool.getInstance().getBorrowedBytes());
+        hostInfo.setBufferMemoryLimit(BufferPool.getInstance().getMemoryLimit());
 
         return hostInfo;
     }
@@ -16,37 +16,68 @@ package com.emc.ecs.sync.service;
 
 import com.emc.ecs.sync.model.ObjectContext;
 import com.emc.ecs.sync.model.ObjectStatus;
+import com.emc.ecs.sync.rest.NodeProgress;
 import com.emc.ecs.sync.util.Function;
 import com.emc.ecs.sync.util.TimingUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 
 public abstract class AbstractDbService implements DbService {
     private static Logger log = LoggerFactory.getLogger(AbstractDbService.class);
 
     public static final String OPERATION_OBJECT_QUERY = "ObjectQuery";
     public static final String OPERATION_OBJECT_UPDATE = "ObjectUpdate";
+    public static final String OPERATION_OBJECT_BATCH_QUERY = "ObjectBatchQuery";
 
     public static final String DEFAULT_OBJECTS_TABLE_NAME = "objects";
+    public static final String CHECKPOINTS_TABLE_SUFFIX = "_checkpoints";
+    public static final String CHECKPOINT_TYPE_LISTING = "listing";
+    public static final String CHECKPOINT_TYPE_DIRECTORY = "directory";
+    public static final String CHECKPOINT_TYPE_FAILED_OBJECT = "failed";
+    public static final String CHECKPOINT_TYPE_FAILED_DIRECTORY = "recrawl";
+    public static final String PARTITIONS_TABLE_SUFFIX = "_partitions";
+    public static final String NODES_TABLE_SUFFIX = "_nodes";
     public static final int DEFAULT_MAX_ERROR_SIZE = 2048;
+    // SQLite allows at most 999 parameters in a statement
+    public static final int MAX_BATCH_QUERY_SIZE = 500;
 
     protected String objectsTableName = DEFAULT_OBJECTS_TABLE_NAME;
     protected int maxErrorSize = DEFAULT_MAX_ERROR_SIZE;
     private JdbcTemplate jdbcTemplate;
     private boolean initialized = false;
-    private final Set<String> locks = new HashSet<>();
+    private boolean checkpointsInitialized = false;
+    private boolean partitionsInitialized = false;
+    // each locked identifier maps to a latch that is opened when it is unlocked (only waiters on that identifier wake up)
+    private final ConcurrentMap<String, CountDownLatch> locks = new ConcurrentHashMap<>();
 
     protected abstract JdbcTemplate createJdbcTemplate();
 
     protected abstract void createTable();
 
+    /**
+     * Creates the checkpoints table (columns: type, checkpoint_id, position). Only called if checkpoints are used
+     */
+    protected abstract void createCheckpointTable();
+
+    /**
+     * Creates the partitions table (columns: partition_id, owner, lease_expires, complete) and the nodes table
+     * (columns: node_id, heartbeat, partitions and the progress counts of the node). Only called if the job is
+     * partitioned
+     */
+    protected abstract void createPartitionTables();
+
     /**
      * Be sure we close resources before GC
      */
@@ -61,24 +92,27 @@ public abstract class AbstractDbService implements DbService {
 
     @Override
     public void lock(String identifier) {
-        synchronized (locks) {
-            while (locks.contains(identifier)) {
-                try {
-                    locks.wait();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException("interrupted while waiting for lock", e);
-                }
+        CountDownLatch latch = new CountDownLatch(1);
+        while (true) {
+            CountDownLatch holder = locks.putIfAbsent(identifier, latch);
+            if (holder == null) return; // locked
+            try {
+                holder.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("interrupted while waiting for lock", e);
             }
-            locks.add(identifier);
         }
     }
 
     @Override
-    public synchronized void unlock(String identifier) {
-        synchronized (locks) {
-            locks.remove(identifier);
-            locks.notifyAll();
-        }
+    public void unlock(String identifier) {
+        CountDownLatch latch = locks.remove(identifier);
+        if (latch != null) latch.countDown();
+    }
+
+    @Override
+    public boolean isSourceMd5Recorded() {
+        return true;
     }
 
     @Override
@@ -194,6 +228,31 @@ public abstract class AbstractDbService implements DbService {
         });
     }
 
+    @Override
+    public Map<String, SyncRecord> getSyncRecords(final List<ObjectContext> contexts) {
+        initCheck();
+        final Map<String, SyncRecord> records = new HashMap<>();
+        if (contexts.isEmpty()) return records;
+        for (int start = 0; start < contexts.size(); start += MAX_BATCH_QUERY_SIZE) {
+            final List<ObjectContext> batch = contexts.subList(start, Math.min(start + MAX_BATCH_QUERY_SIZE, contexts.size()));
+            TimingUtil.time(batch.get(0).getOptions(), OPERATION_OBJECT_BATCH_QUERY, new Function<Void>() {
+                @Override
+                public Void call() {
+                    Object[] ids = new Object[batch.size()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = batch.get(i).getSourceSummary().getIdentifier();
+                    }
+                    for (SyncRecord record : getJdbcTemplate().query(
+                            SyncRecord.selectBySourceIds(objectsTableName, ids.length), new Mapper(), ids)) {
+                        records.put(record.getSourceId(), record);
+                    }
+                    return null;
+                }
+            });
+        }
+        return records;
+    }
+
     @Override
     public Iterable<SyncRecord> getAllRecords() {
         initCheck();
@@ -230,6 +289,230 @@ public abstract class AbstractDbService implements DbService {
         };
     }
 
+    @Override
+    public String getListCheckpoint() {
+        checkpointInitCheck();
+        try {
+            return getJdbcTemplate().queryForObject("select position from " + getCheckpointsTableName()
+                    + " where type = ? and checkpoint_id = ?", String.class, CHECKPOINT_TYPE_LISTING, "");
+        } catch (IncorrectResultSizeDataAccessException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void setListCheckpoint(String position) {
+        setCheckpoint(CHECKPOINT_TYPE_LISTING, "", position == null ? "" : position);
+    }
+
+    @Override
+    public void setDirectoryComplete(String identifier) {
+        setCheckpoint(CHECKPOINT_TYPE_DIRECTORY, identifier, null);
+    }
+
+    @Override
+    public boolean isDirectoryComplete(String identifier) {
+        checkpointInitCheck();
+        return getJdbcTemplate().queryForObject("select count(*) from " + getCheckpointsTableName()
+                + " where type = ? and checkpoint_id = ?", Integer.class, CHECKPOINT_TYPE_DIRECTORY, identifier) > 0;
+    }
+
+    @Override
+    public void setObjectFailed(String identifier, String listLine) {
+        setCheckpoint(CHECKPOINT_TYPE_FAILED_OBJECT, identifier, listLine);
+    }
+
+    @Override
+    public void setDirectoryFailed(String identifier) {
+        setCheckpoint(CHECKPOINT_TYPE_FAILED_DIRECTORY, identifier, null);
+    }
+
+    @Override
+    public Map<String, String> getFailedObjects() {
+        checkpointInitCheck();
+        final Map<String, String> failedObjects = new LinkedHashMap<>();
+        getJdbcTemplate().query("select checkpoint_id, position from " + getCheckpointsTableName() + " where type = ?",
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        failedObjects.put(rs.getString("checkpoint_id"), rs.getString("position"));
+                    }
+                }, CHECKPOINT_TYPE_FAILED_OBJECT);
+        return failedObjects;
+    }
+
+    @Override
+    public List<String> getFailedDirectories() {
+        checkpointInitCheck();
+        return getJdbcTemplate().queryForList("select checkpoint_id from " + getCheckpointsTableName()
+                + " where type = ?", String.class, CHECKPOINT_TYPE_FAILED_DIRECTORY);
+    }
+
+    @Override
+    public void removeFailed(String identifier, boolean directory) {
+        checkpointInitCheck();
+        getJdbcTemplate().update("delete from " + getCheckpointsTableName() + " where type = ? and checkpoint_id = ?",
+                directory ? CHECKPOINT_TYPE_FAILED_DIRECTORY : CHECKPOINT_TYPE_FAILED_OBJECT, identifier);
+    }
+
+    @Override
+    public void deleteCheckpoints() {
+        checkpointInitCheck();
+        getJdbcTemplate().update("delete from " + getCheckpointsTableName());
+    }
+
+    protected void setCheckpoint(String type, String id, String position) {
+        checkpointInitCheck();
+        String table = getCheckpointsTableName();
+        if (getJdbcTemplate().update("update " + table + " set position = ? where type = ? and checkpoint_id = ?",
+                position, type, id) == 0) {
+            getJdbcTemplate().update("insert into " + table + " (type, checkpoint_id, position) values (?, ?, ?)",
+                    type, id, position);
+        }
+    }
+
+    @Override
+    public void initPartitions(int partitionCount, boolean restart) {
+        partitionInitCheck();
+        int existing = getPartitionCount();
+        if (existing > 0 && !restart) return; // join the run (if it is complete, there is nothing to do)
+        if (existing > 0 && getCompletePartitionCount() < existing) return; // a run is in progress
+
+        String table = getPartitionsTableName();
+        if (existing == partitionCount) {
+            // only touches complete partitions, so a node doing the same thing at the same time does no harm
+            getJdbcTemplate().update("update " + table + " set owner = null, lease_expires = 0, complete = 0 where complete = 1");
+        } else {
+            if (existing > 0) getJdbcTemplate().update("delete from " + table);
+            for (int i = 0; i < partitionCount; i++) {
+                try {
+                    getJdbcTemplate().update("insert into " + table
+                            + " (partition_id, owner, lease_expires, complete) values (?, null, 0, 0)", i);
+                } catch (DataAccessException e) {
+                    // not all drivers report a duplicate key the same way, so check if another node created it
+                    if (getJdbcTemplate().queryForObject("select count(*) from " + table + " where partition_id = ?",
+                            Integer.class, i) == 0) throw e;
+                    log.debug("partition {} was created by another node", i);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getPartitionCount() {
+        partitionInitCheck();
+        return getJdbcTemplate().queryForObject("select count(*) from " + getPartitionsTableName(), Integer.class);
+    }
+
+    @Override
+    public int getCompletePartitionCount() {
+        partitionInitCheck();
+        return getJdbcTemplate().queryForObject("select count(*) from " + getPartitionsTableName()
+                + " where complete = 1", Integer.class);
+    }
+
+    @Override
+    public List<Integer> claimPartitions(String nodeId, int maxPartitions, long leaseExpires) {
+        partitionInitCheck();
+        String table = getPartitionsTableName();
+        long now = System.currentTimeMillis();
+        List<Integer> claimed = new ArrayList<>();
+        List<Integer> available = getJdbcTemplate().queryForList("select partition_id from " + table
+                        + " where complete = 0 and (owner is null or owner = ? or lease_expires < ?) order by partition_id",
+                Integer.class, nodeId, now);
+        for (Integer partition : available) {
+            if (claimed.size() >= maxPartitions) break;
+            // the conditions are checked again, so only one node can get the lease
+            if (getJdbcTemplate().update("update " + table + " set owner = ?, lease_expires = ? where partition_id = ?"
+                            + " and complete = 0 and (owner is null or owner = ? or lease_expires < ?)",
+                    nodeId, leaseExpires, partition, nodeId, now) > 0) claimed.add(partition);
+        }
+        return claimed;
+    }
+
+    @Override
+    public int renewPartitions(String nodeId, long leaseExpires) {
+        partitionInitCheck();
+        return getJdbcTemplate().update("update " + getPartitionsTableName()
+                + " set lease_expires = ? where owner = ? and complete = 0", leaseExpires, nodeId);
+    }
+
+    @Override
+    public boolean completePartition(String nodeId, int partition) {
+        partitionInitCheck();
+        return getJdbcTemplate().update("update " + getPartitionsTableName()
+                + " set complete = 1 where partition_id = ? and owner = ?", partition, nodeId) > 0;
+    }
+
+    @Override
+    public void releasePartitions(String nodeId) {
+        partitionInitCheck();
+        getJdbcTemplate().update("update " + getPartitionsTableName()
+                + " set owner = null, lease_expires = 0 where owner = ? and complete = 0", nodeId);
+    }
+
+    @Override
+    public void setNodeProgress(NodeProgress progress) {
+        partitionInitCheck();
+        String table = getNodesTableName();
+        Object[] params = {progress.getLastHeartbeat(), progress.getPartitions(), progress.getTotalObjectsExpected(),
+                progress.getTotalBytesExpected(), progress.getObjectsComplete(), progress.getBytesComplete(),
+                progress.getObjectsSkipped(), progress.getBytesSkipped(), progress.getObjectsFailed(),
+                progress.getNodeId()};
+        if (getJdbcTemplate().update("update " + table + " set heartbeat = ?, partitions = ?, objects_expected = ?,"
+                + " bytes_expected = ?, objects_complete = ?, bytes_complete = ?, objects_skipped = ?, bytes_skipped = ?,"
+                + " objects_failed = ? where node_id = ?", params) == 0) {
+            getJdbcTemplate().update("insert into " + table + " (heartbeat, partitions, objects_expected, bytes_expected,"
+                    + " objects_complete, bytes_complete, objects_skipped, bytes_skipped, objects_failed, node_id)"
+                    + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", params);
+        }
+    }
+
+    @Override
+    public List<NodeProgress> getNodeProgress() {
+        partitionInitCheck();
+        return getJdbcTemplate().query("select * from " + getNodesTableName() + " order by node_id",
+                new RowMapper<NodeProgress>() {
+                    @Override
+                    public NodeProgress mapRow(ResultSet rs, int rowNum) throws SQLException {
+                        NodeProgress progress = new NodeProgress();
+                        progress.setNodeId(rs.getString("node_id"));
+                        progress.setLastHeartbeat(rs.getLong("heartbeat"));
+                        progress.setPartitions(rs.getInt("partitions"));
+                        progress.setTotalObjectsExpected(rs.getLong("objects_expected"));
+                        progress.setTotalBytesExpected(rs.getLong("bytes_expected"));
+                        progress.setObjectsComplete(rs.getLong("objects_complete"));
+                        progress.setBytesComplete(rs.getLong("bytes_complete"));
+                        progress.setObjectsSkipped(rs.getLong("objects_skipped"));
+                        progress.setBytesSkipped(rs.getLong("bytes_skipped"));
+                        progress.setObjectsFailed(rs.getLong("objects_failed"));
+                        return progress;
+                    }
+                });
+    }
+
+    @Override
+    public void deleteStaleNodes(long heartbeatCutoff) {
+        partitionInitCheck();
+        getJdbcTemplate().update("delete from " + getNodesTableName() + " where heartbeat < ?", heartbeatCutoff);
+    }
+
+    protected synchronized void partitionInitCheck() {
+        initCheck();
+        if (!partitionsInitialized) {
+            createPartitionTables();
+            partitionsInitialized = true;
+        }
+    }
+
+    protected synchronized void checkpointInitCheck() {
+        initCheck();
+        if (!checkpointsInitialized) {
+            createCheckpointTable();
+            checkpointsInitialized = true;
+        }
+    }
+
     protected synchronized void initCheck() {
         if (!initialized) {
             jdbcTemplate = createJdbcTemplate();
@@ -269,6 +552,10 @@ public abstract class AbstractDbService implements DbService {
         return string;
     }
 
+    protected synchronized boolean isInitialized() {
+        return initialized && jdbcTemplate != null;
+    }
+
     protected JdbcTemplate getJdbcTemplate() {
         if (jdbcTemplate == null)
             throw new UnsupportedOperationException("this service is not initialized or has been closed");
@@ -329,6 +616,18 @@ public abstract class AbstractDbService implements DbService {
         return objectsTableName;
     }
 
+    public String getCheckpointsTableName() {
+        return objectsTableName + CHECKPOINTS_TABLE_SUFFIX;
+    }
+
+    public String getPartitionsTableName() {
+        return objectsTableName + PARTITIONS_TABLE_SUFFIX;
+    }
+
+    public String getNodesTableName() {
+        return objectsTableName + NODES_TABLE_SUFFIX;
+    }
+
     @Override
     public void setObjectsTableName(String objectsTableName) {
         this.objectsTableName = objectsTableName;
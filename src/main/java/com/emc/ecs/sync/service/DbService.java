@@ -15,8 +15,11 @@
 package com.emc.ecs.sync.service;
 
 import com.emc.ecs.sync.model.ObjectContext;
+import com.emc.ecs.sync.rest.NodeProgress;
 
 import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
 
 public interface DbService extends Closeable {
 
@@ -39,16 +42,134 @@ public interface DbService extends Closeable {
 
     boolean setStatus(ObjectContext context, String error, boolean newRow);
 
+    /**
+     * Returns true if {@link #setStatus(ObjectContext, String, boolean)} records the MD5 of the source data. If so, the
+     * MD5 must be calculated while the data is transferred
+     */
+    boolean isSourceMd5Recorded();
+
     boolean setDeleted(ObjectContext context, boolean newRow);
 
     SyncRecord getSyncRecord(ObjectContext context);
 
+    /**
+     * Looks up the records of many objects at once (i.e. a page of a listing). Objects that have no record are not
+     * included in the returned map
+     *
+     * @return the records keyed by source identifier
+     */
+    Map<String, SyncRecord> getSyncRecords(List<ObjectContext> contexts);
+
     Iterable<SyncRecord> getAllRecords();
 
     Iterable<SyncRecord> getSyncErrors();
 
     Iterable<SyncRecord> getSyncRetries();
 
+    /**
+     * Returns the saved position of the source listing, or null if there is no listing checkpoint (i.e. the last job
+     * using this database finished its listing). An empty string means the listing has to start from the beginning
+     */
+    String getListCheckpoint();
+
+    /**
+     * Saves the position of the source listing. A restarted job will resume the listing after this position
+     */
+    void setListCheckpoint(String position);
+
+    /**
+     * Records that a directory and everything in it has been synced
+     */
+    void setDirectoryComplete(String identifier);
+
+    boolean isDirectoryComplete(String identifier);
+
+    /**
+     * Records an object that failed for good, so a restarted job can submit it again (a resumed listing will not get
+     * to it if it was listed before the checkpoint)
+     *
+     * @param listLine the list-file line of the object (null if it was not read from a list-file)
+     */
+    void setObjectFailed(String identifier, String listLine);
+
+    /**
+     * Records a directory that could not be crawled, so a restarted job can crawl it again
+     */
+    void setDirectoryFailed(String identifier);
+
+    /**
+     * Returns the objects recorded by {@link #setObjectFailed(String, String)}, mapped to their list-file lines
+     */
+    Map<String, String> getFailedObjects();
+
+    /**
+     * Returns the directories recorded by {@link #setDirectoryFailed(String)}
+     */
+    List<String> getFailedDirectories();
+
+    /**
+     * Removes the failure record of an object or directory (once it has been synced or crawled)
+     */
+    void removeFailed(String identifier, boolean directory);
+
+    /**
+     * Removes all listing checkpoints, directory records and failure records. Called once a job has finished its
+     * listing
+     */
+    void deleteCheckpoints();
+
+    /**
+     * Creates the partition leases of a partitioned job if there are none. If every partition of a previous run is
+     * complete and <code>restart</code> is true, a new run is started. Otherwise (i.e. a run was started by another
+     * node), nothing is changed
+     */
+    void initPartitions(int partitionCount, boolean restart);
+
+    int getPartitionCount();
+
+    int getCompletePartitionCount();
+
+    /**
+     * Leases up to <code>maxPartitions</code> partitions that are not complete and not leased by another node (or
+     * whose lease has expired)
+     *
+     * @param leaseExpires the time (ms since epoch) the leases expire if they are not renewed
+     * @return the partitions that were leased
+     */
+    List<Integer> claimPartitions(String nodeId, int maxPartitions, long leaseExpires);
+
+    /**
+     * Extends all leases held by a node
+     *
+     * @return the number of leases that were renewed
+     */
+    int renewPartitions(String nodeId, long leaseExpires);
+
+    /**
+     * Marks a partition complete
+     *
+     * @return false if the partition is no longer leased by the node (another node took it over)
+     */
+    boolean completePartition(String nodeId, int partition);
+
+    /**
+     * Gives up all (incomplete) leases held by a node, so other nodes can take them over right away
+     */
+    void releasePartitions(String nodeId);
+
+    /**
+     * Saves the progress of a node (also serves as the node's heartbeat)
+     */
+    void setNodeProgress(NodeProgress progress);
+
+    List<NodeProgress> getNodeProgress();
+
+    /**
+     * Removes the progress of nodes whose last heartbeat is older than <code>heartbeatCutoff</code> (i.e. nodes that
+     * died or finished)
+     */
+    void deleteStaleNodes(long heartbeatCutoff);
+
     String getObjectsTableName();
 
     void setObjectsTableName(String objectsTableName);
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A local (SQLite) index of the content written to a target: for each content hash and size, the identifier of a target
+ * object that has that content. The index file is kept between runs, so later jobs to the same target can find content
+ * written by earlier ones. The index only knows about changes made through it, so entries must be checked against the
+ * target before they are used
+ */
+public class DedupIndex implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(DedupIndex.class);
+
+    public static final String TABLE_NAME = "dedup_index";
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    public DedupIndex(String indexFile) {
+        if (!indexFile.startsWith(":")) { // don't validate non-file locations (like :memory:)
+            File file = new File(indexFile);
+            if ((!file.exists() && file.getParentFile() != null && !file.getParentFile().canWrite())
+                    || (file.exists() && !file.canWrite()))
+                throw new IllegalArgumentException("Cannot write to " + indexFile);
+        }
+
+        dataSource = new SingleConnectionDataSource();
+        dataSource.setUrl(SqliteDbService.JDBC_URL_BASE + indexFile);
+        dataSource.setSuppressClose(true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.update("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                "content_hash VARCHAR(64) NOT NULL," +
+                "size INT NOT NULL," +
+                "target_id VARCHAR(1500) NOT NULL," +
+                "PRIMARY KEY (content_hash, size)" +
+                ")");
+        jdbcTemplate.update("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_target ON " + TABLE_NAME + " (target_id)");
+    }
+
+    /**
+     * Returns the identifier of the target object with the specified content, or null if there is none
+     */
+    public String getTargetId(String contentHash, long size) {
+        List<String> targetIds = jdbcTemplate.queryForList("SELECT target_id FROM " + TABLE_NAME +
+                " WHERE content_hash = ? AND size = ?", String.class, contentHash, size);
+        return targetIds.isEmpty() ? null : targetIds.get(0);
+    }
+
+    public void put(String contentHash, long size, String targetId) {
+        jdbcTemplate.update("INSERT OR REPLACE INTO " + TABLE_NAME + " (content_hash, size, target_id) VALUES (?, ?, ?)",
+                contentHash, size, targetId);
+    }
+
+    public void remove(String contentHash, long size) {
+        jdbcTemplate.update("DELETE FROM " + TABLE_NAME + " WHERE content_hash = ? AND size = ?", contentHash, size);
+    }
+
+    /**
+     * Call before a target object is overwritten, so its old content is no longer referenced
+     */
+    public void removeTarget(String targetId) {
+        jdbcTemplate.update("DELETE FROM " + TABLE_NAME + " WHERE target_id = ?", targetId);
+    }
+
+    @Override
+    public void close() {
+        try {
+            dataSource.destroy();
+        } catch (Throwable t) {
+            log.warn("could not close dedup index", t);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.service;
+
+import com.emc.ecs.sync.EcsSync;
+import com.emc.ecs.sync.config.SyncOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares process-wide budgets (thread count, MySQL connections and bandwidth) among the running jobs of the
+ * {@link SyncJobService}. Each running job gets a share of each budget in proportion to its weight
+ * ({@link SyncOptions#getJobWeight()}), but never more threads than it asks for (its thread count). What one job does
+ * not use is shared among the others. Only jobs that use a MySQL database get a share of the connections. Shares are
+ * recalculated whenever a job starts, finishes or asks for a different thread count (including jobs that tune their
+ * own thread count, see {@link EcsSync#requestThreadCount(int)}).
+ * <p>
+ * At most <code>maxRunningJobs</code> jobs run at once. Jobs submitted beyond that wait in a queue and are started in
+ * order as running jobs finish.
+ */
+public class JobGovernor {
+    private static final Logger log = LoggerFactory.getLogger(JobGovernor.class);
+
+    public static final int DEFAULT_MAX_TOTAL_THREADS = 256;
+    public static final int DEFAULT_MAX_TOTAL_DB_CONNECTIONS = 64;
+    public static final int MIN_DB_CONNECTIONS = 2;
+
+    private int maxRunningJobs;
+    private int maxTotalThreads = DEFAULT_MAX_TOTAL_THREADS;
+    private int maxTotalDbConnections = DEFAULT_MAX_TOTAL_DB_CONNECTIONS;
+    private long maxTotalBandwidth;
+    // the thread count each running job asked for (its options are changed to the thread count it is given)
+    private final Map<EcsSync, Integer> runningJobs = new LinkedHashMap<>();
+    private final Map<EcsSync, Runnable> queuedJobs = new LinkedHashMap<>();
+    private final AtomicInteger jobThreadCount = new AtomicInteger();
+    private final ExecutorService jobExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "sync-job-" + jobThreadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    public JobGovernor(int maxRunningJobs) {
+        this.maxRunningJobs = maxRunningJobs;
+    }
+
+    /**
+     * Runs a job in a background thread as soon as there is room for it
+     *
+     * @param task runs the job (blocking until it is done)
+     */
+    public synchronized void submit(EcsSync sync, Runnable task) {
+        if (runningJobs.size() < maxRunningJobs) {
+            start(sync, task);
+        } else {
+            log.info("{} jobs are running; queueing job", runningJobs.size());
+            queuedJobs.put(sync, task);
+        }
+    }
+
+    public synchronized boolean isQueued(EcsSync sync) {
+        return queuedJobs.containsKey(sync);
+    }
+
+    /**
+     * Removes a job from the queue (before it is started) and marks it terminated
+     *
+     * @return false if the job is not queued
+     */
+    public synchronized boolean cancel(EcsSync sync) {
+        if (queuedJobs.remove(sync) == null) return false;
+        sync.terminate();
+        return true;
+    }
+
+    /**
+     * Changes the thread count a running job asks for (it may be given less)
+     */
+    public synchronized void setThreadCount(EcsSync sync, int threadCount) {
+        if (runningJobs.containsKey(sync)) {
+            runningJobs.put(sync, threadCount);
+            rebalance();
+        } else {
+            sync.setThreadCount(threadCount);
+        }
+    }
+
+    private void start(final EcsSync sync, final Runnable task) {
+        runningJobs.put(sync, sync.getSyncConfig().getOptions().getThreadCount());
+        sync.setGovernor(this);
+        rebalance();
+        jobExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    finished(sync);
+                }
+            }
+        });
+    }
+
+    private synchronized void finished(EcsSync sync) {
+        Integer threadCount = runningJobs.remove(sync);
+        sync.setGovernor(null);
+        // restore the thread count the job asked for, so it shows in its config
+        if (threadCount != null) sync.getSyncConfig().getOptions().setThreadCount(threadCount);
+        Iterator<Map.Entry<EcsSync, Runnable>> queued = queuedJobs.entrySet().iterator();
+        while (queued.hasNext() && runningJobs.size() < maxRunningJobs) {
+            Map.Entry<EcsSync, Runnable> next = queued.next();
+            queued.remove();
+            start(next.getKey(), next.getValue());
+        }
+        rebalance();
+    }
+
+    /**
+     * Recalculates the shares of all running jobs and applies them
+     */
+    protected synchronized void rebalance() {
+        if (runningJobs.isEmpty()) return;
+        List<EcsSync> jobs = new ArrayList<>(runningJobs.keySet());
+        int[] weights = new int[jobs.size()], threadRequests = new int[jobs.size()];
+        List<Integer> mySqlJobs = new ArrayList<>();
+        long totalWeight = 0;
+        for (int i = 0; i < jobs.size(); i++) {
+            weights[i] = Math.max(1, jobs.get(i).getSyncConfig().getOptions().getJobWeight());
+            threadRequests[i] = runningJobs.get(jobs.get(i));
+            if (usesMySql(jobs.get(i))) mySqlJobs.add(i);
+            totalWeight += weights[i];
+        }
+
+        // only jobs with a MySQL database use connections, so only they share the budget
+        int[] connectionRequests = new int[mySqlJobs.size()], connectionWeights = new int[mySqlJobs.size()];
+        for (int j = 0; j < mySqlJobs.size(); j++) {
+            connectionRequests[j] = MySQLDbService.DEFAULT_MAX_POOL_SIZE;
+            connectionWeights[j] = weights[mySqlJobs.get(j)];
+        }
+
+        int[] threads = allocate(maxTotalThreads, threadRequests, weights, 1);
+        int[] connections = allocate(maxTotalDbConnections, connectionRequests, connectionWeights, MIN_DB_CONNECTIONS);
+        for (int i = 0; i < jobs.size(); i++) {
+            EcsSync sync = jobs.get(i);
+            if (sync.getSyncConfig().getOptions().getThreadCount() != threads[i]) {
+                log.info("job {} given {} of {} threads", sync.getSyncConfig().getJobName(), threads[i], threadRequests[i]);
+                sync.setThreadCount(threads[i]);
+            }
+            sync.setBandwidthShare(maxTotalBandwidth > 0 ? Math.max(1, maxTotalBandwidth * weights[i] / totalWeight) : 0);
+        }
+        for (int j = 0; j < mySqlJobs.size(); j++) {
+            jobs.get(mySqlJobs.get(j)).setMaxDbConnections(connections[j]);
+        }
+    }
+
+    /**
+     * A job that has not started yet has no DB service, so this goes by its options (the same way the job picks one)
+     */
+    static boolean usesMySql(EcsSync sync) {
+        DbService dbService = sync.getDbService();
+        if (dbService != null) return dbService instanceof MySQLDbService;
+        SyncOptions options = sync.getSyncConfig().getOptions();
+        return options.getDbFile() == null && options.getDbConnectString() != null;
+    }
+
+    /**
+     * Divides a budget among requests in proportion to their weights. A request that is less than its share gets what
+     * it asks for, and the rest is divided among the other requests. Every request gets at least <code>minimum</code>
+     * (even if that goes over the budget) and never more than it asks for
+     */
+    static int[] allocate(int budget, int[] requests, int[] weights, int minimum) {
+        int[] shares = new int[requests.length];
+        boolean[] done = new boolean[requests.length];
+        int remaining = budget;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            long totalWeight = 0;
+            for (int i = 0; i < requests.length; i++) {
+                if (!done[i]) totalWeight += weights[i];
+            }
+            long available = Math.max(0, remaining);
+            for (int i = 0; i < requests.length; i++) {
+                if (done[i]) continue;
+                long share = available * weights[i] / totalWeight;
+                if (requests[i] <= share) {
+                    shares[i] = requests[i];
+                    remaining -= requests[i];
+                    done[i] = true;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                for (int i = 0; i < requests.length; i++) {
+                    if (!done[i]) shares[i] = (int) (available * weights[i] / totalWeight);
+                }
+            }
+        }
+        for (int i = 0; i < shares.length; i++) {
+            shares[i] = Math.min(Math.max(shares[i], minimum), Math.max(requests[i], minimum));
+        }
+        return shares;
+    }
+
+    public int getMaxRunningJobs() {
+        return maxRunningJobs;
+    }
+
+    public synchronized void setMaxRunningJobs(int maxRunningJobs) {
+        this.maxRunningJobs = maxRunningJobs;
+    }
+
+    public int getMaxTotalThreads() {
+        return maxTotalThreads;
+    }
+
+    /**
+     * Sets the total thread count of all running jobs (the sum of their <code>threadCount</code> options)
+     */
+    public synchronized void setMaxTotalThreads(int maxTotalThreads) {
+        this.maxTotalThreads = maxTotalThreads;
+        rebalance();
+    }
+
+    public int getMaxTotalDbConnections() {
+        return maxTotalDbConnections;
+    }
+
+    /**
+     * Sets the total number of MySQL connections of all running jobs
+     */
+    public synchronized void setMaxTotalDbConnections(int maxTotalDbConnections) {
+        this.maxTotalDbConnections = maxTotalDbConnections;
+        rebalance();
+    }
+
+    public long getMaxTotalBandwidth() {
+        return maxTotalBandwidth;
+    }
+
+    /**
+     * Sets the total bytes/s of all running jobs. Each job's share is a limit on both its source and its target (on
+     * top of any limits set on the job itself). 0 means no limit
+     */
+    public synchronized void setMaxTotalBandwidth(long maxTotalBandwidth) {
+        this.maxTotalBandwidth = maxTotalBandwidth;
+        rebalance();
+    }
+
+    public synchronized int getRunningJobCount() {
+        return runningJobs.size();
+    }
+
+    public synchronized int getQueuedJobCount() {
+        return queuedJobs.size();
+    }
+}
@@ -33,11 +33,15 @@ import java.util.Date;
 public class MySQLDbService extends AbstractDbService {
     private static final Logger log = LoggerFactory.getLogger(MySQLDbService.class);
 
+    public static final int DEFAULT_MAX_POOL_SIZE = 16;
+    public static final int DEFAULT_MIN_IDLE = 2;
+
     private static Key cipherKey;
 
     private String connectString;
     private String username;
     private String password;
+    private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
     private volatile boolean closed;
 
     static {
@@ -95,6 +99,9 @@ public class MySQLDbService extends AbstractDbService {
         JdbcTemplate template = createJdbcTemplate();
         try {
             template.execute("drop table if exists " + getObjectsTableName());
+            template.execute("drop table if exists " + getCheckpointsTableName());
+            template.execute("drop table if exists " + getPartitionsTableName());
+            template.execute("drop table if exists " + getNodesTableName());
         } finally {
             close(template);
         }
@@ -118,14 +125,30 @@ public class MySQLDbService extends AbstractDbService {
         }
     }
 
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of connections to the database. Can be changed while the service is in use
+     */
+    public synchronized void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+        if (isInitialized() && !closed) {
+            HikariDataSource ds = (HikariDataSource) getJdbcTemplate().getDataSource();
+            ds.setMinimumIdle(Math.min(DEFAULT_MIN_IDLE, maxPoolSize));
+            ds.setMaximumPoolSize(maxPoolSize);
+        }
+    }
+
     @Override
     protected JdbcTemplate createJdbcTemplate() {
         HikariDataSource ds = new HikariDataSource();
         ds.setJdbcUrl(connectString);
         if (username != null) ds.setUsername(username);
         if (password != null) ds.setPassword(password);
-        ds.setMaximumPoolSize(16);
-        ds.setMinimumIdle(2);
+        ds.setMaximumPoolSize(maxPoolSize);
+        ds.setMinimumIdle(Math.min(DEFAULT_MIN_IDLE, maxPoolSize));
         ds.addDataSourceProperty("characterEncoding", "utf8");
         ds.addDataSourceProperty("cachePrepStmts", "true");
         ds.addDataSourceProperty("prepStmtCacheSize", "256");
@@ -160,6 +183,53 @@ public class MySQLDbService extends AbstractDbService {
         }
     }
 
+    @Override
+    protected void createCheckpointTable() {
+        try {
+            getJdbcTemplate().update("CREATE TABLE IF NOT EXISTS " + getCheckpointsTableName() + " (" +
+                    "type VARCHAR(16) NOT NULL," +
+                    "checkpoint_id VARCHAR(750) NOT NULL," +
+                    "position TEXT NULL," +
+                    "PRIMARY KEY (type, checkpoint_id)" +
+                    ") ENGINE=InnoDB ROW_FORMAT=COMPRESSED");
+        } catch (RuntimeException e) {
+            log.error("could not create DB table {}. note: name may only contain alphanumeric or underscore", getCheckpointsTableName());
+            throw e;
+        }
+    }
+
+    @Override
+    protected void createPartitionTables() {
+        try {
+            getJdbcTemplate().update("CREATE TABLE IF NOT EXISTS " + getPartitionsTableName() + " (" +
+                    "partition_id INT PRIMARY KEY NOT NULL," +
+                    "owner VARCHAR(255) NULL," +
+                    "lease_expires BIGINT NOT NULL," +
+                    "complete INT NOT NULL" +
+                    ") ENGINE=InnoDB");
+        } catch (RuntimeException e) {
+            log.error("could not create DB table {}. note: name may only contain alphanumeric or underscore", getPartitionsTableName());
+            throw e;
+        }
+        try {
+            getJdbcTemplate().update("CREATE TABLE IF NOT EXISTS " + getNodesTableName() + " (" +
+                    "node_id VARCHAR(255) PRIMARY KEY NOT NULL," +
+                    "heartbeat BIGINT NOT NULL," +
+                    "partitions INT NOT NULL," +
+                    "objects_expected BIGINT NOT NULL," +
+                    "bytes_expected BIGINT NOT NULL," +
+                    "objects_complete BIGINT NOT NULL," +
+                    "bytes_complete BIGINT NOT NULL," +
+                    "objects_skipped BIGINT NOT NULL," +
+                    "bytes_skipped BIGINT NOT NULL," +
+                    "objects_failed BIGINT NOT NULL" +
+                    ") ENGINE=InnoDB");
+        } catch (RuntimeException e) {
+            log.error("could not create DB table {}. note: name may only contain alphanumeric or underscore", getNodesTableName());
+            throw e;
+        }
+    }
+
     @Override
     protected Date getResultDate(ResultSet rs, String name) throws SQLException {
         return new Date(rs.getTimestamp(name).getTime());
@@ -15,8 +15,13 @@
 package com.emc.ecs.sync.service;
 
 import com.emc.ecs.sync.model.ObjectContext;
+import com.emc.ecs.sync.rest.NodeProgress;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 public class NoDbService extends AbstractDbService {
     @Override
     public void deleteDatabase() {
@@ -31,18 +36,126 @@ public class NoDbService extends AbstractDbService {
     protected void createTable() {
     }
 
+    @Override
+    protected void createCheckpointTable() {
+    }
+
+    @Override
+    protected void createPartitionTables() {
+    }
+
     @Override
     public SyncRecord getSyncRecord(ObjectContext objectContext) {
         return null;
     }
 
+    @Override
+    public Map<String, SyncRecord> getSyncRecords(List<ObjectContext> contexts) {
+        return Collections.emptyMap();
+    }
+
     @Override
     public boolean setStatus(ObjectContext objectContext, String error, boolean newRow) {
         return true;
     }
 
+    @Override
+    public boolean isSourceMd5Recorded() {
+        return false;
+    }
+
     @Override
     public boolean setDeleted(ObjectContext context, boolean newRow) {
         return true;
     }
+
+    @Override
+    public String getListCheckpoint() {
+        return null;
+    }
+
+    @Override
+    public void setListCheckpoint(String position) {
+    }
+
+    @Override
+    public void setDirectoryComplete(String identifier) {
+    }
+
+    @Override
+    public boolean isDirectoryComplete(String identifier) {
+        return false;
+    }
+
+    @Override
+    public void setObjectFailed(String identifier, String listLine) {
+    }
+
+    @Override
+    public void setDirectoryFailed(String identifier) {
+    }
+
+    @Override
+    public Map<String, String> getFailedObjects() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public List<String> getFailedDirectories() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void removeFailed(String identifier, boolean directory) {
+    }
+
+    @Override
+    public void deleteCheckpoints() {
+    }
+
+    @Override
+    public void initPartitions(int partitionCount, boolean restart) {
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return 0;
+    }
+
+    @Override
+    public int getCompletePartitionCount() {
+        return 0;
+    }
+
+    @Override
+    public List<Integer> claimPartitions(String nodeId, int maxPartitions, long leaseExpires) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int renewPartitions(String nodeId, long leaseExpires) {
+        return 0;
+    }
+
+    @Override
+    public boolean completePartition(String nodeId, int partition) {
+        return false;
+    }
+
+    @Override
+    public void releasePartitions(String nodeId) {
+    }
+
+    @Override
+    public void setNodeProgress(NodeProgress progress) {
+    }
+
+    @Override
+    public List<NodeProgress> getNodeProgress() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void deleteStaleNodes(long heartbeatCutoff) {
+    }
 }
@@ -92,6 +92,53 @@ public class SqliteDbService extends AbstractDbService {
         }
     }
 
+    @Override
+    protected void createCheckpointTable() {
+        try {
+            getJdbcTemplate().update("CREATE TABLE IF NOT EXISTS " + getCheckpointsTableName() + " (" +
+                    "type VARCHAR(32) NOT NULL," +
+                    "checkpoint_id VARCHAR(1500) NOT NULL," +
+                    "position VARCHAR(2048)," +
+                    "PRIMARY KEY (type, checkpoint_id)" +
+                    ")");
+        } catch (RuntimeException e) {
+            log.error("could not create DB table {}. note: name may only contain alphanumeric or underscore", getCheckpointsTableName());
+            throw e;
+        }
+    }
+
+    @Override
+    protected void createPartitionTables() {
+        try {
+            getJdbcTemplate().update("CREATE TABLE IF NOT EXISTS " + getPartitionsTableName() + " (" +
+                    "partition_id INT PRIMARY KEY NOT NULL," +
+                    "owner VARCHAR(255)," +
+                    "lease_expires INT NOT NULL," +
+                    "complete INT NOT NULL" +
+                    ")");
+        } catch (RuntimeException e) {
+            log.error("could not create DB table {}. note: name may only contain alphanumeric or underscore", getPartitionsTableName());
+            throw e;
+        }
+        try {
+            getJdbcTemplate().update("CREATE TABLE IF NOT EXISTS " + getNodesTableName() + " (" +
+                    "node_id VARCHAR(255) PRIMARY KEY NOT NULL," +
+                    "heartbeat INT NOT NULL," +
+                    "partitions INT NOT NULL," +
+                    "objects_expected INT NOT NULL," +
+                    "bytes_expected INT NOT NULL," +
+                    "objects_complete INT NOT NULL," +
+                    "bytes_complete INT NOT NULL," +
+                    "objects_skipped INT NOT NULL," +
+                    "bytes_skipped INT NOT NULL," +
+                    "objects_failed INT NOT NULL" +
+                    ")");
+        } catch (RuntimeException e) {
+            log.error("could not create DB table {}. note: name may only contain alphanumeric or underscore", getNodesTableName());
+            throw e;
+        }
+    }
+
     @Override
     protected Date getResultDate(ResultSet rs, String name) throws SQLException {
         return new Date(rs.getLong(name));
@@ -26,11 +26,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
@@ -38,7 +37,7 @@ public class SyncJobService {
     private static final Logger log = LoggerFactory.getLogger(SyncJobService.class);
 
     public static final LogLevel DEFAULT_LOG_LEVEL = LogLevel.quiet;
-    public static final int MAX_JOBS = 10; // maximum of 10 sync jobs per JVM process
+    public static final int MAX_JOBS = 10; // maximum of 10 running sync jobs per JVM process (more are queued)
 
     private static SyncJobService instance;
 
@@ -55,6 +54,7 @@ public class SyncJobService {
     private Map<Integer, SyncConfig> configCache = new TreeMap<>();
     private AtomicInteger nextJobId = new AtomicInteger(0);
     private LogLevel logLevel = DEFAULT_LOG_LEVEL;
+    private JobGovernor governor = new JobGovernor(MAX_JOBS);
 
     public LogLevel getLogLevel() {
         return logLevel;
@@ -109,9 +109,6 @@ public class SyncJobService {
     }
 
     public int createJob(SyncConfig syncConfig) {
-        if (syncCache.size() >= MAX_JOBS)
-            throw new UnsupportedOperationException("the maximum number of jobs (" + MAX_JOBS + ") has been reached");
-
         int jobId = nextJobId.incrementAndGet();
 
         // set connect string only if table is specified or EcsSync will create a db service with the default table
@@ -127,10 +124,9 @@ public class SyncJobService {
         syncCache.put(jobId, sync);
         configCache.put(jobId, syncConfig);
 
-        // start a background thread (otherwise this will block until the entire sync is done!)
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.submit(new SyncTask(jobId, sync));
-        executor.shutdown();
+        // start in a background thread (otherwise this will block until the entire sync is done!) or queue the job if
+        // the maximum number of jobs are running
+        governor.submit(sync, new SyncTask(jobId, sync));
 
         return jobId;
     }
@@ -183,6 +179,10 @@ public class SyncJobService {
         JobControl jobControl = new JobControl();
         jobControl.setStatus(getJobStatus(sync));
         jobControl.setThreadCount(sync.getSyncConfig().getOptions().getThreadCount());
+        jobControl.setSourceBandwidthLimit(sync.getSyncConfig().getOptions().getSourceBandwidthLimit());
+        jobControl.setTargetBandwidthLimit(sync.getSyncConfig().getOptions().getTargetBandwidthLimit());
+        jobControl.setSourceOpRateLimit(sync.getSyncConfig().getOptions().getSourceOpRateLimit());
+        jobControl.setTargetOpRateLimit(sync.getSyncConfig().getOptions().getTargetOpRateLimit());
 
         return jobControl;
     }
@@ -193,13 +193,28 @@ public class SyncJobService {
         if (sync == null) throw new JobNotFoundException("the specified job ID does not exist");
 
         if (jobControl.getThreadCount() > 0) {
-            sync.setThreadCount(jobControl.getThreadCount());
+            // the job may be given fewer threads if other jobs are running
+            governor.setThreadCount(sync, jobControl.getThreadCount());
+        }
+
+        SyncOptions options = sync.getSyncConfig().getOptions();
+        if (jobControl.getSourceBandwidthLimit() != null || jobControl.getTargetBandwidthLimit() != null
+                || jobControl.getSourceOpRateLimit() != null || jobControl.getTargetOpRateLimit() != null) {
+            if (jobControl.getSourceBandwidthLimit() != null)
+                options.setSourceBandwidthLimit(jobControl.getSourceBandwidthLimit());
+            if (jobControl.getTargetBandwidthLimit() != null)
+                options.setTargetBandwidthLimit(jobControl.getTargetBandwidthLimit());
+            if (jobControl.getSourceOpRateLimit() != null)
+                options.setSourceOpRateLimit(jobControl.getSourceOpRateLimit());
+            if (jobControl.getTargetOpRateLimit() != null)
+                options.setTargetOpRateLimit(jobControl.getTargetOpRateLimit());
+            sync.applyThrottleLimits();
         }
 
         if (jobControl.getStatus() != null) {
             switch (jobControl.getStatus()) {
                 case Stopped:
-                    sync.terminate();
+                    if (!governor.cancel(sync)) sync.terminate();
                     break;
                 case Paused:
                     sync.pause();
@@ -227,10 +242,13 @@ public class SyncJobService {
         syncProgress.setTotalObjectsExpected(sync.getEstimatedTotalObjects());
         syncProgress.setBytesComplete(stats.getBytesComplete());
         syncProgress.setBytesSkipped(stats.getBytesSkipped());
+        syncProgress.setBytesDeduplicated(stats.getBytesDeduplicated());
         syncProgress.setObjectsComplete(stats.getObjectsComplete());
         syncProgress.setObjectsSkipped(stats.getObjectsSkipped());
         syncProgress.setObjectsFailed(stats.getObjectsFailed());
         syncProgress.setObjectsAwaitingRetry(sync.getObjectsAwaitingRetry());
+        syncProgress.setInFlightBytes(sync.getInFlightBytes());
+        syncProgress.setInFlightObjects(sync.getInFlightObjects());
         syncProgress.setActiveQueryTasks(sync.getActiveQueryThreads());
         syncProgress.setActiveSyncTasks(sync.getActiveSyncThreads());
         syncProgress.setRuntimeMs(stats.getTotalRunTime());
@@ -253,6 +271,11 @@ public class SyncJobService {
         syncProgress.setObjectCompleteRate(sync.getStats().getObjectCompleteRate());
         syncProgress.setObjectSkipRate(sync.getStats().getObjectSkipRate());
         syncProgress.setObjectErrorRate(sync.getStats().getObjectErrorRate());
+        syncProgress.setThreadCount(sync.getSyncConfig().getOptions().getThreadCount());
+        syncProgress.setThreadTuningState(sync.getThreadTuningState());
+        syncProgress.setStages(new ArrayList<>(sync.getStageProgress()));
+        syncProgress.setLanes(new ArrayList<>(sync.getLaneProgress()));
+        syncProgress.setCluster(sync.getClusterProgress());
 
         if (sync.getRunError() != null) syncProgress.setRunError(SyncUtil.summarize(sync.getRunError()));
 
@@ -287,6 +310,7 @@ public class SyncJobService {
     }
 
     protected JobControlStatus getJobStatus(EcsSync sync) {
+        if (governor.isQueued(sync)) return JobControlStatus.Queued;
         if (sync.isPaused()) {
             if (sync.getActiveSyncThreads() > 0 || sync.getActiveQueryThreads() > 0) return JobControlStatus.Pausing;
             else return JobControlStatus.Paused;
@@ -325,6 +349,13 @@ public class SyncJobService {
         this.dbEncPassword = dbEncPassword;
     }
 
+    /**
+     * The governor shares the thread count, database connections and bandwidth of this process among running jobs
+     */
+    public JobGovernor getGovernor() {
+        return governor;
+    }
+
     protected class SyncTask implements Runnable {
         private int jobId;
         private EcsSync sync;
@@ -85,6 +85,17 @@ public class SyncRecord {
                 + " from " + tableName + " where " + SOURCE_ID + " = ?";
     }
 
+    public static String selectBySourceIds(String tableName, int idCount) {
+        String select = "select " + StringUtils.collectionToCommaDelimitedString(ALL_FIELDS)
+                + " from " + tableName + " where " + SOURCE_ID + " in (";
+        for (int i = 0; i < idCount; i++) {
+            select += "?";
+            if (i < idCount - 1) select += ", ";
+        }
+        select += ")";
+        return select;
+    }
+
     public static String selectAll(String tableName) {
         return "select " + StringUtils.collectionToCommaDelimitedString(ALL_FIELDS)
                 + " from " + tableName;
@@ -19,19 +19,29 @@ import com.emc.ecs.sync.config.RoleType;
 import com.emc.ecs.sync.filter.SyncFilter;
 import com.emc.ecs.sync.model.ObjectSummary;
 import com.emc.ecs.sync.model.SyncObject;
+import com.emc.ecs.sync.util.LazyValue;
+import com.emc.ecs.sync.util.ParallelRangeInputStream;
 import com.emc.ecs.sync.util.PerformanceWindow;
+import com.emc.ecs.sync.util.ThrottledPerformanceWindow;
+import com.emc.ecs.sync.util.TokenBucket;
 import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Iterator;
 
 public abstract class AbstractStorage<C> extends AbstractPlugin<C> implements SyncStorage<C> {
     private static final Logger log = LoggerFactory.getLogger(AbstractStorage.class);
 
+    // bytes/s and ops/s limits (disabled by default)
+    private TokenBucket bandwidthThrottle = new TokenBucket(0);
+    private TokenBucket opThrottle = new TokenBucket(0);
+
     // 500ms measurement interval, 20-second window
-    private PerformanceWindow readPerformanceCounter = new PerformanceWindow(500, 20);
-    private PerformanceWindow writePerformanceCounter = new PerformanceWindow(500, 20);
+    private PerformanceWindow readPerformanceCounter = new ThrottledPerformanceWindow(500, 20, bandwidthThrottle);
+    private PerformanceWindow writePerformanceCounter = new ThrottledPerformanceWindow(500, 20, bandwidthThrottle);
 
     private RoleType role;
 
@@ -77,6 +87,39 @@ public abstract class AbstractStorage<C> extends AbstractPlugin<C> implements Sy
         return identifier;
     }
 
+    /**
+     * Storages that support ranged reads should call this after setting the lazy stream of an object. The range source
+     * is always saved in the object as {@link ParallelRangeInputStream#PROP_RANGE_READER} (i.e. for chunked
+     * verification). If the object is at least {@link com.emc.ecs.sync.config.SyncOptions#getRangeReadThreshold()} in
+     * size, its data stream will be a {@link ParallelRangeInputStream} and the range source is also saved as
+     * {@link ParallelRangeInputStream#PROP_RANGE_SOURCE} (so a target can write the ranges directly)
+     */
+    protected void setRangeSource(SyncObject object, final ParallelRangeInputStream.RangeSource storageSource) {
+        if (object.getMetadata().isDirectory()) return;
+
+        // every range is a separate request
+        final ParallelRangeInputStream.RangeSource rangeSource = new ParallelRangeInputStream.RangeSource() {
+            @Override
+            public InputStream open(long offset, long length) throws IOException {
+                opThrottle.acquire(1);
+                return storageSource.open(offset, length);
+            }
+        };
+        object.setProperty(ParallelRangeInputStream.PROP_RANGE_READER, rangeSource);
+
+        final long size = object.getMetadata().getContentLength();
+        if (options.getRangeReadThreshold() <= 0 || size < options.getRangeReadThreshold()) return;
+
+        object.setProperty(ParallelRangeInputStream.PROP_RANGE_SOURCE, rangeSource);
+        object.setLazyStream(new LazyValue<InputStream>() {
+            @Override
+            public InputStream get() {
+                return new ParallelRangeInputStream(rangeSource, size, options.getRangeReadSize(),
+                        options.getRangeReadThreadCount(), options.getRetryAttempts());
+            }
+        });
+    }
+
     @Override
     public void close() {
         try (PerformanceWindow readWindow = readPerformanceCounter;
@@ -94,11 +137,27 @@ public abstract class AbstractStorage<C> extends AbstractPlugin<C> implements Sy
         }
     }
 
+    /**
+     * Storages that set list positions on their summaries must override this
+     */
+    @Override
+    public Iterable<ObjectSummary> allObjectsAfter(String listPosition) {
+        throw new UnsupportedOperationException(String.format("%s cannot resume a listing", getClass().getSimpleName()));
+    }
+
     @Override
     public void delete(String identifier) {
         throw new UnsupportedOperationException(String.format("Delete is not supported by the %s plugin", getClass().getSimpleName()));
     }
 
+    /**
+     * Storages that can copy their own objects without streaming the data must override this
+     */
+    @Override
+    public boolean isInternalCopySupported() {
+        return false;
+    }
+
     @Override
     public long getReadRate() {
         return readPerformanceCounter.getWindowRate();
@@ -119,6 +178,16 @@ public abstract class AbstractStorage<C> extends AbstractPlugin<C> implements Sy
         return writePerformanceCounter;
     }
 
+    @Override
+    public TokenBucket getBandwidthThrottle() {
+        return bandwidthThrottle;
+    }
+
+    @Override
+    public TokenBucket getOpThrottle() {
+        return opThrottle;
+    }
+
     public RoleType getRole() {
         return role;
     }
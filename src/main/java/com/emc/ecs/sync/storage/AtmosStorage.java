@@ -281,6 +281,12 @@ public class AtmosStorage extends AbstractStorage<AtmosConfig> {
 
             SyncObject object = new SyncObject(this, getRelativePath(identifier, metadata.isDirectory()), metadata).withAcl(acl)
                     .withLazyStream(lazyStream);
+            setRangeSource(object, new ParallelRangeInputStream.RangeSource() {
+                @Override
+                public InputStream open(long offset, long length) {
+                    return readDataStream(identifier, new Range(offset, offset + length - 1));
+                }
+            });
 
             object.setProperty(PROP_ATMOS_METADATA, atmosMeta);
 
@@ -387,6 +393,15 @@ public class AtmosStorage extends AbstractStorage<AtmosConfig> {
         }, OPERATION_READ_OBJECT_STREAM);
     }
 
+    private InputStream readDataStream(final String identifier, final Range range) {
+        return time(new Function<InputStream>() {
+            @Override
+            public InputStream call() {
+                return atmos.readObjectStream(getObjectIdentifier(identifier), range).getObject();
+            }
+        }, OPERATION_READ_OBJECT_STREAM);
+    }
+
     private com.emc.atmos.api.bean.ObjectMetadata getAtmosMetadata(final ObjectIdentifier id) {
         return time(new Function<com.emc.atmos.api.bean.ObjectMetadata>() {
             @Override
@@ -602,7 +617,6 @@ public class AtmosStorage extends AbstractStorage<AtmosConfig> {
         } else { // retention is not enabled, so follow standard wschecksum process (create -> append...)
             // create
             RunningChecksum ck = new RunningChecksum(ChecksumAlgorithm.valueOf(checksumType.toString().toUpperCase()));
-            byte[] buffer = new byte[options.getBufferSize()];
             long read = 0;
             int c;
             cRequest.wsChecksum(ck);
@@ -614,6 +628,7 @@ public class AtmosStorage extends AbstractStorage<AtmosConfig> {
             }, OPERATION_CREATE_OBJECT);
 
             if (options.isSyncData()) {
+                byte[] buffer = BufferPool.getInstance().borrow(options.getBufferSize());
                 try (InputStream in = obj.getDataStream()) {
                     while ((c = in.read(buffer)) != -1) {
                         // append
@@ -632,6 +647,8 @@ public class AtmosStorage extends AbstractStorage<AtmosConfig> {
                         getWriteWindow().increment(c);
                         read += c;
                     }
+                } finally {
+                    BufferPool.getInstance().release(buffer);
                 }
             }
         }
@@ -836,9 +853,12 @@ public class AtmosStorage extends AbstractStorage<AtmosConfig> {
 
                 Metadata sizeMeta = entry.getSystemMetadataMap().get(SIZE_PROP);
                 Metadata typeMeta = entry.getSystemMetadataMap().get(TYPE_PROP);
+                Metadata mtimeMeta = entry.getSystemMetadataMap().get(MTIME_PROP);
 
-                return new ObjectSummary(objectPath.getPath(), DIRECTORY_TYPE.equals(typeMeta.getValue()),
+                ObjectSummary summary = new ObjectSummary(objectPath.getPath(), DIRECTORY_TYPE.equals(typeMeta.getValue()),
                         Long.parseLong(sizeMeta.getValue()));
+                if (mtimeMeta != null) summary.setMtime(Iso8601Util.parse(mtimeMeta.getValue()));
+                return summary;
             }
             return null;
         }
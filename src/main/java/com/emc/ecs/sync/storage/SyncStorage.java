@@ -18,6 +18,7 @@ import com.emc.ecs.sync.SyncPlugin;
 import com.emc.ecs.sync.model.ObjectSummary;
 import com.emc.ecs.sync.model.SyncObject;
 import com.emc.ecs.sync.util.PerformanceWindow;
+import com.emc.ecs.sync.util.TokenBucket;
 
 public interface SyncStorage<C> extends SyncPlugin<C> {
     /**
@@ -48,6 +49,13 @@ public interface SyncStorage<C> extends SyncPlugin<C> {
      */
     Iterable<ObjectSummary> allObjects();
 
+    /**
+     * Resumes a listing of {@link #allObjects()} after the specified position (as set by this storage in
+     * {@link ObjectSummary#getListPosition()}). Objects at or just before the position may be listed again. Only called
+     * for storages that set list positions
+     */
+    Iterable<ObjectSummary> allObjectsAfter(String listPosition);
+
     /**
      * Implement to return the children of the specified parent object. This method should always return a valid
      * iterator (which can be empty).
@@ -75,10 +83,27 @@ public interface SyncStorage<C> extends SyncPlugin<C> {
      */
     void delete(String identifier);
 
+    /**
+     * Returns true if this storage can write an object that it loaded itself (i.e. a reference to an existing object)
+     * by copying the data inside the storage, instead of streaming it from the original source
+     */
+    boolean isInternalCopySupported();
+
     PerformanceWindow getReadWindow();
 
     PerformanceWindow getWriteWindow();
 
+    /**
+     * Limits the bytes/s read from and written to this storage. Bytes are taken from this bucket as they are counted
+     * by the read and write windows
+     */
+    TokenBucket getBandwidthThrottle();
+
+    /**
+     * Limits the requests/s (object loads, writes, deletes and listings) made to this storage
+     */
+    TokenBucket getOpThrottle();
+
     /**
      * return the current read transfer rate of the plugin in bytes/s.
      */
@@ -79,7 +79,8 @@ public class TestStorage extends AbstractStorage<TestConfig> {
 
     private ObjectSummary createSummary(TestSyncObject object) {
         return new ObjectSummary(getIdentifier(object.getRelativePath(), object.getMetadata().isDirectory()),
-                object.getMetadata().isDirectory(), object.getMetadata().getContentLength());
+                object.getMetadata().isDirectory(), object.getMetadata().getContentLength())
+                .withMtime(object.getMetadata().getModificationTime());
     }
 
     @Override
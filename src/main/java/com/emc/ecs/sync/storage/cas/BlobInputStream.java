@@ -14,7 +14,9 @@
  */
 package com.emc.ecs.sync.storage.cas;
 
+import com.emc.ecs.sync.util.BufferPool;
 import com.emc.ecs.sync.util.EnhancedInputStream;
+import com.emc.ecs.sync.util.RingBufferPipe;
 import com.emc.object.util.ProgressListener;
 import com.emc.object.util.ProgressOutputStream;
 import com.filepool.fplibrary.FPLibraryException;
@@ -44,7 +46,6 @@ public class BlobInputStream extends EnhancedInputStream implements FPStreamInte
     private int bufferSize;
     private boolean drainOnError;
     private BlobReader blobReader;
-    private Thread readerThread;
     private Future readFuture;
     private byte[] digest;
 
@@ -65,27 +66,21 @@ public class BlobInputStream extends EnhancedInputStream implements FPStreamInte
         this.tag = tag;
         this.bufferSize = bufferSize;
 
-        // piped streams and a blobReader task are necessary because of the odd stream handling in the CAS JNI wrapper
-        PipedInputStream pin = new PipedInputStream(bufferSize);
-        PipedOutputStream pout = new PipedOutputStream(pin);
+        // a pipe and a blobReader task are necessary because of the odd stream handling in the CAS JNI wrapper
+        RingBufferPipe pipe = new RingBufferPipe(bufferSize);
 
         try {
-            in = new DigestInputStream(pin, MessageDigest.getInstance("md5"));
+            in = new DigestInputStream(pipe.getInputStream(), MessageDigest.getInstance("md5"));
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("could not initialize MD5 digest", e);
         }
 
-        OutputStream out = pout;
+        OutputStream out = pipe.getOutputStream();
         if (listener != null) out = new ProgressOutputStream(out, listener);
 
+        // if no executor is given, the reader runs in the pipe's shared pool
         blobReader = new BlobReader(out, getSize());
-        if (readExecutor != null) {
-            readFuture = readExecutor.submit(blobReader);
-        } else {
-            readerThread = new Thread(blobReader);
-            readerThread.setDaemon(true);
-            readerThread.start();
-        }
+        readFuture = RingBufferPipe.submitWriter(blobReader, readExecutor);
     }
 
     @Override
@@ -119,30 +114,29 @@ public class BlobInputStream extends EnhancedInputStream implements FPStreamInte
 
             // if requested, completely read the source blob before closing the stream
             if (drainOnError && !blobReader.isComplete() && !blobReader.isFailed()) {
+                byte[] buffer = BufferPool.getInstance().borrow(32 * 1024);
                 try {
-                    byte[] buffer = new byte[32 * 1024];
                     int c = 0;
                     while (c != -1) {
                         c = read(buffer);
                     }
                 } catch (Throwable t) {
                     log.warn("[" + tag.getClipId() + "]: could not drain source blob before closing early", t);
+                } finally {
+                    BufferPool.getInstance().release(buffer);
                 }
             }
 
-            // NOTE: closing the stream *before* the reader thread is finished will throw an exception in
-            // PipedOutputStream.write
-            // - if the reader thread is active, the exception will be immediate
-            // - if it is waiting for buffer space, it will get an exception on the next poll (it polls every second)
+            // NOTE: closing the stream *before* the reader is finished will throw an exception in the pipe's write
+            // (immediately, even if the reader is waiting for buffer space)
             super.close();
 
         } finally {
 
             // if the blobReader is complete, this does nothing; if close was called early, this will wait until the blobReader
-            // thread is notified of the close (an IOException will be thrown from PipedOutputStream.write)
+            // is notified of the close (an IOException will be thrown from the pipe's write)
             try {
-                if (readerThread != null) readerThread.join();
-                else readFuture.get();
+                readFuture.get();
             } catch (Throwable t) {
                 if (blobReader.isFailed() && blobReader.getError() instanceof IOException
                         && "Pipe closed".equals(blobReader.getError().getMessage()))
@@ -150,7 +144,7 @@ public class BlobInputStream extends EnhancedInputStream implements FPStreamInte
                 else log.warn("[" + tag.getClipId() + "]: could not join blobReader thread", t);
             }
 
-            // save MD5 so we can GC the piped stream buffer
+            // save MD5 so we can GC the pipe buffer
             try {
                 getMd5Digest();
             } catch (Throwable t) {
@@ -212,13 +206,20 @@ public class BlobInputStream extends EnhancedInputStream implements FPStreamInte
 
         @Override
         public synchronized void run() {
-            try (OutputStream outputStream = new CasOutputStream(out, size)) {
+            OutputStream outputStream = new CasOutputStream(out, size);
+            try {
                 tag.BlobRead(outputStream);
                 complete = true;
             } catch (Throwable t) {
-                failed = true;
+                // record the error before the pipe is closed, so the consumer sees it instead of a short stream
                 error = t;
+                failed = true;
             } finally {
+                try {
+                    outputStream.close(); // make sure the write-side of the pipe is always closed
+                } catch (Throwable t) {
+                    log.warn("[" + tag.getClipId() + "]: could not close blob pipe", t);
+                }
                 out = null; // free reference for GC
             }
         }
@@ -36,9 +36,10 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.Date;
-import java.util.Iterator;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicLong;
@@ -60,6 +61,9 @@ public class CasStorage extends AbstractStorage<CasConfig> implements OptionChan
 
     private static final int CLIP_OPTIONS = 0;
 
+    // format of the creation.date field in query results (always GMT)
+    private static final String QUERY_DATE_FORMAT = "yyyy.MM.dd HH:mm:ss";
+
     private CasPool pool;
     private Date queryStartTime;
     private Date queryEndTime;
@@ -192,6 +196,19 @@ public class CasStorage extends AbstractStorage<CasConfig> implements OptionChan
 
     @Override
     public Iterable<ObjectSummary> allObjects() {
+        return queryObjects(queryStartTime == null ? 0 : queryStartTime.getTime());
+    }
+
+    /**
+     * Resumes the clip query at the create time of the last checkpointed clip. Query results come back in create-time
+     * order, and the start time is inclusive, so clips created in the same second are listed again
+     */
+    @Override
+    public Iterable<ObjectSummary> allObjectsAfter(String listPosition) {
+        return queryObjects(Long.parseLong(listPosition));
+    }
+
+    private Iterable<ObjectSummary> queryObjects(final long startTime) {
         return new Iterable<ObjectSummary>() {
             @Override
             public Iterator<ObjectSummary> iterator() {
@@ -201,7 +218,7 @@ public class CasStorage extends AbstractStorage<CasConfig> implements OptionChan
                         throw new ConfigurationException("QUERY is not supported for this pool connection.");
 
                     final FPQueryExpression query = new FPQueryExpression();
-                    query.setStartTime(queryStartTime == null ? 0 : queryStartTime.getTime());
+                    query.setStartTime(startTime);
                     query.setEndTime(queryEndTime == null ? -1 : queryEndTime.getTime());
                     query.setType(FPLibraryConstants.FP_QUERY_TYPE_EXISTING);
                     query.selectField("creation.date");
@@ -227,7 +244,12 @@ public class CasStorage extends AbstractStorage<CasConfig> implements OptionChan
                                                 log.debug("query result OK; creating ReadClipTask.");
                                                 long totalSize = Long.parseLong(queryResult.getField("totalsize"));
                                                 lastResultCreateTime = queryResult.getField("creation.date");
-                                                return new ObjectSummary(queryResult.getClipID(), false, totalSize);
+                                                ObjectSummary summary = new ObjectSummary(queryResult.getClipID(), false, totalSize);
+                                                summary.setListPosition(parseCreateTime(lastResultCreateTime));
+                                                // clips are immutable, so the create time is the modification time
+                                                if (summary.getListPosition() != null)
+                                                    summary.setMtime(new Date(Long.parseLong(summary.getListPosition())));
+                                                return summary;
 
                                             case FPLibraryConstants.FP_QUERY_RESULT_CODE_INCOMPLETE:
                                                 log.info("received FP_QUERY_RESULT_CODE_INCOMPLETE error, invalid C-Clip, trying again.");
@@ -291,6 +313,21 @@ public class CasStorage extends AbstractStorage<CasConfig> implements OptionChan
         };
     }
 
+    /**
+     * Returns the create time in milliseconds (as a string), or null if it can't be parsed (no checkpoint then)
+     */
+    private String parseCreateTime(String createDate) {
+        if (createDate == null) return null;
+        try {
+            DateFormat format = new SimpleDateFormat(QUERY_DATE_FORMAT);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return String.valueOf(format.parse(createDate).getTime());
+        } catch (ParseException e) {
+            log.debug("could not parse clip create date {}", createDate);
+            return null;
+        }
+    }
+
     @Override
     public Iterable<ObjectSummary> children(ObjectSummary parent) {
         return new Iterable<ObjectSummary>() {
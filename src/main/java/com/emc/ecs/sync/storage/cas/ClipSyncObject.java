@@ -63,11 +63,11 @@ public class ClipSyncObject extends SyncObject {
      * Note: if forceRead is true, this method will close all tags in the clip
      */
     @Override
-    public synchronized String getMd5Hex(boolean forceRead) {
+    public synchronized String getChecksumHex(boolean forceRead) {
         if (md5Summary == null) {
 
-            // summarize the MD5s of the CDF content and all of the blob-tags
-            StringBuilder summary = new StringBuilder("{ CDF: ").append(super.getMd5Hex(forceRead));
+            // summarize the checksum of the CDF content and the MD5s of all of the blob-tags
+            StringBuilder summary = new StringBuilder("{ CDF: ").append(super.getChecksumHex(forceRead));
             // if we're forcing read, we want to get *all* tags; otherwise, just poll the tags we've already loaded
             for (EnhancedTag tag : (forceRead ? getTags() : tags)) {
                 try {
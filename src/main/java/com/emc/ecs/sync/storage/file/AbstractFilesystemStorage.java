@@ -15,6 +15,7 @@
 package com.emc.ecs.sync.storage.file;
 
 import com.emc.ecs.sync.config.ConfigurationException;
+import com.emc.ecs.sync.config.SyncOptions;
 import com.emc.ecs.sync.config.storage.FilesystemConfig;
 import com.emc.ecs.sync.filter.SyncFilter;
 import com.emc.ecs.sync.model.ObjectAcl;
@@ -24,17 +25,24 @@ import com.emc.ecs.sync.model.SyncObject;
 import com.emc.ecs.sync.storage.AbstractStorage;
 import com.emc.ecs.sync.storage.ObjectNotFoundException;
 import com.emc.ecs.sync.storage.SyncStorage;
+import com.emc.ecs.sync.util.BufferPool;
+import com.emc.ecs.sync.util.ChecksumUtil;
 import com.emc.ecs.sync.util.Iso8601Util;
 import com.emc.ecs.sync.util.LazyValue;
+import com.emc.ecs.sync.util.ParallelRangeInputStream;
+import com.emc.object.util.ProgressListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.activation.MimetypesFileTypeMap;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.file.*;
 import java.nio.file.attribute.*;
+import java.security.MessageDigest;
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.regex.Pattern;
@@ -53,6 +61,9 @@ public abstract class AbstractFilesystemStorage<C extends FilesystemConfig> exte
     public static final String TYPE_LINK = "application/x-symlink";
     public static final String META_LINK_TARGET = "x-emc-link-target";
 
+    private static final long MIN_TRANSFER_CHUNK = 4 * 1024 * 1024; // 4MB
+    private static final int DIGEST_BUFFER_SIZE = 256 * 1024;
+
     private Date modifiedSince;
     private List<Pattern> excludedPathPatterns;
 
@@ -74,6 +85,20 @@ public abstract class AbstractFilesystemStorage<C extends FilesystemConfig> exte
      */
     protected abstract OutputStream createOutputStream(File f) throws IOException;
 
+    /**
+     * Override to provide a FileChannel to read a file directly. Returns null by default (channels are not supported)
+     */
+    protected FileChannel createReadChannel(File f) throws IOException {
+        return null;
+    }
+
+    /**
+     * Override to provide a FileChannel to write a file directly. Returns null by default (channels are not supported)
+     */
+    protected FileChannel createWriteChannel(File f) throws IOException {
+        return null;
+    }
+
     /**
      * Implement to provide a File implementation (i.e. TFile)
      */
@@ -148,7 +173,7 @@ public abstract class AbstractFilesystemStorage<C extends FilesystemConfig> exte
         boolean link = isSymLink(file);
         boolean directory = file.isDirectory() && (config.isFollowLinks() || !link);
         long size = directory || link ? 0 : file.length();
-        return new ObjectSummary(file.getPath(), directory, size);
+        return new ObjectSummary(file.getPath(), directory, size).withMtime(new Date(file.lastModified()));
     }
 
     @Override
@@ -192,6 +217,14 @@ public abstract class AbstractFilesystemStorage<C extends FilesystemConfig> exte
         SyncObject object = new SyncObject(this, getRelativePath(identifier, metadata.isDirectory()), metadata)
                 .withLazyStream(lazyStream).withLazyAcl(lazyAcl);
         object.setProperty(PROP_FILE, createFile(identifier));
+        if (!metadata.isDirectory()) {
+            object.setProperty(ParallelRangeInputStream.PROP_RANGE_READER, new ParallelRangeInputStream.RangeSource() {
+                @Override
+                public InputStream open(long offset, long length) throws IOException {
+                    return readDataRange(identifier, offset, length);
+                }
+            });
+        }
         return object;
     }
 
@@ -252,6 +285,26 @@ public abstract class AbstractFilesystemStorage<C extends FilesystemConfig> exte
         }
     }
 
+    /**
+     * Reads a range of a file with a positional read if channels are supported, otherwise by skipping ahead in the data
+     * stream
+     */
+    private InputStream readDataRange(String identifier, long offset, long length) throws IOException {
+        File file = createFile(identifier);
+        FileChannel channel = openDataChannel(file);
+        InputStream in;
+        if (channel != null) {
+            in = Channels.newInputStream(channel.position(offset));
+        } else {
+            in = readDataStream(identifier);
+            long skipped = 0, s;
+            while (skipped < offset && (s = in.skip(offset - skipped)) > 0) {
+                skipped += s;
+            }
+        }
+        return new RangeInputStream(in, length);
+    }
+
     // TODO: make this windows-compatible
     protected ObjectAcl readAcl(String identifier) {
         PosixFileAttributes attributes;
@@ -343,7 +396,9 @@ public abstract class AbstractFilesystemStorage<C extends FilesystemConfig> exte
                         Files.createSymbolicLink(path, Paths.get(targetPath));
                     }
                 } else {
-                    if (streamData) copyData(object.getDataStream(), file);
+                    if (streamData) {
+                        if (!transferData(object, file)) copyData(object.getDataStream(), file);
+                    }
                     else if (!Files.isRegularFile(path)) Files.createFile(path);
                 }
             } catch (IOException e) {
@@ -461,17 +516,137 @@ public abstract class AbstractFilesystemStorage<C extends FilesystemConfig> exte
         }
     }
 
+    /**
+     * Copies the data of an object straight from its source file using {@link FileChannel#transferTo}, so the OS can
+     * move the data without copying it through the heap. This only works when both the source and this storage support
+     * channels and the data stream was not opened or replaced (i.e. by a filter). The data is transferred in chunks; the
+     * performance windows are incremented after each chunk (so throttling still applies) and, if the object needs a
+     * checksum, the chunk is read back from the source file (which is still in the page cache) and digested.
+     *
+     * @return false if the data cannot be transferred directly (the data stream must be copied instead)
+     */
+    private boolean transferData(SyncObject object, File outFile) throws IOException {
+        if (!object.isDataStreamUntouched()) return false;
+        Object rangeSource = object.getProperty(ParallelRangeInputStream.PROP_RANGE_SOURCE);
+        if (rangeSource instanceof ParallelRangeInputStream.RangeSource)
+            return transferRanges(object, (ParallelRangeInputStream.RangeSource) rangeSource, outFile);
+        if (!(object.getSource() instanceof AbstractFilesystemStorage)) return false;
+        Object sourceFile = object.getProperty(PROP_FILE);
+        if (!(sourceFile instanceof File)) return false;
+
+        AbstractFilesystemStorage<?> source = (AbstractFilesystemStorage<?>) object.getSource();
+        try (FileChannel input = source.openDataChannel((File) sourceFile)) {
+            if (input == null) return false;
+            try (FileChannel output = createWriteChannel(outFile)) {
+                if (output == null) return false;
+
+                MessageDigest digest = ChecksumUtil.createDigest(object.getChecksumAlgorithm());
+                long chunkSize = Math.max(options.getBufferSize(), MIN_TRANSFER_CHUNK), position = 0, count;
+                while ((count = input.transferTo(position, chunkSize, output)) > 0) {
+                    if (digest != null) digestChannel(input, position, count, digest);
+                    position += count;
+                    if (source.getOptions().isMonitorPerformance()) source.getReadWindow().increment(count);
+                    if (options.isMonitorPerformance()) getWriteWindow().increment(count);
+                }
+                // transferTo returns 0 at the end of the file, so a file that changed size would otherwise go unnoticed
+                long contentLength = object.getMetadata().getContentLength();
+                if (position != contentLength)
+                    throw new IOException(String.format(
+                            "transferred %d bytes, but the object size is %d (did the file change?)", position, contentLength));
+                object.setDataTransferred(position, digest == null ? null : digest.digest());
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Writes the ranges of a parallel range read (see {@link ParallelRangeInputStream}) directly at their offsets in
+     * the file, so they do not have to be reassembled in order. Since the ranges arrive out of order, no source checksum
+     * is recorded. A checksum of the written file would only prove that the file matches itself, so verification must
+     * read the source data again instead.
+     *
+     * @return false if this storage cannot write to a channel (the data stream must be copied instead)
+     */
+    private boolean transferRanges(SyncObject object, ParallelRangeInputStream.RangeSource rangeSource, File outFile)
+            throws IOException {
+        try (FileChannel output = createWriteChannel(outFile)) {
+            if (output == null) return false;
+
+            final SyncStorage<?> source = object.getSource();
+            final SyncOptions sourceOptions = source.getOptions();
+            ProgressListener listener = new ProgressListener() {
+                @Override
+                public void progress(long completed, long total) {
+                }
+
+                @Override
+                public void transferred(long size) {
+                    if (sourceOptions.isMonitorPerformance()) source.getReadWindow().increment(size);
+                    if (options.isMonitorPerformance()) getWriteWindow().increment(size);
+                }
+            };
+            long size = ParallelRangeInputStream.writeTo(rangeSource, object.getMetadata().getContentLength(), output,
+                    sourceOptions.getRangeReadSize(), sourceOptions.getRangeReadThreadCount(),
+                    sourceOptions.getRetryAttempts(), listener);
+
+            object.setDataTransferred(size, null);
+            return true;
+        }
+    }
+
+    /**
+     * Digests part of a file through a pooled direct buffer. Mapping the file instead would leave a mapping behind for
+     * every chunk until the GC gets around to unmapping it
+     */
+    private void digestChannel(FileChannel channel, long position, long length, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = BufferPool.getInstance().borrowDirect(DIGEST_BUFFER_SIZE);
+        try {
+            long end = position + length;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int c = channel.read(buffer, position);
+                if (c < 0)
+                    throw new EOFException(String.format("file ended at %d while digesting (expected %d bytes)", position, end));
+                position += c;
+                buffer.flip();
+                digest.update(buffer);
+            }
+        } finally {
+            BufferPool.getInstance().release(buffer);
+        }
+    }
+
+    /**
+     * Returns a channel to read the data of a source file, or null if the data must be read from the data stream
+     */
+    private FileChannel openDataChannel(File file) throws IOException {
+        if (!config.isFollowLinks() && isSymLink(file)) return null;
+        if (!file.isFile()) return null;
+        return createReadChannel(file);
+    }
+
     private void copyData(InputStream inStream, File outFile) throws IOException {
-        byte[] buffer = new byte[options.getBufferSize()];
+        byte[] buffer = BufferPool.getInstance().borrow(options.getBufferSize());
         int c;
         try (InputStream input = inStream; OutputStream output = createOutputStream(outFile)) {
             while ((c = input.read(buffer)) != -1) {
                 output.write(buffer, 0, c);
                 if (options.isMonitorPerformance()) getWriteWindow().increment(c);
             }
+        } finally {
+            BufferPool.getInstance().release(buffer);
         }
     }
 
+    /**
+     * Files are copied locally (with {@link FileChannel#transferTo} if channels are supported)
+     */
+    @Override
+    public boolean isInternalCopySupported() {
+        return true;
+    }
+
     @Override
     public void delete(String identifier) {
         File deleteCheckScript = null;
@@ -679,6 +854,46 @@ public abstract class AbstractFilesystemStorage<C extends FilesystemConfig> exte
         }
     }
 
+    /**
+     * Ends after <code>length</code> bytes of the wrapped stream
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b != -1) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int c = super.read(b, off, (int) Math.min(len, remaining));
+            if (c > 0) remaining -= c;
+            return c;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long s = super.skip(Math.min(n, remaining));
+            if (s > 0) remaining -= s;
+            return s;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+
     private enum PosixType {
         OWNER, GROUP, OTHER
     }
@@ -17,6 +17,8 @@ package com.emc.ecs.sync.storage.file;
 import com.emc.ecs.sync.config.storage.FilesystemConfig;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 public class FilesystemStorage extends AbstractFilesystemStorage<FilesystemConfig> {
     @Override
@@ -29,6 +31,18 @@ public class FilesystemStorage extends AbstractFilesystemStorage<FilesystemConfi
         return new FileOutputStream(f);
     }
 
+    @Override
+    protected FileChannel createReadChannel(File f) throws IOException {
+        return new FileInputStream(f).getChannel();
+    }
+
+    @Override
+    protected FileChannel createWriteChannel(File f) throws IOException {
+        // also readable, so the written data can be read back (i.e. to get the MD5)
+        return FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.READ);
+    }
+
     @Override
     public File createFile(String path) {
         return new File(path);
@@ -27,6 +27,7 @@ import com.emc.ecs.sync.model.SyncObject;
 import com.emc.ecs.sync.storage.AbstractStorage;
 import com.emc.ecs.sync.storage.ObjectNotFoundException;
 import com.emc.ecs.sync.storage.SyncStorage;
+import com.emc.ecs.sync.util.BufferPool;
 import com.emc.ecs.sync.util.Iso8601Util;
 import com.emc.ecs.sync.util.LazyValue;
 
@@ -242,7 +243,7 @@ public abstract class AbstractNfsStorage<C extends NfsConfig, N extends Nfs<F>,
             boolean link = isSymLink(nfsFile);
             boolean directory = nfsFile.isDirectory() && (config.isFollowLinks() || !link);
             long size = directory || link ? 0 : nfsFile.length();
-            return new ObjectSummary(nfsFile.getAbsolutePath(), directory, size);
+            return new ObjectSummary(nfsFile.getAbsolutePath(), directory, size).withMtime(new Date(nfsFile.lastModified()));
         } catch (IOException e) {
             throw new ConfigurationException(e);
         }
@@ -650,7 +651,7 @@ public abstract class AbstractNfsStorage<C extends NfsConfig, N extends Nfs<F>,
      * @throws IOException
      */
     private void copyData(InputStream inStream, F nfsFile) throws IOException {
-        byte[] buffer = new byte[options.getBufferSize()];
+        byte[] buffer = BufferPool.getInstance().borrow(options.getBufferSize());
         int c;
         try (InputStream input = inStream; OutputStream output = createOutputStream(nfsFile)) {
             while ((c = input.read(buffer)) != -1) {
@@ -658,6 +659,8 @@ public abstract class AbstractNfsStorage<C extends NfsConfig, N extends Nfs<F>,
                 if (options.isMonitorPerformance())
                     getWriteWindow().increment(c);
             }
+        } finally {
+            BufferPool.getInstance().release(buffer);
         }
     }
 
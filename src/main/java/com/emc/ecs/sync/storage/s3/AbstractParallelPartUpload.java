@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.storage.s3;
+
+import com.emc.ecs.sync.util.BufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * A multipart upload with up to <code>threadCount</code> parts in flight at once on a shared executor. Subclasses
+ * start, complete and abort the upload with their own client and submit its parts (see {@link #submitParts(String)});
+ * this class fails fast when a part fails and, if anything fails, cancels the parts still in flight and aborts the
+ * upload.
+ *
+ * @param <P> the result of a part (its ETag) that is needed to complete the upload
+ */
+public abstract class AbstractParallelPartUpload<P> implements Callable<String> {
+    private static final Logger log = LoggerFactory.getLogger(AbstractParallelPartUpload.class);
+
+    public static final int MAX_PARTS = 10000;
+
+    /**
+     * Returns the smallest part size that splits <code>size</code> bytes into at most {@link #MAX_PARTS} parts
+     */
+    public static long getMinPartSize(long size) {
+        return (size + MAX_PARTS - 1) / MAX_PARTS;
+    }
+
+    protected final String key;
+    private int threadCount;
+    private ExecutorService executor;
+    private Semaphore inFlight;
+    private List<Future<P>> futures;
+
+    protected AbstractParallelPartUpload(String key, int threadCount, ExecutorService executor) {
+        this.key = key;
+        this.threadCount = Math.max(threadCount, 1);
+        this.executor = executor;
+    }
+
+    /**
+     * @return the ETag of the completed object
+     */
+    @Override
+    public String call() throws Exception {
+        String uploadId = initiate();
+        log.debug("started MPU {} for {}", uploadId, key);
+
+        inFlight = new Semaphore(threadCount);
+        futures = new ArrayList<>();
+        try {
+            submitParts(uploadId);
+
+            List<P> parts = new ArrayList<>();
+            for (Future<P> future : futures) {
+                parts.add(getPart(future));
+            }
+
+            String eTag = complete(uploadId, parts);
+            log.debug("completed MPU {} for {} ({} parts)", uploadId, key, parts.size());
+            return eTag;
+        } catch (Throwable t) {
+            for (Future<P> future : futures) {
+                future.cancel(true);
+            }
+            try {
+                abort(uploadId);
+            } catch (Throwable t2) {
+                log.warn("could not abort MPU " + uploadId + " for " + key, t2);
+            }
+            throw t;
+        }
+    }
+
+    /**
+     * Starts the upload
+     *
+     * @return the upload ID
+     */
+    protected abstract String initiate() throws Exception;
+
+    /**
+     * Submits every part of the upload, calling {@link #acquirePart()} before it prepares each part and then
+     * {@link #submitPart(Callable)} (or {@link #releasePart()} if the part is not submitted after all)
+     */
+    protected abstract void submitParts(String uploadId) throws Exception;
+
+    /**
+     * Completes the upload with the results of its parts (in part order)
+     *
+     * @return the ETag of the completed object
+     */
+    protected abstract String complete(String uploadId, List<P> parts) throws Exception;
+
+    protected abstract void abort(String uploadId) throws Exception;
+
+    /**
+     * Waits until fewer than threadCount parts are in flight
+     */
+    protected void acquirePart() throws InterruptedException {
+        inFlight.acquire();
+    }
+
+    /**
+     * Gives back the slot taken by {@link #acquirePart()} for a part that is not submitted
+     */
+    protected void releasePart() {
+        inFlight.release();
+    }
+
+    /**
+     * Runs a part on the executor (its slot is released when it finishes), and fails fast if a part has already failed
+     */
+    protected void submitPart(final Callable<P> part) throws Exception {
+        futures.add(executor.submit(() -> {
+            try {
+                return part.call();
+            } finally {
+                inFlight.release();
+            }
+        }));
+        checkParts();
+    }
+
+    /**
+     * Waits for parts in flight to finish until the {@link BufferPool} has room for another <code>size</code> byte
+     * buffer (or none are left). One part can always be in flight, so the upload makes progress
+     */
+    protected void waitForRoom(long size) throws Exception {
+        for (Future<P> future : futures) {
+            if (BufferPool.getInstance().hasRoom(size)) return;
+            if (!future.isDone()) getPart(future);
+        }
+    }
+
+    private void checkParts() throws Exception {
+        for (Future<P> future : futures) {
+            if (future.isDone()) getPart(future);
+        }
+    }
+
+    private P getPart(Future<P> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.emc.ecs.sync.storage.s3;
 import com.emc.ecs.sync.model.SyncObject;
 import com.emc.ecs.sync.storage.AbstractStorage;
 import com.emc.ecs.sync.storage.ObjectNotFoundException;
+import com.emc.ecs.sync.util.ParallelRangeInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +32,10 @@ public abstract class AbstractS3Storage<C> extends AbstractStorage<C> {
     private static final Logger log = LoggerFactory.getLogger(AbstractS3Storage.class);
 
     static final String PROP_OBJECT_VERSIONS = "s3.objectVersions";
+    static final String PROP_SOURCE_KEY = "s3.sourceKey";
+
+    // largest object a single CopyObject can copy
+    static final long MAX_COPY_SIZE = 5L * 1024 * 1024 * 1024; // 5GB
 
     static final String ACL_GROUP_TYPE = "Group";
     static final String ACL_CANONICAL_USER_TYPE = "Canonical User";
@@ -43,6 +48,14 @@ public abstract class AbstractS3Storage<C> extends AbstractStorage<C> {
 
     abstract void putObject(SyncObject object, String key);
 
+    /**
+     * The framework charges one request for each write, so an upload or copy that is split into parts (by an SDK
+     * utility that does not let us see each part) is charged for its parts here
+     */
+    void acquirePartRequests(long size, long partSize) {
+        if (partSize > 0 && size > partSize) getOpThrottle().acquire((size + partSize - 1) / partSize);
+    }
+
     abstract List<S3ObjectVersion> loadVersions(String key);
 
     abstract SyncObject loadObject(String key, String versionId);
@@ -55,6 +68,8 @@ public abstract class AbstractS3Storage<C> extends AbstractStorage<C> {
                 S3ObjectVersion object = objectVersions.get(objectVersions.size() - 1);
 
                 object.setProperty(PROP_OBJECT_VERSIONS, objectVersions);
+                // the version list is verified with an aggregate checksum, so it cannot be compared in ranges
+                object.removeProperty(ParallelRangeInputStream.PROP_RANGE_READER);
 
                 return object;
             }
@@ -64,6 +79,32 @@ public abstract class AbstractS3Storage<C> extends AbstractStorage<C> {
         }
     }
 
+    /**
+     * Returns the MD5 of the object data from its ETag, or null if the ETag is not a plain MD5 (i.e. for MPU objects)
+     */
+    String getMd5FromETag(String eTag) {
+        if (eTag == null) return null;
+        eTag = eTag.replace("\"", "");
+        return eTag.matches("[0-9a-fA-F]{32}") ? eTag : null;
+    }
+
+    /**
+     * Returns true if the object can be copied inside the S3 service from <code>copySource</code> (a storage on the same
+     * endpoint with the same credentials) or from this storage, instead of streaming its data through this host. The
+     * object must come straight from one of those storages, and its data must not have been read or replaced by a filter
+     */
+    boolean isServerSideCopy(SyncObject object, AbstractS3Storage<?> copySource) {
+        boolean copyable = (copySource != null && object.getSource() == copySource)
+                || (object.getSource() == this && isInternalCopySupported());
+        return copyable && !object.getMetadata().isDirectory()
+                && object.getProperty(PROP_SOURCE_KEY) != null && object.isDataStreamUntouched()
+                && !object.isPostStreamUpdateRequired();
+    }
+
+    String getSourceVersionId(SyncObject object) {
+        return object instanceof S3ObjectVersion ? ((S3ObjectVersion) object).getVersionId() : null;
+    }
+
     boolean isDirectoryPlaceholder(String contentType, long size) {
         return TYPE_DIRECTORY.equals(contentType) && size == 0;
     }
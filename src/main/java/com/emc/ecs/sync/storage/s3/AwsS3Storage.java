@@ -24,12 +24,15 @@ import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.S3ClientOptions;
 import com.amazonaws.services.s3.internal.Constants;
 import com.amazonaws.services.s3.model.*;
+import com.amazonaws.services.s3.transfer.Copy;
 import com.amazonaws.services.s3.transfer.PersistableTransfer;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.TransferManagerConfiguration;
 import com.amazonaws.services.s3.transfer.Upload;
 import com.amazonaws.services.s3.transfer.internal.S3ProgressListener;
+import com.emc.ecs.sync.SyncLanes;
 import com.emc.ecs.sync.config.ConfigurationException;
+import com.emc.ecs.sync.config.SyncOptions;
 import com.emc.ecs.sync.config.storage.AwsS3Config;
 import com.emc.ecs.sync.filter.SyncFilter;
 import com.emc.ecs.sync.model.Checksum;
@@ -50,10 +53,10 @@ import java.io.File;
 import java.io.InputStream;
 import java.util.*;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.regex.Pattern;
 
-public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
+public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> implements OptionChangeListener {
     private static final Logger log = LoggerFactory.getLogger(AwsS3Storage.class);
 
     private static final int MAX_PUT_SIZE_MB = 5 * 1024; // 5GB
@@ -66,6 +69,7 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
     private static final String OPERATION_GET_ACL = "AwsS3GetAcl";
     private static final String OPERATION_OPEN_DATA_STREAM = "AwsS3OpenDataStream";
     private static final String OPERATION_MPU = "AwsS3MultipartUpload";
+    private static final String OPERATION_COPY_OBJECT = "AwsS3CopyObject";
     private static final String OPERATION_DELETE_OBJECTS = "AwsS3DeleteObjects";
     private static final String OPERATION_DELETE_OBJECT = "AwsS3DeleteObject";
     private static final String OPERATION_UPDATE_METADATA = "AwsS3UpdateMetadata";
@@ -73,6 +77,11 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
     private AmazonS3 s3;
     private PerformanceWindow sourceReadWindow;
     private List<Pattern> excludedKeyPatterns;
+    private EnhancedThreadPoolExecutor uploadExecutor;
+    // bounds the part buffers of all streaming uploads together
+    private InFlightLimiter partBufferLimiter;
+    private TransferManager transferManager;
+    private AwsS3Storage copySource;
 
     @Override
     public void configure(SyncStorage source, Iterator<SyncFilter> filters, SyncStorage target) {
@@ -152,6 +161,23 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
             }
 
             if (source != null) sourceReadWindow = source.getReadWindow();
+
+            // one upload pool and xfer manager are shared by all sync threads
+            uploadExecutor = new EnhancedThreadPoolExecutor(getUploadThreadCount(options),
+                    new LinkedBlockingDeque<Runnable>(), getRole() + "-s3-upload-");
+            TransferManagerConfiguration xferConfig = new TransferManagerConfiguration();
+            xferConfig.setMultipartUploadThreshold((long) config.getMpuThresholdMb() * 1024 * 1024);
+            xferConfig.setMinimumUploadPartSize((long) config.getMpuPartSizeMb() * 1024 * 1024);
+            xferConfig.setMultipartCopyThreshold(MAX_COPY_SIZE);
+            transferManager = new TransferManager(s3, uploadExecutor);
+            transferManager.setConfiguration(xferConfig);
+            partBufferLimiter = new InFlightLimiter((long) config.getMpuBufferMb() * 1024 * 1024, 0);
+
+            // if the source is on the same endpoint (with the same credentials), copy objects inside S3
+            if (source instanceof AwsS3Storage && isSameEndpoint(((AwsS3Storage) source).getConfig())) {
+                log.info("source and target share an S3 endpoint; objects will be copied server-side");
+                copySource = (AwsS3Storage) source;
+            }
         }
 
         // make sure bucket exists
@@ -203,6 +229,12 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
         }
     }
 
+    @Override
+    public Iterable<ObjectSummary> allObjectsAfter(String listPosition) {
+        if (config.isIncludeVersions()) return super.allObjectsAfter(listPosition);
+        return () -> new PrefixIterator(config.getKeyPrefix(), listPosition);
+    }
+
     // TODO: implement directoryMode, using prefix+delimiter
     @Override
     public Iterable<ObjectSummary> children(ObjectSummary parent) {
@@ -217,9 +249,11 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
     @Override
     SyncObject loadObject(final String key, final String versionId) throws ObjectNotFoundException {
         // load metadata
+        ObjectMetadata s3Metadata;
         com.emc.ecs.sync.model.ObjectMetadata metadata;
         try {
-            metadata = syncMetaFromS3Meta(getS3Metadata(key, versionId));
+            s3Metadata = getS3Metadata(key, versionId);
+            metadata = syncMetaFromS3Meta(s3Metadata);
         } catch (AmazonS3Exception e) {
             if (e.getStatusCode() == 404) {
                 throw new ObjectNotFoundException(key + (versionId == null ? "" : " (versionId=" + versionId + ")"));
@@ -238,6 +272,12 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
         object.setLazyAcl(() -> syncAclFromS3Acl(getS3Acl(key, versionId)));
 
         object.setLazyStream(() -> getS3DataStream(key, versionId));
+        setRangeSource(object, (offset, length) -> getS3DataStream(key, versionId, offset, length));
+        object.setProperty(PROP_SOURCE_KEY, key);
+
+        // the ETag of an object encrypted with KMS or a customer key is not its MD5
+        if (s3Metadata.getSSEAwsKmsKeyId() == null && s3Metadata.getSSECustomerAlgorithm() == null)
+            object.setStoredMd5Hex(getMd5FromETag(s3Metadata.getETag()));
 
         return object;
     }
@@ -381,6 +421,7 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
                     log.debug("[{}]: updating metadata after sync as required", object.getRelativePath());
                     final CopyObjectRequest cReq = new CopyObjectRequest(config.getBucketName(), identifier, config.getBucketName(), identifier);
                     cReq.setNewObjectMetadata(s3MetaFromSyncMeta(object.getMetadata()));
+                    getOpThrottle().acquire(1);
                     time((Function<Void>) () -> {
                         s3.copyObject(cReq);
                         return null;
@@ -400,8 +441,21 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
 
         if (obj.getMetadata().isDirectory()) om.setContentType(TYPE_DIRECTORY);
 
-        PutObjectRequest req;
         File file = (File) obj.getProperty(AbstractFilesystemStorage.PROP_FILE);
+
+        if (isServerSideCopy(obj, copySource)) {
+            copyObject(obj, targetKey, om);
+            return;
+        }
+
+        // the xfer manager can only upload parts in parallel from a file, so large streams get their own MPU
+        if (!obj.getMetadata().isDirectory() && file == null
+                && obj.getMetadata().getContentLength() >= (long) config.getMpuThresholdMb() * 1024 * 1024) {
+            putObjectStreaming(obj, targetKey, om);
+            return;
+        }
+
+        PutObjectRequest req;
         S3ProgressListener progressListener = null;
         if (obj.getMetadata().isDirectory()) {
             req = new PutObjectRequest(config.getBucketName(), targetKey, new ByteArrayInputStream(new byte[0]), om);
@@ -420,15 +474,11 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
 
         // xfer manager will figure out if MPU is needed (based on threshold), do the MPU if necessary,
         // and abort if it fails
-        TransferManagerConfiguration xferConfig = new TransferManagerConfiguration();
-        xferConfig.setMultipartUploadThreshold((long) config.getMpuThresholdMb() * 1024 * 1024);
-        xferConfig.setMinimumUploadPartSize((long) config.getMpuPartSizeMb() * 1024 * 1024);
-        TransferManager xferManager = new TransferManager(s3, Executors.newFixedThreadPool(config.getMpuThreadCount()));
-        xferManager.setConfiguration(xferConfig);
-
-        // directly update
-
-        final Upload upload = xferManager.upload(req, progressListener);
+        long size = obj.getMetadata().getContentLength();
+        if (size >= (long) config.getMpuThresholdMb() * 1024 * 1024)
+            acquirePartRequests(size, Math.max((long) config.getMpuPartSizeMb() * 1024 * 1024,
+                    AbstractParallelPartUpload.getMinPartSize(size)));
+        final Upload upload = transferManager.upload(req, progressListener);
         try {
             String eTag = time((Callable<String>) () -> upload.waitForUploadResult().getETag(), OPERATION_MPU);
             log.debug("Wrote {}, etag: {}", targetKey, eTag);
@@ -438,6 +488,112 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
         }
     }
 
+    /**
+     * Uploads a large object from its data stream with several parts in flight (see {@link StreamingMultipartUpload})
+     */
+    private void putObjectStreaming(SyncObject obj, String targetKey, ObjectMetadata om) {
+        InputStream stream = obj.getDataStream();
+        if (options.isMonitorPerformance())
+            stream = new ProgressInputStream(stream, new PerformanceListener(getWriteWindow()));
+
+        int partSize = StreamingMultipartUpload.getPartSize(obj.getMetadata().getContentLength(),
+                (long) config.getMpuPartSizeMb() * 1024 * 1024);
+        StreamingMultipartUpload upload = new StreamingMultipartUpload(s3, config.getBucketName(), targetKey, om,
+                stream, partSize, config.getMpuThreadCount(), uploadExecutor);
+        if (options.isSyncAcl())
+            upload.setAcl(s3AclFromSyncAcl(obj.getAcl(), options.isIgnoreInvalidAcls()));
+        upload.setOpThrottle(getOpThrottle());
+        upload.setBufferLimiter(partBufferLimiter);
+
+        try {
+            String eTag = time(upload, OPERATION_MPU);
+            log.debug("Wrote {}, etag: {}", targetKey, eTag);
+        } catch (Exception e) {
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            throw new RuntimeException("streaming upload failed", e);
+        }
+    }
+
+    /**
+     * Copies an object from the copy source (or from this bucket) without reading its data. The xfer manager switches
+     * to a parallel multipart copy (UploadPartCopy) above the 5GB limit of a single CopyObject
+     */
+    private void copyObject(SyncObject obj, String targetKey, ObjectMetadata om) {
+        String sourceBucket = ((AwsS3Storage) obj.getSource()).getConfig().getBucketName();
+        String sourceKey = (String) obj.getProperty(PROP_SOURCE_KEY);
+        CopyObjectRequest req = new CopyObjectRequest(sourceBucket, sourceKey,
+                getSourceVersionId(obj), config.getBucketName(), targetKey);
+        req.setNewObjectMetadata(om);
+
+        if (options.isSyncAcl())
+            req.setAccessControlList(s3AclFromSyncAcl(obj.getAcl(), options.isIgnoreInvalidAcls()));
+
+        long size = obj.getMetadata().getContentLength();
+        if (size > MAX_COPY_SIZE)
+            acquirePartRequests(size, Math.max(transferManager.getConfiguration().getMultipartCopyPartSize(),
+                    AbstractParallelPartUpload.getMinPartSize(size)));
+        final Copy copy = transferManager.copy(req);
+        try {
+            String eTag = time((Callable<String>) () -> copy.waitForCopyResult().getETag(), OPERATION_COPY_OBJECT);
+            log.debug("Copied {} to {}, etag: {}", sourceKey, targetKey, eTag);
+        } catch (Exception e) {
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            throw new RuntimeException("copy thread was interrupted", e);
+        }
+
+        // the data never came through here, so there is no MD5 (verification will read it)
+        obj.setDataTransferred(obj.getMetadata().getContentLength(), null);
+    }
+
+    boolean isSameEndpoint(AwsS3Config other) {
+        return Objects.equals(config.getProtocol(), other.getProtocol())
+                && Objects.equals(config.getHost(), other.getHost()) && config.getPort() == other.getPort()
+                && Objects.equals(config.getAccessKey(), other.getAccessKey())
+                && Objects.equals(config.getSecretKey(), other.getSecretKey());
+    }
+
+    /**
+     * Each sync thread runs at most one upload at a time. A single PUT (or the wait for an MPU to complete) takes one
+     * thread and an MPU takes up to mpuThreadCount more for its parts. Only if the sync lanes are enabled and every MPU
+     * is above the large object threshold, do the small object lane's threads need no room for parts
+     */
+    private int getUploadThreadCount(SyncOptions options) {
+        return getUploadThreadCount(options, config.getMpuThreadCount(), (long) config.getMpuThresholdMb() * 1024 * 1024);
+    }
+
+    static int getUploadThreadCount(SyncOptions options, int mpuThreadCount, long mpuThreshold) {
+        if (!SyncLanes.isEnabled(options) || options.getLargeObjectThreshold() > mpuThreshold)
+            return options.getThreadCount() * (mpuThreadCount + 1);
+        int smallThreads = SyncLanes.getLaneThreadCount(options, SyncLanes.Lane.Small);
+        int largeThreads = SyncLanes.getLaneThreadCount(options, SyncLanes.Lane.Large);
+        return smallThreads + largeThreads * (mpuThreadCount + 1);
+    }
+
+    @Override
+    public void optionsChanged(SyncOptions options) {
+        if (uploadExecutor != null) uploadExecutor.resizeThreadPool(getUploadThreadCount(options));
+    }
+
+    @Override
+    public void close() {
+        try {
+            // the pool is ours, but the s3 client might still be used by the source side
+            if (transferManager != null) transferManager.shutdownNow(false);
+            if (uploadExecutor != null) uploadExecutor.shutdown();
+            if (partBufferLimiter != null) partBufferLimiter.close();
+        } finally {
+            super.close();
+        }
+    }
+
+    /**
+     * Objects in this bucket are copied server-side (a version list cannot be copied as one object)
+     */
+    @Override
+    public boolean isInternalCopySupported() {
+        return transferManager != null && !config.isIncludeVersions();
+    }
+
     @Override
     public void delete(final String identifier) {
         time((Function<Void>) () -> {
@@ -469,6 +625,14 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
         }, OPERATION_OPEN_DATA_STREAM);
     }
 
+    private InputStream getS3DataStream(final String key, final String versionId, final long offset, final long length) {
+        return time((Function<InputStream>) () -> {
+            GetObjectRequest request = new GetObjectRequest(config.getBucketName(), key, versionId);
+            request.setRange(offset, offset + length - 1);
+            return s3.getObject(request).getObjectContent();
+        }, OPERATION_OPEN_DATA_STREAM);
+    }
+
     private List<S3VersionSummary> getS3Versions(final String key) {
         List<S3VersionSummary> versions = new ArrayList<>();
 
@@ -592,11 +756,17 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
 
     private class PrefixIterator extends ReadOnlyIterator<ObjectSummary> {
         private String prefix;
+        private String marker;
         private ObjectListing listing;
         private Iterator<S3ObjectSummary> objectIterator;
 
         PrefixIterator(String prefix) {
+            this(prefix, null);
+        }
+
+        PrefixIterator(String prefix, String marker) {
             this.prefix = prefix;
+            this.marker = marker;
         }
 
         @Override
@@ -621,7 +791,14 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
                         }
                     }
 
-                    return new ObjectSummary(key, false, summary.getSize());
+                    ObjectSummary objectSummary = new ObjectSummary(key, false, summary.getSize());
+                    // the key is the marker for the rest of the listing (versions are listed separately)
+                    if (!config.isIncludeVersions()) {
+                        objectSummary.setListPosition(key);
+                        objectSummary.setMtime(summary.getLastModified());
+                        objectSummary.setMd5Hex(getMd5FromETag(summary.getETag()));
+                    }
+                    return objectSummary;
                 }
 
                 // list is not truncated and iterators are finished; no more objects
@@ -630,10 +807,12 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
         }
 
         private void getNextBatch() {
+            getOpThrottle().acquire(1); // one request per page
             if (listing == null) {
                 listing = time(() -> {
                     ListObjectsRequest request = new ListObjectsRequest().withBucketName(config.getBucketName());
                     request.setPrefix("".equals(prefix) ? null : prefix);
+                    request.setMarker(marker);
                     // Note: AWS SDK will always set encoding-type=url, but will only decode automatically if we
                     // leave the value null.. manually setting it here allows us to disable automatic decoding,
                     // but if the storage actually encodes the keys, they will be corrupted.. only do this if the
@@ -687,6 +866,7 @@ public class AwsS3Storage extends AbstractS3Storage<AwsS3Config> {
         }
 
         private void getNextVersionBatch() {
+            getOpThrottle().acquire(1); // one request per page
             if (versionListing == null) {
                 versionListing = time(() -> {
                     ListVersionsRequest request = new ListVersionsRequest().withBucketName(config.getBucketName());
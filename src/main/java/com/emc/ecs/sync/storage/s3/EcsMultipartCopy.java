@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.storage.s3;
+
+import com.emc.ecs.sync.util.TokenBucket;
+import com.emc.object.Range;
+import com.emc.object.s3.S3Client;
+import com.emc.object.s3.S3ObjectMetadata;
+import com.emc.object.s3.bean.AccessControlList;
+import com.emc.object.s3.bean.MultipartPartETag;
+import com.emc.object.s3.request.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Copies an object inside ECS with a multipart upload of part copies (UploadPartCopy), with several parts in flight
+ * at once. No object data goes through this host. A single CopyObject is limited to 5GB, so this is used for larger
+ * objects. If anything fails, the upload is aborted (see {@link AbstractParallelPartUpload}).
+ */
+public class EcsMultipartCopy extends AbstractParallelPartUpload<MultipartPartETag> {
+    /**
+     * Returns the configured part size, or a larger one if the object would otherwise need more than
+     * {@link #MAX_PARTS} parts
+     */
+    static long getPartSize(long size, long configuredPartSize) {
+        return Math.max(configuredPartSize, getMinPartSize(size));
+    }
+
+    /**
+     * Returns the range of each part, in part order
+     */
+    static List<Range> getPartRanges(long size, long partSize) {
+        List<Range> ranges = new ArrayList<>();
+        for (long offset = 0; offset < size; offset += partSize) {
+            ranges.add(new Range(offset, Math.min(offset + partSize, size) - 1));
+        }
+        return ranges;
+    }
+
+    private S3Client s3;
+    private String sourceBucket;
+    private String sourceKey;
+    private String sourceVersionId;
+    private String bucket;
+    private long size;
+    private S3ObjectMetadata metadata;
+    private AccessControlList acl;
+    private TokenBucket opThrottle;
+    private long partSize;
+
+    public EcsMultipartCopy(S3Client s3, String sourceBucket, String sourceKey, String sourceVersionId, String bucket,
+                            String key, long size, S3ObjectMetadata metadata, long partSize, int threadCount,
+                            ExecutorService executor) {
+        super(key, threadCount, executor);
+        this.s3 = s3;
+        this.sourceBucket = sourceBucket;
+        this.sourceKey = sourceKey;
+        this.sourceVersionId = sourceVersionId;
+        this.bucket = bucket;
+        this.size = size;
+        this.metadata = metadata;
+        this.partSize = getPartSize(size, partSize);
+    }
+
+    @Override
+    protected String initiate() {
+        InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(bucket, key).withObjectMetadata(metadata);
+        if (acl != null) initRequest.setAcl(acl);
+        return s3.initiateMultipartUpload(initRequest).getUploadId();
+    }
+
+    @Override
+    protected void submitParts(String uploadId) throws Exception {
+        int partNumber = 1;
+        for (Range range : getPartRanges(size, partSize)) {
+            acquirePart();
+            if (opThrottle != null) opThrottle.acquire(1);
+            submitPart(new PartCopy(uploadId, partNumber++, range));
+        }
+    }
+
+    @Override
+    protected String complete(String uploadId, List<MultipartPartETag> parts) {
+        return s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId)
+                .withParts(new TreeSet<>(parts))).getETag();
+    }
+
+    @Override
+    protected void abort(String uploadId) {
+        s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+    }
+
+    public AccessControlList getAcl() {
+        return acl;
+    }
+
+    public void setAcl(AccessControlList acl) {
+        this.acl = acl;
+    }
+
+    public EcsMultipartCopy withAcl(AccessControlList acl) {
+        setAcl(acl);
+        return this;
+    }
+
+    public TokenBucket getOpThrottle() {
+        return opThrottle;
+    }
+
+    /**
+     * Each part copy is charged one request
+     */
+    public void setOpThrottle(TokenBucket opThrottle) {
+        this.opThrottle = opThrottle;
+    }
+
+    public EcsMultipartCopy withOpThrottle(TokenBucket opThrottle) {
+        setOpThrottle(opThrottle);
+        return this;
+    }
+
+    private class PartCopy implements Callable<MultipartPartETag> {
+        private String uploadId;
+        private int partNumber;
+        private Range range;
+
+        PartCopy(String uploadId, int partNumber, Range range) {
+            this.uploadId = uploadId;
+            this.partNumber = partNumber;
+            this.range = range;
+        }
+
+        @Override
+        public MultipartPartETag call() throws Exception {
+            CopyPartRequest request = new CopyPartRequest(sourceBucket, sourceKey, bucket, key, uploadId, partNumber)
+                    .withSourceVersionId(sourceVersionId).withSourceRange(range);
+            return new MultipartPartETag(partNumber, s3.copyPart(request).getETag());
+        }
+    }
+}
@@ -14,8 +14,10 @@
  */
 package com.emc.ecs.sync.storage.s3;
 
+import com.emc.ecs.sync.SyncLanes;
 import com.emc.ecs.sync.SyncTask;
 import com.emc.ecs.sync.config.ConfigurationException;
+import com.emc.ecs.sync.config.SyncOptions;
 import com.emc.ecs.sync.config.storage.EcsS3Config;
 import com.emc.ecs.sync.filter.SyncFilter;
 import com.emc.ecs.sync.model.*;
@@ -24,6 +26,7 @@ import com.emc.ecs.sync.storage.SyncStorage;
 import com.emc.ecs.sync.storage.file.AbstractFilesystemStorage;
 import com.emc.ecs.sync.util.*;
 import com.emc.object.Protocol;
+import com.emc.object.Range;
 import com.emc.object.s3.*;
 import com.emc.object.s3.bean.*;
 import com.emc.object.s3.jersey.S3JerseyClient;
@@ -42,11 +45,12 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.regex.Matcher;
 
 import static com.emc.ecs.sync.config.storage.EcsS3Config.MIN_PART_SIZE_MB;
 
-public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
+public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> implements OptionChangeListener {
     private static final Logger log = LoggerFactory.getLogger(EcsS3Storage.class);
 
     // timed operations
@@ -61,10 +65,14 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
     private static final String OPERATION_DELETE_OBJECT = "EcsS3DeleteObject";
     private static final String OPERATION_UPDATE_METADATA = "EcsS3UpdateMetadata";
     private static final String OPERATION_REMOTE_COPY = "EcsS3RemoteCopy";
+    private static final String OPERATION_COPY_OBJECT = "EcsS3CopyObject";
+    private static final String OPERATION_MPU_COPY = "EcsS3MultipartCopy";
 
     private S3Client s3;
     private PerformanceWindow sourceReadWindow;
     private EcsS3Storage source;
+    private EcsS3Storage copySource;
+    private EnhancedThreadPoolExecutor copyExecutor;
 
     @Override
     public void configure(SyncStorage source, Iterator<SyncFilter> filters, SyncStorage target) {
@@ -178,6 +186,17 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
             if (source instanceof EcsS3Storage) this.source = (EcsS3Storage) source;
             else throw new ConfigurationException("Remote copy is only supported between two ECS-S3 plugins");
         }
+
+        // objects can always be copied inside this bucket (see isInternalCopySupported()), and from the source if it is
+        // on the same endpoint (with the same credentials)
+        if (target == this && !config.isRemoteCopy()) {
+            copyExecutor = new EnhancedThreadPoolExecutor(getCopyThreadCount(options),
+                    new LinkedBlockingDeque<Runnable>(), getRole() + "-s3-copy-");
+            if (source instanceof EcsS3Storage && isSameEndpoint(((EcsS3Storage) source).getConfig())) {
+                log.info("source and target share an ECS endpoint; objects will be copied server-side");
+                copySource = (EcsS3Storage) source;
+            }
+        }
     }
 
     @Override
@@ -219,6 +238,12 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
         }
     }
 
+    @Override
+    public Iterable<ObjectSummary> allObjectsAfter(String listPosition) {
+        if (config.isIncludeVersions()) return super.allObjectsAfter(listPosition);
+        return () -> new PrefixIterator(config.getKeyPrefix(), listPosition);
+    }
+
     // TODO: implement directoryMode, using prefix+delimiter
     @Override
     public Iterable<ObjectSummary> children(ObjectSummary parent) {
@@ -233,10 +258,12 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
     @Override
     SyncObject loadObject(final String key, final String versionId) {
         // load metadata
+        S3ObjectMetadata s3Metadata = null;
         com.emc.ecs.sync.model.ObjectMetadata metadata;
         try {
             if (!config.isRemoteCopy() || options.isSyncMetadata()) {
-                metadata = syncMetaFromS3Meta(getS3Metadata(key, versionId));
+                s3Metadata = getS3Metadata(key, versionId);
+                metadata = syncMetaFromS3Meta(s3Metadata);
             } else {
                 metadata = new ObjectMetadata(); // for pure remote-copy; avoid HEAD requests
             }
@@ -258,6 +285,9 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
         object.setLazyAcl(() -> syncAclFromS3Acl(getS3Acl(key, versionId)));
 
         object.setLazyStream(() -> getS3DataStream(key, versionId));
+        setRangeSource(object, (offset, length) -> getS3DataStream(key, versionId, offset, length));
+        object.setProperty(PROP_SOURCE_KEY, key);
+        if (s3Metadata != null) object.setStoredMd5Hex(getMd5FromETag(s3Metadata.getETag()));
 
         return object;
     }
@@ -403,6 +433,7 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
                     log.debug("[{}]: updating metadata after sync as required", object.getRelativePath());
                     final CopyObjectRequest cReq = new CopyObjectRequest(config.getBucketName(), identifier, config.getBucketName(), identifier);
                     cReq.setObjectMetadata(s3MetaFromSyncMeta(object.getMetadata()));
+                    getOpThrottle().acquire(1);
                     time((Function<Void>) () -> {
                         s3.copyObject(cReq);
                         return null;
@@ -443,6 +474,8 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
                 // special case for pure remote-copy; on 412, object already exists in target
                 if (e.getHttpCode() != 412) throw e;
             }
+        } else if (isServerSideCopy(obj, copySource)) {
+            copyObject(obj, targetKey, om, acl);
         } else if (!config.isMpuEnabled() || obj.getMetadata().getContentLength() < thresholdSize) {
             Object data;
             if (obj.getMetadata().isDirectory()) {
@@ -475,10 +508,12 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
             } else {
                 uploader = new LargeFileUploader(s3, config.getBucketName(), targetKey, obj.getDataStream(), obj.getMetadata().getContentLength());
             }
-            uploader.withPartSize((long) config.getMpuPartSizeMb() * 1024 * 1024).withThreads(config.getMpuThreadCount());
+            long partSize = (long) config.getMpuPartSizeMb() * 1024 * 1024;
+            uploader.withPartSize(partSize).withThreads(config.getMpuThreadCount());
             uploader.setObjectMetadata(om);
 
             if (options.isSyncAcl()) uploader.setAcl(acl);
+            acquirePartRequests(obj.getMetadata().getContentLength(), partSize);
 
             final LargeFileUploader fUploader = uploader;
             time((Function<Void>) () -> {
@@ -489,6 +524,85 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
         }
     }
 
+    /**
+     * Copies an object from the copy source (or from this bucket) without reading its data. Above the 5GB limit of a
+     * single CopyObject, the copy is a parallel multipart copy (see {@link EcsMultipartCopy})
+     */
+    private void copyObject(SyncObject obj, String targetKey, S3ObjectMetadata om, AccessControlList acl) {
+        String sourceBucket = ((EcsS3Storage) obj.getSource()).getConfig().getBucketName();
+        String sourceKey = (String) obj.getProperty(PROP_SOURCE_KEY);
+        long size = obj.getMetadata().getContentLength();
+
+        if (size <= MAX_COPY_SIZE) {
+            final CopyObjectRequest copyRequest = new CopyObjectRequest(sourceBucket, sourceKey, config.getBucketName(), targetKey);
+            copyRequest.setSourceVersionId(getSourceVersionId(obj));
+            copyRequest.setObjectMetadata(om);
+            if (acl != null) copyRequest.setAcl(acl);
+
+            CopyObjectResult result = time(() -> s3.copyObject(copyRequest), OPERATION_COPY_OBJECT);
+            log.debug("Copied {} to {}, etag: {}", sourceKey, targetKey, result.getETag());
+        } else {
+            EcsMultipartCopy copy = new EcsMultipartCopy(s3, sourceBucket, sourceKey, getSourceVersionId(obj),
+                    config.getBucketName(), targetKey, size, om, (long) config.getMpuPartSizeMb() * 1024 * 1024,
+                    config.getMpuThreadCount(), copyExecutor).withAcl(acl).withOpThrottle(getOpThrottle());
+            try {
+                String eTag = time(copy, OPERATION_MPU_COPY);
+                log.debug("Copied {} to {} as MPU; etag: {}", sourceKey, targetKey, eTag);
+            } catch (Exception e) {
+                if (e instanceof RuntimeException) throw (RuntimeException) e;
+                throw new RuntimeException("multipart copy failed", e);
+            }
+        }
+
+        // the data never came through here, so there is no MD5 (verification will read it)
+        obj.setDataTransferred(size, null);
+    }
+
+    boolean isSameEndpoint(EcsS3Config other) {
+        return Objects.equals(config.getProtocol(), other.getProtocol())
+                && Objects.equals(config.getHost(), other.getHost()) && config.getPort() == other.getPort()
+                && Arrays.equals(config.getVdcs(), other.getVdcs())
+                && Objects.equals(config.getAccessKey(), other.getAccessKey())
+                && Objects.equals(config.getSecretKey(), other.getSecretKey());
+    }
+
+    /**
+     * Each sync thread runs at most one copy at a time, and a copy above {@link #MAX_COPY_SIZE} takes up to
+     * mpuThreadCount threads for its parts. Only if the sync lanes are enabled and every copy in parts is above the
+     * large object threshold, does the small object lane need no copy threads
+     */
+    private int getCopyThreadCount(SyncOptions options) {
+        return getCopyThreadCount(options, config.getMpuThreadCount());
+    }
+
+    static int getCopyThreadCount(SyncOptions options, int mpuThreadCount) {
+        if (!SyncLanes.isEnabled(options) || options.getLargeObjectThreshold() > MAX_COPY_SIZE)
+            return options.getThreadCount() * mpuThreadCount;
+        return SyncLanes.getLaneThreadCount(options, SyncLanes.Lane.Large) * mpuThreadCount;
+    }
+
+    @Override
+    public void optionsChanged(SyncOptions options) {
+        if (copyExecutor != null) copyExecutor.resizeThreadPool(getCopyThreadCount(options));
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (copyExecutor != null) copyExecutor.shutdown();
+        } finally {
+            super.close();
+        }
+    }
+
+    /**
+     * Objects in this bucket are copied server-side (a version list cannot be copied as one object)
+     */
+    @Override
+    public boolean isInternalCopySupported() {
+        return copyExecutor != null && !config.isIncludeVersions();
+    }
+
     @Override
     public void delete(final String identifier) {
         time((Function<Void>) () -> {
@@ -514,6 +628,14 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
         }, OPERATION_OPEN_DATA_STREAM);
     }
 
+    private InputStream getS3DataStream(final String key, final String versionId, final long offset, final long length) {
+        return time(() -> {
+            GetObjectRequest request = new GetObjectRequest(config.getBucketName(), key).withVersionId(versionId)
+                    .withRange(new Range(offset, offset + length - 1));
+            return s3.getObject(request, InputStream.class).getObject();
+        }, OPERATION_OPEN_DATA_STREAM);
+    }
+
     private List<AbstractVersion> getS3Versions(final String key) {
         List<AbstractVersion> versions = new ArrayList<>();
 
@@ -634,11 +756,17 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
 
     private class PrefixIterator extends ReadOnlyIterator<ObjectSummary> {
         private String prefix;
+        private String marker;
         private ListObjectsResult listing;
         private Iterator<S3Object> objectIterator;
 
         PrefixIterator(String prefix) {
+            this(prefix, null);
+        }
+
+        PrefixIterator(String prefix, String marker) {
             this.prefix = prefix;
+            this.marker = marker;
         }
 
         @Override
@@ -649,7 +777,14 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
 
             if (objectIterator.hasNext()) {
                 S3Object object = objectIterator.next();
-                return new ObjectSummary(object.getKey(), false, object.getSize());
+                ObjectSummary summary = new ObjectSummary(object.getKey(), false, object.getSize());
+                // the key is the marker for the rest of the listing (versions are listed separately)
+                if (!config.isIncludeVersions()) {
+                    summary.setListPosition(object.getKey());
+                    summary.setMtime(object.getLastModified());
+                    summary.setMd5Hex(getMd5FromETag(object.getETag()));
+                }
+                return summary;
             }
 
             // list is not truncated and iterators are finished; no more objects
@@ -657,10 +792,12 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
         }
 
         private void getNextBatch() {
+            getOpThrottle().acquire(1); // one request per page
             if (listing == null) {
                 listing = time(() -> {
                     ListObjectsRequest request = new ListObjectsRequest(config.getBucketName());
                     request.setPrefix("".equals(prefix) ? null : prefix);
+                    request.setMarker(marker);
                     if (config.isUrlEncodeKeys()) request.setEncodingType(EncodingType.url);
                     return s3.listObjects(request);
                 }, OPERATION_LIST_OBJECTS);
@@ -709,6 +846,7 @@ public class EcsS3Storage extends AbstractS3Storage<EcsS3Config> {
         }
 
         private void getNextVersionBatch() {
+            getOpThrottle().acquire(1); // one request per page
             if (versionListing == null) {
                 versionListing = time(() -> {
                     ListVersionsRequest request = new ListVersionsRequest(config.getBucketName());
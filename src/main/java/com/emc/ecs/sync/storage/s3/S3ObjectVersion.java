@@ -14,6 +14,7 @@
  */
 package com.emc.ecs.sync.storage.s3;
 
+import com.emc.ecs.sync.config.ChecksumAlgorithm;
 import com.emc.ecs.sync.model.ObjectMetadata;
 import com.emc.ecs.sync.model.SyncObject;
 import com.emc.ecs.sync.storage.SyncStorage;
@@ -87,20 +88,44 @@ public class S3ObjectVersion extends SyncObject {
     }
 
     /**
-     * Generates a standard MD5 (from the object data) for individual versions, but for an instance that holds the entire
-     * version list, generates an aggregate MD5 (of the individual MD5s) of all versions
+     * For an instance that holds the entire version list, also sets the checksum of all versions
      */
     @Override
-    public String getMd5Hex(boolean forceRead) {
+    public synchronized void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+        super.setChecksumAlgorithm(checksumAlgorithm);
+        List versions = (List) getProperty(AbstractS3Storage.PROP_OBJECT_VERSIONS);
+        if (versions != null) {
+            for (Object version : versions) {
+                if (version != this) ((S3ObjectVersion) version).setChecksumAlgorithm(checksumAlgorithm);
+            }
+        }
+    }
+
+    /**
+     * An instance that holds the entire version list has an aggregate checksum, which is not stored anywhere
+     */
+    @Override
+    public String getStoredMd5Hex() {
+        if (getProperty(AbstractS3Storage.PROP_OBJECT_VERSIONS) != null) return null;
+        return super.getStoredMd5Hex();
+    }
+
+    /**
+     * Generates a standard checksum (from the object data) for individual versions, but for an instance that holds the
+     * entire version list, generates an aggregate MD5 (of the individual checksums) of all versions
+     */
+    @Override
+    public String getChecksumHex(boolean forceRead) {
         // only the latest version (the one that is referenced by the ObjectContext) will have this property
         List versions = (List) getProperty(AbstractS3Storage.PROP_OBJECT_VERSIONS);
-        if (versions == null) return super.getMd5Hex(forceRead);
+        if (versions == null) return super.getChecksumHex(forceRead);
+        if (getChecksumAlgorithm() == null) return null;
 
         // build canonical string of all versions (deleteMarker, eTag) and hash it
         StringBuilder canonicalString = new StringBuilder("[");
         for (Object versionO : versions) {
             S3ObjectVersion version = (S3ObjectVersion) versionO;
-            String md5 = (version == this) ? super.getMd5Hex(forceRead) : version.getMd5Hex(forceRead);
+            String md5 = (version == this) ? super.getChecksumHex(forceRead) : version.getChecksumHex(forceRead);
             canonicalString.append("{")
                     .append("\"deleteMarker\":").append(version.isDeleteMarker())
                     .append("\"md5\":\"").append(md5).append("\"")
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.storage.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import com.emc.ecs.sync.util.BufferPool;
+import com.emc.ecs.sync.util.EnhancedInputStream;
+import com.emc.ecs.sync.util.InFlightLimiter;
+import com.emc.ecs.sync.util.TokenBucket;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Uploads a stream as a multipart upload with several parts in flight at once. The TransferManager can only upload
+ * parts in parallel from a file; given a stream, it uploads one part at a time.
+ * <p>
+ * The stream is read (by the calling thread) into part buffers from the {@link BufferPool}, and each full buffer is
+ * uploaded by the executor. A buffer is only borrowed once fewer than <code>threadCount</code> parts are in flight,
+ * so memory is bounded by threadCount x partSize, and parts after the first in flight are only read while the pool has
+ * room (see {@link BufferPool#hasRoom(long)}). Uploads can also share a buffer limiter (see
+ * {@link #setBufferLimiter(InFlightLimiter)}), which bounds the part buffers of all of them together. Each part is
+ * sent with its MD5, so S3 verifies every part. If anything fails, the upload is aborted (see
+ * {@link AbstractParallelPartUpload}).
+ * <p>
+ * An upload can have at most {@link #MAX_PARTS} parts, so use {@link #getPartSize(long, int)} to pick a part size
+ * that fits the object.
+ */
+public class StreamingMultipartUpload extends AbstractParallelPartUpload<PartETag> {
+    // a part must fit in a buffer
+    public static final int MAX_PART_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Returns the configured part size, or a larger one if the object would otherwise need more than
+     * {@link #MAX_PARTS} parts
+     *
+     * @throws IllegalArgumentException if the object is too large to upload with parts that fit in a buffer
+     */
+    public static int getPartSize(long size, long configuredPartSize) {
+        long partSize = Math.max(configuredPartSize, getMinPartSize(size));
+        if (partSize > MAX_PART_SIZE)
+            throw new IllegalArgumentException(String.format("%d bytes is too large for a streaming upload (%d parts of %d bytes)",
+                    size, MAX_PARTS, MAX_PART_SIZE));
+        return (int) partSize;
+    }
+
+    private AmazonS3 s3;
+    private String bucket;
+    private ObjectMetadata metadata;
+    private AccessControlList acl;
+    private TokenBucket opThrottle;
+    private InFlightLimiter bufferLimiter;
+    private InputStream stream;
+    private int partSize;
+
+    public StreamingMultipartUpload(AmazonS3 s3, String bucket, String key, ObjectMetadata metadata, InputStream stream,
+                                    int partSize, int threadCount, ExecutorService executor) {
+        super(key, threadCount, executor);
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.metadata = metadata;
+        this.stream = stream;
+        this.partSize = partSize;
+    }
+
+    @Override
+    protected String initiate() {
+        InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(bucket, key, metadata);
+        if (acl != null) initRequest.setAccessControlList(acl);
+        return s3.initiateMultipartUpload(initRequest).getUploadId();
+    }
+
+    @Override
+    protected void submitParts(String uploadId) throws Exception {
+        try (InputStream input = stream) {
+            int partNumber = 1;
+            boolean lastPart = false;
+            while (!lastPart) {
+                acquirePart();
+                // one part is always in flight (so the upload makes progress), but more only while there is buffer room
+                waitForRoom(partSize);
+                long bufferCost = bufferLimiter == null ? 0 : bufferLimiter.acquire(partSize);
+                byte[] buffer = BufferPool.getInstance().borrow(partSize);
+                int length;
+                try {
+                    length = readFully(input, buffer);
+                } catch (Throwable t) {
+                    releaseBuffer(buffer, bufferCost);
+                    releasePart();
+                    throw t;
+                }
+                lastPart = length < partSize;
+
+                // the stream may end right at a part boundary (but a completed MPU needs at least one part)
+                if (length == 0 && partNumber > 1) {
+                    releaseBuffer(buffer, bufferCost);
+                    releasePart();
+                    break;
+                }
+
+                // the stream is longer than the size the part size was picked for
+                if (partNumber > MAX_PARTS) {
+                    releaseBuffer(buffer, bufferCost);
+                    releasePart();
+                    throw new IOException(String.format("stream needs more than %d parts of %d bytes", MAX_PARTS, partSize));
+                }
+
+                if (opThrottle != null) opThrottle.acquire(1);
+                submitPart(new PartUpload(uploadId, partNumber++, buffer, length, bufferCost));
+            }
+        }
+    }
+
+    @Override
+    protected String complete(String uploadId, List<PartETag> parts) {
+        return s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, parts)).getETag();
+    }
+
+    @Override
+    protected void abort(String uploadId) {
+        s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+    }
+
+    private void releaseBuffer(byte[] buffer, long bufferCost) {
+        BufferPool.getInstance().release(buffer);
+        if (bufferLimiter != null) bufferLimiter.release(bufferCost);
+    }
+
+    private int readFully(InputStream input, byte[] buffer) throws IOException {
+        int length = 0, c;
+        while (length < buffer.length && (c = input.read(buffer, length, buffer.length - length)) != -1) {
+            length += c;
+        }
+        return length;
+    }
+
+    public AccessControlList getAcl() {
+        return acl;
+    }
+
+    public void setAcl(AccessControlList acl) {
+        this.acl = acl;
+    }
+
+    public StreamingMultipartUpload withAcl(AccessControlList acl) {
+        setAcl(acl);
+        return this;
+    }
+
+    public TokenBucket getOpThrottle() {
+        return opThrottle;
+    }
+
+    /**
+     * Each part is charged one request
+     */
+    public void setOpThrottle(TokenBucket opThrottle) {
+        this.opThrottle = opThrottle;
+    }
+
+    public StreamingMultipartUpload withOpThrottle(TokenBucket opThrottle) {
+        setOpThrottle(opThrottle);
+        return this;
+    }
+
+    public InFlightLimiter getBufferLimiter() {
+        return bufferLimiter;
+    }
+
+    /**
+     * A limiter shared by several uploads, which each part buffer is charged to while it is in use
+     */
+    public void setBufferLimiter(InFlightLimiter bufferLimiter) {
+        this.bufferLimiter = bufferLimiter;
+    }
+
+    public StreamingMultipartUpload withBufferLimiter(InFlightLimiter bufferLimiter) {
+        setBufferLimiter(bufferLimiter);
+        return this;
+    }
+
+    private class PartUpload implements Callable<PartETag> {
+        private String uploadId;
+        private int partNumber;
+        private byte[] buffer;
+        private int length;
+        private long bufferCost;
+
+        PartUpload(String uploadId, int partNumber, byte[] buffer, int length, long bufferCost) {
+            this.uploadId = uploadId;
+            this.partNumber = partNumber;
+            this.buffer = buffer;
+            this.length = length;
+            this.bufferCost = bufferCost;
+        }
+
+        @Override
+        public PartETag call() throws Exception {
+            try {
+                MessageDigest md5 = EnhancedInputStream.createMd5Digest();
+                md5.update(buffer, 0, length);
+
+                UploadPartRequest request = new UploadPartRequest().withBucketName(bucket).withKey(key)
+                        .withUploadId(uploadId).withPartNumber(partNumber).withPartSize(length)
+                        .withInputStream(new ByteArrayInputStream(buffer, 0, length))
+                        .withMD5Digest(Base64.getEncoder().encodeToString(md5.digest()));
+                return s3.uploadPart(request).getPartETag();
+            } finally {
+                releaseBuffer(buffer, bufferCost);
+            }
+        }
+    }
+}
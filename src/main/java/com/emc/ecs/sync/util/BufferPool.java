@@ -0,0 +1,222 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A process-wide pool of copy buffers, so copy loops do not allocate a new buffer for every object. Buffers are pooled
+ * by exact size (there are only a few sizes in use: the configured buffer size and a few fixed sizes). Always
+ * {@link #release(byte[]) release} a buffer in a finally block and never use it afterward.
+ * <p>
+ * Only copy-loop sizes (up to {@link #MAX_POOLED_SIZE}) are pooled. Larger buffers (i.e. parallel range reads and
+ * multipart upload parts) can be borrowed and released the same way, but they are left for the GC, so an idle pool
+ * never pins them.
+ * <p>
+ * Pooled memory is limited by {@link #getCapacity()}; buffers released while the pool is full are left for the GC.
+ * Each running job reserves room for its own buffers (see {@link #reserve(long)}) and gives it back when it ends, up
+ * to {@link #MAX_HEAP_FRACTION} of the max heap size. Heap and direct buffers are pooled separately but share the
+ * capacity.
+ * <p>
+ * Every borrowed buffer (pooled or not) is counted until it is released, so buffer memory can also be limited (see
+ * {@link #limitMemory(long)}). Borrowing never blocks, since a thread that waits for memory while holding buffers can
+ * deadlock with the threads that would free them. Instead, code that reads or writes ahead (range reads and streaming
+ * uploads) asks {@link #hasRoom(long)} before borrowing a buffer beyond the one it needs to make progress.
+ */
+public class BufferPool {
+    public static final int MAX_HEAP_FRACTION = 8; // i.e. 1/8 of the max heap
+    public static final long DEFAULT_CAPACITY = 64 * 1024 * 1024; // 64MB
+    public static final int MAX_POOLED_SIZE = 1024 * 1024; // 1MB
+
+    private static final BufferPool instance = new BufferPool(DEFAULT_CAPACITY);
+
+    public static BufferPool getInstance() {
+        return instance;
+    }
+
+    private ConcurrentMap<Integer, Queue<byte[]>> heapBuffers = new ConcurrentHashMap<>();
+    private ConcurrentMap<Integer, Queue<ByteBuffer>> directBuffers = new ConcurrentHashMap<>();
+    private final long baseCapacity;
+    private volatile long capacity;
+    private long reserved;
+    private AtomicLong pooledBytes = new AtomicLong();
+    private AtomicLong borrowedBytes = new AtomicLong();
+    private volatile long memoryLimit;
+    private AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    BufferPool(long capacity) {
+        this.baseCapacity = capacity;
+        this.capacity = capacity;
+    }
+
+    public byte[] borrow(int size) {
+        byte[] buffer = poll(heapBuffers, size);
+        borrowedBytes.addAndGet(size);
+        if (buffer == null) return new byte[size];
+        return buffer;
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer == null) return;
+        borrowedBytes.addAndGet(-buffer.length);
+        offer(heapBuffers, buffer.length, buffer);
+    }
+
+    /**
+     * Borrows a direct buffer (cleared) for NIO channels. Direct buffers are expensive to allocate and are only freed by
+     * the GC, so pooling them matters even more than heap buffers
+     */
+    public ByteBuffer borrowDirect(int size) {
+        ByteBuffer buffer = poll(directBuffers, size);
+        borrowedBytes.addAndGet(size);
+        if (buffer == null) return ByteBuffer.allocateDirect(size);
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        borrowedBytes.addAndGet(-buffer.capacity());
+        offer(directBuffers, buffer.capacity(), buffer);
+    }
+
+    /**
+     * Returns true if another buffer of the specified size fits in the memory limit (always true if there is no limit).
+     * Pooled buffers are dropped if that makes room. Call this before borrowing a buffer that is only used to read or
+     * write ahead
+     */
+    public boolean hasRoom(long size) {
+        long limit = memoryLimit;
+        if (limit <= 0) return true;
+        long room = limit - borrowedBytes.get() - size;
+        if (room < 0) return false;
+        if (pooledBytes.get() > room) synchronized (this) {
+            trim(heapBuffers, room);
+            trim(directBuffers, room);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a job's limit to the memory limit (the limit is the total of all jobs that set one). Call
+     * {@link #unlimitMemory(long)} with the same number of bytes when the job ends
+     */
+    public synchronized void limitMemory(long bytes) {
+        memoryLimit += bytes;
+    }
+
+    public synchronized void unlimitMemory(long bytes) {
+        memoryLimit = Math.max(0, memoryLimit - bytes);
+    }
+
+    /**
+     * Makes room in the pool for the buffers of a job. The capacity is the total of all reservations (but at least the
+     * initial capacity and at most {@link #MAX_HEAP_FRACTION} of the max heap size). Call {@link #unreserve(long)} with
+     * the same number of bytes when the job ends
+     */
+    public synchronized void reserve(long bytes) {
+        reserved += bytes;
+        updateCapacity();
+    }
+
+    /**
+     * Gives back a reservation and drops pooled buffers that no longer fit
+     */
+    public synchronized void unreserve(long bytes) {
+        reserved = Math.max(0, reserved - bytes);
+        updateCapacity();
+        trim(heapBuffers, capacity);
+        trim(directBuffers, capacity);
+    }
+
+    private void updateCapacity() {
+        capacity = Math.max(baseCapacity, Math.min(reserved, Runtime.getRuntime().maxMemory() / MAX_HEAP_FRACTION));
+    }
+
+    private <T> void trim(ConcurrentMap<Integer, Queue<T>> buffers, long maxPooledBytes) {
+        for (Map.Entry<Integer, Queue<T>> entry : buffers.entrySet()) {
+            while (pooledBytes.get() > maxPooledBytes && entry.getValue().poll() != null) {
+                pooledBytes.addAndGet(-entry.getKey());
+            }
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of bytes in buffers that are currently in the pool (not borrowed)
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Returns the number of bytes in buffers that are currently borrowed
+     */
+    public long getBorrowedBytes() {
+        return borrowedBytes.get();
+    }
+
+    /**
+     * Returns the memory limit for borrowed and pooled buffers (0 means no limit)
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private <T> T poll(ConcurrentMap<Integer, Queue<T>> buffers, int size) {
+        Queue<T> queue = buffers.get(size);
+        T buffer = queue == null ? null : queue.poll();
+        if (buffer == null) {
+            misses.incrementAndGet();
+        } else {
+            pooledBytes.addAndGet(-size);
+            hits.incrementAndGet();
+        }
+        return buffer;
+    }
+
+    private <T> void offer(ConcurrentMap<Integer, Queue<T>> buffers, int size, T buffer) {
+        if (size > MAX_POOLED_SIZE) return;
+        // reserve the space first, so concurrent releases cannot overfill the pool
+        long pooled = pooledBytes.addAndGet(size), limit = memoryLimit;
+        if (pooled > capacity || (limit > 0 && pooled + borrowedBytes.get() > limit)) {
+            pooledBytes.addAndGet(-size);
+            return;
+        }
+        Queue<T> queue = buffers.get(size);
+        if (queue == null) {
+            buffers.putIfAbsent(size, new ConcurrentLinkedQueue<T>());
+            queue = buffers.get(size);
+        }
+        queue.offer(buffer);
+    }
+}
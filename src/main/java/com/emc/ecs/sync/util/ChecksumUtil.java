@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import com.emc.ecs.sync.config.ChecksumAlgorithm;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+
+/**
+ * Creates the digests for each {@link ChecksumAlgorithm}. All of them are {@link MessageDigest}s, so they can be used
+ * interchangeably with {@link java.security.DigestInputStream} and on mapped file regions. CRC32 is computed by the
+ * JVM intrinsic (using the CPU's CRC instructions where available), which is many times faster than MD5
+ */
+public final class ChecksumUtil {
+    /**
+     * @return a new digest for the algorithm, or null if algorithm is null (no checksum)
+     */
+    public static MessageDigest createDigest(ChecksumAlgorithm algorithm) {
+        if (algorithm == null) return null;
+        switch (algorithm) {
+            case MD5:
+                return EnhancedInputStream.createMd5Digest();
+            case CRC32:
+                return new Crc32Digest();
+            default:
+                throw new IllegalArgumentException("unsupported checksum algorithm " + algorithm);
+        }
+    }
+
+    private ChecksumUtil() {
+    }
+
+    static class Crc32Digest extends MessageDigest {
+        private CRC32 crc = new CRC32();
+
+        Crc32Digest() {
+            super("CRC32");
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            crc.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            crc.update(input, offset, len);
+        }
+
+        @Override
+        protected void engineUpdate(ByteBuffer input) {
+            // avoids copying direct (i.e. mapped) buffers to an array
+            crc.update(input);
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return 4;
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            long value = crc.getValue();
+            crc.reset();
+            return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+
+        @Override
+        protected void engineReset() {
+            crc.reset();
+        }
+    }
+}
@@ -14,6 +14,8 @@
  */
 package com.emc.ecs.sync.util;
 
+import com.emc.ecs.sync.config.ChecksumAlgorithm;
+
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -23,12 +25,12 @@ import java.security.NoSuchAlgorithmException;
 
 /**
  * InputStream wrapper that counts the number of bytes that have been read and (optionally) calculates a checksum on the
- * data
+ * data, and chunk hashes for chunked verification
  */
 public class EnhancedInputStream extends FilterInputStream {
     public static final int UNSIZED = -1;
 
-    protected static MessageDigest createMd5Digest() {
+    public static MessageDigest createMd5Digest() {
         try {
             return MessageDigest.getInstance("md5");
         } catch (NoSuchAlgorithmException e) {
@@ -39,6 +41,7 @@ public class EnhancedInputStream extends FilterInputStream {
     private long size;
     private boolean closed = false;
     private long bytesRead = 0;
+    private TreeHash.Digester chunkDigester;
 
     public EnhancedInputStream(InputStream in) {
         this(in, UNSIZED, false);
@@ -53,8 +56,27 @@ public class EnhancedInputStream extends FilterInputStream {
     }
 
     public EnhancedInputStream(InputStream in, long size, boolean calculateMd5) {
-        super(calculateMd5 ? new DigestInputStream(in, createMd5Digest()) : in);
+        this(in, size, calculateMd5 ? ChecksumAlgorithm.MD5 : null);
+    }
+
+    /**
+     * @param checksumAlgorithm the checksum to calculate on the data (null for none)
+     */
+    public EnhancedInputStream(InputStream in, ChecksumAlgorithm checksumAlgorithm) {
+        this(in, UNSIZED, checksumAlgorithm);
+    }
+
+    public EnhancedInputStream(InputStream in, long size, ChecksumAlgorithm checksumAlgorithm) {
+        this(in, size, checksumAlgorithm, 0);
+    }
+
+    /**
+     * @param chunkSize if greater than 0, the data is also hashed in chunks of this size (see {@link #getTreeHash()})
+     */
+    public EnhancedInputStream(InputStream in, long size, ChecksumAlgorithm checksumAlgorithm, int chunkSize) {
+        super(checksumAlgorithm == null ? in : new DigestInputStream(in, ChecksumUtil.createDigest(checksumAlgorithm)));
         this.size = size;
+        if (checksumAlgorithm != null && chunkSize > 0) chunkDigester = new TreeHash.Digester(checksumAlgorithm, chunkSize);
     }
 
 	@Override
@@ -68,6 +90,7 @@ public class EnhancedInputStream extends FilterInputStream {
 		int c = super.read(b, off, len);
 		if(c != -1) {
 			bytesRead += c;
+			if (chunkDigester != null) chunkDigester.update(b, off, c);
 		}
 		return c;
 	}
@@ -76,7 +99,10 @@ public class EnhancedInputStream extends FilterInputStream {
 	public int read() throws IOException {
         checkClosed();
 		int v = super.read();
-		if (v != -1) bytesRead++;
+		if (v != -1) {
+			bytesRead++;
+			if (chunkDigester != null) chunkDigester.update(v);
+		}
 		return v;
 	}
 
@@ -112,4 +138,22 @@ public class EnhancedInputStream extends FilterInputStream {
         if (!closed) throw new UnsupportedOperationException("cannot get MD5 until stream is closed");
         return ((DigestInputStream) in).getMessageDigest().digest();
     }
+
+    /**
+     * @return the checksum of the data (in the algorithm this stream was created with)
+     */
+    public byte[] getChecksum() {
+        if (!(in instanceof DigestInputStream)) throw new UnsupportedOperationException("checksum is not enabled");
+        if (!closed) throw new UnsupportedOperationException("cannot get checksum until stream is closed");
+        return ((DigestInputStream) in).getMessageDigest().digest();
+    }
+
+    /**
+     * @return the chunk hashes of the data, or null if chunk hashing is not enabled
+     */
+    public TreeHash getTreeHash() {
+        if (chunkDigester == null) return null;
+        if (!closed) throw new UnsupportedOperationException("cannot get tree hash until stream is closed");
+        return chunkDigester.getTreeHash();
+    }
 }
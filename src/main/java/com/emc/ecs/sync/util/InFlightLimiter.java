@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control by bytes and object count. Callers {@link #acquire(long)} before submitting an object and
+ * {@link #release(long)} once it is finished. Waiters are admitted strictly in arrival order, so a large object
+ * waiting for room cannot be starved by a stream of small ones. An object larger than the byte limit is charged the
+ * full limit, which means it is admitted once everything else has drained and then runs by itself.
+ */
+public class InFlightLimiter {
+    private static final Logger log = LoggerFactory.getLogger(InFlightLimiter.class);
+
+    private long maxBytes;
+    private int maxObjects;
+    private long inFlightBytes;
+    private int inFlightObjects;
+    private long nextTicket, currentTicket;
+    private boolean closed;
+
+    /**
+     * @param maxBytes   maximum total size of objects in flight (0 for no limit)
+     * @param maxObjects maximum number of objects in flight (0 for no limit)
+     */
+    public InFlightLimiter(long maxBytes, int maxObjects) {
+        this.maxBytes = maxBytes;
+        this.maxObjects = maxObjects;
+    }
+
+    /**
+     * Blocks until the object can be admitted and returns the number of bytes it was charged (which must be passed to
+     * {@link #release(long)})
+     *
+     * @throws IllegalStateException if the limiter is closed
+     */
+    public synchronized long acquire(long size) {
+        long cost = maxBytes > 0 ? Math.min(size, maxBytes) : size;
+        long ticket = nextTicket++;
+        try {
+            while (!closed && (ticket != currentTicket || !fits(cost))) {
+                try {
+                    log.debug("in-flight limit reached; waiting to admit {} bytes", cost);
+                    wait();
+                } catch (InterruptedException e) {
+                    log.warn("interrupted while waiting for in-flight capacity", e);
+                }
+            }
+        } finally {
+            // let the next in line check for room
+            currentTicket++;
+            notifyAll();
+        }
+        if (closed) throw new IllegalStateException("limiter is closed");
+        inFlightBytes += cost;
+        inFlightObjects++;
+        return cost;
+    }
+
+    public synchronized void release(long cost) {
+        inFlightBytes -= cost;
+        inFlightObjects--;
+        notifyAll();
+    }
+
+    /**
+     * Releases all waiting threads (they will get an IllegalStateException)
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private boolean fits(long cost) {
+        if (maxObjects > 0 && inFlightObjects >= maxObjects) return false;
+        return maxBytes <= 0 || inFlightBytes + cost <= maxBytes;
+    }
+
+    public synchronized long getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    public synchronized int getInFlightObjects() {
+        return inFlightObjects;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxObjects() {
+        return maxObjects;
+    }
+}
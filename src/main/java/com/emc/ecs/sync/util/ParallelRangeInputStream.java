@@ -0,0 +1,325 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import com.emc.object.util.ProgressListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads an object with several ranged GETs in parallel and reassembles the ranges in order. Up to
+ * <code>threadCount</code> ranges are read ahead of the consumer, each into its own buffer of
+ * <code>rangeSize</code> bytes, so memory use is bounded by threadCount x rangeSize. Ranges after the next one are
+ * only read ahead while the {@link BufferPool} has room. A range that fails is retried by itself (the ranges before it
+ * are not read again).
+ * <p>
+ * If the target is a local file, {@link #writeTo(RangeSource, long, FileChannel, int, int, int, ProgressListener)}
+ * writes each range directly at its offset instead, so nothing has to be reassembled.
+ * <p>
+ * Storages that support ranged reads put their {@link RangeSource} in the object's properties as
+ * {@link #PROP_RANGE_READER}, and also as {@link #PROP_RANGE_SOURCE} if the object data is read in parallel ranges.
+ */
+public class ParallelRangeInputStream extends InputStream {
+    private static final Logger log = LoggerFactory.getLogger(ParallelRangeInputStream.class);
+
+    public static final String PROP_RANGE_SOURCE = "rangeRead.source";
+    public static final String PROP_RANGE_READER = "rangeRead.reader";
+
+    private static final int WRITE_CHUNK_SIZE = 128 * 1024;
+    private static final AtomicInteger readerCount = new AtomicInteger();
+
+    // range readers spend most of their time waiting on the network, so a cached pool fits
+    private static final ExecutorService rangeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "range-reader-" + readerCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    public interface RangeSource {
+        /**
+         * Opens a stream of <code>length</code> bytes of the object data, starting at <code>offset</code>
+         */
+        InputStream open(long offset, long length) throws IOException;
+    }
+
+    /**
+     * Reads all ranges of an object in parallel and writes each one at its offset in the channel. Blocks until all
+     * ranges are written
+     *
+     * @param listener notified of every chunk written (can be null)
+     * @return the number of bytes written
+     */
+    public static long writeTo(final RangeSource source, long size, final FileChannel channel, int rangeSize,
+                               int threadCount, final int retries, final ProgressListener listener) throws IOException {
+        threadCount = Math.max(threadCount, 1);
+        CompletionService<Long> completionService = new ExecutorCompletionService<>(rangeExecutor);
+        Deque<Future<Long>> futures = new ArrayDeque<>();
+        long nextOffset = 0, written = 0;
+        try {
+            do {
+                while (futures.size() < threadCount && nextOffset < size) {
+                    // one range is always written, but more only while there is buffer room
+                    if (!futures.isEmpty() && !BufferPool.getInstance().hasRoom(WRITE_CHUNK_SIZE)) break;
+                    final long offset = nextOffset, length = Math.min(rangeSize, size - offset);
+                    futures.add(completionService.submit(new Callable<Long>() {
+                        @Override
+                        public Long call() throws Exception {
+                            return writeRange(source, offset, length, channel, retries, listener);
+                        }
+                    }));
+                    nextOffset += length;
+                }
+                if (futures.isEmpty()) break;
+                Future<Long> future = completionService.take();
+                futures.remove(future);
+                written += getRange(future);
+            } while (true);
+            return written;
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while writing ranges", e);
+        } finally {
+            for (Future<Long> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static long writeRange(RangeSource source, long offset, long length, FileChannel channel, int retries,
+                                   ProgressListener listener) throws IOException {
+        byte[] buffer = BufferPool.getInstance().borrow(WRITE_CHUNK_SIZE);
+        try {
+            for (int attempt = 0; ; attempt++) {
+                try (InputStream in = source.open(offset, length)) {
+                    long position = offset, end = offset + length;
+                    int c;
+                    while (position < end && (c = in.read(buffer, 0, (int) Math.min(buffer.length, end - position))) != -1) {
+                        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, c);
+                        while (byteBuffer.hasRemaining()) {
+                            position += channel.write(byteBuffer, position);
+                        }
+                        if (listener != null) listener.transferred(c);
+                    }
+                    if (position < end)
+                        throw new IOException(String.format("range %d-%d ended early at %d", offset, end - 1, position));
+                    return length;
+                } catch (IOException | RuntimeException e) {
+                    if (attempt >= retries) throw e;
+                    log.warn("range {}-{} failed (retrying): {}", offset, offset + length - 1, e.toString());
+                }
+            }
+        } finally {
+            BufferPool.getInstance().release(buffer);
+        }
+    }
+
+    private static <T> T getRange(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("range read failed", e.getCause());
+        }
+    }
+
+    private RangeSource source;
+    private long size;
+    private int rangeSize;
+    private int threadCount;
+    private int retries;
+    private ExecutorService executor;
+    private Deque<RangeRead> pending = new ArrayDeque<>();
+    private long nextOffset;
+    private Range current;
+    private boolean closed;
+
+    public ParallelRangeInputStream(RangeSource source, long size, int rangeSize, int threadCount, int retries) {
+        this(source, size, rangeSize, threadCount, retries, null);
+    }
+
+    /**
+     * @param executor runs the range reads (if null, a shared pool of daemon threads is used)
+     */
+    public ParallelRangeInputStream(RangeSource source, long size, int rangeSize, int threadCount, int retries,
+                                    ExecutorService executor) {
+        this.source = source;
+        this.size = size;
+        this.rangeSize = rangeSize;
+        this.threadCount = Math.max(threadCount, 1);
+        this.retries = retries;
+        this.executor = executor == null ? rangeExecutor : executor;
+        readAhead();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int c = read(b, 0, 1);
+        return c == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("stream closed");
+        if (len == 0) return 0;
+        if (current == null || current.remaining() == 0) {
+            if (current != null) current.release();
+            current = null;
+            if (pending.isEmpty()) return -1;
+            RangeRead rangeRead = pending.remove();
+            try {
+                current = getRange(rangeRead.future);
+            } catch (InterruptedException e) {
+                rangeRead.abandon();
+                throw new IOException("interrupted while waiting for range", e);
+            }
+            readAhead();
+        }
+        return current.read(b, off, len);
+    }
+
+    @Override
+    public synchronized int available() {
+        return current == null ? 0 : current.remaining();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (current != null) current.release();
+        current = null;
+        for (RangeRead rangeRead : pending) {
+            rangeRead.abandon();
+        }
+        pending.clear();
+    }
+
+    private void readAhead() {
+        while (pending.size() < threadCount && nextOffset < size) {
+            // the next range is always read (so the stream makes progress), but more only while there is buffer room
+            if (!pending.isEmpty() && !BufferPool.getInstance().hasRoom(rangeSize)) break;
+            long length = Math.min(rangeSize, size - nextOffset);
+            RangeRead rangeRead = new RangeRead(nextOffset, (int) length, BufferPool.getInstance().borrow(rangeSize));
+            rangeRead.future = executor.submit(rangeRead);
+            pending.add(rangeRead);
+            nextOffset += length;
+        }
+    }
+
+    private void readRange(long offset, int length, byte[] buffer) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try (InputStream in = source.open(offset, length)) {
+                int position = 0, c;
+                while (position < length && (c = in.read(buffer, position, length - position)) != -1) {
+                    position += c;
+                }
+                if (position < length)
+                    throw new IOException(String.format("range %d-%d ended early at %d", offset, offset + length - 1, offset + position));
+                return;
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= retries) throw e;
+                log.warn("range {}-{} failed (retrying): {}", offset, offset + length - 1, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Reads one range into a buffer that was borrowed when the range was scheduled. If the stream gives up on the range
+     * (see {@link #abandon()}), whichever side is last to touch the buffer releases it
+     */
+    private class RangeRead implements Callable<Range> {
+        private long offset;
+        private int length;
+        private byte[] buffer;
+        private Future<Range> future;
+        private boolean started, done, abandoned;
+
+        RangeRead(long offset, int length, byte[] buffer) {
+            this.offset = offset;
+            this.length = length;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Range call() throws Exception {
+            synchronized (this) {
+                if (abandoned) return null;
+                started = true;
+            }
+            try {
+                readRange(offset, length, buffer);
+            } catch (Throwable t) {
+                BufferPool.getInstance().release(buffer);
+                throw t;
+            }
+            synchronized (this) {
+                if (abandoned) {
+                    BufferPool.getInstance().release(buffer);
+                    return null;
+                }
+                done = true;
+            }
+            return new Range(buffer, length);
+        }
+
+        void abandon() {
+            synchronized (this) {
+                abandoned = true;
+                // a range that is being read releases its own buffer
+                if (!started || done) BufferPool.getInstance().release(buffer);
+            }
+            future.cancel(true);
+        }
+    }
+
+    private static class Range {
+        private byte[] buffer;
+        private int length;
+        private int position;
+
+        Range(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        int remaining() {
+            return length - position;
+        }
+
+        int read(byte[] b, int off, int len) {
+            int count = Math.min(len, remaining());
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        void release() {
+            BufferPool.getInstance().release(buffer);
+            buffer = null;
+        }
+    }
+}
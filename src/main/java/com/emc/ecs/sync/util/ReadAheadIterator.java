@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another iterator in a background thread, up to <code>capacity</code> objects ahead of the consumer. Each
+ * object is handed to the {@link Listener} as soon as it is read, so the listener sees the source ahead of the consumer
+ * (i.e. to count it). Errors from the source iterator are thrown from {@link #hasNext()} once the consumer reaches
+ * them. Be sure to call {@link #close()} if the consumer stops early, to stop the background thread.
+ */
+public class ReadAheadIterator<T> extends ReadOnlyIterator<T> implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReadAheadIterator.class);
+
+    private static final Object END = new Object();
+
+    public interface Listener<T> {
+        void objectRead(T object);
+    }
+
+    private BlockingQueue<Object> queue;
+    private Thread reader;
+    private volatile Throwable error;
+    private volatile boolean closed = false;
+    private boolean finished = false;
+
+    public ReadAheadIterator(final Iterator<T> source, int capacity, String threadName, final Listener<T> listener) {
+        queue = new ArrayBlockingQueue<>(capacity);
+        reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!closed && source.hasNext()) {
+                        T object = source.next();
+                        if (listener != null) listener.objectRead(object);
+                        queue.put(object);
+                    }
+                } catch (InterruptedException e) {
+                    if (!closed) error = e;
+                } catch (Throwable t) {
+                    error = t;
+                } finally {
+                    try {
+                        if (!closed) queue.put(END);
+                    } catch (InterruptedException e) {
+                        log.debug("interrupted while ending read-ahead");
+                    }
+                }
+            }
+        }, threadName);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected T getNextObject() {
+        if (finished) return null;
+        try {
+            Object next = queue.take();
+            if (next == END) {
+                finished = true;
+                if (error != null) {
+                    if (error instanceof RuntimeException) throw (RuntimeException) error;
+                    throw new RuntimeException("error reading ahead", error);
+                }
+                return null;
+            }
+            return (T) next;
+        } catch (InterruptedException e) {
+            throw new RuntimeException("interrupted while waiting for the next object", e);
+        }
+    }
+
+    /**
+     * Returns the number of objects that have been read but not consumed
+     */
+    public int getReadAheadCount() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        reader.interrupt();
+        queue.clear();
+    }
+}
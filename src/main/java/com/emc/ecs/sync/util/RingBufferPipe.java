@@ -0,0 +1,216 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A pipe between exactly one producer thread (writing to {@link #getOutputStream()}) and one consumer thread (reading
+ * from {@link #getInputStream()}), backed by a fixed-size ring buffer. Unlike {@link java.io.PipedInputStream}, there
+ * is no lock; each side only moves its own position (a volatile counter) and a side that has to wait parks until the
+ * other side moves its position or closes, so there is no polling.
+ * <p>
+ * Closing the input stream early makes the next (or current) write throw an IOException ("Pipe closed"). Closing the
+ * output stream marks the end of the data; the consumer can read what is left and then gets -1. Producers that can fail
+ * should record the error <em>before</em> closing the output stream, so the consumer sees it no later than the end of
+ * the data.
+ * <p>
+ * The ring is borrowed from the {@link BufferPool} and given back once both streams are closed.
+ */
+public class RingBufferPipe {
+    private static final AtomicInteger writerCount = new AtomicInteger();
+
+    // writers are short-lived and blocked most of the time, so a cached pool avoids creating a thread per stream
+    private static final ExecutorService defaultWriterExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "pipe-writer-" + writerCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Runs the producer of a pipe in the specified executor, or in a shared pool of daemon threads if executor is null
+     */
+    public static Future<?> submitWriter(Runnable writer, ExecutorService executor) {
+        if (executor == null) executor = defaultWriterExecutor;
+        return executor.submit(writer);
+    }
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private volatile long writePosition, readPosition;
+    private volatile boolean writeClosed, readClosed;
+    private volatile Thread waitingWriter, waitingReader;
+    private Input input = new Input();
+    private Output output = new Output();
+
+    public RingBufferPipe(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.buffer = BufferPool.getInstance().borrow(capacity);
+    }
+
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static void wake(Thread thread) {
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    // once both sides are closed, neither will touch the buffer again
+    private void releaseIfClosed() {
+        if (readClosed && writeClosed && released.compareAndSet(false, true)) {
+            BufferPool.getInstance().release(buffer);
+        }
+    }
+
+    private class Input extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int c = read(b, 0, 1);
+            return c == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+            if (readClosed) throw new IOException("Pipe closed");
+            if (len == 0) return 0;
+
+            long readPos = readPosition;
+            long available = awaitData(readPos);
+            if (available == 0) return -1;
+
+            int count = (int) Math.min(available, len);
+            int start = (int) (readPos % capacity);
+            int first = Math.min(count, capacity - start);
+            System.arraycopy(buffer, start, b, off, first);
+            if (first < count) System.arraycopy(buffer, 0, b, off + first, count - first);
+
+            readPosition = readPos + count;
+            wake(waitingWriter);
+            return count;
+        }
+
+        /**
+         * @return the number of bytes available, or 0 if the writer closed the pipe and all data was read
+         */
+        private long awaitData(long readPos) throws IOException {
+            long available = writePosition - readPos;
+            if (available > 0) return available;
+            waitingReader = Thread.currentThread();
+            try {
+                // the writer moves its position (or closes) before checking waitingReader, so one of us sees the other
+                while ((available = writePosition - readPos) == 0 && !writeClosed) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) throw new InterruptedIOException("interrupted while waiting for data");
+                    if (readClosed) throw new IOException("Pipe closed");
+                }
+                // the writer may have written its last bytes just before closing
+                return writePosition - readPos;
+            } finally {
+                waitingReader = null;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(writePosition - readPosition, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void close() {
+            readClosed = true;
+            wake(waitingWriter);
+            releaseIfClosed();
+        }
+    }
+
+    private class Output extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+            if (writeClosed) throw new IOException("Write end closed");
+            while (len > 0) {
+                long writePos = writePosition;
+                long free = awaitSpace(writePos);
+
+                int count = (int) Math.min(free, len);
+                int start = (int) (writePos % capacity);
+                int first = Math.min(count, capacity - start);
+                System.arraycopy(b, off, buffer, start, first);
+                if (first < count) System.arraycopy(b, off + first, buffer, 0, count - first);
+
+                writePosition = writePos + count;
+                wake(waitingReader);
+                off += count;
+                len -= count;
+            }
+        }
+
+        private long awaitSpace(long writePos) throws IOException {
+            long free = capacity - (writePos - readPosition);
+            if (readClosed) throw new IOException("Pipe closed");
+            if (free > 0) return free;
+            waitingWriter = Thread.currentThread();
+            try {
+                while ((free = capacity - (writePos - readPosition)) == 0) {
+                    if (readClosed) throw new IOException("Pipe closed");
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) throw new InterruptedIOException("interrupted while waiting for space");
+                }
+                if (readClosed) throw new IOException("Pipe closed");
+                return free;
+            } finally {
+                waitingWriter = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            writeClosed = true;
+            wake(waitingReader);
+            releaseIfClosed();
+        }
+    }
+}
@@ -21,14 +21,16 @@ import java.util.List;
 
 public final class SyncUtil {
     public static void consumeAndCloseStream(InputStream stream) {
+        byte[] devNull = BufferPool.getInstance().borrow(32 * 1024);
         try (InputStream input = stream) {
-            byte[] devNull = new byte[32 * 1024];
             int c = 0;
             while (c != -1) {
                 c = input.read(devNull);
             }
         } catch (IOException e) {
             throw new RuntimeException("error consuming stream", e);
+        } finally {
+            BufferPool.getInstance().release(devNull);
         }
     }
 
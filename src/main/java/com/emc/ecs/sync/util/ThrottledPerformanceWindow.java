@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+/**
+ * A performance window that takes tokens from a {@link TokenBucket} for every unit it counts. Since the window is
+ * incremented by the thread that moves the data, this throttles the stream at the point where it is measured.
+ */
+public class ThrottledPerformanceWindow extends PerformanceWindow {
+    private TokenBucket throttle;
+
+    public ThrottledPerformanceWindow(long sliceInterval, int sliceCount, TokenBucket throttle) {
+        super(sliceInterval, sliceCount);
+        this.throttle = throttle;
+    }
+
+    @Override
+    public void increment(long value) {
+        throttle.acquire(value);
+        super.increment(value);
+    }
+
+    public TokenBucket getThrottle() {
+        return throttle;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simple token bucket rate limiter. The bucket refills at the configured rate (tokens/second) and holds at most one
+ * second's worth of tokens, so short bursts are allowed. A request larger than the available tokens puts the bucket into
+ * debt and the caller sleeps until that debt is paid off; later callers wait behind it, so callers are served in order.
+ * <p>
+ * A rate of 0 (or less) disables the limiter, in which case {@link #acquire(long)} returns after a single volatile read.
+ * The rate may be changed at any time.
+ */
+public class TokenBucket {
+    private volatile long rate;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(long rate) {
+        setRate(rate);
+    }
+
+    /**
+     * Takes the specified number of tokens from the bucket, blocking until they are available
+     */
+    public void acquire(long count) {
+        if (rate <= 0 || count <= 0) return;
+
+        long waitNanos;
+        synchronized (this) {
+            long currentRate = rate;
+            if (currentRate <= 0) return;
+            refill(currentRate);
+            tokens -= count;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / currentRate);
+        }
+
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void refill(long currentRate) {
+        long now = System.nanoTime();
+        tokens = Math.min(currentRate, tokens + (double) (now - lastRefill) * currentRate / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+
+    /**
+     * Sets the rate in tokens/second (0 or less to disable the limiter)
+     */
+    public synchronized void setRate(long rate) {
+        if (rate > 0) {
+            if (this.rate > 0) refill(this.rate);
+            else {
+                // start full when enabling
+                tokens = rate;
+                lastRefill = System.nanoTime();
+            }
+            tokens = Math.min(tokens, rate);
+        }
+        this.rate = rate;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    public boolean isEnabled() {
+        return rate > 0;
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import com.emc.ecs.sync.config.ChecksumAlgorithm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Hashes object data in fixed-size chunks, reading up to <code>threadCount</code> chunks in parallel with ranged reads
+ * (see {@link ParallelRangeInputStream.RangeSource}). The root hash is the checksum of all chunk checksums in order, so
+ * two objects have the same root hash only if every chunk matches, and a mismatch can be narrowed down to the exact
+ * chunks that differ (see {@link #getMismatchedChunks(TreeHash)}). Each chunk is hashed as it is read, so no chunk is
+ * buffered in memory.
+ */
+public class TreeHash {
+    private static final Logger log = LoggerFactory.getLogger(TreeHash.class);
+
+    private static final int READ_BUFFER_SIZE = 128 * 1024;
+
+    /**
+     * Hashes all chunks of an object. Blocks until all chunks are hashed
+     *
+     * @param executor runs the chunk reads (at most threadCount at a time for this object)
+     */
+    public static TreeHash calculate(final ParallelRangeInputStream.RangeSource source, long size, int chunkSize,
+                                     final ChecksumAlgorithm algorithm, int threadCount, final int retries,
+                                     ExecutorService executor) throws IOException {
+        threadCount = Math.max(threadCount, 1);
+        List<Chunk> chunks = new ArrayList<>();
+        Deque<Future<Chunk>> futures = new ArrayDeque<>();
+        long nextOffset = 0;
+        try {
+            while (nextOffset < size || !futures.isEmpty()) {
+                while (futures.size() < threadCount && nextOffset < size) {
+                    final long offset = nextOffset, length = Math.min(chunkSize, size - offset);
+                    futures.add(executor.submit(new Callable<Chunk>() {
+                        @Override
+                        public Chunk call() throws Exception {
+                            return hashChunk(source, offset, length, algorithm, retries);
+                        }
+                    }));
+                    nextOffset += length;
+                }
+                chunks.add(getChunk(futures.remove()));
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while hashing chunks", e);
+        } finally {
+            for (Future<Chunk> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return new TreeHash(algorithm, chunks);
+    }
+
+    private static Chunk hashChunk(ParallelRangeInputStream.RangeSource source, long offset, long length,
+                                   ChecksumAlgorithm algorithm, int retries) throws IOException {
+        byte[] buffer = BufferPool.getInstance().borrow(READ_BUFFER_SIZE);
+        try {
+            for (int attempt = 0; ; attempt++) {
+                MessageDigest digest = ChecksumUtil.createDigest(algorithm);
+                try (InputStream in = source.open(offset, length)) {
+                    long remaining = length;
+                    int c;
+                    while (remaining > 0 && (c = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                        digest.update(buffer, 0, c);
+                        remaining -= c;
+                    }
+                    if (remaining > 0)
+                        throw new IOException(String.format("chunk %d-%d ended early at %d", offset, offset + length - 1, offset + length - remaining));
+                    return new Chunk(offset, length, digest.digest());
+                } catch (IOException | RuntimeException e) {
+                    if (attempt >= retries) throw e;
+                    log.warn("chunk {}-{} failed (retrying): {}", offset, offset + length - 1, e.toString());
+                }
+            }
+        } finally {
+            BufferPool.getInstance().release(buffer);
+        }
+    }
+
+    private static Chunk getChunk(Future<Chunk> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException("chunk hash failed", e.getCause());
+        }
+    }
+
+    private ChecksumAlgorithm algorithm;
+    private List<Chunk> chunks;
+    private byte[] rootHash;
+
+    public TreeHash(ChecksumAlgorithm algorithm, List<Chunk> chunks) {
+        this.algorithm = algorithm;
+        this.chunks = chunks;
+    }
+
+    public ChecksumAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public List<Chunk> getChunks() {
+        return Collections.unmodifiableList(chunks);
+    }
+
+    /**
+     * @return the total length of all chunks
+     */
+    public long getSize() {
+        if (chunks.isEmpty()) return 0;
+        Chunk last = chunks.get(chunks.size() - 1);
+        return last.offset + last.length;
+    }
+
+    /**
+     * @return the length of the first chunk. Every chunk but the last is this length, so hashing other data of the same
+     * size with this chunk size gives comparable chunks
+     */
+    public long getChunkSize() {
+        return chunks.isEmpty() ? 0 : chunks.get(0).length;
+    }
+
+    public synchronized byte[] getRootHash() {
+        if (rootHash == null) {
+            MessageDigest digest = ChecksumUtil.createDigest(algorithm);
+            for (Chunk chunk : chunks) {
+                digest.update(chunk.checksum);
+            }
+            rootHash = digest.digest();
+        }
+        return rootHash;
+    }
+
+    public String getRootHashHex() {
+        return DatatypeConverter.printHexBinary(getRootHash());
+    }
+
+    /**
+     * Returns the chunks of this hash that do not match the other hash. Both must be calculated with the same chunk
+     * size and algorithm
+     */
+    public List<Chunk> getMismatchedChunks(TreeHash other) {
+        List<Chunk> mismatched = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            if (i >= other.chunks.size() || !chunk.matches(other.chunks.get(i))) mismatched.add(chunk);
+        }
+        return mismatched;
+    }
+
+    /**
+     * Hashes data in chunks as it is read in order (i.e. while it is transferred), with the same result as
+     * {@link #calculate} with the same chunk size
+     */
+    public static class Digester {
+        private ChecksumAlgorithm algorithm;
+        private int chunkSize;
+        private List<Chunk> chunks = new ArrayList<>();
+        private MessageDigest digest;
+        private long offset;
+        private int chunkLength;
+        private TreeHash treeHash;
+
+        public Digester(ChecksumAlgorithm algorithm, int chunkSize) {
+            this.algorithm = algorithm;
+            this.chunkSize = chunkSize;
+        }
+
+        public void update(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (digest == null) digest = ChecksumUtil.createDigest(algorithm);
+                int c = Math.min(len, chunkSize - chunkLength);
+                digest.update(b, off, c);
+                chunkLength += c;
+                off += c;
+                len -= c;
+                if (chunkLength == chunkSize) endChunk();
+            }
+        }
+
+        public void update(int b) {
+            update(new byte[]{(byte) b}, 0, 1);
+        }
+
+        /**
+         * Ends the last chunk. No more data can be added after this is called
+         */
+        public synchronized TreeHash getTreeHash() {
+            if (treeHash == null) {
+                if (chunkLength > 0) endChunk();
+                treeHash = new TreeHash(algorithm, chunks);
+            }
+            return treeHash;
+        }
+
+        private void endChunk() {
+            chunks.add(new Chunk(offset, chunkLength, digest.digest()));
+            offset += chunkLength;
+            chunkLength = 0;
+            digest = null;
+        }
+    }
+
+    public static class Chunk {
+        private long offset;
+        private long length;
+        private byte[] checksum;
+
+        public Chunk(long offset, long length, byte[] checksum) {
+            this.offset = offset;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public byte[] getChecksum() {
+            return checksum;
+        }
+
+        boolean matches(Chunk other) {
+            return offset == other.offset && length == other.length && Arrays.equals(checksum, other.checksum);
+        }
+
+        @Override
+        public String toString() {
+            return offset + "-" + (offset + length - 1);
+        }
+    }
+}
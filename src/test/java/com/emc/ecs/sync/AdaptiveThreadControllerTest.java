@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveThreadControllerTest {
+    @Test
+    public void testClimbAndReverse() {
+        AdaptiveThreadController controller = new AdaptiveThreadController(null);
+
+        // first sample establishes a baseline and climbs
+        Assert.assertEquals(20, controller.nextThreadCount(16, 128, 1000, 100, 0));
+        Assert.assertEquals(AdaptiveThreadController.State.Increasing, controller.getState());
+
+        // throughput improved; keep climbing
+        Assert.assertEquals(25, controller.nextThreadCount(20, 128, 1500, 120, 0));
+
+        // throughput dropped; reverse
+        Assert.assertEquals(19, controller.nextThreadCount(25, 128, 1200, 100, 0));
+        Assert.assertEquals(AdaptiveThreadController.State.Decreasing, controller.getState());
+
+        // throughput recovered while decreasing; keep going down
+        Assert.assertEquals(14, controller.nextThreadCount(19, 128, 1500, 120, 0));
+    }
+
+    @Test
+    public void testPlateau() {
+        AdaptiveThreadController controller = new AdaptiveThreadController(null);
+
+        Assert.assertEquals(10, controller.nextThreadCount(8, 128, 1000, 100, 0));
+
+        // no real gain from the extra threads; give them back
+        Assert.assertEquals(7, controller.nextThreadCount(10, 128, 1020, 101, 0));
+        Assert.assertEquals(AdaptiveThreadController.State.Decreasing, controller.getState());
+    }
+
+    @Test
+    public void testErrorBackoff() {
+        AdaptiveThreadController controller = new AdaptiveThreadController(null);
+
+        Assert.assertEquals(40, controller.nextThreadCount(32, 128, 1000, 100, 0));
+
+        // errors above the threshold halve the thread count
+        Assert.assertEquals(20, controller.nextThreadCount(40, 128, 1000, 50, 20));
+        Assert.assertEquals(AdaptiveThreadController.State.BackingOff, controller.getState());
+
+        // a few errors are tolerated
+        Assert.assertEquals(15, controller.nextThreadCount(20, 128, 1000, 100, 5));
+    }
+
+    @Test
+    public void testBounds() {
+        AdaptiveThreadController controller = new AdaptiveThreadController(null);
+
+        Assert.assertEquals(8, controller.nextThreadCount(8, 8, 1000, 100, 0));
+        Assert.assertEquals(AdaptiveThreadController.State.Holding, controller.getState());
+
+        Assert.assertEquals(1, controller.nextThreadCount(1, 8, 0, 10, 10));
+
+        // idle samples do not move the thread count
+        Assert.assertEquals(4, controller.nextThreadCount(4, 8, 0, 0, 0));
+        Assert.assertEquals(AdaptiveThreadController.State.Holding, controller.getState());
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.emc.ecs.sync.config.storage.TestConfig;
+import com.emc.ecs.sync.model.ObjectSummary;
+import com.emc.ecs.sync.storage.SyncStorage;
+import com.emc.ecs.sync.storage.TestStorage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DirectoryCrawlerTest {
+    @Test
+    public void testRecursiveCrawl() throws Exception {
+        TestStorage storage = createStorage();
+
+        Set<String> expected = new HashSet<>();
+        for (ObjectSummary summary : storage.allObjects()) {
+            if (summary.isDirectory()) listAll(storage, summary, expected);
+        }
+        Assert.assertTrue(expected.size() > DirectoryCrawler.MAX_PENDING_DIRECTORIES);
+
+        final Set<String> found = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger duplicates = new AtomicInteger();
+        DirectoryCrawler crawler = new DirectoryCrawler(8, true, new DirectoryCrawler.Handler() {
+            @Override
+            public void childListed(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+            }
+
+            @Override
+            public void childFound(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+                if (!found.add(child.getIdentifier())) duplicates.incrementAndGet();
+            }
+
+            @Override
+            public boolean shouldCrawl(ObjectSummary directory, ObjectSummary subDirectory) {
+                return true;
+            }
+
+            @Override
+            public void crawlComplete(ObjectSummary directory) {
+            }
+
+            @Override
+            public void crawlFailed(ObjectSummary directory, Throwable t) {
+                Assert.fail("crawl failed: " + t);
+            }
+        });
+
+        for (ObjectSummary summary : storage.allObjects()) {
+            if (summary.isDirectory()) crawler.crawl(storage, summary);
+        }
+        waitForCrawler(crawler);
+        crawler.shutdown();
+
+        Assert.assertEquals(0, duplicates.get());
+        Assert.assertEquals(expected, found);
+    }
+
+    @Test
+    public void testNonRecursiveCrawl() throws Exception {
+        TestStorage storage = createStorage();
+
+        Set<String> expected = new HashSet<>();
+        final Set<String> found = Collections.synchronizedSet(new HashSet<String>());
+        DirectoryCrawler crawler = new DirectoryCrawler(4, false, new DirectoryCrawler.Handler() {
+            @Override
+            public void childListed(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+            }
+
+            @Override
+            public void childFound(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+                found.add(child.getIdentifier());
+            }
+
+            @Override
+            public boolean shouldCrawl(ObjectSummary directory, ObjectSummary subDirectory) {
+                return true;
+            }
+
+            @Override
+            public void crawlComplete(ObjectSummary directory) {
+            }
+
+            @Override
+            public void crawlFailed(ObjectSummary directory, Throwable t) {
+                Assert.fail("crawl failed: " + t);
+            }
+        });
+
+        for (ObjectSummary summary : storage.allObjects()) {
+            if (summary.isDirectory()) {
+                for (ObjectSummary child : storage.children(summary)) {
+                    expected.add(child.getIdentifier());
+                }
+                crawler.crawl(storage, summary);
+            }
+        }
+        waitForCrawler(crawler);
+        crawler.shutdown();
+
+        Assert.assertEquals(expected, found);
+    }
+
+    @Test
+    public void testCrawlFailure() throws Exception {
+        final AtomicInteger failures = new AtomicInteger();
+        DirectoryCrawler crawler = new DirectoryCrawler(2, true, new DirectoryCrawler.Handler() {
+            @Override
+            public void childListed(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+            }
+
+            @Override
+            public void childFound(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+                throw new RuntimeException("handler failure");
+            }
+
+            @Override
+            public boolean shouldCrawl(ObjectSummary directory, ObjectSummary subDirectory) {
+                return true;
+            }
+
+            @Override
+            public void crawlComplete(ObjectSummary directory) {
+            }
+
+            @Override
+            public void crawlFailed(ObjectSummary directory, Throwable t) {
+                failures.incrementAndGet();
+            }
+        });
+
+        TestStorage storage = createStorage();
+        int directories = 0;
+        for (ObjectSummary summary : storage.allObjects()) {
+            if (summary.isDirectory()) {
+                crawler.crawl(storage, summary);
+                directories += countParents(storage, summary);
+            }
+        }
+        waitForCrawler(crawler);
+        crawler.shutdown();
+
+        // sub-directories are crawled as they are listed, so every directory with children fails once
+        Assert.assertEquals(directories, failures.get());
+    }
+
+    @Test
+    public void testBlockingHandler() throws Exception {
+        TestStorage storage = createStorage();
+
+        Set<String> expected = new HashSet<>();
+        for (ObjectSummary summary : storage.allObjects()) {
+            if (summary.isDirectory()) listAll(storage, summary, expected);
+        }
+
+        final Set<String> found = Collections.synchronizedSet(new HashSet<String>());
+        final Set<String> crawled = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger listed = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        DirectoryCrawler crawler = new DirectoryCrawler(4, true, expected.size() * 2, new DirectoryCrawler.Handler() {
+            @Override
+            public void childListed(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+                listed.incrementAndGet();
+            }
+
+            @Override
+            public void childFound(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                found.add(child.getIdentifier());
+            }
+
+            @Override
+            public boolean shouldCrawl(ObjectSummary directory, ObjectSummary subDirectory) {
+                crawled.add(subDirectory.getIdentifier());
+                return true;
+            }
+
+            @Override
+            public void crawlComplete(ObjectSummary directory) {
+            }
+
+            @Override
+            public void crawlFailed(ObjectSummary directory, Throwable t) {
+                Assert.fail("crawl failed: " + t);
+            }
+        });
+
+        int subDirectories = 0;
+        for (ObjectSummary summary : storage.allObjects()) {
+            if (summary.isDirectory()) {
+                crawler.crawl(storage, summary);
+                subDirectories += countSubDirectories(storage, summary);
+            }
+        }
+
+        // the handler is blocked, but the whole tree is still crawled and counted
+        long start = System.currentTimeMillis();
+        while (crawler.getUnlistedDirectories() > 0) {
+            Assert.assertTrue("crawl did not get ahead", System.currentTimeMillis() - start < 60000);
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(subDirectories, crawled.size());
+        Assert.assertEquals(expected.size(), listed.get());
+        Assert.assertEquals(0, found.size());
+        Assert.assertTrue(crawler.getQueuedChildren() > 0);
+
+        release.countDown();
+        waitForCrawler(crawler);
+        crawler.shutdown();
+
+        Assert.assertEquals(expected, found);
+    }
+
+    @Test
+    public void testSetThreadCount() throws Exception {
+        TestStorage storage = createStorage();
+
+        Set<String> expected = new HashSet<>();
+        for (ObjectSummary summary : storage.allObjects()) {
+            if (summary.isDirectory()) listAll(storage, summary, expected);
+        }
+
+        final Set<String> found = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger duplicates = new AtomicInteger();
+        final DirectoryCrawler[] crawler = new DirectoryCrawler[1];
+        crawler[0] = new DirectoryCrawler(2, true, new DirectoryCrawler.Handler() {
+            @Override
+            public void childListed(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+            }
+
+            @Override
+            public void childFound(SyncStorage<?> storage, ObjectSummary directory, ObjectSummary child) {
+                if (!found.add(child.getIdentifier())) duplicates.incrementAndGet();
+                // resize a few times during the crawl
+                if (found.size() % 500 == 0) crawler[0].setThreadCount(crawler[0].getThreadCount() == 2 ? 6 : 2);
+            }
+
+            @Override
+            public boolean shouldCrawl(ObjectSummary directory, ObjectSummary subDirectory) {
+                return true;
+            }
+
+            @Override
+            public void crawlComplete(ObjectSummary directory) {
+            }
+
+            @Override
+            public void crawlFailed(ObjectSummary directory, Throwable t) {
+                Assert.fail("crawl failed: " + t);
+            }
+        });
+
+        for (ObjectSummary summary : storage.allObjects()) {
+            if (summary.isDirectory()) crawler[0].crawl(storage, summary);
+        }
+        waitForCrawler(crawler[0]);
+        crawler[0].shutdown();
+
+        Assert.assertEquals(0, duplicates.get());
+        Assert.assertEquals(expected, found);
+    }
+
+    private TestStorage createStorage() {
+        TestConfig testConfig = new TestConfig().withObjectCount(100).withMaxSize(1024).withMaxDepth(6)
+                .withMaxChildCount(8).withChanceOfChildren(60);
+        TestStorage storage = new TestStorage();
+        storage.setConfig(testConfig);
+        storage.configure(storage, null, null);
+        return storage;
+    }
+
+    private void listAll(TestStorage storage, ObjectSummary directory, Set<String> identifiers) {
+        for (ObjectSummary child : storage.children(directory)) {
+            identifiers.add(child.getIdentifier());
+            if (child.isDirectory()) listAll(storage, child, identifiers);
+        }
+    }
+
+    /**
+     * Counts the directories in the tree (including the specified directory) that have children
+     */
+    private int countParents(TestStorage storage, ObjectSummary directory) {
+        int count = 0;
+        for (ObjectSummary child : storage.children(directory)) {
+            if (count == 0) count = 1;
+            if (child.isDirectory()) count += countParents(storage, child);
+        }
+        return count;
+    }
+
+    private int countSubDirectories(TestStorage storage, ObjectSummary directory) {
+        int count = 0;
+        for (ObjectSummary child : storage.children(directory)) {
+            if (child.isDirectory()) count += 1 + countSubDirectories(storage, child);
+        }
+        return count;
+    }
+
+    private void waitForCrawler(DirectoryCrawler crawler) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (crawler.getUnfinishedTasks() > 0) {
+            Assert.assertTrue("crawl timed out", System.currentTimeMillis() - start < 60000);
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.emc.ecs.sync.model.ObjectContext;
+import com.emc.ecs.sync.model.ObjectStatus;
+import com.emc.ecs.sync.model.ObjectSummary;
+import com.emc.ecs.sync.service.SqliteDbService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class ListCheckpointerTest {
+    private SqliteDbService dbService;
+    private ListCheckpointer checkpointer;
+
+    @Before
+    public void setup() {
+        dbService = new SqliteDbService(":memory:");
+        dbService.setListCheckpoint("");
+        checkpointer = new ListCheckpointer(dbService);
+    }
+
+    @After
+    public void teardown() {
+        dbService.close();
+    }
+
+    @Test
+    public void testListingOrder() {
+        ObjectContext[] contexts = new ObjectContext[3];
+        for (int i = 0; i < contexts.length; i++) {
+            contexts[i] = new ObjectContext();
+            ListCheckpointer.Entry entry = checkpointer.listed("key" + i);
+            checkpointer.track(contexts[i], entry);
+            entry.release();
+        }
+
+        // a later object finishing first does not move the checkpoint
+        checkpointer.finished(contexts[1]);
+        checkpointer.run();
+        Assert.assertEquals("", dbService.getListCheckpoint());
+
+        checkpointer.finished(contexts[0]);
+        checkpointer.run();
+        Assert.assertEquals("key1", dbService.getListCheckpoint());
+
+        // an object waiting for a retry is not settled
+        checkpointer.retrying(contexts[2]);
+        checkpointer.finished(contexts[2]);
+        checkpointer.run();
+        Assert.assertEquals("key1", dbService.getListCheckpoint());
+
+        checkpointer.finished(contexts[2]);
+        checkpointer.run();
+        Assert.assertEquals("key2", dbService.getListCheckpoint());
+    }
+
+    @Test
+    public void testDirectoryComplete() {
+        ObjectSummary root = new ObjectSummary("root", true, 0);
+        ObjectSummary sub = new ObjectSummary("root/sub", true, 0);
+        ObjectContext rootContext = new ObjectContext(), subContext = new ObjectContext(), fileContext = new ObjectContext();
+
+        ListCheckpointer.Entry entry = checkpointer.listed(null);
+        checkpointer.track(rootContext, entry);
+        checkpointer.crawlStarted(root, entry);
+        entry.release();
+
+        // crawl root (finds sub)
+        checkpointer.track(subContext, checkpointer.getCrawlEntry(root));
+        checkpointer.crawlStarted(sub, checkpointer.getCrawlEntry(root));
+        checkpointer.crawlComplete(root);
+
+        // crawl sub (finds a file)
+        checkpointer.track(fileContext, checkpointer.getCrawlEntry(sub));
+        checkpointer.crawlComplete(sub);
+
+        checkpointer.finished(rootContext);
+        checkpointer.finished(subContext);
+        Assert.assertFalse(dbService.isDirectoryComplete("root/sub"));
+
+        checkpointer.finished(fileContext);
+        Assert.assertTrue(dbService.isDirectoryComplete("root/sub"));
+        Assert.assertTrue(dbService.isDirectoryComplete("root"));
+    }
+
+    @Test
+    public void testFailedCrawl() {
+        ObjectSummary root = new ObjectSummary("root", true, 0);
+        ObjectContext rootContext = new ObjectContext();
+
+        ListCheckpointer.Entry entry = checkpointer.listed("root");
+        checkpointer.track(rootContext, entry);
+        checkpointer.crawlStarted(root, entry);
+        entry.release();
+
+        checkpointer.crawlFailed(root);
+        checkpointer.finished(rootContext);
+        checkpointer.run();
+
+        // the failed crawl is recorded, so the checkpoint can move past it
+        Assert.assertFalse(dbService.isDirectoryComplete("root"));
+        Assert.assertEquals("root", dbService.getListCheckpoint());
+        Assert.assertEquals(Collections.singletonList("root"), dbService.getFailedDirectories());
+
+        // a restarted job crawls it again, and the record is removed once it is complete
+        checkpointer = new ListCheckpointer(dbService);
+        Assert.assertEquals(Collections.singletonList("root"), checkpointer.getFailedDirectories());
+        entry = checkpointer.listed(null);
+        checkpointer.crawlStarted(root, entry);
+        entry.release();
+        checkpointer.crawlComplete(root);
+
+        Assert.assertTrue(dbService.isDirectoryComplete("root"));
+        Assert.assertTrue(dbService.getFailedDirectories().isEmpty());
+    }
+
+    @Test
+    public void testFailedObject() {
+        ObjectContext failedContext = new ObjectContext(), okContext = new ObjectContext();
+        failedContext.setSourceSummary(new ObjectSummary("key0", false, 0));
+        okContext.setSourceSummary(new ObjectSummary("key1", false, 0));
+
+        ListCheckpointer.Entry entry = checkpointer.listed("key0");
+        checkpointer.track(failedContext, entry);
+        entry.release();
+        entry = checkpointer.listed("key1");
+        checkpointer.track(okContext, entry);
+        entry.release();
+
+        failedContext.setStatus(ObjectStatus.Error);
+        checkpointer.finished(failedContext);
+        okContext.setStatus(ObjectStatus.Transferred);
+        checkpointer.finished(okContext);
+        checkpointer.run();
+
+        // the failure is recorded, so the checkpoint can move past it
+        Assert.assertEquals("key1", dbService.getListCheckpoint());
+        Assert.assertEquals(Collections.singletonMap("key0", (String) null), dbService.getFailedObjects());
+
+        // a restarted job submits it again, and the record is removed once it succeeds
+        checkpointer = new ListCheckpointer(dbService);
+        Assert.assertEquals(Collections.singleton("key0"), checkpointer.getFailedObjects().keySet());
+        ObjectContext retryContext = new ObjectContext();
+        retryContext.setSourceSummary(new ObjectSummary("key0", false, 0));
+        entry = checkpointer.listed(null);
+        checkpointer.track(retryContext, entry);
+        entry.release();
+        retryContext.setStatus(ObjectStatus.Verified);
+        checkpointer.finished(retryContext);
+
+        Assert.assertTrue(dbService.getFailedObjects().isEmpty());
+    }
+
+    @Test
+    public void testStopped() {
+        ObjectContext context = new ObjectContext();
+        context.setSourceSummary(new ObjectSummary("key0", false, 0));
+        ListCheckpointer.Entry entry = checkpointer.listed("key0");
+        checkpointer.track(context, entry);
+        entry.release();
+
+        // a terminated sync finishes tasks without syncing them
+        checkpointer.stop();
+        checkpointer.finished(context);
+        checkpointer.run();
+        Assert.assertEquals("", dbService.getListCheckpoint());
+    }
+}
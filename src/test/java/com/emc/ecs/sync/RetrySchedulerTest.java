@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync;
+
+import com.emc.ecs.sync.config.SyncOptions;
+import com.emc.ecs.sync.model.ObjectContext;
+import com.emc.ecs.sync.model.ObjectSummary;
+import com.emc.ecs.sync.storage.SyncStorage;
+import com.emc.object.s3.S3Exception;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RetrySchedulerTest {
+    @Test
+    public void testBackoff() {
+        SyncOptions options = new SyncOptions().withRetryDelay(1000).withMaxRetryDelay(10000);
+        RetryScheduler scheduler = new RetryScheduler(options, null);
+        try {
+            for (int i = 0; i < 100; i++) {
+                assertBetween(500, 1000, scheduler.getDelay(1, RetryScheduler.ErrorClass.Other));
+                assertBetween(1000, 2000, scheduler.getDelay(2, RetryScheduler.ErrorClass.Other));
+                assertBetween(2000, 4000, scheduler.getDelay(3, RetryScheduler.ErrorClass.Other));
+                assertBetween(2000, 4000, scheduler.getDelay(2, RetryScheduler.ErrorClass.Network));
+                assertBetween(2500, 5000, scheduler.getDelay(1, RetryScheduler.ErrorClass.Throttled));
+                // capped
+                assertBetween(5000, 10000, scheduler.getDelay(3, RetryScheduler.ErrorClass.Throttled));
+                assertBetween(5000, 10000, scheduler.getDelay(40, RetryScheduler.ErrorClass.Other));
+            }
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testClassify() {
+        Assert.assertEquals(RetryScheduler.ErrorClass.Throttled,
+                RetryScheduler.classify(new S3Exception("slow down", 503, "SlowDown", null)));
+        Assert.assertEquals(RetryScheduler.ErrorClass.Throttled,
+                RetryScheduler.classify(new RuntimeException(new S3Exception("too many", 429))));
+        Assert.assertEquals(RetryScheduler.ErrorClass.Other,
+                RetryScheduler.classify(new S3Exception("not found", 404)));
+        Assert.assertEquals(RetryScheduler.ErrorClass.Network,
+                RetryScheduler.classify(new RuntimeException(new SocketTimeoutException("read timed out"))));
+        Assert.assertEquals(RetryScheduler.ErrorClass.Other, RetryScheduler.classify(new RuntimeException("boom")));
+    }
+
+    @Test
+    public void testDelayedDispatch() throws Exception {
+        final List<String> retried = Collections.synchronizedList(new ArrayList<String>());
+        SyncOptions options = new SyncOptions().withRetryDelay(400).withMaxRetryDelay(10000);
+        RetryScheduler scheduler = new RetryScheduler(options, new RetryScheduler.Handler() {
+            @Override
+            public void retry(SyncStorage<?> source, ObjectContext objectContext) {
+                retried.add(objectContext.getSourceSummary().getIdentifier());
+            }
+        });
+        try {
+            ObjectContext slow = new ObjectContext().withSourceSummary(new ObjectSummary("slow", false, 0));
+            slow.incFailures();
+            slow.incFailures(); // second failure doubles the delay
+            ObjectContext fast = new ObjectContext().withSourceSummary(new ObjectSummary("fast", false, 0));
+            fast.incFailures();
+
+            long slowDelay = scheduler.schedule(null, slow, new RuntimeException());
+            long fastDelay = scheduler.schedule(null, fast, new RuntimeException());
+            Assert.assertTrue(slowDelay > fastDelay);
+
+            Assert.assertEquals(2, scheduler.getObjectsAwaitingRetry());
+            Assert.assertEquals(2, scheduler.getUnfinishedRetries());
+            Assert.assertTrue(retried.isEmpty());
+
+            Thread.sleep(1200);
+            Assert.assertEquals(0, scheduler.getObjectsAwaitingRetry());
+            Assert.assertEquals(0, scheduler.getUnfinishedRetries());
+            Assert.assertEquals(2, retried.size());
+            Assert.assertEquals("fast", retried.get(0));
+            Assert.assertEquals("slow", retried.get(1));
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    private void assertBetween(long min, long max, long value) {
+        Assert.assertTrue(value + " is not between " + min + " and " + max, value >= min && value <= max);
+    }
+}
@@ -22,6 +22,7 @@ import com.emc.ecs.sync.config.storage.TestConfig;
 import com.emc.ecs.sync.filter.AbstractFilter;
 import com.emc.ecs.sync.filter.InternalFilter;
 import com.emc.ecs.sync.model.*;
+import com.emc.ecs.sync.rest.LaneProgress;
 import com.emc.ecs.sync.service.DbService;
 import com.emc.ecs.sync.service.SqliteDbService;
 import com.emc.ecs.sync.service.SyncRecord;
@@ -38,6 +39,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -245,6 +247,148 @@ public class SyncProcessTest {
         Assert.assertEquals(1, count);
     }
 
+    @Test
+    public void testPipeline() throws Exception {
+        com.emc.ecs.sync.config.storage.TestConfig testConfig = new com.emc.ecs.sync.config.storage.TestConfig();
+        testConfig.withObjectCount(500).withMaxSize(1024).withReadData(true).withDiscardData(false);
+
+        SyncOptions options = new SyncOptions().withThreadCount(8).withVerify(true).withPipelineEnabled(true)
+                .withHeadThreadCount(2).withVerifyThreadCount(4).withRecordThreadCount(1);
+
+        SyncConfig syncConfig = new SyncConfig().withOptions(options).withSource(testConfig).withTarget(testConfig);
+
+        DbService dbService = new SqliteDbService(":memory:");
+
+        EcsSync sync = new EcsSync();
+        sync.setSyncConfig(syncConfig);
+        sync.setDbService(dbService);
+        sync.run();
+
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+        Assert.assertEquals(sync.getEstimatedTotalObjects(), sync.getStats().getObjectsComplete());
+        Assert.assertEquals(4, sync.getStageProgress().size());
+
+        long count = 0;
+        for (SyncRecord record : dbService.getAllRecords()) {
+            Assert.assertEquals(ObjectStatus.Verified, record.getStatus());
+            Assert.assertNotNull(record.getTransferComplete());
+            count++;
+        }
+        Assert.assertEquals(sync.getStats().getObjectsComplete(), count);
+    }
+
+    @Test
+    public void testPipelineRetryQueue() throws Exception {
+        int retries = 2;
+
+        com.emc.ecs.sync.config.storage.TestConfig testConfig = new com.emc.ecs.sync.config.storage.TestConfig();
+        testConfig.withObjectCount(200).withMaxSize(1024).withReadData(true).withDiscardData(false);
+
+        ErrorThrowingConfig filterConfig = new ErrorThrowingConfig().withRetriesExpected(retries);
+
+        SyncOptions options = new SyncOptions().withThreadCount(8).withRetryAttempts(retries).withPipelineEnabled(true);
+
+        SyncConfig syncConfig = new SyncConfig().withOptions(options).withSource(testConfig).withTarget(testConfig);
+        syncConfig.withFilters(Collections.singletonList(filterConfig));
+
+        EcsSync sync = new EcsSync();
+        sync.setSyncConfig(syncConfig);
+        sync.run();
+
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+        Assert.assertEquals(sync.getStats().getObjectsComplete(), sync.getEstimatedTotalObjects());
+        Assert.assertEquals((retries + 1) * sync.getStats().getObjectsComplete(), filterConfig.getTotalAttempts().get());
+    }
+
+    @Test
+    public void testLargeObjectLanes() throws Exception {
+        TestConfig testConfig = new TestConfig().withObjectCount(300).withMaxSize(100 * 1024).withDiscardData(true);
+
+        SyncOptions options = new SyncOptions().withThreadCount(8).withLargeObjectThreshold(50 * 1024)
+                .withLargeObjectThreadCount(2);
+
+        SyncConfig syncConfig = new SyncConfig().withOptions(options).withSource(testConfig).withTarget(testConfig);
+
+        EcsSync sync = new EcsSync();
+        sync.setSyncConfig(syncConfig);
+        sync.run();
+
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+        Assert.assertEquals(sync.getEstimatedTotalObjects(), sync.getStats().getObjectsComplete());
+
+        List<LaneProgress> lanes = sync.getLaneProgress();
+        Assert.assertEquals(2, lanes.size());
+        Assert.assertEquals(SyncLanes.Lane.Small.name(), lanes.get(0).getName());
+        Assert.assertEquals(6, lanes.get(0).getThreadCount());
+        Assert.assertEquals(SyncLanes.Lane.Large.name(), lanes.get(1).getName());
+        Assert.assertEquals(2, lanes.get(1).getThreadCount());
+        Assert.assertTrue(lanes.get(0).getObjectsComplete() > 0);
+        Assert.assertTrue(lanes.get(1).getObjectsComplete() > 0);
+        Assert.assertEquals(sync.getStats().getObjectsComplete(),
+                lanes.get(0).getObjectsComplete() + lanes.get(1).getObjectsComplete());
+        Assert.assertEquals(sync.getStats().getBytesComplete(),
+                lanes.get(0).getBytesComplete() + lanes.get(1).getBytesComplete());
+    }
+
+    @Test
+    public void testInFlightLimits() throws Exception {
+        TestConfig testConfig = new TestConfig().withObjectCount(300).withMaxSize(100 * 1024).withDiscardData(true);
+
+        SyncOptions options = new SyncOptions().withThreadCount(8).withMaxInFlightBytes(256 * 1024)
+                .withMaxInFlightObjects(20);
+
+        SyncConfig syncConfig = new SyncConfig().withOptions(options).withSource(testConfig).withTarget(testConfig);
+
+        EcsSync sync = new EcsSync();
+        sync.setSyncConfig(syncConfig);
+        sync.run();
+
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+        Assert.assertEquals(sync.getEstimatedTotalObjects(), sync.getStats().getObjectsComplete());
+        Assert.assertEquals(0, sync.getInFlightBytes());
+        Assert.assertEquals(0, sync.getInFlightObjects());
+    }
+
+    @Test
+    public void testSkipUnchangedFromListing() throws Exception {
+        TestConfig testConfig = new TestConfig().withObjectCount(100).withMaxSize(10 * 1024).withDiscardData(true);
+
+        final AtomicInteger loads = new AtomicInteger();
+        TestStorage source = new TestStorage() {
+            @Override
+            public SyncObject loadObject(String identifier) {
+                loads.incrementAndGet();
+                return super.loadObject(identifier);
+            }
+        };
+        source.setConfig(testConfig);
+
+        DbService dbService = new SqliteDbService(":memory:");
+
+        EcsSync sync = new EcsSync();
+        sync.setSyncConfig(new SyncConfig().withOptions(new SyncOptions()).withTarget(testConfig));
+        sync.setSource(source);
+        sync.setDbService(dbService);
+        sync.run();
+
+        long totalObjects = sync.getStats().getObjectsComplete();
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+        Assert.assertTrue(totalObjects > 0);
+
+        // nothing changed, so the second run should skip everything without loading a single object
+        loads.set(0);
+        sync = new EcsSync();
+        sync.setSyncConfig(new SyncConfig().withOptions(new SyncOptions()).withTarget(testConfig));
+        sync.setSource(source);
+        sync.setDbService(dbService);
+        sync.run();
+
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+        Assert.assertEquals(0, sync.getStats().getObjectsComplete());
+        Assert.assertEquals(totalObjects, sync.getStats().getObjectsSkipped());
+        Assert.assertEquals(0, loads.get());
+    }
+
     @FilterConfig(cliName = "98s76df8s7d6fs87d6f")
     @InternalFilter
     public static class ErrorThrowingConfig {
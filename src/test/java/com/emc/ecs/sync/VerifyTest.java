@@ -20,13 +20,19 @@ import com.emc.ecs.sync.config.storage.TestConfig;
 import com.emc.ecs.sync.model.*;
 import com.emc.ecs.sync.storage.TestStorage;
 import com.emc.ecs.sync.test.ByteAlteringFilter;
+import com.emc.ecs.sync.util.ParallelRangeInputStream;
+import com.emc.ecs.sync.util.SyncUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.xml.bind.DatatypeConverter;
 import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class VerifyTest {
     @Test
@@ -127,6 +133,93 @@ public class VerifyTest {
         Assert.assertEquals(alteringConfig.getModifiedObjects(), sync.getStats().getObjectsFailed());
     }
 
+    @Test
+    public void testStoredChecksum() throws Exception {
+        final byte[] data = new byte[10240];
+        new Random().nextBytes(data);
+        String md5 = DatatypeConverter.printHexBinary(MessageDigest.getInstance("MD5").digest(data)).toLowerCase();
+
+        TestStorage storage = new TestStorage();
+        storage.setConfig(new TestConfig());
+        Md5Verifier verifier = new Md5Verifier(new SyncOptions().withVerifyStoredChecksum(true));
+        try {
+            // transfer the source data (this calculates the MD5)
+            SyncObject sourceObject = new SyncObject(storage, "foo", new ObjectMetadata().withContentLength(data.length),
+                    new ByteArrayInputStream(data), null);
+            SyncUtil.consumeAndCloseStream(sourceObject.getDataStream());
+
+            // the target data should never be read
+            SyncObject targetObject = new SyncObject(storage, "foo", new ObjectMetadata().withContentLength(data.length))
+                    .withLazyStream(() -> {
+                        throw new RuntimeException("target data should not be read");
+                    });
+            targetObject.setStoredMd5Hex(md5);
+            verifier.verify(sourceObject, targetObject);
+
+            targetObject.setStoredMd5Hex(md5.replace(md5.charAt(0), md5.charAt(0) == '0' ? '1' : '0'));
+            try {
+                verifier.verify(sourceObject, targetObject);
+                Assert.fail("stored MD5 mismatch should fail verification");
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getMessage().contains("mismatch"));
+            }
+
+            // without a stored MD5, the target is read back
+            SyncObject readBackObject = new SyncObject(storage, "foo", new ObjectMetadata().withContentLength(data.length))
+                    .withLazyStream(() -> new ByteArrayInputStream(data));
+            verifier.verify(sourceObject, readBackObject);
+            Assert.assertEquals(data.length, readBackObject.getBytesRead());
+        } finally {
+            verifier.close();
+        }
+    }
+
+    @Test
+    public void testChunkedVerifyWithSourceChecksum() throws Exception {
+        final byte[] data = new byte[100 * 1024];
+        new Random().nextBytes(data);
+
+        TestStorage storage = new TestStorage();
+        storage.setConfig(new TestConfig());
+        Md5Verifier verifier = new Md5Verifier(new SyncOptions().withVerifyChunkThreshold(1));
+        try {
+            // transfer the source data (this calculates the MD5)
+            SyncObject sourceObject = new SyncObject(storage, "foo", new ObjectMetadata().withContentLength(data.length))
+                    .withLazyStream(() -> new ByteArrayInputStream(data));
+            sourceObject.setProperty(ParallelRangeInputStream.PROP_RANGE_READER, (ParallelRangeInputStream.RangeSource)
+                    (offset, length) -> {
+                        throw new RuntimeException("source data should not be read again");
+                    });
+            SyncUtil.consumeAndCloseStream(sourceObject.getDataStream());
+            Assert.assertTrue(sourceObject.isChecksumAvailable());
+
+            // only the target is read back
+            final AtomicLong targetBytes = new AtomicLong();
+            SyncObject targetObject = new SyncObject(storage, "foo", new ObjectMetadata().withContentLength(data.length));
+            targetObject.setProperty(ParallelRangeInputStream.PROP_RANGE_READER, (ParallelRangeInputStream.RangeSource)
+                    (offset, length) -> {
+                        targetBytes.addAndGet(length);
+                        return new ByteArrayInputStream(data, (int) offset, (int) length);
+                    });
+            verifier.verify(sourceObject, targetObject);
+            Assert.assertEquals(data.length, targetBytes.get());
+
+            final byte[] corrupted = Arrays.copyOf(data, data.length);
+            corrupted[data.length / 2]++;
+            SyncObject corruptedObject = new SyncObject(storage, "foo", new ObjectMetadata().withContentLength(data.length));
+            corruptedObject.setProperty(ParallelRangeInputStream.PROP_RANGE_READER, (ParallelRangeInputStream.RangeSource)
+                    (offset, length) -> new ByteArrayInputStream(corrupted, (int) offset, (int) length));
+            try {
+                verifier.verify(sourceObject, corruptedObject);
+                Assert.fail("corrupted target should fail verification");
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getMessage().contains("mismatch"));
+            }
+        } finally {
+            verifier.close();
+        }
+    }
+
     public static void verifyObjects(TestStorage source, Collection<TestStorage.TestSyncObject> sourceObjects,
                                      TestStorage target, Collection<TestStorage.TestSyncObject> targetObjects,
                                      boolean verifyAcl) {
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.filter;
+
+import com.emc.ecs.sync.EcsSync;
+import com.emc.ecs.sync.config.SyncConfig;
+import com.emc.ecs.sync.config.SyncOptions;
+import com.emc.ecs.sync.config.filter.DedupConfig;
+import com.emc.ecs.sync.config.storage.FilesystemConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+
+public class DedupFilterTest {
+    private File sourceDir;
+    private File targetDir;
+    private File indexFile;
+
+    @Before
+    public void setup() throws Exception {
+        sourceDir = Files.createTempDirectory("ecs-sync-dedup-source-test").toFile();
+        targetDir = Files.createTempDirectory("ecs-sync-dedup-target-test").toFile();
+        indexFile = File.createTempFile("ecs-sync-dedup-index-test", ".db");
+        indexFile.delete();
+    }
+
+    @After
+    public void teardown() {
+        recursiveDelete(sourceDir);
+        recursiveDelete(targetDir);
+        indexFile.delete();
+    }
+
+    private void recursiveDelete(File dir) {
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) recursiveDelete(file);
+            else file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testDedup() throws Exception {
+        int size = 100 * 1024;
+        byte[] data = new byte[size], other = new byte[size];
+        Random random = new Random();
+        random.nextBytes(data);
+        random.nextBytes(other);
+
+        Files.write(new File(sourceDir, "a").toPath(), data);
+        Files.write(new File(sourceDir, "b").toPath(), data);
+        Files.write(new File(sourceDir, "c").toPath(), other);
+
+        EcsSync sync = createSync();
+        sync.run();
+
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+        Assert.assertEquals(size, sync.getStats().getBytesDeduplicated());
+        Assert.assertArrayEquals(data, Files.readAllBytes(new File(targetDir, "a").toPath()));
+        Assert.assertArrayEquals(data, Files.readAllBytes(new File(targetDir, "b").toPath()));
+        Assert.assertArrayEquals(other, Files.readAllBytes(new File(targetDir, "c").toPath()));
+
+        // the index is kept between jobs
+        for (String name : new String[]{"a", "b", "c"}) {
+            Assert.assertTrue(new File(sourceDir, name).delete());
+        }
+        Files.write(new File(sourceDir, "d").toPath(), other);
+
+        sync = createSync();
+        sync.run();
+
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+        Assert.assertEquals(size, sync.getStats().getBytesDeduplicated());
+        Assert.assertArrayEquals(other, Files.readAllBytes(new File(targetDir, "d").toPath()));
+    }
+
+    @Test
+    public void testMinSize() throws Exception {
+        byte[] data = new byte[1024];
+        new Random().nextBytes(data);
+
+        Files.write(new File(sourceDir, "a").toPath(), data);
+        Files.write(new File(sourceDir, "b").toPath(), data);
+
+        EcsSync sync = createSync();
+        ((DedupConfig) sync.getSyncConfig().getFilters().get(0)).setMinSize(data.length + 1);
+        sync.run();
+
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+        Assert.assertEquals(0, sync.getStats().getBytesDeduplicated());
+        Assert.assertArrayEquals(data, Files.readAllBytes(new File(targetDir, "b").toPath()));
+    }
+
+    @Test
+    public void testUpToDate() throws Exception {
+        int size = 100 * 1024;
+        byte[] data = new byte[size], other = new byte[size];
+        Random random = new Random();
+        random.nextBytes(data);
+        random.nextBytes(other);
+
+        File a = new File(sourceDir, "a");
+        Files.write(a.toPath(), data);
+
+        EcsSync sync = createSync();
+        sync.run();
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+
+        // a is older than its target copy, so it is skipped without being hashed (its new content must not be indexed
+        // for the old target object)
+        Files.write(a.toPath(), other);
+        Assert.assertTrue(a.setLastModified(System.currentTimeMillis() - 3600000));
+        Files.write(new File(sourceDir, "c").toPath(), other);
+
+        sync = createSync();
+        sync.run();
+
+        Assert.assertEquals(0, sync.getStats().getObjectsFailed());
+        Assert.assertEquals(0, sync.getStats().getBytesDeduplicated());
+        Assert.assertArrayEquals(data, Files.readAllBytes(new File(targetDir, "a").toPath()));
+        Assert.assertArrayEquals(other, Files.readAllBytes(new File(targetDir, "c").toPath()));
+    }
+
+    private EcsSync createSync() {
+        FilesystemConfig sConfig = new FilesystemConfig();
+        sConfig.setPath(sourceDir.getPath());
+
+        FilesystemConfig tConfig = new FilesystemConfig();
+        tConfig.setPath(targetDir.getPath());
+
+        DedupConfig dedupConfig = new DedupConfig();
+        dedupConfig.setIndexFile(indexFile.getPath());
+
+        // one thread, so identical objects are not synced at the same time
+        SyncOptions options = new SyncOptions().withThreadCount(1);
+
+        EcsSync sync = new EcsSync();
+        sync.setSyncConfig(new SyncConfig().withOptions(options).withSource(sConfig).withTarget(tConfig)
+                .withFilters(Collections.singletonList(dedupConfig)));
+        return sync;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DbLockPerformanceTest {
+    private static final int THREADS = 200;
+    private static final int LOCKS_PER_THREAD = 5000;
+    // a few identifiers are shared by all threads, to make sure waiters still get the lock
+    private static final int SHARED_KEYS = 4;
+
+    @Test
+    public void testContention() throws Exception {
+        // the old implementation (one set, one monitor, notifyAll on every unlock)
+        final Set<String> monitorLocks = new HashSet<>();
+        Locker monitorLocker = new Locker() {
+            @Override
+            public void lock(String identifier) throws InterruptedException {
+                synchronized (monitorLocks) {
+                    while (monitorLocks.contains(identifier)) monitorLocks.wait();
+                    monitorLocks.add(identifier);
+                }
+            }
+
+            @Override
+            public void unlock(String identifier) {
+                synchronized (monitorLocks) {
+                    monitorLocks.remove(identifier);
+                    monitorLocks.notifyAll();
+                }
+            }
+        };
+
+        final DbService dbService = new NoDbService();
+        Locker dbLocker = new Locker() {
+            @Override
+            public void lock(String identifier) {
+                dbService.lock(identifier);
+            }
+
+            @Override
+            public void unlock(String identifier) {
+                dbService.unlock(identifier);
+            }
+        };
+
+        long monitorTime = time(monitorLocker);
+        long dbTime = time(dbLocker);
+
+        System.out.printf("%d threads x %d locks: single monitor: %dms, lock table: %dms%n",
+                THREADS, LOCKS_PER_THREAD, monitorTime / 1000000, dbTime / 1000000);
+    }
+
+    private long time(final Locker locker) throws Exception {
+        final AtomicInteger[] holders = new AtomicInteger[SHARED_KEYS];
+        for (int i = 0; i < SHARED_KEYS; i++) {
+            holders[i] = new AtomicInteger();
+        }
+        final AtomicInteger violations = new AtomicInteger();
+        final CyclicBarrier start = new CyclicBarrier(THREADS + 1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < LOCKS_PER_THREAD; i++) {
+                            if (i % 100 == 0) {
+                                // i is a multiple of 100 here, so use the count of shared locks to pick the key
+                                int key = (i / 100) % SHARED_KEYS;
+                                String identifier = "shared-" + key;
+                                locker.lock(identifier);
+                                try {
+                                    if (holders[key].incrementAndGet() != 1) violations.incrementAndGet();
+                                    holders[key].decrementAndGet();
+                                } finally {
+                                    locker.unlock(identifier);
+                                }
+                            } else {
+                                String identifier = "object-" + thread + "-" + i;
+                                locker.lock(identifier);
+                                locker.unlock(identifier);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.await();
+            long startTime = System.nanoTime();
+            // rethrows anything a thread threw
+            for (Future<Void> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+            long time = System.nanoTime() - startTime;
+            Assert.assertEquals(0, violations.get());
+            return time;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Locker {
+        void lock(String identifier) throws InterruptedException;
+
+        void unlock(String identifier);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.service;
+
+import com.emc.ecs.sync.EcsSync;
+import com.emc.ecs.sync.config.SyncConfig;
+import com.emc.ecs.sync.config.SyncOptions;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class JobGovernorTest {
+    @Test
+    public void testAllocate() {
+        // equal weights, plenty of budget
+        Assert.assertArrayEquals(new int[]{16, 16}, JobGovernor.allocate(100, new int[]{16, 16}, new int[]{1, 1}, 1));
+
+        // equal weights, not enough budget
+        Assert.assertArrayEquals(new int[]{32, 32}, JobGovernor.allocate(64, new int[]{100, 100}, new int[]{1, 1}, 1));
+
+        // what a small job does not use goes to the others
+        Assert.assertArrayEquals(new int[]{4, 30, 30}, JobGovernor.allocate(64, new int[]{4, 100, 100}, new int[]{1, 1, 1}, 1));
+
+        // by weight
+        Assert.assertArrayEquals(new int[]{20, 40}, JobGovernor.allocate(60, new int[]{100, 100}, new int[]{1, 2}, 1));
+
+        // every job gets the minimum, even over budget
+        Assert.assertArrayEquals(new int[]{2, 2, 2}, JobGovernor.allocate(4, new int[]{16, 16, 16}, new int[]{1, 1, 1}, 2));
+    }
+
+    @Test
+    public void testQueue() throws Exception {
+        JobGovernor governor = new JobGovernor(1);
+        governor.setMaxTotalThreads(20);
+
+        EcsSync sync1 = newSync(16), sync2 = newSync(16), sync3 = newSync(16);
+        final CountDownLatch release1 = new CountDownLatch(1), started2 = new CountDownLatch(1);
+        final CountDownLatch release2 = new CountDownLatch(1);
+
+        governor.submit(sync1, new Runnable() {
+            @Override
+            public void run() {
+                await(release1);
+            }
+        });
+        governor.submit(sync2, new Runnable() {
+            @Override
+            public void run() {
+                started2.countDown();
+                await(release2);
+            }
+        });
+        governor.submit(sync3, new Runnable() {
+            @Override
+            public void run() {
+                Assert.fail("cancelled job should not run");
+            }
+        });
+        Assert.assertEquals(1, governor.getRunningJobCount());
+        Assert.assertEquals(2, governor.getQueuedJobCount());
+        Assert.assertTrue(governor.isQueued(sync2));
+
+        Assert.assertTrue(governor.cancel(sync3));
+        Assert.assertTrue(sync3.isTerminated());
+
+        // the second job starts when the first one finishes
+        release1.countDown();
+        Assert.assertTrue(started2.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(governor.isQueued(sync2));
+        Assert.assertEquals(16, sync2.getSyncConfig().getOptions().getThreadCount());
+
+        release2.countDown();
+    }
+
+    @Test
+    public void testRebalance() {
+        JobGovernor governor = new JobGovernor(10);
+        governor.setMaxTotalThreads(20);
+        governor.setMaxTotalBandwidth(3000);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        };
+        EcsSync sync1 = newSync(16), sync2 = newSync(16);
+        sync2.getSyncConfig().getOptions().setJobWeight(2);
+
+        governor.submit(sync1, task);
+        Assert.assertEquals(16, sync1.getSyncConfig().getOptions().getThreadCount());
+        Assert.assertEquals(3000, sync1.getBandwidthShare());
+
+        governor.submit(sync2, task);
+        Assert.assertEquals(6, sync1.getSyncConfig().getOptions().getThreadCount());
+        Assert.assertEquals(13, sync2.getSyncConfig().getOptions().getThreadCount());
+        Assert.assertEquals(1000, sync1.getBandwidthShare());
+        Assert.assertEquals(2000, sync2.getBandwidthShare());
+
+        // asking for fewer threads leaves more for the other job
+        governor.setThreadCount(sync2, 4);
+        Assert.assertEquals(16, sync1.getSyncConfig().getOptions().getThreadCount());
+        Assert.assertEquals(4, sync2.getSyncConfig().getOptions().getThreadCount());
+
+        release.countDown();
+    }
+
+    @Test
+    public void testDbConnections() {
+        JobGovernor governor = new JobGovernor(10);
+        governor.setMaxTotalDbConnections(20);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        };
+        EcsSync mySqlSync1 = newSync(16), mySqlSync2 = newSync(16), sqliteSync = newSync(16);
+        mySqlSync1.getSyncConfig().getOptions().setDbConnectString("jdbc:mysql://localhost/ecs_sync");
+        mySqlSync2.getSyncConfig().getOptions().setDbConnectString("jdbc:mysql://localhost/ecs_sync");
+        sqliteSync.getSyncConfig().getOptions().setDbFile("sync.db");
+
+        // jobs without a MySQL database do not take a share of the connections
+        governor.submit(mySqlSync1, task);
+        governor.submit(sqliteSync, task);
+        governor.submit(mySqlSync2, task);
+        Assert.assertEquals(10, mySqlSync1.getMaxDbConnections());
+        Assert.assertEquals(10, mySqlSync2.getMaxDbConnections());
+        Assert.assertEquals(0, sqliteSync.getMaxDbConnections());
+
+        release.countDown();
+    }
+
+    @Test
+    public void testRequestThreadCount() {
+        JobGovernor governor = new JobGovernor(10);
+        governor.setMaxTotalThreads(20);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        };
+        EcsSync sync1 = newSync(10), sync2 = newSync(10);
+        governor.submit(sync1, task);
+        governor.submit(sync2, task);
+        Assert.assertSame(governor, sync1.getGovernor());
+
+        // a job that tunes its own thread count cannot take threads from the other job
+        sync1.requestThreadCount(30);
+        Assert.assertEquals(10, sync1.getSyncConfig().getOptions().getThreadCount());
+        Assert.assertEquals(10, sync2.getSyncConfig().getOptions().getThreadCount());
+
+        sync1.requestThreadCount(4);
+        Assert.assertEquals(4, sync1.getSyncConfig().getOptions().getThreadCount());
+
+        // without a governor, the request is applied as is
+        EcsSync sync3 = newSync(10);
+        sync3.requestThreadCount(30);
+        Assert.assertEquals(30, sync3.getSyncConfig().getOptions().getThreadCount());
+
+        release.countDown();
+    }
+
+    private EcsSync newSync(int threadCount) {
+        SyncConfig syncConfig = new SyncConfig();
+        syncConfig.setOptions(new SyncOptions().withThreadCount(threadCount));
+        EcsSync sync = new EcsSync();
+        sync.setSyncConfig(syncConfig);
+        return sync;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
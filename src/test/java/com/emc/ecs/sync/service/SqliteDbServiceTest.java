@@ -16,6 +16,7 @@ package com.emc.ecs.sync.service;
 
 import com.emc.ecs.sync.config.SyncOptions;
 import com.emc.ecs.sync.model.*;
+import com.emc.ecs.sync.rest.NodeProgress;
 import com.emc.ecs.sync.storage.SyncStorage;
 import com.emc.ecs.sync.storage.TestStorage;
 import org.apache.commons.compress.utils.Charsets;
@@ -28,8 +29,7 @@ import org.springframework.jdbc.support.rowset.SqlRowSet;
 
 import java.io.ByteArrayInputStream;
 import java.lang.reflect.Constructor;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.*;
 
 public class SqliteDbServiceTest {
     private static final String DB_FILE = ":memory:";
@@ -379,6 +379,125 @@ public class SqliteDbServiceTest {
         else Assert.assertEquals("ACBD18DB4CC2F85CEDEF654FCCC4A4D8", rowSet.getString("source_md5"));
     }
 
+    @Test
+    public void testBatchLookup() throws Exception {
+        List<ObjectContext> contexts = new ArrayList<>();
+        for (int i = 0; i < AbstractDbService.MAX_BATCH_QUERY_SIZE + 10; i++) {
+            ObjectContext context = new ObjectContext().withSourceSummary(new ObjectSummary("id-" + i, false, 0))
+                    .withOptions(new SyncOptions());
+            // only every other object has a record
+            if (i % 2 == 0) {
+                context.setStatus(ObjectStatus.Transferred);
+                dbService.setStatus(context, null, true);
+            }
+            contexts.add(context);
+        }
+
+        Map<String, SyncRecord> records = dbService.getSyncRecords(contexts);
+        Assert.assertEquals((contexts.size() + 1) / 2, records.size());
+        for (int i = 0; i < contexts.size(); i++) {
+            SyncRecord record = records.get("id-" + i);
+            if (i % 2 == 0) {
+                Assert.assertNotNull(record);
+                Assert.assertEquals(ObjectStatus.Transferred, record.getStatus());
+            } else {
+                Assert.assertNull(record);
+            }
+        }
+
+        Assert.assertTrue(dbService.getSyncRecords(new ArrayList<ObjectContext>()).isEmpty());
+    }
+
+    @Test
+    public void testCheckpoints() throws Exception {
+        Assert.assertNull(dbService.getListCheckpoint());
+
+        dbService.setListCheckpoint("");
+        Assert.assertEquals("", dbService.getListCheckpoint());
+        dbService.setListCheckpoint("foo/bar");
+        Assert.assertEquals("foo/bar", dbService.getListCheckpoint());
+
+        Assert.assertFalse(dbService.isDirectoryComplete("foo"));
+        dbService.setDirectoryComplete("foo");
+        dbService.setDirectoryComplete("foo");
+        Assert.assertTrue(dbService.isDirectoryComplete("foo"));
+        Assert.assertFalse(dbService.isDirectoryComplete("foo/bar"));
+
+        dbService.deleteCheckpoints();
+        Assert.assertNull(dbService.getListCheckpoint());
+        Assert.assertFalse(dbService.isDirectoryComplete("foo"));
+    }
+
+    @Test
+    public void testPartitions() throws Exception {
+        long expires = System.currentTimeMillis() + 60000;
+        dbService.initPartitions(4, false);
+        Assert.assertEquals(4, dbService.getPartitionCount());
+        Assert.assertEquals(0, dbService.getCompletePartitionCount());
+
+        Assert.assertEquals(Arrays.asList(0, 1), dbService.claimPartitions("node1", 2, expires));
+        Assert.assertEquals(Arrays.asList(2, 3), dbService.claimPartitions("node2", 3, expires));
+        Assert.assertEquals(0, dbService.claimPartitions("node3", 4, expires).size());
+
+        // joining a running job does not change anything (even with restart)
+        dbService.initPartitions(4, false);
+        dbService.initPartitions(4, true);
+        Assert.assertEquals(0, dbService.claimPartitions("node3", 4, expires).size());
+
+        Assert.assertTrue(dbService.completePartition("node1", 0));
+        Assert.assertFalse(dbService.completePartition("node1", 2));
+        Assert.assertEquals(1, dbService.getCompletePartitionCount());
+        Assert.assertEquals(1, dbService.renewPartitions("node1", expires));
+
+        // node2 dies (its leases expire) and node3 takes over
+        Assert.assertEquals(2, dbService.renewPartitions("node2", System.currentTimeMillis() - 1));
+        Assert.assertEquals(Arrays.asList(2, 3), dbService.claimPartitions("node3", 4, expires));
+        Assert.assertEquals(0, dbService.renewPartitions("node2", expires));
+
+        // node1 stops and releases its lease
+        dbService.releasePartitions("node1");
+        Assert.assertEquals(Arrays.asList(1, 2, 3), dbService.claimPartitions("node3", 4, expires));
+
+        for (int partition = 1; partition < 4; partition++) {
+            Assert.assertTrue(dbService.completePartition("node3", partition));
+        }
+        Assert.assertEquals(4, dbService.getCompletePartitionCount());
+
+        // a node joining a complete job does not start a new run
+        dbService.initPartitions(4, false);
+        Assert.assertEquals(4, dbService.getCompletePartitionCount());
+
+        // a new run starts only if restart is requested
+        dbService.initPartitions(4, true);
+        Assert.assertEquals(0, dbService.getCompletePartitionCount());
+        Assert.assertEquals(4, dbService.claimPartitions("node1", 4, expires).size());
+    }
+
+    @Test
+    public void testStaleNodes() throws Exception {
+        long now = System.currentTimeMillis();
+        NodeProgress progress = new NodeProgress();
+        progress.setNodeId("node1");
+        progress.setLastHeartbeat(1000);
+        progress.setObjectsComplete(5);
+        dbService.setNodeProgress(progress);
+        progress.setObjectsComplete(10);
+        dbService.setNodeProgress(progress);
+        Assert.assertEquals(1, dbService.getNodeProgress().size());
+        Assert.assertEquals(10, dbService.getNodeProgress().get(0).getObjectsComplete());
+
+        progress = new NodeProgress();
+        progress.setNodeId("node2");
+        progress.setLastHeartbeat(now);
+        dbService.setNodeProgress(progress);
+        Assert.assertEquals(2, dbService.getNodeProgress().size());
+
+        // only nodes that stopped sending heartbeats are removed
+        dbService.deleteStaleNodes(now - 60000);
+        Assert.assertEquals(1, dbService.getNodeProgress().size());
+        Assert.assertEquals("node2", dbService.getNodeProgress().get(0).getNodeId());
+    }
+
     protected long getUnixTime(SqlRowSet rowSet, String field) {
         return rowSet.getLong(field);
     }
@@ -387,6 +387,67 @@ public class AwsS3Test {
         }
     }
 
+    @Test
+    public void testServerSideCopy() throws Exception {
+        String bucket1 = "ecs-sync-s3-test-copy1";
+        String bucket2 = "ecs-sync-s3-test-copy2";
+        String key = "copy-object";
+        createBucket(bucket1, false);
+        createBucket(bucket2, false);
+
+        AwsS3Storage s3Source = null, s3Target = null;
+        try {
+            byte[] data = "hello server-side copy".getBytes();
+            com.amazonaws.services.s3.model.ObjectMetadata om = new com.amazonaws.services.s3.model.ObjectMetadata();
+            om.setContentLength(data.length);
+            om.setContentType("text/plain");
+            om.addUserMetadata("color", "blue");
+
+            AccessControlList acl = new AccessControlList();
+            acl.setOwner(new Owner(accessKey, accessKey));
+            acl.grantPermission(new CanonicalGrantee(accessKey), Permission.FullControl);
+            acl.grantPermission(GroupGrantee.AllUsers, Permission.Read);
+
+            PutObjectRequest putRequest = new PutObjectRequest(bucket1, key, new ByteArrayInputStream(data), om);
+            putRequest.setAccessControlList(acl);
+            s3.putObject(putRequest);
+
+            AwsS3Config sourceConfig = createConfig(bucket1);
+            AwsS3Config targetConfig = createConfig(bucket2);
+            SyncOptions options = new SyncOptions().withSyncAcl(true);
+
+            s3Source = new AwsS3Storage();
+            s3Source.withConfig(sourceConfig).withOptions(options);
+            s3Target = new AwsS3Storage();
+            s3Target.withConfig(targetConfig).withOptions(options);
+            s3Source.configure(s3Source, null, s3Target);
+            s3Target.configure(s3Source, null, s3Target);
+
+            SyncObject object = s3Source.loadObject(key);
+            Assert.assertEquals(key, s3Target.createObject(object));
+
+            // the data never came through here
+            Assert.assertTrue(object.isDataStreamUntouched());
+            Assert.assertEquals(data.length, object.getBytesRead());
+
+            // same data, metadata and ACL
+            com.amazonaws.services.s3.model.ObjectMetadata sourceMeta = s3.getObjectMetadata(bucket1, key);
+            com.amazonaws.services.s3.model.ObjectMetadata targetMeta = s3.getObjectMetadata(bucket2, key);
+            Assert.assertEquals(sourceMeta.getETag(), targetMeta.getETag());
+            Assert.assertEquals(sourceMeta.getContentLength(), targetMeta.getContentLength());
+            Assert.assertEquals("text/plain", targetMeta.getContentType());
+            Assert.assertEquals("blue", targetMeta.getUserMetaDataOf("color"));
+            verifyAcls(s3.getObjectAcl(bucket1, key), s3.getObjectAcl(bucket2, key));
+        } finally {
+            if (s3Source != null) s3Source.close();
+            if (s3Target != null) s3Target.close();
+            deleteObjects(bucket1);
+            s3.deleteBucket(bucket1);
+            deleteObjects(bucket2);
+            s3.deleteBucket(bucket2);
+        }
+    }
+
     @Ignore // only perform this test on a co-located S3 store!
     @Test
     public void testVeryLargeUploadStream() throws Exception {
@@ -421,8 +482,11 @@ public class AwsS3Test {
 
             Assert.assertEquals(key, createdKey);
 
-            // hyphen denotes an MPU
-            Assert.assertTrue(s3.getObjectMetadata(bucketName, key).getETag().contains("-"));
+            // hyphen denotes an MPU (followed by the part count)
+            long partSize = (long) s3Config.getMpuPartSizeMb() * 1024 * 1024;
+            String eTag = s3.getObjectMetadata(bucketName, key).getETag();
+            Assert.assertTrue(eTag.contains("-"));
+            Assert.assertEquals(String.valueOf((size + partSize - 1) / partSize), eTag.substring(eTag.indexOf('-') + 1));
 
             // verify bytes read from source
             // first wait a tick so the perf counter has at least one interval
@@ -430,8 +494,8 @@ public class AwsS3Test {
             Assert.assertEquals(size, object.getBytesRead());
             Assert.assertTrue(source.getReadRate() > 0);
 
-            // should upload in series (single thread).. there's no way the stream can be split, so just verifying the MD5
-            // should be sufficient. need to read the entire object since we can't use the ETag
+            // parts are read from the stream in series and uploaded in parallel.. verifying the MD5 of the whole object
+            // makes sure they were assembled in order. need to read the entire object since we can't use the ETag
             InputStream objectStream = s3.getObject(bucketName, key).getObjectContent();
             ChecksummedInputStream md5Stream = new ChecksummedInputStream(objectStream, new RunningChecksum(ChecksumAlgorithm.MD5));
             byte[] buffer = new byte[128 * 1024];
@@ -681,6 +745,20 @@ public class AwsS3Test {
         }
     }
 
+    private AwsS3Config createConfig(String bucket) {
+        AwsS3Config s3Config = new AwsS3Config();
+        if (endpointUri.getScheme() != null)
+            s3Config.setProtocol(Protocol.valueOf(endpointUri.getScheme().toLowerCase()));
+        s3Config.setHost(endpointUri.getHost());
+        s3Config.setPort(endpointUri.getPort());
+        s3Config.setAccessKey(accessKey);
+        s3Config.setSecretKey(secretKey);
+        s3Config.setLegacySignatures(true);
+        s3Config.setDisableVHosts(true);
+        s3Config.setBucketName(bucket);
+        return s3Config;
+    }
+
     private void createBucket(String bucket, boolean withVersioning) {
         try {
             s3.createBucket(bucket);
@@ -29,9 +29,12 @@ import com.emc.object.Protocol;
 import com.emc.object.s3.S3Client;
 import com.emc.object.s3.S3Config;
 import com.emc.object.s3.S3Exception;
+import com.emc.object.s3.S3ObjectMetadata;
+import com.emc.object.s3.bean.CannedAcl;
 import com.emc.object.s3.bean.ListObjectsResult;
 import com.emc.object.s3.bean.S3Object;
 import com.emc.object.s3.jersey.S3JerseyClient;
+import com.emc.object.s3.request.PutObjectRequest;
 import com.emc.object.util.ChecksumAlgorithm;
 import com.emc.object.util.ChecksummedInputStream;
 import com.emc.object.util.RestUtil;
@@ -43,6 +46,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.URI;
+import java.util.Collections;
 import java.util.Properties;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
@@ -197,6 +201,56 @@ public class EcsS3Test {
         }
     }
 
+    @Test
+    public void testServerSideCopy() throws Exception {
+        String sBucket = "ecs-sync-ecs-s3-copy-test";
+        String key = "copy-object";
+        byte[] data = "hello server-side copy".getBytes();
+        s3.createBucket(sBucket);
+
+        S3ObjectMetadata om = new S3ObjectMetadata();
+        om.setContentType("text/plain");
+        om.setContentLength((long) data.length);
+        om.setUserMetadata(Collections.singletonMap("color", "blue"));
+        s3.putObject(new PutObjectRequest(sBucket, key, data).withObjectMetadata(om)
+                .withCannedAcl(CannedAcl.PublicRead));
+
+        EcsS3Storage source = null, target = null;
+        try {
+            SyncOptions options = new SyncOptions().withSyncAcl(true);
+
+            source = new EcsS3Storage();
+            source.setConfig(copyConfig(storage.getConfig(), sBucket));
+            source.setOptions(options);
+            target = new EcsS3Storage();
+            target.setConfig(copyConfig(storage.getConfig(), bucketName));
+            target.setOptions(options);
+            source.configure(source, null, target);
+            target.configure(source, null, target);
+
+            SyncObject object = source.loadObject(key);
+            Assert.assertEquals(key, target.createObject(object));
+
+            // the data never came through here
+            Assert.assertTrue(object.isDataStreamUntouched());
+            Assert.assertEquals(data.length, object.getBytesRead());
+
+            // same data, metadata and ACL
+            S3ObjectMetadata sourceMeta = s3.getObjectMetadata(sBucket, key);
+            S3ObjectMetadata targetMeta = s3.getObjectMetadata(bucketName, key);
+            Assert.assertEquals(sourceMeta.getETag(), targetMeta.getETag());
+            Assert.assertEquals(sourceMeta.getContentLength(), targetMeta.getContentLength());
+            Assert.assertEquals("text/plain", targetMeta.getContentType());
+            Assert.assertEquals("blue", targetMeta.getUserMetadata().get("color"));
+            Assert.assertEquals(s3.getObjectAcl(sBucket, key).getGrants(), s3.getObjectAcl(bucketName, key).getGrants());
+        } finally {
+            if (source != null) source.close();
+            if (target != null) target.close();
+            s3.deleteObject(sBucket, key);
+            s3.deleteBucket(sBucket);
+        }
+    }
+
     @Ignore // only perform this test on a co-located ECS!
     @Test
     public void testVeryLargeUploadStream() throws Exception {
@@ -282,6 +336,18 @@ public class EcsS3Test {
         Assert.assertEquals(RestUtil.DEFAULT_CONTENT_TYPE, s3.getObjectMetadata(bucketName, key).getContentType());
     }
 
+    private EcsS3Config copyConfig(EcsS3Config config, String bucket) {
+        EcsS3Config copy = new EcsS3Config();
+        copy.setProtocol(config.getProtocol());
+        copy.setHost(config.getHost());
+        copy.setPort(config.getPort());
+        copy.setEnableVHosts(config.isEnableVHosts());
+        copy.setAccessKey(config.getAccessKey());
+        copy.setSecretKey(config.getSecretKey());
+        copy.setBucketName(bucket);
+        return copy;
+    }
+
     public static void deleteBucket(final S3Client s3, final String bucket) {
         try {
             EnhancedThreadPoolExecutor executor = new EnhancedThreadPoolExecutor(30,
@@ -15,6 +15,7 @@
 package com.emc.ecs.sync.storage;
 
 import com.emc.ecs.sync.EcsSync;
+import com.emc.ecs.sync.Md5Verifier;
 import com.emc.ecs.sync.config.SyncConfig;
 import com.emc.ecs.sync.config.SyncOptions;
 import com.emc.ecs.sync.config.storage.FilesystemConfig;
@@ -23,6 +24,7 @@ import com.emc.ecs.sync.model.ObjectMetadata;
 import com.emc.ecs.sync.model.SyncObject;
 import com.emc.ecs.sync.storage.file.FilesystemStorage;
 import com.emc.ecs.sync.util.Iso8601Util;
+import com.emc.ecs.sync.util.ParallelRangeInputStream;
 import com.emc.ecs.sync.util.RandomInputStream;
 import com.emc.util.StreamUtil;
 import org.junit.After;
@@ -30,12 +32,18 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.xml.bind.DatatypeConverter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Date;
 
 public class FilesystemTest {
@@ -180,6 +188,88 @@ public class FilesystemTest {
         Assert.assertArrayEquals(Files.readAllBytes(sFile.toPath()), Files.readAllBytes(tFile.toPath()));
     }
 
+    @Test
+    public void testChannelTransfer() throws Exception {
+        String name = "channel-transfer-test";
+        File sFile = new File(sourceDir, name);
+        File tFile = new File(targetDir, name);
+        int size = 10 * 1024 * 1024 + 123; // more than one transfer chunk
+        StreamUtil.copy(new RandomInputStream(size), new FileOutputStream(sFile), size);
+
+        FilesystemConfig sConfig = new FilesystemConfig();
+        sConfig.setPath(sourceDir.getAbsolutePath());
+
+        FilesystemConfig tConfig = new FilesystemConfig();
+        tConfig.setPath(targetDir.getAbsolutePath());
+
+        FilesystemStorage source = new FilesystemStorage();
+        source.setConfig(sConfig);
+        FilesystemStorage target = new FilesystemStorage();
+        target.setConfig(tConfig);
+        source.configure(source, null, target);
+        target.configure(source, null, target);
+
+        SyncObject object = source.loadObject(source.getIdentifier(name, false));
+        target.updateObject(target.getIdentifier(name, false), object);
+
+        byte[] data = Files.readAllBytes(sFile.toPath());
+        Assert.assertArrayEquals(data, Files.readAllBytes(tFile.toPath()));
+
+        // the data should have been transferred without opening the data stream
+        Assert.assertTrue(object.isDataStreamUntouched());
+        Assert.assertEquals(size, object.getBytesRead());
+        Assert.assertEquals(DatatypeConverter.printHexBinary(MessageDigest.getInstance("MD5").digest(data)),
+                object.getMd5Hex(false));
+    }
+
+    @Test
+    public void testCorruptRangeFailsVerification() throws Exception {
+        String name = "corrupt-range-test";
+        File sFile = new File(sourceDir, name);
+        File tFile = new File(targetDir, name);
+        int size = 10 * 1024 * 1024 + 123; // more than one range
+        StreamUtil.copy(new RandomInputStream(size), new FileOutputStream(sFile), size);
+
+        FilesystemConfig sConfig = new FilesystemConfig();
+        sConfig.setPath(sourceDir.getAbsolutePath());
+
+        FilesystemConfig tConfig = new FilesystemConfig();
+        tConfig.setPath(targetDir.getAbsolutePath());
+
+        FilesystemStorage source = new FilesystemStorage();
+        source.setConfig(sConfig);
+        FilesystemStorage target = new FilesystemStorage();
+        target.setConfig(tConfig);
+        source.configure(source, null, target);
+        target.configure(source, null, target);
+
+        // the first range is corrupted on the way (the data stream still reads the real file)
+        SyncObject object = source.loadObject(source.getIdentifier(name, false));
+        final ParallelRangeInputStream.RangeSource reader =
+                (ParallelRangeInputStream.RangeSource) object.getProperty(ParallelRangeInputStream.PROP_RANGE_READER);
+        object.setProperty(ParallelRangeInputStream.PROP_RANGE_SOURCE, new ParallelRangeInputStream.RangeSource() {
+            @Override
+            public InputStream open(long offset, long length) throws IOException {
+                if (offset > 0) return reader.open(offset, length);
+                byte[] range = StreamUtil.readAsBytes(reader.open(offset, length));
+                range[0]++;
+                return new ByteArrayInputStream(range);
+            }
+        });
+        target.updateObject(target.getIdentifier(name, false), object);
+        Assert.assertFalse(Arrays.equals(Files.readAllBytes(sFile.toPath()), Files.readAllBytes(tFile.toPath())));
+
+        Md5Verifier verifier = new Md5Verifier(new SyncOptions());
+        try {
+            verifier.verify(object, target.loadObject(target.getIdentifier(name, false)));
+            Assert.fail("a corrupted range should fail verification");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("mismatch"));
+        } finally {
+            verifier.close();
+        }
+    }
+
     @Test
     public void testRelativeLinkTargets() throws Exception {
         String linkName = "my/link";
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.storage.s3;
+
+import com.emc.ecs.sync.config.Protocol;
+import com.emc.ecs.sync.config.SyncOptions;
+import com.emc.ecs.sync.config.storage.AwsS3Config;
+import com.emc.ecs.sync.model.ObjectMetadata;
+import com.emc.ecs.sync.model.SyncObject;
+import com.emc.object.Range;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+/**
+ * Unit tests for the S3 storage plugins that do not need an endpoint
+ */
+public class S3StorageTest {
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void testUploadThreadCount() {
+        // without lanes, every sync thread may be running an MPU
+        SyncOptions options = new SyncOptions().withThreadCount(16);
+        Assert.assertEquals(16 * 5, AwsS3Storage.getUploadThreadCount(options, 4, 16 * MB));
+
+        // the pipeline has no lanes, even with a large object threshold
+        options.withLargeObjectThreshold(64 * MB).withPipelineEnabled(true);
+        Assert.assertEquals(16 * 5, AwsS3Storage.getUploadThreadCount(options, 4, 16 * MB));
+
+        // with lanes, only the large lane needs part threads (16 / 4 = 4 large threads, 12 small)
+        options.withPipelineEnabled(false);
+        Assert.assertEquals(12 + 4 * 5, AwsS3Storage.getUploadThreadCount(options, 4, 16 * MB));
+
+        // unless small objects can be MPUs too
+        Assert.assertEquals(16 * 5, AwsS3Storage.getUploadThreadCount(options, 4, 32 * MB));
+    }
+
+    @Test
+    public void testCopyThreadCount() {
+        SyncOptions options = new SyncOptions().withThreadCount(16);
+        Assert.assertEquals(16 * 4, EcsS3Storage.getCopyThreadCount(options, 4));
+
+        options.withLargeObjectThreshold(64 * MB);
+        Assert.assertEquals(4 * 4, EcsS3Storage.getCopyThreadCount(options, 4));
+
+        // small objects above the single copy limit are copied in parts too
+        options.withLargeObjectThreshold(AbstractS3Storage.MAX_COPY_SIZE + 1);
+        Assert.assertEquals(16 * 4, EcsS3Storage.getCopyThreadCount(options, 4));
+    }
+
+    @Test
+    public void testServerSideCopy() {
+        AwsS3Storage source = new AwsS3Storage(), target = new AwsS3Storage(), other = new AwsS3Storage();
+
+        SyncObject object = createObject(source);
+        Assert.assertTrue(target.isServerSideCopy(object, source));
+
+        // no copy source, or the object is from another storage
+        Assert.assertFalse(target.isServerSideCopy(object, null));
+        Assert.assertFalse(target.isServerSideCopy(createObject(other), source));
+
+        // this storage is not configured for internal copies
+        Assert.assertFalse(target.isServerSideCopy(createObject(target), source));
+
+        // directories are not copied
+        object = createObject(source);
+        object.getMetadata().setDirectory(true);
+        Assert.assertFalse(target.isServerSideCopy(object, source));
+
+        // the source key is needed for the copy
+        object = createObject(source);
+        object.removeProperty(AbstractS3Storage.PROP_SOURCE_KEY);
+        Assert.assertFalse(target.isServerSideCopy(object, source));
+
+        // a filter read the data (i.e. to hash it)
+        object = createObject(source);
+        object.getDataStream();
+        Assert.assertFalse(target.isServerSideCopy(object, source));
+
+        // a filter will change the object after the stream is read
+        object = createObject(source);
+        object.setPostStreamUpdateRequired(true);
+        Assert.assertFalse(target.isServerSideCopy(object, source));
+    }
+
+    @Test
+    public void testSameEndpoint() {
+        AwsS3Storage target = new AwsS3Storage();
+        target.withConfig(createConfig("key1", "secret1"));
+
+        Assert.assertTrue(target.isSameEndpoint(createConfig("key1", "secret1")));
+
+        // other credentials may not be able to read the source bucket
+        Assert.assertFalse(target.isSameEndpoint(createConfig("key2", "secret1")));
+        Assert.assertFalse(target.isSameEndpoint(createConfig("key1", "secret2")));
+
+        AwsS3Config other = createConfig("key1", "secret1");
+        other.setHost("s3.other.com");
+        Assert.assertFalse(target.isSameEndpoint(other));
+
+        other = createConfig("key1", "secret1");
+        other.setPort(9021);
+        Assert.assertFalse(target.isSameEndpoint(other));
+
+        other = createConfig("key1", "secret1");
+        other.setProtocol(Protocol.http);
+        Assert.assertFalse(target.isSameEndpoint(other));
+    }
+
+    @Test
+    public void testMultipartCopyParts() {
+        long partSize = 128 * MB;
+
+        // just above the single copy limit
+        long size = AbstractS3Storage.MAX_COPY_SIZE + 1;
+        Assert.assertEquals(partSize, EcsMultipartCopy.getPartSize(size, partSize));
+        List<Range> ranges = EcsMultipartCopy.getPartRanges(size, partSize);
+        Assert.assertEquals(41, ranges.size());
+        Assert.assertEquals(0L, (long) ranges.get(0).getFirst());
+        Assert.assertEquals(partSize - 1, (long) ranges.get(0).getLast());
+        Assert.assertEquals(40 * partSize, (long) ranges.get(40).getFirst());
+        Assert.assertEquals(size - 1, (long) ranges.get(40).getLast());
+
+        // exactly on a part boundary (no empty part at the end)
+        size = 50 * partSize;
+        ranges = EcsMultipartCopy.getPartRanges(size, partSize);
+        Assert.assertEquals(50, ranges.size());
+        Assert.assertEquals(size - 1, (long) ranges.get(49).getLast());
+
+        // the parts are contiguous
+        for (int i = 1; i < ranges.size(); i++) {
+            Assert.assertEquals(ranges.get(i - 1).getLast() + 1, (long) ranges.get(i).getFirst());
+        }
+
+        // too many parts, so the part size grows to stay within the part limit
+        size = 2L * 1024 * 1024 * MB; // 2TB
+        long scaledSize = EcsMultipartCopy.getPartSize(size, partSize);
+        Assert.assertTrue(scaledSize > partSize);
+        Assert.assertEquals(AbstractParallelPartUpload.MAX_PARTS, EcsMultipartCopy.getPartRanges(size, scaledSize).size());
+
+        // one byte more needs a bigger part, not another part
+        scaledSize = EcsMultipartCopy.getPartSize(size + 1, partSize);
+        Assert.assertTrue(EcsMultipartCopy.getPartRanges(size + 1, scaledSize).size() <= AbstractParallelPartUpload.MAX_PARTS);
+    }
+
+    private SyncObject createObject(AwsS3Storage storage) {
+        SyncObject object = new SyncObject(storage, "foo", new ObjectMetadata().withContentLength(3));
+        object.setLazyStream(() -> new ByteArrayInputStream("bar".getBytes()));
+        object.setProperty(AbstractS3Storage.PROP_SOURCE_KEY, "foo");
+        return object;
+    }
+
+    private AwsS3Config createConfig(String accessKey, String secretKey) {
+        AwsS3Config config = new AwsS3Config();
+        config.setProtocol(Protocol.https);
+        config.setHost("s3.test.com");
+        config.setPort(443);
+        config.setAccessKey(accessKey);
+        config.setSecretKey(secretKey);
+        config.setBucketName("bucket");
+        return config;
+    }
+}
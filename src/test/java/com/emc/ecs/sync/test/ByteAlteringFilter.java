@@ -62,7 +62,7 @@ public class ByteAlteringFilter extends AbstractFilter<ByteAlteringFilter.ByteAl
 
     private class AlteredObject extends DelegatingSyncObject {
         private EnhancedInputStream in;
-        private byte[] md5;
+        private byte[] checksum;
 
         AlteredObject(SyncObject delegate) {
             super(delegate);
@@ -70,7 +70,8 @@ public class ByteAlteringFilter extends AbstractFilter<ByteAlteringFilter.ByteAl
 
         @Override
         public synchronized InputStream getDataStream() {
-            if (in == null) in = new EnhancedInputStream(new AlteredStream(delegate.getDataStream()), true);
+            if (in == null)
+                in = new EnhancedInputStream(new AlteredStream(delegate.getDataStream()), getChecksumAlgorithm());
             return in;
         }
 
@@ -83,22 +84,32 @@ public class ByteAlteringFilter extends AbstractFilter<ByteAlteringFilter.ByteAl
             }
         }
 
-        synchronized byte[] getMd5(boolean forceRead) {
-            if (md5 == null) {
+        synchronized byte[] getChecksum(boolean forceRead) {
+            if (checksum == null) {
                 getDataStream();
                 if (!in.isClosed()) {
                     if (!forceRead || in.getBytesRead() > 0)
-                        throw new IllegalStateException("Cannot call getMd5 until stream is closed");
+                        throw new IllegalStateException("Cannot get checksum until stream is closed");
                     SyncUtil.consumeAndCloseStream(in);
                 }
-                md5 = in.getMd5Digest();
+                checksum = in.getChecksum();
             }
-            return md5;
+            return checksum;
         }
 
         @Override
-        public String getMd5Hex(boolean forceRead) {
-            return DatatypeConverter.printHexBinary(getMd5(forceRead));
+        public boolean isDataStreamReplaced() {
+            return true;
+        }
+
+        @Override
+        public String getStoredMd5Hex() {
+            return null; // the data is altered
+        }
+
+        @Override
+        public String getChecksumHex(boolean forceRead) {
+            return DatatypeConverter.printHexBinary(getChecksum(forceRead));
         }
     }
 
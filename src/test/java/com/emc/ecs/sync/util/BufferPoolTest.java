@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class BufferPoolTest {
+    @Test
+    public void testReuse() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+
+        byte[] buffer = pool.borrow(1024);
+        Assert.assertEquals(1024, buffer.length);
+        Assert.assertEquals(0, pool.getHits());
+        Assert.assertEquals(1, pool.getMisses());
+
+        pool.release(buffer);
+        Assert.assertEquals(1024, pool.getPooledBytes());
+
+        // same size gets the same buffer back
+        Assert.assertSame(buffer, pool.borrow(1024));
+        Assert.assertEquals(1, pool.getHits());
+        Assert.assertEquals(0, pool.getPooledBytes());
+
+        // different size is a miss
+        pool.release(buffer);
+        Assert.assertEquals(2048, pool.borrow(2048).length);
+        Assert.assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void testCapacity() {
+        BufferPool pool = new BufferPool(3000);
+
+        byte[] one = pool.borrow(1024), two = pool.borrow(1024), three = pool.borrow(1024);
+        pool.release(one);
+        pool.release(two);
+        pool.release(three); // does not fit
+        Assert.assertEquals(2048, pool.getPooledBytes());
+
+        pool.reserve(4096);
+        pool.release(three);
+        Assert.assertEquals(3072, pool.getPooledBytes());
+
+        // giving the reservation back drops what no longer fits
+        pool.unreserve(4096);
+        Assert.assertEquals(3000, pool.getCapacity());
+        Assert.assertEquals(2048, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testLargeBuffers() {
+        BufferPool pool = new BufferPool(64 * 1024 * 1024);
+
+        // buffers above the copy-loop sizes are not pooled
+        byte[] large = pool.borrow(BufferPool.MAX_POOLED_SIZE + 1);
+        pool.release(large);
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertNotSame(large, pool.borrow(BufferPool.MAX_POOLED_SIZE + 1));
+
+        byte[] copy = pool.borrow(BufferPool.MAX_POOLED_SIZE);
+        pool.release(copy);
+        Assert.assertEquals(BufferPool.MAX_POOLED_SIZE, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        Assert.assertTrue(pool.hasRoom(Long.MAX_VALUE)); // no limit
+
+        pool.limitMemory(4096);
+        byte[] one = pool.borrow(1024), two = pool.borrow(1024);
+        Assert.assertEquals(2048, pool.getBorrowedBytes());
+        Assert.assertTrue(pool.hasRoom(2048));
+        Assert.assertFalse(pool.hasRoom(2049));
+
+        // borrowing never blocks, even past the limit
+        byte[] three = pool.borrow(4096);
+        Assert.assertFalse(pool.hasRoom(1));
+
+        // released buffers are only pooled if they fit in the limit
+        pool.release(three);
+        Assert.assertEquals(0, pool.getPooledBytes());
+        pool.release(two);
+        Assert.assertEquals(1024, pool.getPooledBytes());
+        Assert.assertEquals(1024, pool.getBorrowedBytes());
+
+        // pooled buffers are dropped to make room
+        Assert.assertTrue(pool.hasRoom(3072));
+        Assert.assertEquals(0, pool.getPooledBytes());
+
+        pool.release(one);
+        Assert.assertEquals(0, pool.getBorrowedBytes());
+        pool.unlimitMemory(4096);
+        Assert.assertEquals(0, pool.getMemoryLimit());
+    }
+
+    @Test
+    public void testDirect() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+
+        ByteBuffer buffer = pool.borrowDirect(4096);
+        Assert.assertTrue(buffer.isDirect());
+        buffer.put(new byte[100]);
+        pool.release(buffer);
+
+        ByteBuffer again = pool.borrowDirect(4096);
+        Assert.assertSame(buffer, again);
+        Assert.assertEquals(0, again.position()); // cleared
+        Assert.assertEquals(4096, again.remaining());
+    }
+}
@@ -14,6 +14,7 @@
  */
 package com.emc.ecs.sync.util;
 
+import com.emc.ecs.sync.config.ChecksumAlgorithm;
 import com.emc.ecs.sync.model.ObjectAcl;
 import com.emc.ecs.sync.model.ObjectMetadata;
 import com.emc.ecs.sync.model.SyncObject;
@@ -110,6 +111,31 @@ public abstract class DelegatingSyncObject extends SyncObject {
         return delegate.getBytesRead();
     }
 
+    @Override
+    public boolean isDataStreamReplaced() {
+        return delegate.isDataStreamReplaced();
+    }
+
+    @Override
+    public ChecksumAlgorithm getChecksumAlgorithm() {
+        return delegate.getChecksumAlgorithm();
+    }
+
+    @Override
+    public void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+        delegate.setChecksumAlgorithm(checksumAlgorithm);
+    }
+
+    @Override
+    public String getChecksumHex(boolean forceRead) {
+        return delegate.getChecksumHex(forceRead);
+    }
+
+    @Override
+    public String getStoredMd5Hex() {
+        return delegate.getStoredMd5Hex();
+    }
+
     @Override
     public String getMd5Hex(boolean forceRead) {
         return delegate.getMd5Hex(forceRead);
@@ -14,10 +14,15 @@
  */
 package com.emc.ecs.sync.util;
 
+import com.emc.ecs.sync.config.ChecksumAlgorithm;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.zip.CRC32;
 
 public class EnhancedInputStreamTest {
     @Test
@@ -30,4 +35,39 @@ public class EnhancedInputStreamTest {
         SyncUtil.consumeAndCloseStream(cis);
         Assert.assertEquals(dataSize, cis.getBytesRead());
     }
+
+    @Test
+    public void testChecksums() throws Exception {
+        byte[] data = new byte[100 * 1024 + 7];
+        new Random().nextBytes(data);
+
+        EnhancedInputStream md5Stream = new EnhancedInputStream(new ByteArrayInputStream(data), ChecksumAlgorithm.MD5);
+        SyncUtil.consumeAndCloseStream(md5Stream);
+        Assert.assertArrayEquals(MessageDigest.getInstance("MD5").digest(data), md5Stream.getChecksum());
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        byte[] expectedCrc = ByteBuffer.allocate(4).putInt((int) crc.getValue()).array();
+
+        EnhancedInputStream crcStream = new EnhancedInputStream(new ByteArrayInputStream(data), ChecksumAlgorithm.CRC32);
+        SyncUtil.consumeAndCloseStream(crcStream);
+        Assert.assertArrayEquals(expectedCrc, crcStream.getChecksum());
+
+        // direct buffers (i.e. mapped files) are digested in place
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        MessageDigest crcDigest = ChecksumUtil.createDigest(ChecksumAlgorithm.CRC32);
+        crcDigest.update(direct);
+        Assert.assertArrayEquals(expectedCrc, crcDigest.digest());
+
+        EnhancedInputStream plainStream = new EnhancedInputStream(new ByteArrayInputStream(data), (ChecksumAlgorithm) null);
+        SyncUtil.consumeAndCloseStream(plainStream);
+        Assert.assertEquals(data.length, plainStream.getBytesRead());
+        try {
+            plainStream.getChecksum();
+            Assert.fail("checksum should not be available");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class InFlightLimiterTest {
+    @Test
+    public void testByteLimit() throws Exception {
+        final InFlightLimiter limiter = new InFlightLimiter(1000, 0);
+
+        Assert.assertEquals(600, limiter.acquire(600));
+        Assert.assertEquals(400, limiter.acquire(400));
+        Assert.assertEquals(1000, limiter.getInFlightBytes());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Long> future = executor.submit(() -> limiter.acquire(100));
+
+        Thread.sleep(200);
+        Assert.assertFalse("acquire should block when full", future.isDone());
+
+        limiter.release(400);
+        Assert.assertEquals(100, (long) future.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(700, limiter.getInFlightBytes());
+        Assert.assertEquals(2, limiter.getInFlightObjects());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testOversizedObject() throws Exception {
+        final InFlightLimiter limiter = new InFlightLimiter(1000, 0);
+
+        limiter.acquire(10);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Long> future = executor.submit(() -> limiter.acquire(5000));
+
+        Thread.sleep(200);
+        Assert.assertFalse("oversized object should wait for everything else to drain", future.isDone());
+
+        limiter.release(10);
+        Assert.assertEquals(1000, (long) future.get(1, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testObjectLimit() throws Exception {
+        final InFlightLimiter limiter = new InFlightLimiter(0, 2);
+
+        limiter.acquire(Long.MAX_VALUE / 4);
+        limiter.acquire(Long.MAX_VALUE / 4);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Long> future = executor.submit(() -> limiter.acquire(1));
+
+        Thread.sleep(200);
+        Assert.assertFalse(future.isDone());
+
+        limiter.release(Long.MAX_VALUE / 4);
+        future.get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(2, limiter.getInFlightObjects());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFifoOrder() throws Exception {
+        final InFlightLimiter limiter = new InFlightLimiter(1000, 0);
+        final List<Long> admitted = Collections.synchronizedList(new ArrayList<Long>());
+
+        limiter.acquire(1000);
+
+        // a large object waits first; small objects queued behind it must not jump ahead
+        ExecutorService executor = Executors.newCachedThreadPool();
+        executor.submit(() -> admitted.add(limiter.acquire(800)));
+        Thread.sleep(100);
+        for (int i = 0; i < 3; i++) {
+            executor.submit(() -> admitted.add(limiter.acquire(100)));
+        }
+        Thread.sleep(100);
+
+        limiter.release(1000);
+        Thread.sleep(200);
+
+        // only 2 of the small objects fit behind the large one
+        Assert.assertEquals(3, admitted.size());
+        Assert.assertTrue(admitted.contains(800L));
+        Assert.assertEquals(1000, limiter.getInFlightBytes());
+
+        limiter.close();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final InFlightLimiter limiter = new InFlightLimiter(100, 0);
+        limiter.acquire(100);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Long> future = executor.submit(() -> limiter.acquire(100));
+        Thread.sleep(200);
+
+        limiter.close();
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            Assert.fail("acquire should fail after close");
+        } catch (java.util.concurrent.ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        executor.shutdown();
+    }
+}
@@ -34,7 +34,7 @@ public class ParallelInputStreamTest {
 
         Assert.assertTrue(pStream.reader.isComplete());
         Assert.assertFalse(pStream.reader.isFailed());
-        Assert.assertFalse(pStream.readerThread.isAlive());
+        Assert.assertTrue(pStream.readFuture.isDone());
     }
 
     @Test
@@ -57,7 +57,7 @@ public class ParallelInputStreamTest {
         Assert.assertEquals(24, baos.size()); // should fail {bufferSize} characters before the bang
         Assert.assertFalse(pStream.reader.isComplete());
         Assert.assertTrue(pStream.reader.isFailed());
-        Assert.assertFalse(pStream.readerThread.isAlive());
+        Assert.assertTrue(pStream.readFuture.isDone());
     }
 
     @Test
@@ -96,7 +96,7 @@ public class ParallelInputStreamTest {
 
         Assert.assertFalse(pStream.reader.isComplete());
         Assert.assertTrue(pStream.reader.isFailed());
-        Assert.assertFalse(pStream.readerThread.isAlive());
+        Assert.assertTrue(pStream.readFuture.isDone());
     }
 
     private void streamAndClose(InputStream in, OutputStream out) throws IOException {
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelRangeInputStreamTest {
+    @Test
+    public void testReassembly() throws Exception {
+        byte[] data = randomData(1024 * 1024 + 13);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = new ParallelRangeInputStream(new ArraySource(data, false), data.length, 64 * 1024, 4, 0)) {
+            byte[] buffer = new byte[10000];
+            int c;
+            while ((c = in.read(buffer)) != -1) {
+                result.write(buffer, 0, c);
+            }
+        }
+
+        Assert.assertArrayEquals(data, result.toByteArray());
+    }
+
+    @Test
+    public void testRangeRetry() throws Exception {
+        byte[] data = randomData(500 * 1024);
+
+        // every range fails once
+        ArraySource source = new ArraySource(data, true);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = new ParallelRangeInputStream(source, data.length, 100 * 1024, 3, 1)) {
+            byte[] buffer = new byte[4096];
+            int c;
+            while ((c = in.read(buffer)) != -1) {
+                result.write(buffer, 0, c);
+            }
+        }
+
+        Assert.assertArrayEquals(data, result.toByteArray());
+        Assert.assertEquals(5, source.failedOffsets.size());
+    }
+
+    @Test
+    public void testRangeFailure() throws Exception {
+        byte[] data = randomData(500 * 1024);
+
+        // no retries allowed
+        try (InputStream in = new ParallelRangeInputStream(new ArraySource(data, true), data.length, 100 * 1024, 3, 0)) {
+            in.read(new byte[4096]);
+            Assert.fail("read should fail");
+        } catch (IOException e) {
+            Assert.assertEquals("connection reset", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMemoryLimit() throws Exception {
+        byte[] data = randomData(1024 * 1024 + 13);
+        int rangeSize = 64 * 1024;
+
+        BufferPool pool = BufferPool.getInstance();
+        long borrowed = pool.getBorrowedBytes(), limit = borrowed + 2 * rangeSize;
+        // only room for the range being read and the next one
+        pool.limitMemory(limit);
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            try (InputStream in = new ParallelRangeInputStream(new ArraySource(data, false), data.length, rangeSize, 4, 0)) {
+                byte[] buffer = new byte[10000];
+                int c;
+                while ((c = in.read(buffer)) != -1) {
+                    result.write(buffer, 0, c);
+                    Assert.assertTrue(pool.getBorrowedBytes() <= limit);
+                }
+            }
+            Assert.assertArrayEquals(data, result.toByteArray());
+            Assert.assertEquals(borrowed, pool.getBorrowedBytes());
+        } finally {
+            pool.unlimitMemory(limit);
+        }
+    }
+
+    @Test
+    public void testCloseReleasesRanges() throws Exception {
+        byte[] data = randomData(1024 * 1024);
+
+        BufferPool pool = BufferPool.getInstance();
+        long borrowed = pool.getBorrowedBytes();
+        try (InputStream in = new ParallelRangeInputStream(new ArraySource(data, false), data.length, 64 * 1024, 8, 0)) {
+            Assert.assertTrue(in.read(new byte[100]) > 0);
+        }
+
+        // ranges that were still being read give their buffers back when they finish
+        long start = System.currentTimeMillis();
+        while (pool.getBorrowedBytes() > borrowed) {
+            Assert.assertTrue("range buffers not released", System.currentTimeMillis() - start < 10000);
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(borrowed, pool.getBorrowedBytes());
+    }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        byte[] data = randomData(1024 * 1024 + 13);
+        Path file = Files.createTempFile("range-write-test", null);
+        try {
+            final AtomicLong transferred = new AtomicLong();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                long written = ParallelRangeInputStream.writeTo(new ArraySource(data, true), data.length, channel,
+                        64 * 1024, 4, 1, new com.emc.object.util.ProgressListener() {
+                            @Override
+                            public void progress(long completed, long total) {
+                            }
+
+                            @Override
+                            public void transferred(long size) {
+                                transferred.addAndGet(size);
+                            }
+                        });
+                Assert.assertEquals(data.length, written);
+            }
+
+            Assert.assertArrayEquals(data, Files.readAllBytes(file));
+            // failed attempts do not write anything
+            Assert.assertEquals(data.length, transferred.get());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        return data;
+    }
+
+    private class ArraySource implements ParallelRangeInputStream.RangeSource {
+        private byte[] data;
+        private boolean failOnce;
+        Set<Long> failedOffsets = ConcurrentHashMap.newKeySet();
+
+        ArraySource(byte[] data, boolean failOnce) {
+            this.data = data;
+            this.failOnce = failOnce;
+        }
+
+        @Override
+        public InputStream open(long offset, long length) throws IOException {
+            if (failOnce && failedOffsets.add(offset)) throw new IOException("connection reset");
+            return new ByteArrayInputStream(Arrays.copyOfRange(data, (int) offset, (int) (offset + length)));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReadAheadIteratorTest {
+    @Test
+    public void testReadAhead() throws Exception {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            source.add(i);
+        }
+
+        final AtomicInteger read = new AtomicInteger();
+        ReadAheadIterator<Integer> iterator = new ReadAheadIterator<>(source.iterator(), 100, "test-read-ahead",
+                new ReadAheadIterator.Listener<Integer>() {
+                    @Override
+                    public void objectRead(Integer object) {
+                        read.incrementAndGet();
+                    }
+                });
+
+        // without consuming anything, the reader should get up to the capacity ahead
+        long start = System.currentTimeMillis();
+        while (iterator.getReadAheadCount() < 100) {
+            Assert.assertTrue("read-ahead timed out", System.currentTimeMillis() - start < 10000);
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(read.get() >= 100 && read.get() <= 101);
+
+        List<Integer> consumed = new ArrayList<>();
+        while (iterator.hasNext()) {
+            consumed.add(iterator.next());
+        }
+        Assert.assertEquals(source, consumed);
+        Assert.assertEquals(source.size(), read.get());
+        iterator.close();
+    }
+
+    @Test
+    public void testError() {
+        Iterator<Integer> source = new ReadOnlyIterator<Integer>() {
+            int count = 0;
+
+            @Override
+            protected Integer getNextObject() {
+                if (count == 10) throw new IllegalStateException("listing failed");
+                return count++;
+            }
+        };
+
+        ReadAheadIterator<Integer> iterator = new ReadAheadIterator<>(source, 100, "test-read-ahead", null);
+        int consumed = 0;
+        try {
+            while (iterator.hasNext()) {
+                iterator.next();
+                consumed++;
+            }
+            Assert.fail("error should be thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(10, consumed);
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        Iterator<Integer> endless = new ReadOnlyIterator<Integer>() {
+            @Override
+            protected Integer getNextObject() {
+                return 1;
+            }
+        };
+
+        ReadAheadIterator<Integer> iterator = new ReadAheadIterator<>(endless, 10, "test-read-ahead", null);
+        Assert.assertTrue(iterator.hasNext());
+        iterator.next();
+        iterator.close();
+        Thread.sleep(100);
+        // the reader may have been between reading and queueing one object, but should not read any further
+        Assert.assertTrue(iterator.getReadAheadCount() <= 1);
+    }
+}
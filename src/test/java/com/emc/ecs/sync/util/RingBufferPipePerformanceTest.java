@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.concurrent.Future;
+
+public class RingBufferPipePerformanceTest {
+    private static final int PIPE_SIZE = 128 * 1024;
+    private static final int CHUNK_SIZE = 32 * 1024;
+    private static final long BENCHMARK_SIZE = 256 * 1024 * 1024;
+
+    @Test
+    public void testThroughput() throws Exception {
+        // warm up both
+        pump(new PipedStreams(), BENCHMARK_SIZE / 8);
+        pump(new RingStreams(), BENCHMARK_SIZE / 8);
+
+        long pipedTime = pump(new PipedStreams(), BENCHMARK_SIZE);
+        long ringTime = pump(new RingStreams(), BENCHMARK_SIZE);
+
+        System.out.printf("%dMB through a %dKB pipe: piped streams: %dms, ring buffer: %dms%n",
+                BENCHMARK_SIZE / 1024 / 1024, PIPE_SIZE / 1024, pipedTime / 1000000, ringTime / 1000000);
+    }
+
+    private long pump(Streams streams, final long size) throws Exception {
+        final OutputStream out = streams.getOutputStream();
+        InputStream in = streams.getInputStream();
+        final MessageDigest writeDigest = MessageDigest.getInstance("MD5");
+        MessageDigest readDigest = MessageDigest.getInstance("MD5");
+
+        long start = System.nanoTime();
+        Future<?> writer = RingBufferPipe.submitWriter(new Runnable() {
+            @Override
+            public void run() {
+                try (OutputStream output = out) {
+                    byte[] chunk = new byte[CHUNK_SIZE];
+                    for (long written = 0; written < size; written += chunk.length) {
+                        chunk[(int) (written / chunk.length % chunk.length)]++;
+                        writeDigest.update(chunk);
+                        output.write(chunk);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, null);
+
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int c;
+        while ((c = in.read(buffer)) != -1) {
+            readDigest.update(buffer, 0, c);
+        }
+        in.close();
+        writer.get();
+        long time = System.nanoTime() - start;
+
+        Assert.assertArrayEquals(writeDigest.digest(), readDigest.digest());
+        return time;
+    }
+
+    private interface Streams {
+        InputStream getInputStream();
+
+        OutputStream getOutputStream();
+    }
+
+    private class PipedStreams implements Streams {
+        private PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        private PipedOutputStream out;
+
+        PipedStreams() throws IOException {
+            out = new PipedOutputStream(in);
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+    }
+
+    private class RingStreams implements Streams {
+        private RingBufferPipe pipe = new RingBufferPipe(PIPE_SIZE);
+
+        @Override
+        public InputStream getInputStream() {
+            return pipe.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return pipe.getOutputStream();
+        }
+    }
+}
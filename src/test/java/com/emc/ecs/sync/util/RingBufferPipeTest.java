@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.Future;
+
+public class RingBufferPipeTest {
+    @Test
+    public void testIntegrity() throws Exception {
+        final byte[] data = new byte[1024 * 1024 + 7];
+        new Random().nextBytes(data);
+
+        // small pipe and odd write/read sizes, so the positions wrap around the buffer at different offsets
+        final RingBufferPipe pipe = new RingBufferPipe(1000);
+        Future<?> writer = RingBufferPipe.submitWriter(new Runnable() {
+            @Override
+            public void run() {
+                try (OutputStream out = pipe.getOutputStream()) {
+                    Random random = new Random();
+                    int position = 0;
+                    while (position < data.length) {
+                        int count = Math.min(random.nextInt(3000) + 1, data.length - position);
+                        out.write(data, position, count);
+                        position += count;
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, null);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = pipe.getInputStream()) {
+            Random random = new Random();
+            byte[] buffer = new byte[2000];
+            int c;
+            while ((c = in.read(buffer, 0, random.nextInt(buffer.length) + 1)) != -1) {
+                result.write(buffer, 0, c);
+            }
+        }
+        writer.get();
+
+        Assert.assertArrayEquals(data, result.toByteArray());
+    }
+
+    @Test
+    public void testCloseEarly() throws Exception {
+        final RingBufferPipe pipe = new RingBufferPipe(16);
+        Future<?> writer = RingBufferPipe.submitWriter(new Runnable() {
+            @Override
+            public void run() {
+                try (OutputStream out = pipe.getOutputStream()) {
+                    out.write(new byte[1024]); // more than the pipe can hold
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, null);
+
+        InputStream in = pipe.getInputStream();
+        Assert.assertEquals(8, in.read(new byte[8]));
+        in.close();
+
+        try {
+            writer.get();
+            Assert.fail("writer should fail when the pipe is closed");
+        } catch (java.util.concurrent.ExecutionException e) {
+            Assert.assertEquals("Pipe closed", e.getCause().getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testEndOfData() throws Exception {
+        RingBufferPipe pipe = new RingBufferPipe(16);
+        pipe.getOutputStream().write(new byte[]{1, 2, 3});
+        pipe.getOutputStream().close();
+
+        InputStream in = pipe.getInputStream();
+        Assert.assertEquals(3, in.available());
+        Assert.assertEquals(1, in.read());
+        Assert.assertEquals(2, in.read(new byte[8]));
+        Assert.assertEquals(-1, in.read());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenBucketTest {
+    @Test
+    public void testDisabled() {
+        TokenBucket bucket = new TokenBucket(0);
+        Assert.assertFalse(bucket.isEnabled());
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 100000; i++) {
+            bucket.acquire(1024 * 1024);
+        }
+        Assert.assertTrue("disabled bucket should not block", System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testRate() {
+        TokenBucket bucket = new TokenBucket(1000);
+
+        // the first second's worth is a burst
+        long start = System.currentTimeMillis();
+        bucket.acquire(1000);
+        Assert.assertTrue(System.currentTimeMillis() - start < 200);
+
+        // the next 500 should take ~0.5s
+        start = System.currentTimeMillis();
+        bucket.acquire(500);
+        long duration = System.currentTimeMillis() - start;
+        Assert.assertTrue("duration was " + duration, duration >= 400 && duration < 1000);
+    }
+
+    @Test
+    public void testChangeRate() {
+        TokenBucket bucket = new TokenBucket(100);
+        bucket.acquire(100); // drain the burst
+
+        // raising the rate takes effect immediately
+        bucket.setRate(10000);
+        long start = System.currentTimeMillis();
+        bucket.acquire(5000);
+        long duration = System.currentTimeMillis() - start;
+        Assert.assertTrue("duration was " + duration, duration < 1000);
+
+        // and disabling it stops all waiting
+        bucket.setRate(0);
+        start = System.currentTimeMillis();
+        bucket.acquire(1000000);
+        Assert.assertTrue(System.currentTimeMillis() - start < 200);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013-2017 EMC Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.emc.ecs.sync.util;
+
+import com.emc.ecs.sync.config.ChecksumAlgorithm;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TreeHashTest {
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMatch() throws Exception {
+        byte[] data = new byte[1000 * 1000 + 123];
+        new Random().nextBytes(data);
+
+        for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+            TreeHash hash1 = TreeHash.calculate(rangeSource(data), data.length, 100 * 1000, algorithm, 4, 0, executor);
+            TreeHash hash2 = TreeHash.calculate(rangeSource(data.clone()), data.length, 100 * 1000, algorithm, 3, 0, executor);
+
+            Assert.assertEquals(11, hash1.getChunks().size());
+            Assert.assertEquals(123, hash1.getChunks().get(10).getLength());
+            Assert.assertEquals(hash1.getRootHashHex(), hash2.getRootHashHex());
+            Assert.assertTrue(hash1.getMismatchedChunks(hash2).isEmpty());
+        }
+    }
+
+    @Test
+    public void testMismatchedRanges() throws Exception {
+        byte[] data = new byte[1000 * 1000];
+        new Random().nextBytes(data);
+        byte[] altered = data.clone();
+        altered[150 * 1000]++; // in the 2nd chunk
+        altered[data.length - 1]++; // in the last chunk
+
+        TreeHash hash = TreeHash.calculate(rangeSource(data), data.length, 100 * 1000, ChecksumAlgorithm.MD5, 4, 0, executor);
+        TreeHash alteredHash = TreeHash.calculate(rangeSource(altered), data.length, 100 * 1000, ChecksumAlgorithm.MD5, 4, 0, executor);
+
+        Assert.assertNotEquals(hash.getRootHashHex(), alteredHash.getRootHashHex());
+        List<TreeHash.Chunk> mismatched = hash.getMismatchedChunks(alteredHash);
+        Assert.assertEquals(2, mismatched.size());
+        Assert.assertEquals(100 * 1000, mismatched.get(0).getOffset());
+        Assert.assertEquals("900000-999999", mismatched.get(1).toString());
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        final byte[] data = new byte[100 * 1000];
+        new Random().nextBytes(data);
+        final boolean[] failed = {false};
+
+        TreeHash hash = TreeHash.calculate(new ParallelRangeInputStream.RangeSource() {
+            @Override
+            public InputStream open(long offset, long length) {
+                synchronized (failed) {
+                    // the first read of the 2nd chunk is cut short
+                    if (offset > 0 && !failed[0]) {
+                        failed[0] = true;
+                        return new ByteArrayInputStream(data, (int) offset, (int) length / 2);
+                    }
+                }
+                return new ByteArrayInputStream(data, (int) offset, (int) length);
+            }
+        }, data.length, 10 * 1000, ChecksumAlgorithm.CRC32, 4, 1, executor);
+
+        TreeHash expected = TreeHash.calculate(rangeSource(data), data.length, 10 * 1000, ChecksumAlgorithm.CRC32, 4, 0, executor);
+        Assert.assertTrue(failed[0]);
+        Assert.assertEquals(expected.getRootHashHex(), hash.getRootHashHex());
+    }
+
+    @Test
+    public void testStreamHash() throws Exception {
+        byte[] data = new byte[1000 * 1000 + 123];
+        new Random().nextBytes(data);
+
+        TreeHash expected = TreeHash.calculate(rangeSource(data), data.length, 100 * 1000, ChecksumAlgorithm.MD5, 4, 0, executor);
+
+        // odd read sizes, so reads cross chunk boundaries
+        EnhancedInputStream stream = new EnhancedInputStream(new ByteArrayInputStream(data), data.length,
+                ChecksumAlgorithm.MD5, 100 * 1000);
+        byte[] buffer = new byte[7777];
+        while (stream.read(buffer) != -1) {
+            stream.read(); // single bytes too
+        }
+        stream.close();
+
+        TreeHash hash = stream.getTreeHash();
+        Assert.assertEquals(11, hash.getChunks().size());
+        Assert.assertEquals(data.length, hash.getSize());
+        Assert.assertEquals(100 * 1000, hash.getChunkSize());
+        Assert.assertEquals(expected.getRootHashHex(), hash.getRootHashHex());
+        Assert.assertTrue(expected.getMismatchedChunks(hash).isEmpty());
+
+        // data that ends on a chunk boundary has no empty last chunk
+        TreeHash.Digester digester = new TreeHash.Digester(ChecksumAlgorithm.MD5, 100 * 1000);
+        digester.update(data, 0, 200 * 1000);
+        Assert.assertEquals(2, digester.getTreeHash().getChunks().size());
+        Assert.assertEquals(TreeHash.calculate(rangeSource(data), 200 * 1000, 100 * 1000, ChecksumAlgorithm.MD5, 4, 0,
+                executor).getRootHashHex(), digester.getTreeHash().getRootHashHex());
+    }
+
+    private ParallelRangeInputStream.RangeSource rangeSource(final byte[] data) {
+        return new ParallelRangeInputStream.RangeSource() {
+            @Override
+            public InputStream open(long offset, long length) {
+                return new ByteArrayInputStream(data, (int) offset, (int) length);
+            }
+        };
+    }
+}